@@ -0,0 +1,70 @@
+package expo.modules.inapppurchases;
+
+import android.app.Activity;
+import android.content.Context;
+
+import com.android.billingclient.api.AcknowledgePurchaseParams;
+import com.android.billingclient.api.AcknowledgePurchaseResponseListener;
+import com.android.billingclient.api.BillingClientStateListener;
+import com.android.billingclient.api.BillingFlowParams;
+import com.android.billingclient.api.BillingResult;
+import com.android.billingclient.api.ConsumeParams;
+import com.android.billingclient.api.ConsumeResponseListener;
+import com.android.billingclient.api.ProductDetailsResponseListener;
+import com.android.billingclient.api.PurchaseHistoryResponseListener;
+import com.android.billingclient.api.PurchasesResponseListener;
+import com.android.billingclient.api.PurchasesUpdatedListener;
+
+import java.util.List;
+
+/**
+ * The subset of BillingClient that BillingManager talks to. The Play Store implementation is
+ * PlayBillingBackend; the tests and benchmarks use a FakeBillingBackend that serves scripted
+ * responses in-process
+ */
+public interface BillingBackend {
+  /**
+   * Creates the backend for a BillingManager, purchase updates have to be reported to the listener
+   */
+  interface Factory {
+    BillingBackend create(Context context, PurchasesUpdatedListener listener);
+  }
+
+  /**
+   * A product to query the details of. QueryProductDetailsParams can't be read back, so queries are
+   * described with these instead
+   */
+  final class ProductQuery {
+    public final String productId;
+    public final String productType;
+
+    public ProductQuery(String productId, String productType) {
+      this.productId = productId;
+      this.productType = productType;
+    }
+  }
+
+  void startConnection(BillingClientStateListener listener);
+
+  void endConnection();
+
+  boolean isReady();
+
+  BillingResult isFeatureSupported(String feature);
+
+  BillingResult launchBillingFlow(Activity activity, BillingFlowParams params);
+
+  void acknowledgePurchase(AcknowledgePurchaseParams params, AcknowledgePurchaseResponseListener listener);
+
+  void consumeAsync(ConsumeParams params, ConsumeResponseListener listener);
+
+  void queryPurchasesAsync(String skuType, PurchasesResponseListener listener);
+
+  void queryPurchaseHistoryAsync(String skuType, PurchaseHistoryResponseListener listener);
+
+  /**
+   * Queries the details of all the given products in one call. Callers must pass products of a single
+   * type, Play Store refuses queries that mix in-app products and subscriptions
+   */
+  void queryProductDetailsAsync(List<ProductQuery> products, ProductDetailsResponseListener listener);
+}
@@ -0,0 +1,286 @@
+package expo.modules.inapppurchases;
+
+import android.util.Log;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.BillingClientStateListener;
+import com.android.billingclient.api.BillingResult;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Owns the connection to the billing service. Requests issued while disconnected are queued (up to
+ * MAX_PENDING_REQUESTS) and run in order once the connection is established. There is at most one
+ * connection attempt in flight; failed attempts are retried with exponential backoff and jitter, and
+ * when the connection can't be established every queued request is failed. Connection callbacks are
+ * delivered on the given executor
+ */
+public class BillingConnection {
+  private static final String TAG = "BillingConnection";
+
+  public static final int MAX_PENDING_REQUESTS = 64;
+  public static final int MAX_CONNECTION_ATTEMPTS = 4;
+  public static final long INITIAL_BACKOFF_MS = 500;
+  public static final long MAX_BACKOFF_MS = 8000;
+
+  // Only waits out the backoff delays, the attempts themselves run on the executor
+  private static final ScheduledExecutorService sBackoffScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "BillingConnection-backoff");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  public enum State {
+    DISCONNECTED,
+    CONNECTING,
+    CONNECTED,
+    CLOSED
+  }
+
+  /**
+   * A request that needs a connected billing service to run
+   */
+  public interface ServiceRequest extends Runnable {
+    /**
+     * Called instead of run() when the service couldn't be connected
+     */
+    void onServiceUnavailable(BillingResult billingResult);
+  }
+
+  /**
+   * Listener to the results of connection attempts
+   */
+  public interface Listener {
+    void onBillingSetupFinished(BillingResult billingResult);
+  }
+
+  private final BillingBackend mBillingClient;
+  private final Executor mExecutor;
+  private final Listener mListener;
+  private final Random mRandom = new Random();
+  private final ArrayDeque<ServiceRequest> mPendingRequests = new ArrayDeque<>();
+  private State mState = State.DISCONNECTED;
+  private int mFailedAttempts;
+  private ScheduledFuture<?> mScheduledAttempt;
+
+  private final Runnable mConnectRunnable = new Runnable() {
+    @Override
+    public void run() {
+      synchronized (BillingConnection.this) {
+        if (mState != State.CONNECTING) {
+          return;
+        }
+      }
+      mBillingClient.startConnection(new BillingClientStateListener() {
+        @Override
+        public void onBillingSetupFinished(@NonNull final BillingResult billingResult) {
+          mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+              BillingConnection.this.onBillingSetupFinished(billingResult);
+            }
+          });
+        }
+
+        @Override
+        public void onBillingServiceDisconnected() {
+          mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+              BillingConnection.this.onBillingServiceDisconnected();
+            }
+          });
+        }
+      });
+    }
+  };
+
+  public BillingConnection(BillingBackend billingClient, Executor executor, Listener listener) {
+    mBillingClient = billingClient;
+    mExecutor = executor;
+    mListener = listener;
+  }
+
+  public synchronized State getState() {
+    return mState;
+  }
+
+  /**
+   * Runs the request right away when connected, otherwise queues it and connects if needed
+   */
+  public void execute(ServiceRequest request) {
+    boolean runNow = false;
+    boolean connect = false;
+    BillingResult rejection = null;
+    synchronized (this) {
+      switch (mState) {
+        case CONNECTED:
+          runNow = true;
+          break;
+        case CLOSED:
+          rejection = result(BillingResponseCode.SERVICE_DISCONNECTED, "Billing client was closed");
+          break;
+        default:
+          if (mPendingRequests.size() >= MAX_PENDING_REQUESTS) {
+            rejection = result(BillingResponseCode.SERVICE_UNAVAILABLE, "Too many requests waiting for the billing service");
+          } else {
+            mPendingRequests.add(request);
+            if (mState == State.DISCONNECTED) {
+              mState = State.CONNECTING;
+              connect = true;
+            }
+          }
+      }
+    }
+
+    if (runNow) {
+      request.run();
+    } else if (rejection != null) {
+      request.onServiceUnavailable(rejection);
+    } else if (connect) {
+      mConnectRunnable.run();
+    }
+  }
+
+  /**
+   * Starts connecting when disconnected, without a request to run afterwards
+   */
+  public void connect() {
+    synchronized (this) {
+      if (mState != State.DISCONNECTED) {
+        return;
+      }
+      mState = State.CONNECTING;
+    }
+    mConnectRunnable.run();
+  }
+
+  /**
+   * Takes a request that is still waiting for the connection off the queue, it won't be run nor
+   * failed anymore. Returns whether it was still queued
+   */
+  public synchronized boolean cancel(ServiceRequest request) {
+    return mPendingRequests.remove(request);
+  }
+
+  private void onBillingSetupFinished(@NonNull BillingResult billingResult) {
+    List<ServiceRequest> requests = null;
+    synchronized (this) {
+      if (mState != State.CONNECTING) {
+        return;
+      }
+      if (billingResult.getResponseCode() == BillingResponseCode.OK) {
+        mState = State.CONNECTED;
+        mFailedAttempts = 0;
+        requests = drainPendingRequests();
+      } else if (isRetryable(billingResult.getResponseCode()) && ++mFailedAttempts < MAX_CONNECTION_ATTEMPTS) {
+        long delay = backoffDelay(mFailedAttempts);
+        Log.w(TAG, "Billing setup failed with " + billingResult.getResponseCode() + ", retrying in " + delay + "ms");
+        mScheduledAttempt = sBackoffScheduler.schedule(new Runnable() {
+          @Override
+          public void run() {
+            mExecutor.execute(mConnectRunnable);
+          }
+        }, delay, TimeUnit.MILLISECONDS);
+      } else {
+        mState = State.DISCONNECTED;
+        mFailedAttempts = 0;
+        requests = drainPendingRequests();
+      }
+    }
+
+    mListener.onBillingSetupFinished(billingResult);
+    if (requests == null) {
+      return;
+    }
+    for (ServiceRequest request : requests) {
+      if (billingResult.getResponseCode() == BillingResponseCode.OK) {
+        request.run();
+      } else {
+        request.onServiceUnavailable(billingResult);
+      }
+    }
+  }
+
+  private void onBillingServiceDisconnected() {
+    boolean reconnect;
+    synchronized (this) {
+      // Only a lost connection needs a new attempt. While CONNECTING, the attempt in flight or the
+      // scheduled retry still reports back, and connecting again would run two attempts at once
+      if (mState != State.CONNECTED) {
+        return;
+      }
+      // Requests queued while we thought we were connected still deserve a connection
+      reconnect = !mPendingRequests.isEmpty();
+      mState = reconnect ? State.CONNECTING : State.DISCONNECTED;
+    }
+    if (reconnect) {
+      mConnectRunnable.run();
+    }
+  }
+
+  /**
+   * Ends the connection and fails every queued request. Nothing can be executed afterwards
+   */
+  public void close() {
+    List<ServiceRequest> requests;
+    synchronized (this) {
+      if (mState == State.CLOSED) {
+        return;
+      }
+      mState = State.CLOSED;
+      if (mScheduledAttempt != null) {
+        mScheduledAttempt.cancel(false);
+      }
+      requests = drainPendingRequests();
+    }
+    if (mBillingClient.isReady()) {
+      mBillingClient.endConnection();
+    }
+    BillingResult rejection = result(BillingResponseCode.SERVICE_DISCONNECTED, "Billing client was closed");
+    for (ServiceRequest request : requests) {
+      request.onServiceUnavailable(rejection);
+    }
+  }
+
+  private List<ServiceRequest> drainPendingRequests() {
+    List<ServiceRequest> requests = new ArrayList<>(mPendingRequests);
+    mPendingRequests.clear();
+    return requests;
+  }
+
+  private long backoffDelay(int failedAttempts) {
+    long delay = Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << (failedAttempts - 1));
+    // "Equal jitter": keep half of the delay and randomize the other half
+    return delay / 2 + (long) (mRandom.nextDouble() * (delay / 2));
+  }
+
+  private static boolean isRetryable(int responseCode) {
+    switch (responseCode) {
+      case BillingResponseCode.ERROR:
+      case BillingResponseCode.SERVICE_DISCONNECTED:
+      case BillingResponseCode.SERVICE_UNAVAILABLE:
+      case BillingResponseCode.SERVICE_TIMEOUT:
+        return true;
+    }
+    return false;
+  }
+
+  private static BillingResult result(int responseCode, String debugMessage) {
+    return BillingResult.newBuilder().setResponseCode(responseCode).setDebugMessage(debugMessage).build();
+  }
+}
@@ -0,0 +1,245 @@
+package expo.modules.inapppurchases;
+
+import android.os.Bundle;
+import android.os.Parcelable;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.BillingClient.ProductType;
+import com.android.billingclient.api.BillingResult;
+import com.android.billingclient.api.ProductDetails;
+import com.android.billingclient.api.ProductDetails.PricingPhase;
+import com.android.billingclient.api.ProductDetails.SubscriptionOfferDetails;
+import com.android.billingclient.api.Purchase;
+import com.android.billingclient.api.PurchaseHistoryRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Converts Billing library results and objects to the Bundles sent over the bridge. It doesn't
+ * depend on the rest of the module, so it can be benchmarked on a plain JVM
+ */
+public final class BillingFormatter {
+  public static final int OK = 0;
+  public static final int USER_CANCELED = 1;
+  public static final int ERROR = 2;
+
+  public static final String INAPP_SUB_PERIOD = "P0D";
+
+  private BillingFormatter() {
+  }
+
+  /**
+   * Marks a query response as served from what was fetched earlier instead of from Play Store
+   */
+  public static Bundle markStale(Bundle response, long fetchedAt) {
+    response.putBoolean("stale", true);
+    response.putDouble("fetchedAt", fetchedAt);
+    return response;
+  }
+
+  /**
+   * Format the result of a Purchase or Sku Details query depending on the result code
+   */
+  public static Bundle formatResponse(BillingResult billingResult, ArrayList<? extends Parcelable> results) {
+    Bundle response = formatResult(billingResult);
+    if (billingResult.getResponseCode() == BillingResponseCode.OK) {
+      response.putParcelableArrayList("results", results != null ? results : new ArrayList<Parcelable>());
+    }
+    return response;
+  }
+
+  /**
+   * Format the response code of a call that has no results, with the JS error code when it failed
+   */
+  public static Bundle formatResult(BillingResult billingResult) {
+    Bundle response = new Bundle();
+    int responseCode = billingResult.getResponseCode();
+    if (responseCode == BillingResponseCode.OK) {
+      response.putInt("responseCode", OK);
+    } else if (responseCode == BillingResponseCode.USER_CANCELED) {
+      response.putInt("responseCode", USER_CANCELED);
+    } else {
+      response.putInt("responseCode", ERROR);
+      response.putInt("errorCode", errorCodeNativeToJS(responseCode));
+    }
+    return response;
+  }
+
+  /**
+   * Convert native error code to match corresponding TS enum
+   */
+  private static int errorCodeNativeToJS(int responseCode) {
+    switch (responseCode) {
+      case BillingResponseCode.ERROR:
+        return 0;
+      case BillingResponseCode.FEATURE_NOT_SUPPORTED:
+        return 1;
+      case BillingResponseCode.SERVICE_DISCONNECTED:
+        return 2;
+      case BillingResponseCode.SERVICE_UNAVAILABLE:
+        return 3;
+      case BillingResponseCode.SERVICE_TIMEOUT:
+        return 4;
+      case BillingResponseCode.BILLING_UNAVAILABLE:
+        return 5;
+      case BillingResponseCode.ITEM_UNAVAILABLE:
+        return 6;
+      case BillingResponseCode.DEVELOPER_ERROR:
+        return 7;
+      case BillingResponseCode.ITEM_ALREADY_OWNED:
+        return 8;
+      case BillingResponseCode.ITEM_NOT_OWNED:
+        return 9;
+    }
+    return 0;
+  }
+
+  /**
+   * Convert native purchase state to match corresponding TS enum
+   */
+  private static int purchaseStateNativeToJS(int purchaseState) {
+    switch (purchaseState) {
+      case Purchase.PurchaseState.PENDING:
+        return 0;
+      case Purchase.PurchaseState.PURCHASED:
+        return 1;
+      case Purchase.PurchaseState.UNSPECIFIED_STATE:
+        return 2;
+    }
+    return 0;
+  }
+
+  /**
+   * Subscriptions are priced by the recurring phase of their default offer, every offer of every
+   * base plan is listed under subscriptionOffers together with the token to buy it
+   */
+  public static Bundle productToBundle(ProductDetails productDetails) {
+    Bundle bundle = new Bundle();
+
+    bundle.putString("description", productDetails.getDescription());
+    bundle.putString("productId", productDetails.getProductId());
+    bundle.putString("title", productDetails.getTitle());
+
+    if (productDetails.getProductType().equals(ProductType.SUBS)) {
+      bundle.putInt("type", 1);
+      List<SubscriptionOfferDetails> offers = productDetails.getSubscriptionOfferDetails();
+      SubscriptionOfferDetails defaultOffer = defaultOffer(offers);
+      if (defaultOffer != null) {
+        List<PricingPhase> phases = defaultOffer.getPricingPhases().getPricingPhaseList();
+        PricingPhase recurringPhase = phases.get(phases.size() - 1);
+        bundle.putString("price", recurringPhase.getFormattedPrice());
+        bundle.putLong("priceAmountMicros", recurringPhase.getPriceAmountMicros());
+        bundle.putString("priceCurrencyCode", recurringPhase.getPriceCurrencyCode());
+        bundle.putString("subscriptionPeriod", recurringPhase.getBillingPeriod());
+      }
+      ArrayList<Bundle> offerBundles = new ArrayList<>();
+      if (offers != null) {
+        for (SubscriptionOfferDetails offer : offers) {
+          offerBundles.add(offerToBundle(offer));
+        }
+      }
+      bundle.putParcelableArrayList("subscriptionOffers", offerBundles);
+    } else {
+      bundle.putInt("type", 0);
+      ProductDetails.OneTimePurchaseOfferDetails offer = productDetails.getOneTimePurchaseOfferDetails();
+      if (offer != null) {
+        bundle.putString("price", offer.getFormattedPrice());
+        bundle.putLong("priceAmountMicros", offer.getPriceAmountMicros());
+        bundle.putString("priceCurrencyCode", offer.getPriceCurrencyCode());
+      }
+      bundle.putString("subscriptionPeriod", INAPP_SUB_PERIOD);
+    }
+
+    return bundle;
+  }
+
+  /**
+   * The offer bought when no other one is picked: the first base plan without any offer on top of
+   * it
+   */
+  @Nullable
+  public static SubscriptionOfferDetails defaultOffer(@Nullable List<SubscriptionOfferDetails> offers) {
+    if (offers == null || offers.isEmpty()) {
+      return null;
+    }
+    for (SubscriptionOfferDetails offer : offers) {
+      if (offer.getOfferId() == null) {
+        return offer;
+      }
+    }
+    return offers.get(0);
+  }
+
+  private static Bundle offerToBundle(SubscriptionOfferDetails offer) {
+    Bundle bundle = new Bundle();
+    bundle.putString("basePlanId", offer.getBasePlanId());
+    bundle.putString("offerId", offer.getOfferId());
+    bundle.putString("offerToken", offer.getOfferToken());
+    bundle.putStringArrayList("offerTags", new ArrayList<>(offer.getOfferTags()));
+
+    ArrayList<Bundle> phaseBundles = new ArrayList<>();
+    for (PricingPhase phase : offer.getPricingPhases().getPricingPhaseList()) {
+      Bundle phaseBundle = new Bundle();
+      phaseBundle.putString("price", phase.getFormattedPrice());
+      phaseBundle.putLong("priceAmountMicros", phase.getPriceAmountMicros());
+      phaseBundle.putString("priceCurrencyCode", phase.getPriceCurrencyCode());
+      phaseBundle.putString("billingPeriod", phase.getBillingPeriod());
+      phaseBundle.putInt("billingCycleCount", phase.getBillingCycleCount());
+      phaseBundle.putInt("recurrenceMode", phase.getRecurrenceMode());
+      phaseBundles.add(phaseBundle);
+    }
+    bundle.putParcelableArrayList("pricingPhases", phaseBundles);
+    return bundle;
+  }
+
+  public static Bundle purchaseToBundle(Purchase purchase) {
+    Bundle bundle = new Bundle();
+
+    bundle.putBoolean("acknowledged", purchase.isAcknowledged());
+    bundle.putString("orderId", purchase.getOrderId());
+    bundle.putString("productId", purchase.getSkus().get(0));
+    bundle.putInt("purchaseState", purchaseStateNativeToJS(purchase.getPurchaseState()));
+    bundle.putLong("purchaseTime", purchase.getPurchaseTime());
+    bundle.putString("packageName", purchase.getPackageName());
+    bundle.putString("purchaseToken", purchase.getPurchaseToken());
+    bundle.putString("originalJson", purchase.getOriginalJson());
+    bundle.putString("signature", purchase.getSignature());
+
+    return bundle;
+  }
+
+  public static Bundle entitlementToBundle(String productId, Purchase purchase, boolean acknowledged,
+                                           @Nullable Long expiresAtHint) {
+    Bundle bundle = new Bundle();
+
+    bundle.putString("productId", productId);
+    bundle.putString("purchaseToken", purchase.getPurchaseToken());
+    bundle.putInt("purchaseState", purchaseStateNativeToJS(purchase.getPurchaseState()));
+    bundle.putBoolean("acknowledged", acknowledged);
+    bundle.putBoolean("autoRenewing", purchase.isAutoRenewing());
+    bundle.putLong("purchaseTime", purchase.getPurchaseTime());
+    if (expiresAtHint != null) {
+      bundle.putDouble("expiresAtHint", expiresAtHint);
+    } else {
+      bundle.putString("expiresAtHint", null);
+    }
+
+    return bundle;
+  }
+
+  public static Bundle purchaseHistoryToBundle(PurchaseHistoryRecord purchaseRecord) {
+    Bundle bundle = new Bundle();
+
+    // PurchaseHistoryRecord is a subset of Purchase
+    bundle.putString("productId", purchaseRecord.getSkus().get(0));
+    bundle.putLong("purchaseTime", purchaseRecord.getPurchaseTime());
+    bundle.putString("purchaseToken", purchaseRecord.getPurchaseToken());
+    bundle.putString("originalJson", purchaseRecord.getOriginalJson());
+    bundle.putString("signature", purchaseRecord.getSignature());
+
+    return bundle;
+  }
+}
@@ -10,28 +10,29 @@ import com.android.billingclient.api.AcknowledgePurchaseParams;
 import com.android.billingclient.api.AcknowledgePurchaseResponseListener;
 import com.android.billingclient.api.BillingClient;
 import com.android.billingclient.api.BillingClient.BillingResponseCode;
-import com.android.billingclient.api.BillingClient.FeatureType;
+import com.android.billingclient.api.BillingClient.ProductType;
 import com.android.billingclient.api.BillingClient.SkuType;
-import com.android.billingclient.api.BillingClientStateListener;
 import com.android.billingclient.api.BillingFlowParams;
 import com.android.billingclient.api.BillingResult;
 import com.android.billingclient.api.ConsumeParams;
 import com.android.billingclient.api.ConsumeResponseListener;
+import com.android.billingclient.api.ProductDetails;
+import com.android.billingclient.api.ProductDetailsResponseListener;
 import com.android.billingclient.api.Purchase;
 import com.android.billingclient.api.PurchaseHistoryRecord;
 import com.android.billingclient.api.PurchaseHistoryResponseListener;
 import com.android.billingclient.api.PurchasesResponseListener;
 import com.android.billingclient.api.PurchasesUpdatedListener;
-import com.android.billingclient.api.SkuDetails;
-import com.android.billingclient.api.SkuDetailsParams;
-import com.android.billingclient.api.SkuDetailsResponseListener;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -42,31 +43,61 @@ import expo.modules.core.interfaces.services.EventEmitter;
 
 /**
  * Handles all the interactions with Play Store (via Billing library), maintains connection to
- * it through BillingClient and caches temporary states/data if needed
+ * it through a BillingBackend (BillingClient by default) and caches temporary states/data if needed
  */
 public class BillingManager implements PurchasesUpdatedListener {
   private static final String TAG = "BillingManager";
 
-  public static final int OK = 0;
-  public static final int USER_CANCELED = 1;
-  public static final int ERROR = 2;
+  public static final int OK = BillingFormatter.OK;
+  public static final int USER_CANCELED = BillingFormatter.USER_CANCELED;
+  public static final int ERROR = BillingFormatter.ERROR;
 
   public static final int BILLING_MANAGER_NOT_INITIALIZED = -1;
   public static final String PURCHASES_UPDATED_EVENT = "Expo.purchasesUpdated";
-  public static final String ACKNOWLEDGING_PURCHASE = "Acknowledging Item";
-  public static final String INAPP_SUB_PERIOD = "P0D";
-  private int mBillingClientResponseCode = BILLING_MANAGER_NOT_INITIALIZED;
-
-  protected static final HashMap<String, Promise> promises = new HashMap<>();
-  private final List<Purchase> mPurchases = new ArrayList<>();
-  private final HashMap<String, SkuDetails> mSkuDetailsMap = new HashMap<>();
-  private BillingClient mBillingClient;
+  public static final String INAPP_SUB_PERIOD = BillingFormatter.INAPP_SUB_PERIOD;
+  private static final String QUERY_PURCHASES_REQUEST = "queryPurchases";
+  private static final String QUERY_PURCHASE_HISTORY_REQUEST = "queryPurchaseHistory";
+  private static final String PURCHASE_HISTORY_PAGE_REQUEST = "purchaseHistoryPage";
+  // Settles queries that run only to refresh the state, their outcome reaches JS as events
+  private static final Promise IGNORED_PROMISE = new Promise() {
+    @Override
+    public void resolve(Object value) {
+    }
+
+    @Override
+    public void reject(String code, String message, Throwable e) {
+    }
+  };
+  private static final List<String> ALL_SKU_TYPES = Collections.unmodifiableList(Arrays.asList(SkuType.INAPP, SkuType.SUBS));
+  private volatile int mBillingClientResponseCode = BILLING_MANAGER_NOT_INITIALIZED;
+
+  // Promises of the pending consumptions, keyed by purchase token
+  protected static final ConcurrentHashMap<String, Promise> promises = new ConcurrentHashMap<>();
+  // Every purchase reported since the last full query, keyed by purchase token in the order they came in
+  private final Map<String, Purchase> mPurchases = new LinkedHashMap<>();
+  private final PurchaseStore mPurchaseStore = new PurchaseStore();
+  private final EntitlementIndex mEntitlementIndex;
+  private final BundleSerializer mBundleSerializer = new BundleSerializer();
+  private boolean mDeltaPurchaseEvents;
+  private final PurchaseEventCoalescer mPurchaseEventCoalescer;
+  private final ProductDetailsCache mProductDetailsCache;
+  private final PurchaseJournal mPurchaseJournal;
+  private final OwnedPurchasesSnapshot mOwnedPurchasesSnapshot;
+  private final ProductDetailsBatcher mProductDetailsBatcher;
+  private final Executor mExecutor;
+  private final SingleFlight mSingleFlight = new SingleFlight();
+  private final PurchaseHistoryPager mPurchaseHistoryPager = new PurchaseHistoryPager();
+  private BillingBackend mBillingClient;
+  private final CircuitBreakerBillingBackend mCircuitBreakers;
+  private final BillingConnection mConnection;
+  private final RequestScheduler mScheduler;
   private EventEmitter mEventEmitter;
-  private boolean mIsServiceConnected;
-  private final Activity mActivity;
+  private final Context mContext;
   private BillingUpdatesListener mBillingUpdatesListener;
+  private boolean mSetupFinished;
+  private FeatureSupport mFeatureSupport = FeatureSupport.UNKNOWN;
 
-  private Set<String> mTokensToBeConsumed;
+  private final Set<String> mTokensToBeConsumed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
   /**
    * Listener to the updates that happen when purchases list was updated or consumption of the
@@ -78,6 +109,28 @@ public class BillingManager implements PurchasesUpdatedListener {
     void onConsumeFinished(String token, BillingResult result);
 
     void onPurchasesUpdated(List<Purchase> purchases);
+
+    void onPurchasesDelta(PurchaseStore.Delta delta);
+  }
+
+  /**
+   * A call to Play Store that settles the given promise once it's answered
+   */
+  private interface ServiceCall {
+    void run(Promise promise);
+  }
+
+  /**
+   * The purchase history as queried for a first page, shared by every caller waiting for it
+   */
+  private static class FetchedHistory {
+    final BillingResult billingResult;
+    final List<PurchaseHistoryRecord> records;
+
+    FetchedHistory(BillingResult billingResult, List<PurchaseHistoryRecord> records) {
+      this.billingResult = billingResult;
+      this.records = records;
+    }
   }
 
   /**
@@ -87,182 +140,583 @@ public class BillingManager implements PurchasesUpdatedListener {
     void onServiceConnected(BillingResult resultCode);
   }
 
-  public BillingManager(Activity activity, EventEmitter eventEmitter) {
-    mActivity = activity;
-    mEventEmitter = eventEmitter;
-    mBillingUpdatesListener = new UpdateListener(eventEmitter);
-    mBillingClient =
-      BillingClient
-        .newBuilder(activity)
-        .enablePendingPurchases()
-        .setListener(this)
-        .build();
+  /**
+   * @param context  Any context, the manager only keeps the application context. Activities are
+   *                 passed to purchaseItemAsync() when a billing flow is launched
+   * @param executor Serial executor all the billing work and Billing library callbacks are moved to.
+   *                 The plain fields of the manager are only used on it, so it must not run tasks
+   *                 concurrently. Cancellations run on the thread that cancels, and entitlements,
+   *                 circuit breakers and metrics are read from any thread; what those touch is
+   *                 thread safe (the scheduler, connection, batcher and SingleFlight lock themselves)
+   */
+  public BillingManager(Context context, EventEmitter eventEmitter, ProductDetailsCache productDetailsCache,
+                        PurchaseJournal purchaseJournal, OwnedPurchasesSnapshot ownedPurchasesSnapshot, Executor executor) {
+    this(context, eventEmitter, productDetailsCache, purchaseJournal, ownedPurchasesSnapshot, executor,
+      PlayBillingBackend.FACTORY, new BillingMetrics());
   }
 
-  public void startConnection(final Promise promise) {
-    // Start setup. This is asynchronous and the specified listener will be called
-    // once setup completes.
-    // It also starts to report all the new purchases through onPurchasesUpdated() callback.
-    startServiceConnection(new Runnable() {
+  /**
+   * @param backendFactory Creates the backend the manager talks to instead of Play Store, e.g. the
+   *                       FakeBillingBackend of the tests
+   * @param metrics        Where the latency and the result of every call to the backend is recorded
+   */
+  public BillingManager(Context context, EventEmitter eventEmitter, ProductDetailsCache productDetailsCache,
+                        PurchaseJournal purchaseJournal, OwnedPurchasesSnapshot ownedPurchasesSnapshot, Executor executor,
+                        BillingBackend.Factory backendFactory, BillingMetrics metrics) {
+    mContext = context.getApplicationContext();
+    mExecutor = executor;
+    mEventEmitter = eventEmitter;
+    mProductDetailsCache = productDetailsCache;
+    mPurchaseJournal = purchaseJournal;
+    mOwnedPurchasesSnapshot = ownedPurchasesSnapshot;
+    mEntitlementIndex = new EntitlementIndex(new EntitlementIndex.BillingPeriods() {
+      @Override
+      public String getBillingPeriod(String productId) {
+        ProductDetailsCache.Entry cached = mProductDetailsCache.get(productId);
+        return cached != null ? cached.toBundle().getString("subscriptionPeriod") : null;
+      }
+    });
+    mProductDetailsBatcher = new ProductDetailsBatcher(new ProductDetailsBatcher.Dispatcher() {
+      @Override
+      public void executeServiceRequest(RequestScheduler.Request request) {
+        mScheduler.execute(RequestScheduler.Priority.BACKGROUND, request);
+      }
+
+      @Override
+      public void cancelServiceRequest(RequestScheduler.Request request) {
+        mScheduler.cancel(request);
+      }
+
+      @Override
+      public void queryProductDetails(List<String> productIds, ProductDetailsResponseListener listener) {
+        BillingManager.this.queryProductDetails(productIds, listener);
+      }
+    });
+    mBillingUpdatesListener = new UpdateListener(eventEmitter, mBundleSerializer);
+    mPurchaseEventCoalescer = new PurchaseEventCoalescer(executor, new PurchaseEventCoalescer.Listener() {
+      @Override
+      public void onPurchasesUpdated() {
+        if (!mDeltaPurchaseEvents) {
+          mBillingUpdatesListener.onPurchasesUpdated(new ArrayList<>(mPurchases.values()));
+        }
+      }
+
+      @Override
+      public void onPurchasesDelta(PurchaseStore.Delta delta) {
+        if (mDeltaPurchaseEvents) {
+          mBillingUpdatesListener.onPurchasesDelta(delta);
+        }
+      }
+    });
+    // The BillingClient is only created once the service is bound, see prebind(). Calls failed by an
+    // open circuit breaker don't make it into the metrics
+    mCircuitBreakers = new CircuitBreakerBillingBackend(
+      new MeasuredBillingBackend(new LazyBillingBackend(backendFactory, mContext, this), metrics));
+    mBillingClient = mCircuitBreakers;
+    mConnection = new BillingConnection(mBillingClient, executor, new BillingConnection.Listener() {
+      @Override
+      public void onBillingSetupFinished(BillingResult billingResult) {
+        mBillingClientResponseCode = billingResult.getResponseCode();
+        if (billingResult.getResponseCode() == BillingResponseCode.OK) {
+          // Runs before any queued request, so they all see the support of this connection
+          mFeatureSupport = FeatureSupport.query(mBillingClient);
+          // Finish what the previous session, or the previous connection, left behind
+          replayPurchaseJournal();
+          if (!mSetupFinished) {
+            mSetupFinished = true;
+            // Notifying the listener that billing client is ready
+            mBillingUpdatesListener.onBillingClientSetupFinished();
+          }
+        }
+      }
+    });
+    mScheduler = new RequestScheduler(mConnection, executor);
+    // Entitlements can be checked right away, even while Play Store can't be reached
+    runOnBillingThread(new Runnable() {
       @Override
       public void run() {
-        // Notifying the listener that billing client is ready
-        mBillingUpdatesListener.onBillingClientSetupFinished();
-        promise.resolve(null);
+        OwnedPurchasesSnapshot.Snapshot snapshot = mOwnedPurchasesSnapshot.get();
+        if (snapshot != null) {
+          mEntitlementIndex.seed(snapshot);
+        }
       }
     });
   }
 
-  public void startServiceConnection(final Runnable executeOnSuccess) {
-    mBillingClient.startConnection(new BillingClientStateListener() {
+  /**
+   * Resolves the promise once the billing service is connected. The manager is shared, so only the
+   * first connection runs the setup, later calls resolve right away when the service is still
+   * connected
+   */
+  public void startConnection(final Promise promise, final Cancellation cancellation) {
+    runOnBillingThread(new Runnable() {
       @Override
-      public void onBillingSetupFinished(BillingResult billingResult) {
-        final int responseCode = billingResult.getResponseCode();
-        if (responseCode == BillingResponseCode.OK) {
-          mIsServiceConnected = true;
-          if (executeOnSuccess != null) {
-            executeOnSuccess.run();
+      public void run() {
+        // Start setup. This is asynchronous and the request runs once setup completes.
+        // It also starts to report all the new purchases through onPurchasesUpdated() callback.
+        executeServiceRequest(new Runnable() {
+          @Override
+          public void run() {
+            promise.resolve(null);
           }
+        }, promise, cancellation);
+      }
+    });
+  }
+
+  /**
+   * Creates the BillingClient and binds the billing service on the billing thread without waiting
+   * for it, e.g. once the app is idle after a lazy connectAsync(). Without it both happen with the
+   * first request that needs the service
+   */
+  public void prebind() {
+    runOnBillingThread(new Runnable() {
+      @Override
+      public void run() {
+        mConnection.connect();
+      }
+    });
+  }
+
+  /**
+   * Fetches the given products and, optionally, the owned purchases together with connecting, so
+   * the caches are filled by the time the paywall needs them. All the steps are queued on the
+   * connection right away and run back to back once it is established, see WarmUp
+   */
+  public void warmUp(List<String> skus, boolean prefetchPurchases, final Promise promise, Cancellation cancellation) {
+    WarmUp warmUp = new WarmUp(1 + (skus.isEmpty() ? 0 : 1) + (prefetchPurchases ? 1 : 0), promise);
+    startConnection(warmUp.step("connection"), cancellation);
+    if (!skus.isEmpty()) {
+      queryPurchasableItems(skus, warmUp.step("products"), cancellation);
+    }
+    if (prefetchPurchases) {
+      queryPurchases(false, warmUp.step("purchases"), cancellation);
+    }
+  }
+
+  /**
+   * Start a purchase or subscription replace flow. Subscriptions are bought with the offer given by
+   * offerToken, or by basePlanId and offerId, and with their default offer otherwise. Purchase flows
+   * are interactive requests, background queries wait for them, see RequestScheduler
+   */
+  public void purchaseItemAsync(final Activity activity, final String skuId, @Nullable final ReadableArguments details,
+                                final Promise promise, final Cancellation cancellation) {
+    final ReadableArguments d = details != null ? details : new MapArguments();
+
+    final ServiceCall purchaseFlowRequest = new ServiceCall() {
+      @Override
+      public void run(final Promise promise) {
+        ProductDetailsCache.Entry cached = mProductDetailsCache.get(skuId);
+        if (cached == null) {
+          promise.reject("E_ITEM_NOT_QUERIED", "Must query item from store before calling purchase");
+          return;
+        }
+        if (cached.productDetails != null) {
+          launchBillingFlow(activity, cached, d, promise);
+          return;
         }
-        mBillingClientResponseCode = responseCode;
+
+        // Only the disk snapshot of the product is left, which can't be bought. It's queried in the
+        // slot of the purchase flow, the batcher would queue it behind the background requests
+        queryProductDetails(Collections.singletonList(skuId), new ProductDetailsResponseListener() {
+          @Override
+          public void onProductDetailsResponse(@NonNull BillingResult billingResult, @NonNull List<ProductDetails> productDetailsList) {
+            cacheProductDetails(productDetailsList);
+            ProductDetailsCache.Entry refreshed = mProductDetailsCache.get(skuId);
+            if (refreshed == null || refreshed.productDetails == null) {
+              promise.reject("E_ITEM_UNAVAILABLE", "Couldn't query the item from the store: " + billingResult.getDebugMessage());
+              return;
+            }
+            launchBillingFlow(activity, refreshed, d, promise);
+          }
+        });
       }
+    };
 
+    runOnBillingThread(new Runnable() {
       @Override
-      public void onBillingServiceDisconnected() {
-        mIsServiceConnected = false;
+      public void run() {
+        scheduleServiceRequest(RequestScheduler.Priority.INTERACTIVE, null, purchaseFlowRequest, promise, cancellation);
       }
     });
   }
 
   /**
-   * Start a purchase or subscription replace flow
+   * Resolves once the billing flow is shown, the outcome of the purchase is reported through
+   * onPurchasesUpdated()
    */
-  public void purchaseItemAsync(final String skuId, @Nullable final ReadableArguments details, final Promise promise) {
-    ReadableArguments d = details != null ? details : new MapArguments();
+  private void launchBillingFlow(final Activity activity, ProductDetailsCache.Entry cached, ReadableArguments d,
+                                 final Promise promise) {
     String oldPurchaseToken = d.getString("oldPurchaseToken");
     ReadableArguments accountIdentifiers = d.getArguments("accountIdentifiers");
     // Boolean isVrPurchaseFlow = d.getBoolean("isVrPurchaseFlow");
 
-    Runnable purchaseFlowRequest = new Runnable() {
+    BillingFlowParams.ProductDetailsParams.Builder productParams =
+      BillingFlowParams.ProductDetailsParams.newBuilder().setProductDetails(cached.productDetails);
+    if (ProductType.SUBS.equals(cached.productType)) {
+      String offerToken = d.getString("offerToken");
+      if (offerToken == null) {
+        offerToken = cached.getOfferToken(d.getString("basePlanId"), d.getString("offerId"));
+      }
+      if (offerToken == null) {
+        promise.reject("E_OFFER_NOT_FOUND", "The subscription has no offer " + d.getString("basePlanId") + "/" + d.getString("offerId"));
+        return;
+      }
+      productParams.setOfferToken(offerToken);
+    }
+
+    BillingFlowParams.Builder purchaseParams =
+      BillingFlowParams.newBuilder().setProductDetailsParamsList(Collections.singletonList(productParams.build()));
+
+    if (oldPurchaseToken != null) {
+      purchaseParams.setSubscriptionUpdateParams(
+        BillingFlowParams.SubscriptionUpdateParams.newBuilder().setOldPurchaseToken(oldPurchaseToken).build()
+      );
+    }
+
+    /**
+     * For Android billing to work without a 'Something went wrong on our end. Please try again.'
+     * error, we must provide BOTH obfuscatedAccountId and obfuscatedProfileId.
+     */
+    if (accountIdentifiers != null) {
+      String obfuscatedAccountId = accountIdentifiers.getString("obfuscatedAccountId");
+      String obfuscatedProfileId = accountIdentifiers.getString("obfuscatedProfileId");
+      if (obfuscatedAccountId != null && obfuscatedProfileId != null) {
+        purchaseParams.setObfuscatedAccountId(obfuscatedAccountId);
+        purchaseParams.setObfuscatedProfileId(obfuscatedProfileId);
+      }
+    }
+
+    // false will be the default, unless true is passed
+    // purchaseParams.setVrPurchaseFlow(isVrPurchaseFlow);
+
+    final BillingBackend billingClient = mBillingClient;
+    final BillingFlowParams billingFlowParams = purchaseParams.build();
+    // The billing flow starts an Activity, so it has to be launched from the UI thread
+    activity.runOnUiThread(new Runnable() {
       @Override
       public void run() {
-        SkuDetails skuDetails = mSkuDetailsMap.get(skuId);
-        if (skuDetails == null) {
-          promise.reject("E_ITEM_NOT_QUERIED", "Must query item from store before calling purchase");
-          return;
+        BillingResult billingResult = billingClient.launchBillingFlow(activity, billingFlowParams);
+        if (billingResult.getResponseCode() == BillingResponseCode.OK) {
+          promise.resolve(null);
+        } else {
+          promise.reject("E_BILLING_FLOW_FAILED", "Couldn't launch the billing flow (" + billingResult.getResponseCode() + "): " + billingResult.getDebugMessage());
         }
+      }
+    });
+  }
 
-        BillingFlowParams.Builder purchaseParams = BillingFlowParams.newBuilder().setSkuDetails(skuDetails);
+  /**
+   * Whether purchase events carry only the purchases that were added, changed or removed since the
+   * previous event instead of all of them
+   */
+  public void setDeltaPurchaseEvents(final boolean deltaPurchaseEvents) {
+    runOnBillingThread(new Runnable() {
+      @Override
+      public void run() {
+        // Pending updates go out in the mode they were made in
+        mPurchaseEventCoalescer.flush();
+        mDeltaPurchaseEvents = deltaPurchaseEvents;
+      }
+    });
+  }
 
-        if (oldPurchaseToken != null) {
-          purchaseParams.setSubscriptionUpdateParams(
-            BillingFlowParams.SubscriptionUpdateParams.newBuilder().setOldSkuPurchaseToken(oldPurchaseToken).build()
-          );
-        }
+  /**
+   * How long purchase updates are collected before they are sent as a single event, see
+   * PurchaseEventCoalescer. Results of purchase flows are always sent right away
+   */
+  public void setPurchaseEventWindow(final long windowMs) {
+    runOnBillingThread(new Runnable() {
+      @Override
+      public void run() {
+        mPurchaseEventCoalescer.setWindowMs(windowMs);
+      }
+    });
+  }
 
-        /**
-         * For Android billing to work without a 'Something went wrong on our end. Please try again.'
-         * error, we must provide BOTH obfuscatedAccountId and obfuscatedProfileId.
-         */
-        if (accountIdentifiers != null) {
-          String obfuscatedAccountId = accountIdentifiers.getString("obfuscatedAccountId");
-          String obfuscatedProfileId = accountIdentifiers.getString("obfuscatedProfileId");
-          if (obfuscatedAccountId != null && obfuscatedProfileId != null) {
-            purchaseParams.setObfuscatedAccountId(obfuscatedAccountId);
-            purchaseParams.setObfuscatedProfileId(obfuscatedProfileId);
-          }
-        }
+  /**
+   * Applies to the circuit breaker of every operation, see CircuitBreaker
+   */
+  public void configureCircuitBreakers(int failureThreshold, long openMs, long maxOpenMs) {
+    mCircuitBreakers.configure(failureThreshold, openMs, maxOpenMs);
+  }
 
-        // false will be the default, unless true is passed
-        // purchaseParams.setVrPurchaseFlow(isVrPurchaseFlow);
+  /**
+   * State of the circuit breaker of every operation. Can be called from any thread
+   */
+  public Bundle getCircuitBreakers() {
+    return mCircuitBreakers.toBundle();
+  }
 
-        mBillingClient.launchBillingFlow(mActivity, purchaseParams.build());
+  /**
+   * Checks the signature of every purchase before it is sent to JS and flags it as `verified`, see
+   * PurchaseVerifier. Null turns the check off
+   */
+  public void setPurchaseVerifier(@Nullable final PurchaseVerifier verifier) {
+    runOnBillingThread(new Runnable() {
+      @Override
+      public void run() {
+        mBundleSerializer.setVerifier(verifier);
       }
-    };
+    });
+  }
 
-    executeServiceRequest(purchaseFlowRequest);
+  /**
+   * Moves purchase events over to the given emitter, e.g. the one of the module that most recently
+   * connected
+   */
+  public void setEventEmitter(final EventEmitter eventEmitter) {
+    runOnBillingThread(new Runnable() {
+      @Override
+      public void run() {
+        mEventEmitter = eventEmitter;
+        mBillingUpdatesListener = new UpdateListener(eventEmitter, mBundleSerializer);
+      }
+    });
   }
 
   public Context getContext() {
-    return mActivity;
+    return mContext;
   }
 
   /**
    * Handle a callback that purchases were updated from the Billing library
    */
   @Override
-  public void onPurchasesUpdated(BillingResult result, List<Purchase> purchases) {
+  public void onPurchasesUpdated(final BillingResult result, final List<Purchase> purchases) {
+    runOnBillingThread(new Runnable() {
+      @Override
+      public void run() {
+        dispatchPurchasesUpdated(result, purchases, false, true);
+      }
+    });
+  }
+
+  /**
+   * Reports updated purchases to the listener, either as the full list of purchases seen so far or,
+   * in delta mode, as what changed since the previous update. Updates are coalesced, see
+   * PurchaseEventCoalescer
+   *
+   * @param complete  Whether purchases is the complete list of owned purchases
+   * @param immediate Whether the update is the result of a purchase flow, which is sent right away
+   */
+  private void dispatchPurchasesUpdated(BillingResult result, List<Purchase> purchases, boolean complete,
+                                        boolean immediate) {
     if (result.getResponseCode() == BillingResponseCode.OK && purchases != null) {
       for (Purchase purchase : purchases) {
         handlePurchase(purchase);
       }
-      mBillingUpdatesListener.onPurchasesUpdated(mPurchases);
+      PurchaseStore.Delta delta = complete ? mPurchaseStore.replaceAll(purchases) : mPurchaseStore.update(purchases);
+      mEntitlementIndex.apply(delta, complete);
+      mPurchaseEventCoalescer.update(delta, immediate);
     } else {
+      // Whatever is pending happened before the failure
+      mPurchaseEventCoalescer.flush();
       Bundle response = formatResponse(result, null);
       mEventEmitter.emit(PURCHASES_UPDATED_EVENT, response);
     }
   }
 
-  public void acknowledgePurchaseAsync(String purchaseToken, final Promise promise) {
-    AcknowledgePurchaseResponseListener acknowledgePurchaseResponseListener = new AcknowledgePurchaseResponseListener() {
+  public void acknowledgePurchaseAsync(final String purchaseToken, final Promise promise, final Cancellation cancellation) {
+    runOnBillingThread(new Runnable() {
       @Override
-      public void onAcknowledgePurchaseResponse(BillingResult billingResult) {
-        Bundle response = formatResponse(billingResult, null);
+      public void run() {
+        acknowledge(purchaseToken, cancellation, new AcknowledgePurchaseResponseListener() {
+          @Override
+          public void onAcknowledgePurchaseResponse(BillingResult billingResult) {
+            Bundle response = formatResponse(billingResult, null);
 
-        promise.resolve(response);
+            promise.resolve(response);
+          }
+        });
       }
-    };
+    });
+  }
 
-    AcknowledgePurchaseParams acknowledgePurchaseParams =
-      AcknowledgePurchaseParams.newBuilder()
-        .setPurchaseToken(purchaseToken)
-        .build();
-    mBillingClient.acknowledgePurchase(acknowledgePurchaseParams, acknowledgePurchaseResponseListener);
-  }
-
-  public void consumeAsync(final String purchaseToken, final Promise promise) {
-    // If we've already scheduled to consume this token - no action is needed (this could happen
-    // if you received the token when querying purchases inside onReceive() and later from
-    // onActivityResult()
-    if (mTokensToBeConsumed == null) {
-      mTokensToBeConsumed = new HashSet<>();
-    } else if (mTokensToBeConsumed.contains(purchaseToken)) {
-      Bundle response = new Bundle();
-      response.putInt("responseCode", BillingClient.BillingResponseCode.OK);
-      promise.resolve(response);
-      return;
-    }
+  /**
+   * A consume that is cancelled stays in the purchase journal and is retried with the next
+   * connection, or by the next call for the same token
+   */
+  public void consumeAsync(final String purchaseToken, final Promise promise, final Cancellation cancellation) {
+    runOnBillingThread(new Runnable() {
+      @Override
+      public void run() {
+        // If we've already scheduled to consume this token - no action is needed (this could happen
+        // if you received the token when querying purchases inside onReceive() and later from
+        // onActivityResult()
+        if (!mTokensToBeConsumed.add(purchaseToken)) {
+          Bundle response = new Bundle();
+          response.putInt("responseCode", BillingClient.BillingResponseCode.OK);
+          promise.resolve(response);
+          return;
+        }
+        promises.put(purchaseToken, promise);
+        cancellation.addListener(new Runnable() {
+          @Override
+          public void run() {
+            promises.remove(purchaseToken, promise);
+          }
+        });
 
-    if (promises.get(ACKNOWLEDGING_PURCHASE) != null) {
-      promise.reject("E_UNFINISHED_PROMISE", "Must wait for promise to resolve before recalling function.");
-      return;
-    }
-    promises.put(ACKNOWLEDGING_PURCHASE, promise);
-    mTokensToBeConsumed.add(purchaseToken);
+        consume(purchaseToken, cancellation, new ConsumeResponseListener() {
+          @Override
+          public void onConsumeResponse(BillingResult billingResult, String purchaseToken) {
+            if (billingResult.getResponseCode() != BillingResponseCode.OK) {
+              // Let the next call try again
+              mTokensToBeConsumed.remove(purchaseToken);
+            }
+            mBillingUpdatesListener.onConsumeFinished(purchaseToken, billingResult);
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Consumes or acknowledges all the given purchases, running up to `parallelism` of them at the
+   * same time, and resolves with the result for every purchase token
+   */
+  public void finishTransactionsAsync(final List<String> purchaseTokens, final boolean consume, final int parallelism,
+                                     final Promise promise, final Cancellation cancellation) {
+    runOnBillingThread(new Runnable() {
+      @Override
+      public void run() {
+        FinishTransactionsBatch batch = new FinishTransactionsBatch(purchaseTokens, parallelism,
+          new FinishTransactionsBatch.Finisher() {
+            @Override
+            public void finish(final String purchaseToken, final FinishTransactionsBatch.Listener listener) {
+              if (!consume) {
+                acknowledge(purchaseToken, cancellation, new AcknowledgePurchaseResponseListener() {
+                  @Override
+                  public void onAcknowledgePurchaseResponse(BillingResult billingResult) {
+                    listener.onFinished(purchaseToken, billingResult);
+                  }
+                });
+                return;
+              }
+              if (!mTokensToBeConsumed.add(purchaseToken)) {
+                listener.onFinished(purchaseToken, BillingResult.newBuilder().setResponseCode(BillingResponseCode.OK).build());
+                return;
+              }
+              consume(purchaseToken, cancellation, new ConsumeResponseListener() {
+                @Override
+                public void onConsumeResponse(BillingResult billingResult, String purchaseToken) {
+                  if (billingResult.getResponseCode() != BillingResponseCode.OK) {
+                    mTokensToBeConsumed.remove(purchaseToken);
+                  }
+                  listener.onFinished(purchaseToken, billingResult);
+                }
+              });
+            }
+          }, promise);
+        batch.start();
+      }
+    });
+  }
+
+  /**
+   * Acknowledges the purchase in a FINISH slot. Cancelling frees the slot right away, the purchase
+   * journal keeps the purchase until Play Store confirmed it
+   */
+  private void acknowledge(final String purchaseToken, final Cancellation cancellation,
+                           final AcknowledgePurchaseResponseListener listener) {
+    mPurchaseJournal.recordFinishRequested(purchaseToken, false);
+    executeFinishRequest(new RequestScheduler.Request() {
+      @Override
+      public void run(final Runnable done) {
+        if (cancellation.isCancelled()) {
+          done.run();
+          return;
+        }
+        AcknowledgePurchaseParams acknowledgePurchaseParams =
+          AcknowledgePurchaseParams.newBuilder()
+            .setPurchaseToken(purchaseToken)
+            .build();
+        mBillingClient.acknowledgePurchase(acknowledgePurchaseParams, new AcknowledgePurchaseResponseListener() {
+          @Override
+          public void onAcknowledgePurchaseResponse(@NonNull final BillingResult billingResult) {
+            done.run();
+            runOnBillingThread(new Runnable() {
+              @Override
+              public void run() {
+                mPurchaseJournal.recordFinishResult(purchaseToken, billingResult.getResponseCode());
+                if (billingResult.getResponseCode() == BillingResponseCode.OK) {
+                  mEntitlementIndex.markAcknowledged(purchaseToken);
+                }
+                listener.onAcknowledgePurchaseResponse(billingResult);
+              }
+            });
+          }
+        });
+      }
 
-    // Generating Consume Response listener
-    final ConsumeResponseListener onConsumeListener = new ConsumeResponseListener() {
       @Override
-      public void onConsumeResponse(BillingResult billingResult, String purchaseToken) {
-        // If billing service was disconnected, we try to reconnect 1 time
-        mBillingUpdatesListener.onConsumeFinished(purchaseToken, billingResult);
+      public void onServiceUnavailable(BillingResult billingResult) {
+        listener.onAcknowledgePurchaseResponse(billingResult);
       }
-    };
+    }, cancellation);
+  }
 
-    // Creating a runnable from the request to use it inside our connection retry policy below
-    Runnable consumeRequest = new Runnable() {
+  /**
+   * Consumes the purchase in a FINISH slot. Cancelling frees the slot right away and lets the next
+   * call consume the token again, the purchase journal keeps the purchase until Play Store confirmed it
+   */
+  private void consume(final String purchaseToken, final Cancellation cancellation, final ConsumeResponseListener listener) {
+    mPurchaseJournal.recordFinishRequested(purchaseToken, true);
+    cancellation.addListener(new Runnable() {
       @Override
       public void run() {
+        mTokensToBeConsumed.remove(purchaseToken);
+      }
+    });
+    executeFinishRequest(new RequestScheduler.Request() {
+      @Override
+      public void run(final Runnable done) {
+        if (cancellation.isCancelled()) {
+          done.run();
+          return;
+        }
         ConsumeParams consumeParams =
           ConsumeParams.newBuilder()
             .setPurchaseToken(purchaseToken)
             .build();
         // Consume the purchase async
-        mBillingClient.consumeAsync(consumeParams, onConsumeListener);
+        mBillingClient.consumeAsync(consumeParams, new ConsumeResponseListener() {
+          @Override
+          public void onConsumeResponse(@NonNull final BillingResult billingResult, @NonNull final String purchaseToken) {
+            done.run();
+            runOnBillingThread(new Runnable() {
+              @Override
+              public void run() {
+                int responseCode = billingResult.getResponseCode();
+                mPurchaseJournal.recordFinishResult(purchaseToken, responseCode);
+                // ITEM_NOT_OWNED means it was consumed already, e.g. before the process died
+                if (responseCode == BillingResponseCode.OK || responseCode == BillingResponseCode.ITEM_NOT_OWNED) {
+                  // Consumed purchases aren't owned anymore
+                  mEntitlementIndex.remove(purchaseToken);
+                }
+                listener.onConsumeResponse(billingResult, purchaseToken);
+              }
+            });
+          }
+        });
       }
-    };
 
-    executeServiceRequest(consumeRequest);
+      @Override
+      public void onServiceUnavailable(BillingResult billingResult) {
+        listener.onConsumeResponse(billingResult, purchaseToken);
+      }
+    }, cancellation);
+  }
+
+  private void executeFinishRequest(final RequestScheduler.Request request, Cancellation cancellation) {
+    mScheduler.execute(RequestScheduler.Priority.FINISH, request);
+    cancellation.addListener(new Runnable() {
+      @Override
+      public void run() {
+        mScheduler.cancel(request);
+      }
+    });
   }
 
   /**
@@ -271,7 +725,55 @@ public class BillingManager implements PurchasesUpdatedListener {
    * @param purchase Purchase to be handled
    */
   private void handlePurchase(Purchase purchase) {
-    mPurchases.add(purchase);
+    // A purchase that was reported before is replaced, so events carry every purchase once
+    mPurchases.remove(purchase.getPurchaseToken());
+    mPurchases.put(purchase.getPurchaseToken(), purchase);
+  }
+
+  /**
+   * Retries acknowledging/consuming the purchases the journal says were left unfinished, e.g.
+   * because the process was killed or the connection was lost before Play Store answered. The
+   * journal may still be reading its file, so it is asked without blocking the billing thread
+   */
+  private void replayPurchaseJournal() {
+    mPurchaseJournal.getPendingFinishes(new PurchaseJournal.PendingFinishesListener() {
+      @Override
+      public void onPendingFinishes(final Map<String, Boolean> pendingFinishes) {
+        runOnBillingThread(new Runnable() {
+          @Override
+          public void run() {
+            replayPendingFinishes(pendingFinishes);
+          }
+        });
+      }
+    });
+  }
+
+  private void replayPendingFinishes(Map<String, Boolean> pendingFinishes) {
+    for (Map.Entry<String, Boolean> pending : pendingFinishes.entrySet()) {
+      final String purchaseToken = pending.getKey();
+      if (pending.getValue()) {
+        if (!mTokensToBeConsumed.add(purchaseToken)) {
+          continue;
+        }
+        consume(purchaseToken, Cancellation.NONE, new ConsumeResponseListener() {
+          @Override
+          public void onConsumeResponse(@NonNull BillingResult billingResult, @NonNull String purchaseToken) {
+            if (billingResult.getResponseCode() != BillingResponseCode.OK) {
+              mTokensToBeConsumed.remove(purchaseToken);
+            }
+            Log.d(TAG, "Replayed consume finished with " + billingResult.getResponseCode());
+          }
+        });
+      } else {
+        acknowledge(purchaseToken, Cancellation.NONE, new AcknowledgePurchaseResponseListener() {
+          @Override
+          public void onAcknowledgePurchaseResponse(@NonNull BillingResult billingResult) {
+            Log.d(TAG, "Replayed acknowledge finished with " + billingResult.getResponseCode());
+          }
+        });
+      }
+    }
   }
 
   /**
@@ -282,218 +784,252 @@ public class BillingManager implements PurchasesUpdatedListener {
     return mBillingClientResponseCode;
   }
 
+  /**
+   * Entitlements of the user as of the last purchases update or query, see EntitlementIndex. Can be
+   * called from any thread and never goes to Play Store
+   */
+  public Bundle getEntitlements() {
+    return mEntitlementIndex.toBundle();
+  }
+
+  public boolean hasEntitlement(String productId) {
+    return mEntitlementIndex.hasEntitlement(productId);
+  }
+
   /**
    * Query both in app purchases and subscriptions and deliver the result in a formalized way
-   * through a listener
+   * through a listener. When the query fails, the purchases of the last successful one are served
+   * instead, marked as stale, see OwnedPurchasesSnapshot
+   *
+   * @param allowStale Whether to resolve with the last known purchases right away when there are any.
+   *                   The query still runs and its result reaches the purchases listener
    */
-  public void queryPurchases(final Promise promise) {
-    Runnable queryToExecute = new Runnable() {
+  public void queryPurchases(final boolean allowStale, final Promise promise, final Cancellation cancellation) {
+    runOnBillingThread(new Runnable() {
       @Override
       public void run() {
-        final Set<String> ALL_QUERIES = new HashSet(Arrays.asList(SkuType.INAPP, SkuType.SUBS));
-        List<Purchase> purchases = new ArrayList<>();
-        Set<String> completedQueries = new HashSet();
-        Set<BillingResult> billingResults = new HashSet();
+        Promise queryPromise = promise;
+        Cancellation queryCancellation = cancellation;
+        if (allowStale) {
+          Bundle staleResponse = staleOwnedPurchases();
+          if (staleResponse != null) {
+            promise.resolve(staleResponse);
+            queryPromise = IGNORED_PROMISE;
+            queryCancellation = Cancellation.NONE;
+          }
+        }
+        mSingleFlight.execute(QUERY_PURCHASES_REQUEST, queryPromise, queryCancellation, new SingleFlight.Request() {
+          @Override
+          public void run(Promise sharedPromise, Cancellation sharedCancellation) {
+            queryPurchasesNow(sharedPromise, sharedCancellation);
+          }
+        });
+      }
+    });
+  }
 
-        mBillingClient.queryPurchasesAsync(SkuType.INAPP, new PurchasesResponseListener() {
+  private void queryPurchasesNow(final Promise promise, Cancellation cancellation) {
+    ServiceCall queryToExecute = new ServiceCall() {
+      @Override
+      public void run(final Promise promise) {
+        List<String> skuTypes = areSubscriptionsSupported() ? ALL_SKU_TYPES : Collections.singletonList(SkuType.INAPP);
+        final QueryFanIn<Purchase> fanIn = new QueryFanIn<>(skuTypes.size(), new QueryFanIn.Callback<Purchase>() {
           @Override
-          public void onQueryPurchasesResponse(@NonNull BillingResult billingResult, @NonNull List<Purchase> inAppPurchases) {
-            if (billingResult.getResponseCode() == BillingResponseCode.OK) {
-              purchases.addAll(inAppPurchases);
-            }
-            billingResults.add(billingResult);
-            completedQueries.add(SkuType.INAPP);
-            if (completedQueries.containsAll(ALL_QUERIES) || !areSubscriptionsSupported()) {
-              onQueryPurchasesFinished(aggregateBillingResults(billingResults), purchases, promise);
-            }
+          public void onComplete(BillingResult billingResult, List<Purchase> purchases) {
+            onQueryPurchasesFinished(billingResult, purchases, promise);
           }
         });
 
-        if (areSubscriptionsSupported()) {
-          mBillingClient.queryPurchasesAsync(SkuType.SUBS, new PurchasesResponseListener() {
+        for (String skuType : skuTypes) {
+          mBillingClient.queryPurchasesAsync(skuType, new PurchasesResponseListener() {
             @Override
-            public void onQueryPurchasesResponse(@NonNull BillingResult billingResult, @NonNull List<Purchase> subscriptionPurchases) {
-              if (billingResult.getResponseCode() == BillingResponseCode.OK) {
-                purchases.addAll(subscriptionPurchases);
-              }
-              billingResults.add(billingResult);
-              completedQueries.add(SkuType.SUBS);
-              if (completedQueries.containsAll(ALL_QUERIES)) {
-                onQueryPurchasesFinished(aggregateBillingResults(billingResults), purchases, promise);
-              }
+            public void onQueryPurchasesResponse(@NonNull final BillingResult billingResult, @NonNull final List<Purchase> purchases) {
+              runOnBillingThread(new Runnable() {
+                @Override
+                public void run() {
+                  fanIn.onQueryFinished(billingResult, purchases);
+                }
+              });
             }
           });
         }
       }
     };
 
-    executeServiceRequest(queryToExecute);
+    scheduleServiceRequest(RequestScheduler.Priority.BACKGROUND, null, queryToExecute, withStaleOwnedPurchases(promise),
+      cancellation);
   }
 
-  @NonNull
-  private BillingResult aggregateBillingResults(@NonNull Set<BillingResult> billingResults) {
-    for (BillingResult result: billingResults) {
-      if (result.getResponseCode() != BillingResponseCode.OK) {
-        return result;
+  /**
+   * Resolves the promise with the last known purchases instead of rejecting it, if there are any
+   */
+  private Promise withStaleOwnedPurchases(final Promise promise) {
+    return new Promise() {
+      @Override
+      public void resolve(Object value) {
+        promise.resolve(value);
       }
+
+      @Override
+      public void reject(String code, String message, Throwable e) {
+        Bundle staleResponse = staleOwnedPurchases();
+        if (staleResponse != null) {
+          promise.resolve(staleResponse);
+        } else {
+          promise.reject(code, message, e);
+        }
+      }
+    };
+  }
+
+  @Nullable
+  private Bundle staleOwnedPurchases() {
+    OwnedPurchasesSnapshot.Snapshot snapshot = mOwnedPurchasesSnapshot.get();
+    if (snapshot == null) {
+      return null;
     }
-    return billingResults.iterator().next();
+    BillingResult billingResult = BillingResult.newBuilder().setResponseCode(BillingResponseCode.OK).build();
+    Bundle response = formatResponse(billingResult, mBundleSerializer.purchasesToBundles(snapshot.purchases));
+    return BillingFormatter.markStale(response, snapshot.fetchedAt);
   }
 
   /**
    * Does the same thing as queryPurchases except makes a network request (instead of using Google Play cache)
    * and returns all records for every SKU of a given type, even if they're expired/consumed
    */
-  public void queryPurchaseHistoryAsync(final Promise promise) {
-    Runnable queryToExecute = new Runnable() {
+  public void queryPurchaseHistoryAsync(final Promise promise, final Cancellation cancellation) {
+    runOnBillingThread(new Runnable() {
       @Override
       public void run() {
-        final ArrayList<Bundle> bundles = new ArrayList<>();
+        mSingleFlight.execute(QUERY_PURCHASE_HISTORY_REQUEST, promise, cancellation, new SingleFlight.Request() {
+          @Override
+          public void run(Promise sharedPromise, Cancellation sharedCancellation) {
+            queryPurchaseHistoryNow(sharedPromise, sharedCancellation);
+          }
+        });
+      }
+    });
+  }
 
-        // Query in app product history
-        mBillingClient.queryPurchaseHistoryAsync(SkuType.INAPP,
-          new PurchaseHistoryResponseListener() {
-            @Override
-            public void onPurchaseHistoryResponse(final BillingResult inAppBillingResult,
-                                                  final List<PurchaseHistoryRecord> inAppList) {
+  private void queryPurchaseHistoryNow(final Promise promise, Cancellation cancellation) {
+    scheduleServiceRequest(RequestScheduler.Priority.BACKGROUND, null, new ServiceCall() {
+      @Override
+      public void run(final Promise promise) {
+        fetchPurchaseHistory(new QueryFanIn.Callback<PurchaseHistoryRecord>() {
+          @Override
+          public void onComplete(BillingResult billingResult, List<PurchaseHistoryRecord> records) {
+            promise.resolve(formatResponse(billingResult, mBundleSerializer.purchaseHistoryToBundles(records)));
+          }
+        });
+      }
+    }, promise, cancellation);
+  }
 
-              if (inAppBillingResult.getResponseCode() == BillingResponseCode.OK && inAppList != null) {
-                for (PurchaseHistoryRecord purchaseHistory : inAppList) {
-                  bundles.add(purchaseHistoryToBundle(purchaseHistory));
-                }
+  /**
+   * Page through the purchase history, a null cursor queries a new snapshot of it. Only the records of
+   * the requested page are converted and sent over the bridge. First pages requested while the history
+   * is being queried share that query, each of them starting its own snapshot of the outcome
+   */
+  public void getPurchaseHistoryPage(@Nullable final String cursor, final int pageSize, final Promise promise,
+                                     final Cancellation cancellation) {
+    runOnBillingThread(new Runnable() {
+      @Override
+      public void run() {
+        if (cursor == null || cursor.isEmpty()) {
+          mSingleFlight.execute(PURCHASE_HISTORY_PAGE_REQUEST, firstPagePromise(pageSize, promise), cancellation,
+            new SingleFlight.Request() {
+              @Override
+              public void run(Promise sharedPromise, Cancellation sharedCancellation) {
+                fetchPurchaseHistoryPage(sharedPromise, sharedCancellation);
               }
+            });
+          return;
+        }
 
-              // Query subscription history
-              mBillingClient.queryPurchaseHistoryAsync(SkuType.SUBS, new PurchaseHistoryResponseListener() {
-                @Override
-                public void onPurchaseHistoryResponse(BillingResult subsBillingResult, List<PurchaseHistoryRecord> subsList) {
-
-                  if (subsBillingResult.getResponseCode() == BillingResponseCode.OK && subsList != null) {
-                    for (PurchaseHistoryRecord purchaseHistory : subsList) {
-                      bundles.add(purchaseHistoryToBundle(purchaseHistory));
-                    }
-                  }
-
-                  Bundle response = formatResponse(inAppBillingResult, bundles);
-                  promise.resolve(response);
-                }
-              });
-            }
-          });
+        PurchaseHistoryPager.Page page = mPurchaseHistoryPager.next(cursor, pageSize);
+        if (page == null) {
+          promise.reject("E_INVALID_CURSOR", "Purchase history cursor is invalid or has expired, start again without a cursor");
+          return;
+        }
+        BillingResult billingResult = BillingResult.newBuilder().setResponseCode(BillingResponseCode.OK).build();
+        promise.resolve(pageToBundle(billingResult, page));
       }
-    };
+    });
+  }
 
-    executeServiceRequest(queryToExecute);
+  private void fetchPurchaseHistoryPage(Promise promise, Cancellation cancellation) {
+    scheduleServiceRequest(RequestScheduler.Priority.BACKGROUND, PURCHASE_HISTORY_PAGE_REQUEST, new ServiceCall() {
+      @Override
+      public void run(final Promise promise) {
+        fetchPurchaseHistory(new QueryFanIn.Callback<PurchaseHistoryRecord>() {
+          @Override
+          public void onComplete(BillingResult billingResult, List<PurchaseHistoryRecord> records) {
+            promise.resolve(new FetchedHistory(billingResult, records));
+          }
+        });
+      }
+    }, promise, cancellation);
   }
 
   /**
-   * Format the result of a Purchase or Sku Details query depending on the result code
+   * Turns the shared FetchedHistory into the first page of one caller, settled on the billing thread
    */
-  public static Bundle formatResponse(BillingResult billingResult, ArrayList<? extends Parcelable> results) {
-    Bundle response = new Bundle();
-    int responseCode = billingResult.getResponseCode();
-    if (responseCode == BillingResponseCode.OK) {
-      response.putInt("responseCode", OK);
-      response.putParcelableArrayList("results", results != null ? results : new ArrayList<Parcelable>());
-    } else if (responseCode == BillingResponseCode.USER_CANCELED) {
-      response.putInt("responseCode", USER_CANCELED);
-    } else {
-      response.putInt("responseCode", ERROR);
-      response.putInt("errorCode", errorCodeNativeToJS(responseCode));
-    }
-    return response;
+  private Promise firstPagePromise(final int pageSize, final Promise promise) {
+    return new Promise() {
+      @Override
+      public void resolve(Object value) {
+        FetchedHistory history = (FetchedHistory) value;
+        if (history.billingResult.getResponseCode() != BillingResponseCode.OK) {
+          promise.resolve(formatResponse(history.billingResult, new ArrayList<Bundle>()));
+          return;
+        }
+        promise.resolve(pageToBundle(history.billingResult, mPurchaseHistoryPager.start(history.records, pageSize)));
+      }
+
+      @Override
+      public void reject(String code, String message, Throwable e) {
+        promise.reject(code, message, e);
+      }
+    };
   }
 
-  /**
-   * Convert native error code to match corresponding TS enum
-   */
-  private static int errorCodeNativeToJS(int responseCode) {
-    switch (responseCode) {
-      case BillingResponseCode.ERROR:
-        return 0;
-      case BillingResponseCode.FEATURE_NOT_SUPPORTED:
-        return 1;
-      case BillingResponseCode.SERVICE_DISCONNECTED:
-        return 2;
-      case BillingResponseCode.SERVICE_UNAVAILABLE:
-        return 3;
-      case BillingResponseCode.SERVICE_TIMEOUT:
-        return 4;
-      case BillingResponseCode.BILLING_UNAVAILABLE:
-        return 5;
-      case BillingResponseCode.ITEM_UNAVAILABLE:
-        return 6;
-      case BillingResponseCode.DEVELOPER_ERROR:
-        return 7;
-      case BillingResponseCode.ITEM_ALREADY_OWNED:
-        return 8;
-      case BillingResponseCode.ITEM_NOT_OWNED:
-        return 9;
-    }
-    return 0;
+  private Bundle pageToBundle(BillingResult billingResult, PurchaseHistoryPager.Page page) {
+    Bundle response = formatResponse(billingResult, mBundleSerializer.purchaseHistoryToBundles(page.records));
+    response.putString("nextCursor", page.nextCursor);
+    response.putInt("totalCount", page.total);
+    return response;
   }
 
   /**
-   * Convert native purchase state to match corresponding TS enum
+   * Query in app product and subscription history at the same time, the service is connected at this
+   * point. The callback is called on the billing thread
    */
-  private static int purchaseStateNativeToJS(int purchaseState) {
-    switch (purchaseState) {
-      case Purchase.PurchaseState.PENDING:
-        return 0;
-      case Purchase.PurchaseState.PURCHASED:
-        return 1;
-      case Purchase.PurchaseState.UNSPECIFIED_STATE:
-        return 2;
+  private void fetchPurchaseHistory(final QueryFanIn.Callback<PurchaseHistoryRecord> callback) {
+    final QueryFanIn<PurchaseHistoryRecord> fanIn = new QueryFanIn<>(ALL_SKU_TYPES.size(), callback);
+    for (String skuType : ALL_SKU_TYPES) {
+      mBillingClient.queryPurchaseHistoryAsync(skuType, new PurchaseHistoryResponseListener() {
+        @Override
+        public void onPurchaseHistoryResponse(@NonNull final BillingResult billingResult, @Nullable final List<PurchaseHistoryRecord> records) {
+          runOnBillingThread(new Runnable() {
+            @Override
+            public void run() {
+              fanIn.onQueryFinished(billingResult, records);
+            }
+          });
+        }
+      });
     }
-    return 0;
-
   }
 
-  private static Bundle skuToBundle(SkuDetails skuDetails) {
-    Bundle bundle = new Bundle();
-
-    String subscriptionPeriod =
-      skuDetails.getType().equals(SkuType.SUBS) ?
-        skuDetails.getSubscriptionPeriod() :
-        INAPP_SUB_PERIOD;
-
-    int type = skuDetails.getType().equals(SkuType.INAPP) ? 0 : 1;
-
-    bundle.putString("description", skuDetails.getDescription());
-    bundle.putString("price", skuDetails.getPrice());
-    bundle.putLong("priceAmountMicros", skuDetails.getPriceAmountMicros());
-    bundle.putString("priceCurrencyCode", skuDetails.getPriceCurrencyCode());
-    bundle.putString("productId", skuDetails.getSku());
-    bundle.putString("title", skuDetails.getTitle());
-    bundle.putInt("type", type);
-    bundle.putString("subscriptionPeriod", subscriptionPeriod);
-
-    return bundle;
+  /**
+   * Format the result of a Purchase or Sku Details query depending on the result code
+   */
+  public static Bundle formatResponse(BillingResult billingResult, ArrayList<? extends Parcelable> results) {
+    return BillingFormatter.formatResponse(billingResult, results);
   }
 
   public static Bundle purchaseToBundle(Purchase purchase) {
-    Bundle bundle = new Bundle();
-
-    bundle.putBoolean("acknowledged", purchase.isAcknowledged());
-    bundle.putString("orderId", purchase.getOrderId());
-    bundle.putString("productId", purchase.getSkus().get(0));
-    bundle.putInt("purchaseState", purchaseStateNativeToJS(purchase.getPurchaseState()));
-    bundle.putLong("purchaseTime", purchase.getPurchaseTime());
-    bundle.putString("packageName", purchase.getPackageName());
-    bundle.putString("purchaseToken", purchase.getPurchaseToken());
-
-    return bundle;
-  }
-
-  private static Bundle purchaseHistoryToBundle(PurchaseHistoryRecord purchaseRecord) {
-    Bundle bundle = new Bundle();
-
-    // PurchaseHistoryRecord is a subset of Purchase
-    bundle.putString("productId", purchaseRecord.getSkus().get(0));
-    bundle.putLong("purchaseTime", purchaseRecord.getPurchaseTime());
-    bundle.putString("purchaseToken", purchaseRecord.getPurchaseToken());
-
-    return bundle;
+    return BillingFormatter.purchaseToBundle(purchase);
   }
 
   /**
@@ -506,97 +1042,311 @@ public class BillingManager implements PurchasesUpdatedListener {
       return;
     }
 
-    ArrayList<Bundle> results = new ArrayList<>();
-    for (Purchase purchase : purchasesList) {
-      results.add(purchaseToBundle(purchase));
-    }
+    ArrayList<Bundle> results = mBundleSerializer.purchasesToBundles(purchasesList);
+    mOwnedPurchasesSnapshot.save(purchasesList);
 
     // Update purchases inventory with new list of purchases
     mPurchases.clear();
-    onPurchasesUpdated(billingResult, purchasesList);
+    dispatchPurchasesUpdated(billingResult, purchasesList, true, false);
 
     final Bundle response = formatResponse(billingResult, results);
     promise.resolve(response);
   }
 
-  public void querySkuDetailsAsync(final List<String> skuList,
-                                   final SkuDetailsResponseListener listener) {
-    // Creating a runnable from the request to use it inside our connection retry policy below
-    Runnable queryRequest = new Runnable() {
+  /**
+   * Query details of the given products. Concurrent queries share the pending Play Store calls, see
+   * ProductDetailsBatcher. The listener is called on the billing thread, unless the query is cancelled
+   */
+  public void queryProductDetailsAsync(final List<String> productIds, Cancellation cancellation,
+                                       final ProductDetailsResponseListener listener) {
+    mProductDetailsBatcher.query(productIds, cancellation, listener);
+  }
+
+  /**
+   * Query in app products and subscriptions, one call per type since Play Store refuses queries that
+   * mix them. Products that were fetched before are only queried with their type, the type of the
+   * others isn't known so they are queried with both
+   */
+  private void queryProductDetails(final List<String> productIds, final ProductDetailsResponseListener listener) {
+    boolean subscriptionsSupported = areSubscriptionsSupported();
+    Map<String, List<BillingBackend.ProductQuery>> productsByType = new LinkedHashMap<>();
+    for (String productId : productIds) {
+      ProductDetailsCache.Entry cached = mProductDetailsCache.get(productId);
+      if (cached != null) {
+        addProductQuery(productsByType, productId, cached.productType);
+        continue;
+      }
+      addProductQuery(productsByType, productId, ProductType.INAPP);
+      if (subscriptionsSupported) {
+        addProductQuery(productsByType, productId, ProductType.SUBS);
+      }
+    }
+    if (productsByType.isEmpty()) {
+      listener.onProductDetailsResponse(BillingResult.newBuilder().setResponseCode(BillingResponseCode.OK).build(),
+        Collections.<ProductDetails>emptyList());
+      return;
+    }
+
+    final QueryFanIn<ProductDetails> fanIn = new QueryFanIn<>(productsByType.size(), new QueryFanIn.Callback<ProductDetails>() {
       @Override
-      public void run() {
-        // Query in app product details
-        SkuDetailsParams.Builder params = SkuDetailsParams.newBuilder();
-        params.setSkusList(skuList).setType(SkuType.INAPP);
-        mBillingClient.querySkuDetailsAsync(params.build(),
-          new SkuDetailsResponseListener() {
+      public void onComplete(BillingResult billingResult, List<ProductDetails> productDetails) {
+        listener.onProductDetailsResponse(billingResult, productDetails);
+      }
+    });
+    for (List<BillingBackend.ProductQuery> sameType : productsByType.values()) {
+      mBillingClient.queryProductDetailsAsync(sameType, new ProductDetailsResponseListener() {
+        @Override
+        public void onProductDetailsResponse(@NonNull final BillingResult billingResult, @NonNull final List<ProductDetails> productDetails) {
+          runOnBillingThread(new Runnable() {
             @Override
-            public void onSkuDetailsResponse(BillingResult inAppResult,
-                                             final List<SkuDetails> skuDetails) {
-              // Query subscription details
-              SkuDetailsParams.Builder subs = SkuDetailsParams.newBuilder();
-              subs.setSkusList(skuList).setType(SkuType.SUBS);
-              mBillingClient.querySkuDetailsAsync(subs.build(), new SkuDetailsResponseListener() {
-                @Override
-                public void onSkuDetailsResponse(BillingResult billingResult, List<SkuDetails> subscriptionDetails) {
-                  if (skuDetails != null && subscriptionDetails != null) {
-                    skuDetails.addAll(subscriptionDetails);
-                  }
-                  listener.onSkuDetailsResponse(billingResult, skuDetails);
-                }
-              });
+            public void run() {
+              fanIn.onQueryFinished(billingResult, productDetails);
             }
           });
-      }
-    };
+        }
+      });
+    }
+  }
 
-    executeServiceRequest(queryRequest);
+  private static void addProductQuery(Map<String, List<BillingBackend.ProductQuery>> productsByType, String productId,
+                                      String productType) {
+    List<BillingBackend.ProductQuery> sameType = productsByType.get(productType);
+    if (sameType == null) {
+      sameType = new ArrayList<>();
+      productsByType.put(productType, sameType);
+    }
+    sameType.add(new BillingBackend.ProductQuery(productId, productType));
   }
 
-  public void queryPurchasableItems(List<String> itemList, final Promise promise) {
-    querySkuDetailsAsync(itemList,
-      new SkuDetailsResponseListener() {
-        @Override
-        public void onSkuDetailsResponse(BillingResult billingResult, List<SkuDetails> skuDetailsList) {
-          ArrayList<Bundle> results = new ArrayList<>();
-          if (skuDetailsList != null) {
-            for (SkuDetails skuDetails : skuDetailsList) {
-              mSkuDetailsMap.put(skuDetails.getSku(), skuDetails);
-              results.add(skuToBundle(skuDetails));
+  /**
+   * Resolves the details of the given products from the ProductDetails cache when possible. Only
+   * missing products block on a Play Store query, stale ones are served from the cache and refreshed
+   * in the background
+   */
+  public void queryPurchasableItems(final List<String> itemList, final Promise promise, final Cancellation cancellation) {
+    runOnBillingThread(new Runnable() {
+      @Override
+      public void run() {
+        final List<String> missingSkus = new ArrayList<>();
+        final List<String> staleSkus = new ArrayList<>();
+        for (String sku : itemList) {
+          ProductDetailsCache.Entry cached = mProductDetailsCache.get(sku);
+          if (cached == null) {
+            missingSkus.add(sku);
+          } else if (mProductDetailsCache.isStale(cached)) {
+            staleSkus.add(sku);
+          }
+        }
+
+        if (missingSkus.isEmpty()) {
+          promise.resolve(cachedProductsResponse(itemList, false));
+          if (!staleSkus.isEmpty()) {
+            refreshProductDetails(staleSkus);
+          }
+          return;
+        }
+
+        // Stale SKUs ride along with the missing ones so they are refreshed in the same round trip
+        List<String> skusToQuery = new ArrayList<>(missingSkus);
+        skusToQuery.addAll(staleSkus);
+        queryProductDetailsAsync(skusToQuery, cancellation,
+          new ProductDetailsResponseListener() {
+            @Override
+            public void onProductDetailsResponse(@NonNull BillingResult billingResult, @NonNull List<ProductDetails> productDetailsList) {
+              cacheProductDetails(productDetailsList);
+              boolean failed = billingResult.getResponseCode() != BillingResponseCode.OK;
+              if (failed && !hasCachedProducts(itemList)) {
+                promise.resolve(formatResponse(billingResult, new ArrayList<Bundle>()));
+                return;
+              }
+              // When the query failed, whatever was fetched earlier beats an empty paywall
+              promise.resolve(cachedProductsResponse(itemList, failed));
             }
           }
-          Bundle response = formatResponse(billingResult, results);
-          promise.resolve(response);
+        );
+      }
+    });
+  }
+
+  private void refreshProductDetails(List<String> skuList) {
+    queryProductDetailsAsync(skuList, Cancellation.NONE,
+      new ProductDetailsResponseListener() {
+        @Override
+        public void onProductDetailsResponse(@NonNull BillingResult billingResult, @NonNull List<ProductDetails> productDetailsList) {
+          cacheProductDetails(productDetailsList);
         }
       }
     );
   }
 
-  private void executeServiceRequest(Runnable runnable) {
-    if (mIsServiceConnected) {
-      runnable.run();
-    } else {
-      // If billing service was disconnected, we try to reconnect 1 time.
-      startServiceConnection(runnable);
+  private void cacheProductDetails(List<ProductDetails> productDetailsList) {
+    List<String> productIds = new ArrayList<>(productDetailsList.size());
+    for (ProductDetails productDetails : productDetailsList) {
+      mProductDetailsCache.put(productDetails);
+      productIds.add(productDetails.getProductId());
     }
+    mEntitlementIndex.updateBillingPeriods(productIds);
+  }
+
+  private boolean hasCachedProducts(List<String> skuList) {
+    for (String sku : skuList) {
+      if (mProductDetailsCache.get(sku) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The cached details of the given products. The response is marked as stale, with the time the
+   * oldest of them was fetched, when asked to or when any of them is past its TTL
+   */
+  private Bundle cachedProductsResponse(List<String> skuList, boolean stale) {
+    ArrayList<Bundle> results = new ArrayList<>(skuList.size());
+    long oldestFetchedAt = Long.MAX_VALUE;
+    for (String sku : skuList) {
+      ProductDetailsCache.Entry cached = mProductDetailsCache.get(sku);
+      if (cached != null) {
+        results.add(cached.toBundle());
+        oldestFetchedAt = Math.min(oldestFetchedAt, cached.fetchedAt);
+        stale |= mProductDetailsCache.isStale(cached);
+      }
+    }
+    BillingResult billingResult = BillingResult.newBuilder().setResponseCode(BillingResponseCode.OK).build();
+    Bundle response = formatResponse(billingResult, results);
+    return stale && !results.isEmpty() ? BillingFormatter.markStale(response, oldestFetchedAt) : response;
+  }
+
+  /**
+   * Hands the work over to the billing executor, the only thread the plain fields of this class are
+   * used on
+   */
+  private void runOnBillingThread(Runnable runnable) {
+    mExecutor.execute(runnable);
+  }
+
+  /**
+   * Runs the request once the billing service is connected, or rejects the promise if it can't be.
+   * Requests that are cancelled while they wait for the connection are dropped. Only for requests
+   * that don't call Play Store, the others go through scheduleServiceRequest()
+   */
+  private void executeServiceRequest(final Runnable runnable, final Promise promise, final Cancellation cancellation) {
+    final BillingConnection.ServiceRequest request = new BillingConnection.ServiceRequest() {
+      @Override
+      public void run() {
+        if (cancellation.isCancelled()) {
+          return;
+        }
+        runnable.run();
+      }
+
+      @Override
+      public void onServiceUnavailable(BillingResult billingResult) {
+        promise.reject("E_SERVICE_UNAVAILABLE", "Couldn't connect to the billing service: " + billingResult.getDebugMessage());
+      }
+    };
+    mConnection.execute(request);
+    cancellation.addListener(new Runnable() {
+      @Override
+      public void run() {
+        mConnection.cancel(request);
+      }
+    });
+  }
+
+  /**
+   * Runs the call once the billing service is connected and a slot of the given priority is free, see
+   * RequestScheduler. The slot is freed once the call settles its promise. A call with a key supersedes
+   * the queued background call with the same key. Cancelled calls are dropped, or give up their slot
+   * if they are running already
+   */
+  private void scheduleServiceRequest(RequestScheduler.Priority priority, @Nullable final String key,
+                                      final ServiceCall call, final Promise promise, final Cancellation cancellation) {
+    final RequestScheduler.KeyedRequest request = new RequestScheduler.KeyedRequest() {
+      @Override
+      public String getKey() {
+        return key;
+      }
+
+      @Override
+      public void run(final Runnable done) {
+        if (cancellation.isCancelled()) {
+          done.run();
+          return;
+        }
+        call.run(new Promise() {
+          @Override
+          public void resolve(Object value) {
+            done.run();
+            promise.resolve(value);
+          }
+
+          @Override
+          public void reject(String code, String message, Throwable e) {
+            done.run();
+            promise.reject(code, message, e);
+          }
+        });
+      }
+
+      @Override
+      public void onServiceUnavailable(BillingResult billingResult) {
+        promise.reject("E_SERVICE_UNAVAILABLE", "Couldn't connect to the billing service: " + billingResult.getDebugMessage());
+      }
+
+      @Override
+      public void onSuperseded() {
+        promise.reject("E_SUPERSEDED", "A newer " + key + " request replaced this one before it was sent");
+      }
+    };
+    mScheduler.execute(priority, request);
+    cancellation.addListener(new Runnable() {
+      @Override
+      public void run() {
+        mScheduler.cancel(request);
+      }
+    });
   }
 
   /**
    * Checks if subscriptions are supported for current client
    */
   public boolean areSubscriptionsSupported() {
-    BillingResult billingResult = mBillingClient.isFeatureSupported(FeatureType.SUBSCRIPTIONS);
-    return billingResult.getResponseCode() == BillingResponseCode.OK;
+    return mFeatureSupport.isSupported(FeatureSupport.SUBSCRIPTIONS);
+  }
+
+  /**
+   * Resolves with the features the connected Play Store supports, see FeatureSupport
+   */
+  public void getSupportedFeatures(final Promise promise, final Cancellation cancellation) {
+    runOnBillingThread(new Runnable() {
+      @Override
+      public void run() {
+        executeServiceRequest(new Runnable() {
+          @Override
+          public void run() {
+            promise.resolve(mFeatureSupport.toBundle());
+          }
+        }, promise, cancellation);
+      }
+    });
   }
 
   /**
    * Clear the resources
    */
   public void destroy() {
-    if (mBillingClient != null && mBillingClient.isReady()) {
-      mBillingClient.endConnection();
-      mBillingClient = null;
-    }
+    runOnBillingThread(new Runnable() {
+      @Override
+      public void run() {
+        if (mBillingClient != null) {
+          mPurchaseEventCoalescer.cancel();
+          mScheduler.close();
+          mConnection.close();
+          mBillingClient = null;
+        }
+      }
+    });
   }
 
 }
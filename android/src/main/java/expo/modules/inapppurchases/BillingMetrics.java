@@ -0,0 +1,220 @@
+package expo.modules.inapppurchases;
+
+import android.os.Bundle;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms and response code counters for every billing operation. Recording is lock-free
+ * and allocation-free, so it can stay on the hot paths; snapshots are taken without stopping the
+ * writers and may be off by the operations that finish while one is being taken
+ */
+public class BillingMetrics {
+  public enum Operation {
+    START_CONNECTION("startConnection"),
+    QUERY_PRODUCT_DETAILS("queryProductDetailsAsync"),
+    QUERY_PURCHASES("queryPurchasesAsync"),
+    QUERY_PURCHASE_HISTORY("queryPurchaseHistoryAsync"),
+    ACKNOWLEDGE_PURCHASE("acknowledgePurchase"),
+    CONSUME("consumeAsync"),
+    LAUNCH_BILLING_FLOW("launchBillingFlow");
+
+    final String jsName;
+
+    Operation(String jsName) {
+      this.jsName = jsName;
+    }
+  }
+
+  // BillingResponseCode values range from -3 (SERVICE_TIMEOUT) to 12 (NETWORK_ERROR)
+  private static final int MIN_RESPONSE_CODE = -3;
+  private static final int MAX_RESPONSE_CODE = 12;
+
+  private final OperationMetrics[] mOperations = new OperationMetrics[Operation.values().length];
+  private final AtomicLong mSince = new AtomicLong(System.currentTimeMillis());
+
+  public BillingMetrics() {
+    for (int i = 0; i < mOperations.length; i++) {
+      mOperations[i] = new OperationMetrics();
+    }
+  }
+
+  /**
+   * Timestamp to pass to record() once the operation finishes
+   */
+  public static long start() {
+    return System.nanoTime();
+  }
+
+  public void record(Operation operation, long startedAt, int responseCode) {
+    mOperations[operation.ordinal()].record(System.nanoTime() - startedAt, responseCode);
+  }
+
+  /**
+   * Snapshot of all the operations that were recorded at least once, optionally starting over
+   */
+  public Bundle toBundle(boolean reset) {
+    long now = System.currentTimeMillis();
+    Bundle operations = new Bundle();
+    for (Operation operation : Operation.values()) {
+      OperationMetrics metrics = mOperations[operation.ordinal()];
+      if (metrics.mHistogram.getCount() > 0) {
+        operations.putBundle(operation.jsName, metrics.toBundle());
+      }
+      if (reset) {
+        metrics.reset();
+      }
+    }
+
+    Bundle bundle = new Bundle();
+    bundle.putDouble("since", reset ? mSince.getAndSet(now) : mSince.get());
+    bundle.putDouble("collectedAt", now);
+    bundle.putBundle("operations", operations);
+    return bundle;
+  }
+
+  private static class OperationMetrics {
+    final LatencyHistogram mHistogram = new LatencyHistogram();
+    final AtomicLongArray mResponseCodes = new AtomicLongArray(MAX_RESPONSE_CODE - MIN_RESPONSE_CODE + 1);
+    final AtomicLong mOtherResponseCodes = new AtomicLong();
+
+    void record(long durationNanos, int responseCode) {
+      mHistogram.record(durationNanos / 1000);
+      if (responseCode >= MIN_RESPONSE_CODE && responseCode <= MAX_RESPONSE_CODE) {
+        mResponseCodes.incrementAndGet(responseCode - MIN_RESPONSE_CODE);
+      } else {
+        mOtherResponseCodes.incrementAndGet();
+      }
+    }
+
+    void reset() {
+      mHistogram.reset();
+      for (int i = 0; i < mResponseCodes.length(); i++) {
+        mResponseCodes.set(i, 0);
+      }
+      mOtherResponseCodes.set(0);
+    }
+
+    Bundle toBundle() {
+      Bundle responseCodes = new Bundle();
+      long errorCount = mOtherResponseCodes.get();
+      for (int i = 0; i < mResponseCodes.length(); i++) {
+        long count = mResponseCodes.get(i);
+        if (count == 0) {
+          continue;
+        }
+        int responseCode = i + MIN_RESPONSE_CODE;
+        responseCodes.putDouble(String.valueOf(responseCode), count);
+        if (responseCode != 0) {
+          errorCount += count;
+        }
+      }
+      if (mOtherResponseCodes.get() > 0) {
+        responseCodes.putDouble("other", mOtherResponseCodes.get());
+      }
+
+      Bundle bundle = mHistogram.toBundle();
+      bundle.putDouble("errorCount", errorCount);
+      bundle.putBundle("responseCodes", responseCodes);
+      return bundle;
+    }
+  }
+
+  /**
+   * HDR-style histogram of microsecond latencies: values below SUB_BUCKET_COUNT are exact and above
+   * that every power of two is split into SUB_BUCKET_COUNT / 2 linear buckets, which keeps the
+   * relative error of any percentile under 1 / 32 (~3%) with 1024 counters
+   */
+  static class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    // About 19 hours, anything slower is recorded as this
+    private static final long MAX_VALUE = (1L << 36) - 1;
+    private static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    void record(long value) {
+      value = Math.max(0, Math.min(value, MAX_VALUE));
+      mCounts.incrementAndGet(indexOf(value));
+      mCount.incrementAndGet();
+      mSum.addAndGet(value);
+      long max = mMax.get();
+      while (value > max && !mMax.compareAndSet(max, value)) {
+        max = mMax.get();
+      }
+    }
+
+    long getCount() {
+      return mCount.get();
+    }
+
+    void reset() {
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        mCounts.set(i, 0);
+      }
+      mCount.set(0);
+      mSum.set(0);
+      mMax.set(0);
+    }
+
+    /**
+     * Highest value that is equivalent to the given percentile, i.e. the upper end of its bucket
+     */
+    long getValueAtPercentile(double percentile) {
+      long[] counts = new long[BUCKET_COUNT];
+      long total = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        counts[i] = mCounts.get(i);
+        total += counts[i];
+      }
+      if (total == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+      long seen = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Math.min(highestEquivalentValue(i), mMax.get());
+        }
+      }
+      return mMax.get();
+    }
+
+    Bundle toBundle() {
+      long count = mCount.get();
+      Bundle bundle = new Bundle();
+      bundle.putDouble("count", count);
+      bundle.putDouble("meanMs", count > 0 ? mSum.get() / 1000.0 / count : 0);
+      bundle.putDouble("maxMs", mMax.get() / 1000.0);
+      bundle.putDouble("p50Ms", getValueAtPercentile(50) / 1000.0);
+      bundle.putDouble("p90Ms", getValueAtPercentile(90) / 1000.0);
+      bundle.putDouble("p99Ms", getValueAtPercentile(99) / 1000.0);
+      bundle.putDouble("p999Ms", getValueAtPercentile(99.9) / 1000.0);
+      return bundle;
+    }
+
+    static int indexOf(long value) {
+      if (value < SUB_BUCKET_COUNT) {
+        return (int) value;
+      }
+      int bucket = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+      return bucket * SUB_BUCKET_HALF_COUNT + (int) (value >>> bucket);
+    }
+
+    static long highestEquivalentValue(int index) {
+      if (index < SUB_BUCKET_COUNT) {
+        return index;
+      }
+      int bucket = index / SUB_BUCKET_HALF_COUNT - 1;
+      long lowest = (long) (index % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT) << bucket;
+      return lowest + (1L << bucket) - 1;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package expo.modules.inapppurchases;
+
+import android.os.Bundle;
+
+import com.android.billingclient.api.Purchase;
+import com.android.billingclient.api.PurchaseHistoryRecord;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Converts purchases to the Bundles sent over the bridge and memoizes the results, so the same
+ * purchase isn't converted again on every query and event. A purchase is keyed by its original JSON
+ * and signature, which every field of its Bundle and the verification outcome are derived from, so
+ * any change Play Store reports converts it again. Purchases and history records are cached apart.
+ * Returned Bundles are shared and must not be modified
+ */
+public class BundleSerializer {
+  public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+  private final int mMaxEntries;
+  private final LinkedHashMap<Key, Bundle> mBundles;
+  private final LinkedHashMap<Key, Bundle> mHistoryBundles;
+  @Nullable
+  private PurchaseVerifier mVerifier;
+
+  public BundleSerializer() {
+    this(DEFAULT_MAX_ENTRIES);
+  }
+
+  public BundleSerializer(int maxEntries) {
+    mMaxEntries = maxEntries;
+    mBundles = newCache();
+    mHistoryBundles = newCache();
+  }
+
+  private LinkedHashMap<Key, Bundle> newCache() {
+    return new LinkedHashMap<Key, Bundle>(64, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Bundle> eldest) {
+        return size() > mMaxEntries;
+      }
+    };
+  }
+
+  /**
+   * Adds the outcome of the verifier to every converted purchase as `verified`, null turns the
+   * verification off
+   */
+  public synchronized void setVerifier(@Nullable PurchaseVerifier verifier) {
+    mVerifier = verifier;
+    // Bundles converted so far have the flag of the previous verifier
+    mBundles.clear();
+    mHistoryBundles.clear();
+  }
+
+  public synchronized Bundle purchaseToBundle(Purchase purchase) {
+    Key key = new Key(purchase.getOriginalJson(), purchase.getSignature());
+    Bundle bundle = mBundles.get(key);
+    if (bundle == null) {
+      bundle = BillingFormatter.purchaseToBundle(purchase);
+      if (mVerifier != null) {
+        bundle.putBoolean("verified", mVerifier.verify(purchase.getPurchaseToken(), purchase.getOriginalJson(), purchase.getSignature()));
+      }
+      mBundles.put(key, bundle);
+    }
+    return bundle;
+  }
+
+  public synchronized Bundle purchaseHistoryToBundle(PurchaseHistoryRecord record) {
+    Key key = new Key(record.getOriginalJson(), record.getSignature());
+    Bundle bundle = mHistoryBundles.get(key);
+    if (bundle == null) {
+      bundle = BillingFormatter.purchaseHistoryToBundle(record);
+      if (mVerifier != null) {
+        bundle.putBoolean("verified", mVerifier.verify(record.getPurchaseToken(), record.getOriginalJson(), record.getSignature()));
+      }
+      mHistoryBundles.put(key, bundle);
+    }
+    return bundle;
+  }
+
+  public ArrayList<Bundle> purchasesToBundles(List<Purchase> purchases) {
+    ArrayList<Bundle> bundles = new ArrayList<>(purchases.size());
+    for (Purchase purchase : purchases) {
+      bundles.add(purchaseToBundle(purchase));
+    }
+    return bundles;
+  }
+
+  public ArrayList<Bundle> purchaseHistoryToBundles(List<PurchaseHistoryRecord> records) {
+    ArrayList<Bundle> bundles = new ArrayList<>(records.size());
+    for (PurchaseHistoryRecord record : records) {
+      bundles.add(purchaseHistoryToBundle(record));
+    }
+    return bundles;
+  }
+
+  private static final class Key {
+    private final String mOriginalJson;
+    private final String mSignature;
+
+    Key(String originalJson, String signature) {
+      mOriginalJson = originalJson;
+      mSignature = signature;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return mOriginalJson.equals(key.mOriginalJson) && mSignature.equals(key.mSignature);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * mOriginalJson.hashCode() + mSignature.hashCode();
+    }
+  }
+}
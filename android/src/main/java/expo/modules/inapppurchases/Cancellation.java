@@ -0,0 +1,53 @@
+package expo.modules.inapppurchases;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lets the caller of a request give up on it, e.g. once its deadline passed. Whatever holds on to the
+ * request on its behalf listens for it: the queue of the connection, the slot in the RequestScheduler,
+ * or the Play Store call it shares with other callers. It's cancelled at most once
+ */
+public class Cancellation {
+  /**
+   * Never cancelled, for requests nobody waits for, e.g. replays of the purchase journal
+   */
+  public static final Cancellation NONE = new Cancellation() {
+    @Override
+    public void cancel() {
+    }
+  };
+
+  private List<Runnable> mListeners = new ArrayList<>();
+
+  public synchronized boolean isCancelled() {
+    return mListeners == null;
+  }
+
+  /**
+   * Runs the listener on the thread that cancels, right away if that happened already
+   */
+  public void addListener(Runnable listener) {
+    synchronized (this) {
+      if (mListeners != null) {
+        mListeners.add(listener);
+        return;
+      }
+    }
+    listener.run();
+  }
+
+  public void cancel() {
+    List<Runnable> listeners;
+    synchronized (this) {
+      listeners = mListeners;
+      mListeners = null;
+    }
+    if (listeners == null) {
+      return;
+    }
+    for (Runnable listener : listeners) {
+      listener.run();
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package expo.modules.inapppurchases;
+
+import android.os.Bundle;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+
+/**
+ * Stops sending calls of one operation to Play Store while it keeps failing with transient errors.
+ * After failureThreshold failures in a row the breaker opens and calls fail right away. Once the open
+ * period is over the calls of a single probe are let through (half-open): if one succeeds the breaker
+ * closes, otherwise it opens again for twice as long, up to maxOpenMs. A probe is as many calls as one
+ * operation makes, e.g. a query per product type
+ */
+public class CircuitBreaker {
+  public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+  public static final long DEFAULT_OPEN_MS = 2000;
+  public static final long DEFAULT_MAX_OPEN_MS = 60000;
+
+  public enum State {
+    CLOSED("closed"),
+    OPEN("open"),
+    HALF_OPEN("halfOpen");
+
+    final String jsName;
+
+    State(String jsName) {
+      this.jsName = jsName;
+    }
+  }
+
+  private final int mProbeCalls;
+  private int mFailureThreshold = DEFAULT_FAILURE_THRESHOLD;
+  private long mOpenMs = DEFAULT_OPEN_MS;
+  private long mMaxOpenMs = DEFAULT_MAX_OPEN_MS;
+  private State mState = State.CLOSED;
+  private int mConsecutiveFailures;
+  private int mTrips;
+  private long mRetryAt;
+  private long mProbeStartedAt;
+  private int mProbeCallsLeft;
+
+  public CircuitBreaker() {
+    this(1);
+  }
+
+  /**
+   * @param probeCalls Calls let through while half-open, the number of calls one operation makes
+   */
+  public CircuitBreaker(int probeCalls) {
+    mProbeCalls = Math.max(1, probeCalls);
+  }
+
+  /**
+   * @param failureThreshold Failures in a row that open the breaker, 0 or less turns it off
+   */
+  public synchronized void configure(int failureThreshold, long openMs, long maxOpenMs) {
+    mFailureThreshold = failureThreshold;
+    mOpenMs = Math.max(1, openMs);
+    mMaxOpenMs = Math.max(mOpenMs, maxOpenMs);
+    if (failureThreshold <= 0) {
+      close();
+    }
+  }
+
+  /**
+   * Whether a call may be sent now. When it returns true the outcome has to be reported to
+   * onResult()
+   */
+  public synchronized boolean tryAcquire(long now) {
+    switch (mState) {
+      case OPEN:
+        if (now < mRetryAt) {
+          return false;
+        }
+        mState = State.HALF_OPEN;
+        startProbe(now);
+        return true;
+      case HALF_OPEN:
+        if (mProbeCallsLeft > 0) {
+          mProbeCallsLeft--;
+          return true;
+        }
+        // A probe that never got an answer doesn't keep the breaker half-open forever
+        if (now - mProbeStartedAt < mMaxOpenMs) {
+          return false;
+        }
+        startProbe(now);
+        return true;
+      default:
+        return true;
+    }
+  }
+
+  public synchronized void onResult(int responseCode, long now) {
+    if (!isTransientFailure(responseCode)) {
+      close();
+      return;
+    }
+    if (mState == State.OPEN) {
+      // Another call of the probe that failed already, or one that was sent before the breaker opened
+      return;
+    }
+    mConsecutiveFailures++;
+    if (mFailureThreshold > 0 && (mState == State.HALF_OPEN || mConsecutiveFailures >= mFailureThreshold)) {
+      long openMs = Math.min(mMaxOpenMs, mOpenMs << Math.min(mTrips, 30));
+      mTrips++;
+      mState = State.OPEN;
+      mRetryAt = now + openMs;
+    }
+  }
+
+  public synchronized State getState() {
+    return mState;
+  }
+
+  /**
+   * When the next probe may be sent, only meaningful while the breaker is open
+   */
+  public synchronized long getRetryAt() {
+    return mRetryAt;
+  }
+
+  public synchronized Bundle toBundle() {
+    Bundle bundle = new Bundle();
+    bundle.putString("state", mState.jsName);
+    bundle.putInt("consecutiveFailures", mConsecutiveFailures);
+    if (mState == State.OPEN) {
+      bundle.putDouble("retryAt", mRetryAt);
+    } else {
+      bundle.putString("retryAt", null);
+    }
+    return bundle;
+  }
+
+  private void startProbe(long now) {
+    mProbeStartedAt = now;
+    mProbeCallsLeft = mProbeCalls - 1;
+  }
+
+  private void close() {
+    mState = State.CLOSED;
+    mConsecutiveFailures = 0;
+    mTrips = 0;
+  }
+
+  /**
+   * The response codes that mean Play Store is struggling rather than the call being wrong
+   */
+  static boolean isTransientFailure(int responseCode) {
+    switch (responseCode) {
+      case BillingResponseCode.ERROR:
+      case BillingResponseCode.SERVICE_DISCONNECTED:
+      case BillingResponseCode.SERVICE_UNAVAILABLE:
+      case BillingResponseCode.SERVICE_TIMEOUT:
+        return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,203 @@
+package expo.modules.inapppurchases;
+
+import android.app.Activity;
+import android.os.Bundle;
+
+import com.android.billingclient.api.AcknowledgePurchaseParams;
+import com.android.billingclient.api.AcknowledgePurchaseResponseListener;
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.BillingClientStateListener;
+import com.android.billingclient.api.BillingFlowParams;
+import com.android.billingclient.api.BillingResult;
+import com.android.billingclient.api.ConsumeParams;
+import com.android.billingclient.api.ConsumeResponseListener;
+import com.android.billingclient.api.ProductDetails;
+import com.android.billingclient.api.ProductDetailsResponseListener;
+import com.android.billingclient.api.Purchase;
+import com.android.billingclient.api.PurchaseHistoryRecord;
+import com.android.billingclient.api.PurchaseHistoryResponseListener;
+import com.android.billingclient.api.PurchasesResponseListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import expo.modules.inapppurchases.BillingMetrics.Operation;
+
+/**
+ * Guards the queries, acknowledgements and consumptions of the wrapped backend with a CircuitBreaker
+ * per operation. While a breaker is open its calls don't reach Play Store, their listeners are called
+ * right away with SERVICE_UNAVAILABLE, and callers fall back to what they have cached. Connecting and
+ * billing flows aren't guarded: BillingConnection backs off on its own and a purchase is always worth
+ * a try
+ */
+public class CircuitBreakerBillingBackend implements BillingBackend {
+  private static final Operation[] GUARDED_OPERATIONS = {
+    Operation.QUERY_PRODUCT_DETAILS,
+    Operation.QUERY_PURCHASES,
+    Operation.QUERY_PURCHASE_HISTORY,
+    Operation.ACKNOWLEDGE_PURCHASE,
+    Operation.CONSUME,
+  };
+
+  // Purchases and their history are queried once per product type, the probe needs both queries
+  private static final int SKU_TYPE_COUNT = 2;
+
+  private final BillingBackend mBackend;
+  private final CircuitBreaker[] mBreakers = new CircuitBreaker[Operation.values().length];
+
+  public CircuitBreakerBillingBackend(BillingBackend backend) {
+    mBackend = backend;
+    for (Operation operation : GUARDED_OPERATIONS) {
+      boolean perSkuType = operation == Operation.QUERY_PURCHASES || operation == Operation.QUERY_PURCHASE_HISTORY;
+      mBreakers[operation.ordinal()] = new CircuitBreaker(perSkuType ? SKU_TYPE_COUNT : 1);
+    }
+  }
+
+  /**
+   * Applies the same settings to every breaker, see CircuitBreaker.configure()
+   */
+  public void configure(int failureThreshold, long openMs, long maxOpenMs) {
+    for (Operation operation : GUARDED_OPERATIONS) {
+      mBreakers[operation.ordinal()].configure(failureThreshold, openMs, maxOpenMs);
+    }
+  }
+
+  /**
+   * The state of every breaker, keyed by operation
+   */
+  public Bundle toBundle() {
+    Bundle bundle = new Bundle();
+    for (Operation operation : GUARDED_OPERATIONS) {
+      bundle.putBundle(operation.jsName, mBreakers[operation.ordinal()].toBundle());
+    }
+    return bundle;
+  }
+
+  /**
+   * Null when the call may go through, otherwise the result to fail it with
+   */
+  @Nullable
+  private BillingResult rejection(Operation operation) {
+    CircuitBreaker breaker = mBreakers[operation.ordinal()];
+    long now = System.currentTimeMillis();
+    if (breaker.tryAcquire(now)) {
+      return null;
+    }
+    return BillingResult.newBuilder()
+      .setResponseCode(BillingResponseCode.SERVICE_UNAVAILABLE)
+      .setDebugMessage("Circuit breaker of " + operation.jsName + " is open, retrying in " + Math.max(0, breaker.getRetryAt() - now) + "ms")
+      .build();
+  }
+
+  private void record(Operation operation, BillingResult billingResult) {
+    mBreakers[operation.ordinal()].onResult(billingResult.getResponseCode(), System.currentTimeMillis());
+  }
+
+  @Override
+  public void startConnection(BillingClientStateListener listener) {
+    mBackend.startConnection(listener);
+  }
+
+  @Override
+  public void endConnection() {
+    mBackend.endConnection();
+  }
+
+  @Override
+  public boolean isReady() {
+    return mBackend.isReady();
+  }
+
+  @Override
+  public BillingResult isFeatureSupported(String feature) {
+    return mBackend.isFeatureSupported(feature);
+  }
+
+  @Override
+  public BillingResult launchBillingFlow(Activity activity, BillingFlowParams params) {
+    return mBackend.launchBillingFlow(activity, params);
+  }
+
+  @Override
+  public void acknowledgePurchase(AcknowledgePurchaseParams params, final AcknowledgePurchaseResponseListener listener) {
+    BillingResult rejection = rejection(Operation.ACKNOWLEDGE_PURCHASE);
+    if (rejection != null) {
+      listener.onAcknowledgePurchaseResponse(rejection);
+      return;
+    }
+    mBackend.acknowledgePurchase(params, new AcknowledgePurchaseResponseListener() {
+      @Override
+      public void onAcknowledgePurchaseResponse(@NonNull BillingResult billingResult) {
+        record(Operation.ACKNOWLEDGE_PURCHASE, billingResult);
+        listener.onAcknowledgePurchaseResponse(billingResult);
+      }
+    });
+  }
+
+  @Override
+  public void consumeAsync(ConsumeParams params, final ConsumeResponseListener listener) {
+    BillingResult rejection = rejection(Operation.CONSUME);
+    if (rejection != null) {
+      listener.onConsumeResponse(rejection, params.getPurchaseToken());
+      return;
+    }
+    mBackend.consumeAsync(params, new ConsumeResponseListener() {
+      @Override
+      public void onConsumeResponse(@NonNull BillingResult billingResult, @NonNull String purchaseToken) {
+        record(Operation.CONSUME, billingResult);
+        listener.onConsumeResponse(billingResult, purchaseToken);
+      }
+    });
+  }
+
+  @Override
+  public void queryPurchasesAsync(String skuType, final PurchasesResponseListener listener) {
+    BillingResult rejection = rejection(Operation.QUERY_PURCHASES);
+    if (rejection != null) {
+      listener.onQueryPurchasesResponse(rejection, new ArrayList<Purchase>());
+      return;
+    }
+    mBackend.queryPurchasesAsync(skuType, new PurchasesResponseListener() {
+      @Override
+      public void onQueryPurchasesResponse(@NonNull BillingResult billingResult, @NonNull List<Purchase> purchases) {
+        record(Operation.QUERY_PURCHASES, billingResult);
+        listener.onQueryPurchasesResponse(billingResult, purchases);
+      }
+    });
+  }
+
+  @Override
+  public void queryPurchaseHistoryAsync(String skuType, final PurchaseHistoryResponseListener listener) {
+    BillingResult rejection = rejection(Operation.QUERY_PURCHASE_HISTORY);
+    if (rejection != null) {
+      listener.onPurchaseHistoryResponse(rejection, null);
+      return;
+    }
+    mBackend.queryPurchaseHistoryAsync(skuType, new PurchaseHistoryResponseListener() {
+      @Override
+      public void onPurchaseHistoryResponse(@NonNull BillingResult billingResult, @Nullable List<PurchaseHistoryRecord> records) {
+        record(Operation.QUERY_PURCHASE_HISTORY, billingResult);
+        listener.onPurchaseHistoryResponse(billingResult, records);
+      }
+    });
+  }
+
+  @Override
+  public void queryProductDetailsAsync(List<ProductQuery> products, final ProductDetailsResponseListener listener) {
+    BillingResult rejection = rejection(Operation.QUERY_PRODUCT_DETAILS);
+    if (rejection != null) {
+      listener.onProductDetailsResponse(rejection, new ArrayList<ProductDetails>());
+      return;
+    }
+    mBackend.queryProductDetailsAsync(products, new ProductDetailsResponseListener() {
+      @Override
+      public void onProductDetailsResponse(@NonNull BillingResult billingResult, @NonNull List<ProductDetails> productDetails) {
+        record(Operation.QUERY_PRODUCT_DETAILS, billingResult);
+        listener.onProductDetailsResponse(billingResult, productDetails);
+      }
+    });
+  }
+}
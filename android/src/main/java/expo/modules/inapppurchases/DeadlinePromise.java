@@ -0,0 +1,101 @@
+package expo.modules.inapppurchases;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import expo.modules.core.Promise;
+
+/**
+ * Promise that is rejected with TIMEOUT_CODE when it isn't settled before its deadline. It settles at
+ * most once and lets go of the wrapped promise as soon as it does, so late answers from Play Store
+ * are dropped and whatever the call captured can be collected. Its Cancellation is cancelled on
+ * timeout, on the deadlines thread, and has to be handed to the call together with the promise
+ */
+public class DeadlinePromise implements Promise {
+  public static final String TIMEOUT_CODE = "E_TIMEOUT";
+
+  // Only fires the timeouts, which just cancel the calls and reject their promises
+  private static final ScheduledExecutorService sScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "ExpoInAppPurchases-deadlines");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private final String mOperation;
+  private final long mTimeoutMs;
+  private final Cancellation mCancellation = new Cancellation();
+  private Promise mPromise;
+  private ScheduledFuture<?> mTimeout;
+
+  /**
+   * @param timeoutMs How long the call may take, it never times out when it's 0 or less
+   */
+  public DeadlinePromise(Promise promise, String operation, long timeoutMs) {
+    mPromise = promise;
+    mOperation = operation;
+    mTimeoutMs = timeoutMs;
+    if (timeoutMs > 0) {
+      mTimeout = sScheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          timeout();
+        }
+      }, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public synchronized boolean isSettled() {
+    return mPromise == null;
+  }
+
+  /**
+   * Cancelled when the deadline passes, never when the promise settles in time
+   */
+  public Cancellation getCancellation() {
+    return mCancellation;
+  }
+
+  @Override
+  public void resolve(Object value) {
+    Promise promise = settle(false);
+    if (promise != null) {
+      promise.resolve(value);
+    }
+  }
+
+  @Override
+  public void reject(String code, String message, Throwable e) {
+    Promise promise = settle(false);
+    if (promise != null) {
+      promise.reject(code, message, e);
+    }
+  }
+
+  private void timeout() {
+    Promise promise = settle(true);
+    if (promise == null) {
+      return;
+    }
+    mCancellation.cancel();
+    promise.reject(TIMEOUT_CODE, mOperation + " didn't finish within " + mTimeoutMs + "ms", null);
+  }
+
+  private synchronized Promise settle(boolean timedOut) {
+    Promise promise = mPromise;
+    mPromise = null;
+    if (promise == null) {
+      return null;
+    }
+    if (!timedOut && mTimeout != null) {
+      mTimeout.cancel(false);
+    }
+    mTimeout = null;
+    return promise;
+  }
+}
@@ -0,0 +1,294 @@
+package expo.modules.inapppurchases;
+
+import android.os.Bundle;
+
+import com.android.billingclient.api.Purchase;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import androidx.annotation.Nullable;
+
+/**
+ * What the user owns, by product ID, kept up to date with the deltas of the PurchaseStore so that
+ * entitlement checks never go to Play Store. When several purchases contain the same product, the
+ * purchased one wins over a pending one and the newest wins otherwise. The snapshot sent over the
+ * bridge is only rebuilt after a change or once an expiry hint passes. Updated on the billing thread,
+ * read from any thread. Billing periods are looked up while updating, so reads never wait for the
+ * product details cache to hit the disk.
+ *
+ * Until Play Store answers the first full purchases query the index can be seeded with the purchases
+ * saved by OwnedPurchasesSnapshot, which that query then replaces
+ */
+public class EntitlementIndex {
+  // ISO 8601 periods as used by Play Store, e.g. P1W, P1M or P1Y
+  private static final Pattern BILLING_PERIOD = Pattern.compile("P(?:(\\d+)Y)?(?:(\\d+)M)?(?:(\\d+)W)?(?:(\\d+)D)?");
+
+  /**
+   * Tells how long a billing period of a subscription is, null for products that don't renew or
+   * aren't known
+   */
+  public interface BillingPeriods {
+    @Nullable
+    String getBillingPeriod(String productId);
+  }
+
+  private final BillingPeriods mBillingPeriods;
+  private final HashMap<String, Purchase> mPurchasesByToken = new HashMap<>();
+  private final HashMap<String, Purchase> mPurchasesByProduct = new HashMap<>();
+  private final Set<String> mAcknowledgedTokens = new HashSet<>();
+  private final HashMap<String, String> mBillingPeriodsByProduct = new HashMap<>();
+  // Purchases that only come from the snapshot, Play Store hasn't reported them yet
+  private final Set<String> mSeededTokens = new HashSet<>();
+  private long mUpdatedAt;
+  private boolean mComplete;
+  private Bundle mSnapshot;
+  private long mSnapshotExpiresAt = Long.MAX_VALUE;
+
+  public EntitlementIndex(BillingPeriods billingPeriods) {
+    mBillingPeriods = billingPeriods;
+  }
+
+  /**
+   * @param complete Whether the delta comes from the complete list of owned purchases
+   */
+  public void apply(PurchaseStore.Delta delta, boolean complete) {
+    Map<String, String> billingPeriods = lookUpBillingPeriods(productsOf(delta.added, delta.changed));
+    synchronized (this) {
+      mBillingPeriodsByProduct.putAll(billingPeriods);
+      Set<String> products = new HashSet<>();
+      if (complete) {
+        // The complete list tells which of the saved purchases are still owned
+        for (String purchaseToken : new ArrayList<>(mSeededTokens)) {
+          drop(purchaseToken, products);
+        }
+      }
+      for (String purchaseToken : delta.removed) {
+        drop(purchaseToken, products);
+      }
+      put(delta.added, products);
+      put(delta.changed, products);
+      reindex(products);
+      mComplete |= complete;
+      mUpdatedAt = System.currentTimeMillis();
+      mSnapshot = null;
+    }
+  }
+
+  /**
+   * Fills the index with the owned purchases saved earlier, unless it was updated already. They are
+   * replaced by the first complete update
+   */
+  public void seed(OwnedPurchasesSnapshot.Snapshot snapshot) {
+    Map<String, String> billingPeriods = lookUpBillingPeriods(productsOf(snapshot.purchases));
+    synchronized (this) {
+      if (mUpdatedAt > 0) {
+        return;
+      }
+      mBillingPeriodsByProduct.putAll(billingPeriods);
+      Set<String> products = new HashSet<>();
+      put(snapshot.purchases, products);
+      for (Purchase purchase : snapshot.purchases) {
+        mSeededTokens.add(purchase.getPurchaseToken());
+      }
+      reindex(products);
+      mUpdatedAt = snapshot.fetchedAt;
+      mSnapshot = null;
+    }
+  }
+
+  /**
+   * Looks up the billing periods of the given products again, e.g. after their details were fetched
+   */
+  public void updateBillingPeriods(Collection<String> productIds) {
+    Set<String> owned = new HashSet<>();
+    synchronized (this) {
+      for (String productId : productIds) {
+        if (mPurchasesByProduct.containsKey(productId)) {
+          owned.add(productId);
+        }
+      }
+    }
+    if (owned.isEmpty()) {
+      return;
+    }
+    Map<String, String> billingPeriods = lookUpBillingPeriods(owned);
+    synchronized (this) {
+      mBillingPeriodsByProduct.putAll(billingPeriods);
+      mSnapshot = null;
+    }
+  }
+
+  /**
+   * Acknowledged purchases only show up as such with the next query, the index knows right away
+   */
+  public synchronized void markAcknowledged(String purchaseToken) {
+    if (mPurchasesByToken.containsKey(purchaseToken) && mAcknowledgedTokens.add(purchaseToken)) {
+      mSnapshot = null;
+    }
+  }
+
+  /**
+   * Drops a purchase that isn't owned anymore, e.g. because it was consumed
+   */
+  public synchronized void remove(String purchaseToken) {
+    Set<String> products = new HashSet<>();
+    drop(purchaseToken, products);
+    if (!products.isEmpty()) {
+      reindex(products);
+      mSnapshot = null;
+    }
+  }
+
+  /**
+   * Whether a purchase of the product went through, acknowledged or not
+   */
+  public synchronized boolean hasEntitlement(String productId) {
+    Purchase purchase = mPurchasesByProduct.get(productId);
+    return purchase != null && purchase.getPurchaseState() == Purchase.PurchaseState.PURCHASED;
+  }
+
+  /**
+   * All the entitlements, with the time the index was last updated (null before the first update)
+   * and whether it has seen the complete list of owned purchases. The bundle is shared, don't modify
+   * it
+   */
+  public synchronized Bundle toBundle() {
+    long now = System.currentTimeMillis();
+    if (mSnapshot != null && now < mSnapshotExpiresAt) {
+      return mSnapshot;
+    }
+
+    ArrayList<Bundle> entitlements = new ArrayList<>(mPurchasesByProduct.size());
+    long snapshotExpiresAt = Long.MAX_VALUE;
+    for (Map.Entry<String, Purchase> entry : mPurchasesByProduct.entrySet()) {
+      Purchase purchase = entry.getValue();
+      Long expiresAt = expiryHint(purchase, mBillingPeriodsByProduct.get(entry.getKey()), now);
+      if (expiresAt != null && expiresAt > now) {
+        snapshotExpiresAt = Math.min(snapshotExpiresAt, expiresAt);
+      }
+      entitlements.add(BillingFormatter.entitlementToBundle(entry.getKey(), purchase,
+        purchase.isAcknowledged() || mAcknowledgedTokens.contains(purchase.getPurchaseToken()), expiresAt));
+    }
+
+    Bundle snapshot = new Bundle();
+    snapshot.putParcelableArrayList("entitlements", entitlements);
+    if (mUpdatedAt > 0) {
+      snapshot.putDouble("updatedAt", mUpdatedAt);
+    } else {
+      snapshot.putString("updatedAt", null);
+    }
+    snapshot.putBoolean("complete", mComplete);
+    mSnapshot = snapshot;
+    mSnapshotExpiresAt = snapshotExpiresAt;
+    return snapshot;
+  }
+
+  private Map<String, String> lookUpBillingPeriods(Collection<String> productIds) {
+    Map<String, String> billingPeriods = new HashMap<>();
+    for (String productId : productIds) {
+      billingPeriods.put(productId, mBillingPeriods.getBillingPeriod(productId));
+    }
+    return billingPeriods;
+  }
+
+  @SafeVarargs
+  private static Set<String> productsOf(List<Purchase>... purchaseLists) {
+    Set<String> products = new HashSet<>();
+    for (List<Purchase> purchases : purchaseLists) {
+      for (Purchase purchase : purchases) {
+        products.addAll(purchase.getSkus());
+      }
+    }
+    return products;
+  }
+
+  private void drop(String purchaseToken, Set<String> products) {
+    Purchase removed = mPurchasesByToken.remove(purchaseToken);
+    mAcknowledgedTokens.remove(purchaseToken);
+    mSeededTokens.remove(purchaseToken);
+    if (removed != null) {
+      products.addAll(removed.getSkus());
+    }
+  }
+
+  private void put(List<Purchase> purchases, Set<String> products) {
+    for (Purchase purchase : purchases) {
+      mSeededTokens.remove(purchase.getPurchaseToken());
+      Purchase previous = mPurchasesByToken.put(purchase.getPurchaseToken(), purchase);
+      if (previous != null) {
+        products.addAll(previous.getSkus());
+      }
+      products.addAll(purchase.getSkus());
+    }
+  }
+
+  private void reindex(Set<String> products) {
+    for (String productId : products) {
+      mPurchasesByProduct.remove(productId);
+    }
+    for (Purchase purchase : mPurchasesByToken.values()) {
+      for (String productId : purchase.getSkus()) {
+        if (products.contains(productId) && wins(purchase, mPurchasesByProduct.get(productId))) {
+          mPurchasesByProduct.put(productId, purchase);
+        }
+      }
+    }
+  }
+
+  private static boolean wins(Purchase purchase, @Nullable Purchase current) {
+    if (current == null) {
+      return true;
+    }
+    boolean purchased = purchase.getPurchaseState() == Purchase.PurchaseState.PURCHASED;
+    boolean currentPurchased = current.getPurchaseState() == Purchase.PurchaseState.PURCHASED;
+    if (purchased != currentPurchased) {
+      return purchased;
+    }
+    return purchase.getPurchaseTime() > current.getPurchaseTime();
+  }
+
+  /**
+   * End of the billing period the subscription is in: the one after the purchase when it doesn't
+   * renew, the current one when it does. It's a hint, Play Store doesn't tell the actual expiry
+   * without a server
+   */
+  @Nullable
+  static Long expiryHint(Purchase purchase, @Nullable String billingPeriod, long now) {
+    if (billingPeriod == null || purchase.getPurchaseState() != Purchase.PurchaseState.PURCHASED) {
+      return null;
+    }
+    Matcher matcher = BILLING_PERIOD.matcher(billingPeriod);
+    if (!matcher.matches()) {
+      return null;
+    }
+    int years = parsePart(matcher.group(1));
+    int months = parsePart(matcher.group(2));
+    int weeks = parsePart(matcher.group(3));
+    int days = parsePart(matcher.group(4));
+    if (years + months + weeks + days == 0) {
+      return null;
+    }
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(purchase.getPurchaseTime());
+    do {
+      calendar.add(Calendar.YEAR, years);
+      calendar.add(Calendar.MONTH, months);
+      calendar.add(Calendar.WEEK_OF_YEAR, weeks);
+      calendar.add(Calendar.DAY_OF_YEAR, days);
+    } while (purchase.isAutoRenewing() && calendar.getTimeInMillis() <= now);
+    return calendar.getTimeInMillis();
+  }
+
+  private static int parsePart(@Nullable String part) {
+    return part != null ? Integer.parseInt(part) : 0;
+  }
+}
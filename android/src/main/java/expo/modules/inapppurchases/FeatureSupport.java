@@ -0,0 +1,69 @@
+package expo.modules.inapppurchases;
+
+import android.os.Bundle;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.BillingClient.FeatureType;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Which optional billing features the connected Play Store supports. It is queried once per
+ * connection, since isFeatureSupported() is a synchronous call into the Billing library
+ */
+public class FeatureSupport {
+  public static final String SUBSCRIPTIONS = "subscriptions";
+  public static final String SUBSCRIPTIONS_UPDATE = "subscriptionsUpdate";
+  public static final String PRICE_CHANGE_CONFIRMATION = "priceChangeConfirmation";
+  public static final String IN_APP_MESSAGING = "inAppMessaging";
+  public static final String PRODUCT_DETAILS = "productDetails";
+
+  private static final Map<String, String> FEATURE_TYPES = new LinkedHashMap<>();
+
+  static {
+    FEATURE_TYPES.put(SUBSCRIPTIONS, FeatureType.SUBSCRIPTIONS);
+    FEATURE_TYPES.put(SUBSCRIPTIONS_UPDATE, FeatureType.SUBSCRIPTIONS_UPDATE);
+    // FeatureType.PRICE_CHANGE_CONFIRMATION is gone from Billing 6+, Play still answers for its value
+    FEATURE_TYPES.put(PRICE_CHANGE_CONFIRMATION, "priceChangeConfirmation");
+    FEATURE_TYPES.put(IN_APP_MESSAGING, FeatureType.IN_APP_MESSAGING);
+    FEATURE_TYPES.put(PRODUCT_DETAILS, FeatureType.PRODUCT_DETAILS);
+  }
+
+  /**
+   * Before the first connection nothing is known to be supported
+   */
+  public static final FeatureSupport UNKNOWN = new FeatureSupport(Collections.<String, Boolean>emptyMap());
+
+  private final Map<String, Boolean> mSupported;
+
+  private FeatureSupport(Map<String, Boolean> supported) {
+    mSupported = supported;
+  }
+
+  /**
+   * Asks the connected backend about every feature
+   */
+  public static FeatureSupport query(BillingBackend backend) {
+    Map<String, Boolean> supported = new LinkedHashMap<>();
+    for (Map.Entry<String, String> feature : FEATURE_TYPES.entrySet()) {
+      int responseCode = backend.isFeatureSupported(feature.getValue()).getResponseCode();
+      supported.put(feature.getKey(), responseCode == BillingResponseCode.OK);
+    }
+    return new FeatureSupport(Collections.unmodifiableMap(supported));
+  }
+
+  public boolean isSupported(String feature) {
+    Boolean supported = mSupported.get(feature);
+    return supported != null && supported;
+  }
+
+  public Bundle toBundle() {
+    Bundle bundle = new Bundle();
+    for (String feature : FEATURE_TYPES.keySet()) {
+      bundle.putBoolean(feature, isSupported(feature));
+    }
+    return bundle;
+  }
+}
@@ -0,0 +1,99 @@
+package expo.modules.inapppurchases;
+
+import android.os.Bundle;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.BillingResult;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import expo.modules.core.Promise;
+
+/**
+ * Consumes or acknowledges a batch of purchases with at most `parallelism` Play Store calls in
+ * flight and resolves the promise once with the outcome of every purchase token
+ */
+public class FinishTransactionsBatch {
+  public static final int DEFAULT_PARALLELISM = 4;
+
+  private final ArrayDeque<String> mQueuedTokens;
+  private final ConcurrentHashMap<String, BillingResult> mResults = new ConcurrentHashMap<>();
+  private final List<String> mTokens;
+  private final AtomicInteger mRemaining;
+  private final int mParallelism;
+  private final Finisher mFinisher;
+  private final Promise mPromise;
+
+  /**
+   * Finishes a single purchase and reports the result to the listener
+   */
+  public interface Finisher {
+    void finish(String purchaseToken, Listener listener);
+  }
+
+  public interface Listener {
+    void onFinished(String purchaseToken, BillingResult billingResult);
+  }
+
+  public FinishTransactionsBatch(List<String> purchaseTokens, int parallelism, Finisher finisher, Promise promise) {
+    mTokens = new ArrayList<>(new LinkedHashSet<>(purchaseTokens));
+    mQueuedTokens = new ArrayDeque<>(mTokens);
+    mRemaining = new AtomicInteger(mTokens.size());
+    mParallelism = Math.max(1, parallelism);
+    mFinisher = finisher;
+    mPromise = promise;
+  }
+
+  public void start() {
+    if (mTokens.isEmpty()) {
+      mPromise.resolve(formatResults());
+      return;
+    }
+    for (int i = 0; i < mParallelism; i++) {
+      finishNext();
+    }
+  }
+
+  private void finishNext() {
+    String purchaseToken;
+    synchronized (mQueuedTokens) {
+      purchaseToken = mQueuedTokens.poll();
+    }
+    if (purchaseToken == null) {
+      return;
+    }
+    mFinisher.finish(purchaseToken, new Listener() {
+      @Override
+      public void onFinished(String purchaseToken, BillingResult billingResult) {
+        mResults.put(purchaseToken, billingResult);
+        if (mRemaining.decrementAndGet() == 0) {
+          mPromise.resolve(formatResults());
+        } else {
+          finishNext();
+        }
+      }
+    });
+  }
+
+  private Bundle formatResults() {
+    boolean allFinished = true;
+    ArrayList<Bundle> results = new ArrayList<>(mTokens.size());
+    for (String purchaseToken : mTokens) {
+      BillingResult billingResult = mResults.get(purchaseToken);
+      Bundle result = BillingFormatter.formatResult(billingResult);
+      result.putString("purchaseToken", purchaseToken);
+      results.add(result);
+      allFinished &= billingResult.getResponseCode() == BillingResponseCode.OK;
+    }
+
+    Bundle response = new Bundle();
+    response.putInt("responseCode", allFinished ? BillingFormatter.OK : BillingFormatter.ERROR);
+    response.putParcelableArrayList("results", results);
+    return response;
+  }
+}
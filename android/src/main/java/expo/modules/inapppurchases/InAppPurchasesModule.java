@@ -1,11 +1,24 @@
 package expo.modules.inapppurchases;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import android.content.Context;
 import android.app.Activity;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Trace;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import expo.modules.core.ExportedModule;
 import expo.modules.core.ModuleRegistry;
 import expo.modules.core.Promise;
@@ -19,8 +32,48 @@ public class InAppPurchasesModule extends ExportedModule implements RegistryLife
   private static final String TAG = InAppPurchasesModule.class.getSimpleName();
   private static final String NAME = "ExpoInAppPurchases";
   private final String USE_GOOGLE_PLAY_CACHE_KEY = "useGooglePlayCache";
+  private final String ALLOW_STALE_KEY = "allowStale";
+  private final String PRODUCT_CACHE_TTL_KEY = "productCacheTtlMs";
+  private final String PRODUCT_CACHE_MAX_ENTRIES_KEY = "productCacheMaxEntries";
+  private final String FINISH_TRANSACTIONS_PARALLELISM_KEY = "finishTransactionsParallelism";
+  private final String DELTA_PURCHASE_EVENTS_KEY = "deltaPurchaseEvents";
+  private final String PURCHASE_EVENT_WINDOW_KEY = "purchaseEventWindowMs";
+  private final String METRICS_EVENT_INTERVAL_KEY = "metricsEventIntervalMs";
+  private final String RESET_KEY = "reset";
+  private final String PREFETCH_PURCHASES_KEY = "prefetchPurchases";
+  private final String REQUEST_TIMEOUT_KEY = "requestTimeoutMs";
+  private final String REQUEST_TIMEOUTS_KEY = "requestTimeouts";
+  private final String VERIFICATION_PUBLIC_KEY_KEY = "verificationPublicKey";
+  private final String LAZY_CONNECTION_KEY = "lazyConnection";
+  private final String PREBIND_WHEN_IDLE_KEY = "prebindWhenIdle";
+  private final String CIRCUIT_BREAKER_FAILURE_THRESHOLD_KEY = "circuitBreakerFailureThreshold";
+  private final String CIRCUIT_BREAKER_OPEN_MS_KEY = "circuitBreakerOpenMs";
+  private final String CIRCUIT_BREAKER_MAX_OPEN_MS_KEY = "circuitBreakerMaxOpenMs";
+  private static final String TRACE_ACQUIRE = "ExpoInAppPurchases.acquireBillingManager";
+  private static final long DEFAULT_REQUEST_TIMEOUT_MS = 30000;
+  private static final String BILLING_METRICS_EVENT = "Expo.billingMetrics";
+  private static final String NOT_CONNECTED_CODE = "E_NOT_CONNECTED";
+
+  private static Executor sBillingExecutor;
+  private static BillingBackend.Factory sBillingBackendFactory = PlayBillingBackend.FACTORY;
+  private static PurchaseVerifier.Validator sPurchaseValidator;
 
+  // The shared manager, while this module holds a reference to it
   private BillingManager mBillingManager;
+  private int mFinishTransactionsParallelism = FinishTransactionsBatch.DEFAULT_PARALLELISM;
+  private boolean mDeltaPurchaseEvents;
+  private long mPurchaseEventWindowMs = PurchaseEventCoalescer.DEFAULT_WINDOW_MS;
+  private long mMetricsEventIntervalMs;
+  private long mRequestTimeoutMs = DEFAULT_REQUEST_TIMEOUT_MS;
+  private final Map<String, Long> mRequestTimeoutsMs = new HashMap<>();
+  private PurchaseVerifier mPurchaseVerifier;
+  private boolean mLazyConnection;
+  private boolean mPrebindWhenIdle = true;
+  private int mCircuitBreakerFailureThreshold = CircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+  private long mCircuitBreakerOpenMs = CircuitBreaker.DEFAULT_OPEN_MS;
+  private long mCircuitBreakerMaxOpenMs = CircuitBreaker.DEFAULT_MAX_OPEN_MS;
+  private ScheduledExecutorService mMetricsScheduler;
+  private ScheduledFuture<?> mMetricsEvents;
   private ModuleRegistry mModuleRegistry;
   private EventEmitter mEventEmitter;
 
@@ -38,34 +91,137 @@ public class InAppPurchasesModule extends ExportedModule implements RegistryLife
     mModuleRegistry = moduleRegistry;
   }
 
+  @Override
+  public void onDestroy() {
+    releaseBillingManager();
+  }
+
+  /**
+   * With lazyConnection the service is only bound by the first request that needs it, or once the
+   * main thread is idle with prebindWhenIdle, and the promise resolves right away
+   */
   @ExpoMethod
   public void connectAsync(final Promise promise) {
-    Activity activity = getCurrentActivity();
-    if (activity == null) {
-      promise.reject("E_ACTIVITY_UNAVAILABLE", "Activity is not available");
+    acquireBillingManager();
+    if (!mLazyConnection) {
+      DeadlinePromise deadlinePromise = withDeadline("connectAsync", promise);
+      mBillingManager.startConnection(deadlinePromise, deadlinePromise.getCancellation());
+      return;
     }
-    mEventEmitter = mModuleRegistry.getModule(EventEmitter.class);
-    mBillingManager = new BillingManager(activity, mEventEmitter);
-    mBillingManager.startConnection(promise);
+    if (mPrebindWhenIdle) {
+      prebindWhenIdle();
+    }
+    promise.resolve(null);
+  }
+
+  @ExpoMethod
+  public void warmUpAsync(List<String> itemList, final ReadableArguments options, final Promise promise) {
+    acquireBillingManager();
+    DeadlinePromise deadlinePromise = withDeadline("warmUpAsync", promise);
+    mBillingManager.warmUp(itemList, options.getBoolean(PREFETCH_PURCHASES_KEY, false), deadlinePromise,
+      deadlinePromise.getCancellation());
+  }
+
+  @ExpoMethod
+  public void configureAsync(final ReadableArguments options, final Promise promise) {
+    if (options.containsKey(VERIFICATION_PUBLIC_KEY_KEY)) {
+      String publicKey = options.getString(VERIFICATION_PUBLIC_KEY_KEY);
+      try {
+        mPurchaseVerifier = publicKey == null || publicKey.isEmpty() ? null : new PurchaseVerifier(PurchaseVerifier.rsa(publicKey));
+      } catch (IllegalArgumentException e) {
+        promise.reject("E_INVALID_PUBLIC_KEY", "The verification public key couldn't be read", e);
+        return;
+      }
+      if (mBillingManager != null) {
+        mBillingManager.setPurchaseVerifier(mPurchaseVerifier);
+      }
+    }
+    ProductDetailsCache productDetailsCache = getProductDetailsCache();
+    productDetailsCache.configure(
+      (long) options.getDouble(PRODUCT_CACHE_TTL_KEY, productDetailsCache.getTtlMs()),
+      options.getInt(PRODUCT_CACHE_MAX_ENTRIES_KEY, productDetailsCache.getMaxEntries())
+    );
+    mLazyConnection = options.getBoolean(LAZY_CONNECTION_KEY, mLazyConnection);
+    mPrebindWhenIdle = options.getBoolean(PREBIND_WHEN_IDLE_KEY, mPrebindWhenIdle);
+    mFinishTransactionsParallelism = options.getInt(FINISH_TRANSACTIONS_PARALLELISM_KEY, mFinishTransactionsParallelism);
+    mDeltaPurchaseEvents = options.getBoolean(DELTA_PURCHASE_EVENTS_KEY, mDeltaPurchaseEvents);
+    mPurchaseEventWindowMs = (long) options.getDouble(PURCHASE_EVENT_WINDOW_KEY, mPurchaseEventWindowMs);
+    mCircuitBreakerFailureThreshold = options.getInt(CIRCUIT_BREAKER_FAILURE_THRESHOLD_KEY, mCircuitBreakerFailureThreshold);
+    mCircuitBreakerOpenMs = (long) options.getDouble(CIRCUIT_BREAKER_OPEN_MS_KEY, mCircuitBreakerOpenMs);
+    mCircuitBreakerMaxOpenMs = (long) options.getDouble(CIRCUIT_BREAKER_MAX_OPEN_MS_KEY, mCircuitBreakerMaxOpenMs);
+    if (mBillingManager != null) {
+      mBillingManager.setDeltaPurchaseEvents(mDeltaPurchaseEvents);
+      mBillingManager.setPurchaseEventWindow(mPurchaseEventWindowMs);
+      mBillingManager.configureCircuitBreakers(mCircuitBreakerFailureThreshold, mCircuitBreakerOpenMs, mCircuitBreakerMaxOpenMs);
+    }
+    mRequestTimeoutMs = (long) options.getDouble(REQUEST_TIMEOUT_KEY, mRequestTimeoutMs);
+    ReadableArguments requestTimeouts = options.getArguments(REQUEST_TIMEOUTS_KEY);
+    if (requestTimeouts != null) {
+      for (String method : requestTimeouts.keys()) {
+        mRequestTimeoutsMs.put(method, (long) requestTimeouts.getDouble(method));
+      }
+    }
+    long metricsEventIntervalMs = (long) options.getDouble(METRICS_EVENT_INTERVAL_KEY, mMetricsEventIntervalMs);
+    if (metricsEventIntervalMs != mMetricsEventIntervalMs) {
+      mMetricsEventIntervalMs = metricsEventIntervalMs;
+      scheduleMetricsEvents();
+    }
+    promise.resolve(null);
   }
 
   @ExpoMethod
   public void getProductsAsync(List<String> itemList, final Promise promise) {
-    mBillingManager.queryPurchasableItems(itemList, promise);
+    DeadlinePromise deadlinePromise = withDeadline("getProductsAsync", promise);
+    mBillingManager.queryPurchasableItems(itemList, deadlinePromise, deadlinePromise.getCancellation());
   }
 
   @ExpoMethod
   public void getPurchaseHistoryAsync(final ReadableArguments options, final Promise promise) {
+    DeadlinePromise deadlinePromise = withDeadline("getPurchaseHistoryAsync", promise);
     if (options.getBoolean(USE_GOOGLE_PLAY_CACHE_KEY, true)) {
-      mBillingManager.queryPurchases(promise);
+      mBillingManager.queryPurchases(options.getBoolean(ALLOW_STALE_KEY, false), deadlinePromise, deadlinePromise.getCancellation());
     } else {
-      mBillingManager.queryPurchaseHistoryAsync(promise);
+      mBillingManager.queryPurchaseHistoryAsync(deadlinePromise, deadlinePromise.getCancellation());
     }
   }
 
+  @ExpoMethod
+  public void getPurchaseHistoryPageAsync(@Nullable String cursor, int pageSize, final Promise promise) {
+    DeadlinePromise deadlinePromise = withDeadline("getPurchaseHistoryPageAsync", promise);
+    mBillingManager.getPurchaseHistoryPage(cursor, pageSize, deadlinePromise, deadlinePromise.getCancellation());
+  }
+
+  @ExpoMethod
+  public void getEntitlementsAsync(final Promise promise) {
+    if (rejectIfNotConnected(promise)) {
+      return;
+    }
+    promise.resolve(mBillingManager.getEntitlements());
+  }
+
+  @ExpoMethod
+  public void hasEntitlementAsync(String productId, final Promise promise) {
+    if (rejectIfNotConnected(promise)) {
+      return;
+    }
+    promise.resolve(mBillingManager.hasEntitlement(productId));
+  }
+
   @ExpoMethod
   public void purchaseItemAsync(String skuId, ReadableArguments details, final Promise promise) {
-    mBillingManager.purchaseItemAsync(skuId, details, promise);
+    Activity activity = getCurrentActivity();
+    if (activity == null) {
+      promise.reject("E_ACTIVITY_UNAVAILABLE", "Activity is not available");
+      return;
+    }
+    DeadlinePromise deadlinePromise = withDeadline("purchaseItemAsync", promise);
+    mBillingManager.purchaseItemAsync(activity, skuId, details, deadlinePromise, deadlinePromise.getCancellation());
+  }
+
+  @ExpoMethod
+  public void getSupportedFeaturesAsync(final Promise promise) {
+    DeadlinePromise deadlinePromise = withDeadline("getSupportedFeaturesAsync", promise);
+    mBillingManager.getSupportedFeatures(deadlinePromise, deadlinePromise.getCancellation());
   }
 
   @ExpoMethod
@@ -75,20 +231,198 @@ public class InAppPurchasesModule extends ExportedModule implements RegistryLife
 
   @ExpoMethod
   public void finishTransactionAsync(String purchaseToken, Boolean consume, final Promise promise) {
+    DeadlinePromise deadlinePromise = withDeadline("finishTransactionAsync", promise);
     if (consume != null && consume) {
-      mBillingManager.consumeAsync(purchaseToken, promise);
+      mBillingManager.consumeAsync(purchaseToken, deadlinePromise, deadlinePromise.getCancellation());
     } else {
-      mBillingManager.acknowledgePurchaseAsync(purchaseToken, promise);
+      mBillingManager.acknowledgePurchaseAsync(purchaseToken, deadlinePromise, deadlinePromise.getCancellation());
     }
   }
 
+  @ExpoMethod
+  public void finishTransactionsAsync(List<String> purchaseTokens, Boolean consume, final Promise promise) {
+    DeadlinePromise deadlinePromise = withDeadline("finishTransactionsAsync", promise);
+    mBillingManager.finishTransactionsAsync(purchaseTokens, consume != null && consume, mFinishTransactionsParallelism,
+      deadlinePromise, deadlinePromise.getCancellation());
+  }
+
+  @ExpoMethod
+  public void getBillingMetricsAsync(final ReadableArguments options, final Promise promise) {
+    promise.resolve(SharedBillingManager.getBillingMetrics().toBundle(options.getBoolean(RESET_KEY, false)));
+  }
+
+  @ExpoMethod
+  public void getCircuitBreakersAsync(final Promise promise) {
+    if (rejectIfNotConnected(promise)) {
+      return;
+    }
+    promise.resolve(mBillingManager.getCircuitBreakers());
+  }
+
   @ExpoMethod
   public void disconnectAsync(final Promise promise) {
+    releaseBillingManager();
+    promise.resolve(null);
+  }
+
+  /**
+   * The methods that answer without going through the billing thread need the manager right away,
+   * it's gone before connectAsync() and after disconnectAsync()
+   */
+  private boolean rejectIfNotConnected(Promise promise) {
     if (mBillingManager != null) {
-      mBillingManager.destroy();
-      mBillingManager = null;
+      return false;
     }
-    promise.resolve(null);
+    promise.reject(NOT_CONNECTED_CODE, "Must be connected to Play Store, call connectAsync() first");
+    return true;
+  }
+
+  /**
+   * Rejects the promise with DeadlinePromise.TIMEOUT_CODE when the method doesn't settle it within
+   * its configured timeout. Its cancellation has to be passed to the billing manager along with it
+   */
+  private DeadlinePromise withDeadline(String method, Promise promise) {
+    Long timeoutMs = mRequestTimeoutsMs.get(method);
+    return new DeadlinePromise(promise, method, timeoutMs != null ? timeoutMs : mRequestTimeoutMs);
+  }
+
+  /**
+   * Binds the billing service on the billing thread once the main thread has nothing else to do,
+   * i.e. after the first frames of the app were drawn
+   */
+  private void prebindWhenIdle() {
+    Looper.getMainLooper().getQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+      @Override
+      public boolean queueIdle() {
+        BillingManager billingManager = mBillingManager;
+        if (billingManager != null) {
+          billingManager.prebind();
+        }
+        // Only once
+        return false;
+      }
+    });
+  }
+
+  /**
+   * (Re)starts the periodic metrics event, or stops it when it's disabled or we're disconnected
+   */
+  private synchronized void scheduleMetricsEvents() {
+    if (mMetricsEvents != null) {
+      mMetricsEvents.cancel(false);
+      mMetricsEvents = null;
+    }
+    if (mMetricsEventIntervalMs <= 0 || mBillingManager == null) {
+      return;
+    }
+    if (mMetricsScheduler == null) {
+      mMetricsScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "ExpoInAppPurchases-metrics");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    final EventEmitter eventEmitter = mEventEmitter;
+    mMetricsEvents = mMetricsScheduler.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        // Every event covers the interval since the previous one
+        eventEmitter.emit(BILLING_METRICS_EVENT, SharedBillingManager.getBillingMetrics().toBundle(true));
+      }
+    }, mMetricsEventIntervalMs, mMetricsEventIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Replaces the executor billing work and Billing library callbacks run on. It has to be serial,
+   * since BillingManager uses its plain fields only there. Takes effect on the next connectAsync()
+   */
+  public static synchronized void setBillingExecutor(Executor executor) {
+    sBillingExecutor = executor;
+  }
+
+  /**
+   * Replaces the backend used instead of Play Store, e.g. with a scripted one in instrumented tests.
+   * Takes effect on the next connectAsync()
+   */
+  public static synchronized void setBillingBackendFactory(BillingBackend.Factory factory) {
+    sBillingBackendFactory = factory != null ? factory : PlayBillingBackend.FACTORY;
+  }
+
+  /**
+   * Verifies purchases with the given validator when no public key was passed to configureAsync(),
+   * e.g. to check them against keys fetched at runtime. Takes effect on the next connectAsync()
+   */
+  public static synchronized void setPurchaseValidator(PurchaseVerifier.Validator validator) {
+    sPurchaseValidator = validator;
+  }
+
+  private static synchronized PurchaseVerifier.Validator getPurchaseValidator() {
+    return sPurchaseValidator;
+  }
+
+  private static synchronized BillingBackend.Factory getBillingBackendFactory() {
+    return sBillingBackendFactory;
+  }
+
+  private static synchronized Executor getBillingExecutor() {
+    if (sBillingExecutor == null) {
+      sBillingExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "ExpoInAppPurchases-billing");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return sBillingExecutor;
+  }
+
+  /**
+   * Takes a reference to the shared manager unless this module already holds one, so connecting
+   * again from another screen or after a configuration change reuses the existing connection
+   */
+  private void acquireBillingManager() {
+    if (mBillingManager != null) {
+      return;
+    }
+    Trace.beginSection(TRACE_ACQUIRE);
+    try {
+      acquireBillingManagerNow();
+    } finally {
+      Trace.endSection();
+    }
+  }
+
+  private void acquireBillingManagerNow() {
+    mEventEmitter = mModuleRegistry.getModule(EventEmitter.class);
+    mBillingManager = SharedBillingManager.acquire(getContext(), mEventEmitter, getBillingExecutor(),
+      getBillingBackendFactory());
+    mBillingManager.setDeltaPurchaseEvents(mDeltaPurchaseEvents);
+    mBillingManager.setPurchaseEventWindow(mPurchaseEventWindowMs);
+    mBillingManager.configureCircuitBreakers(mCircuitBreakerFailureThreshold, mCircuitBreakerOpenMs, mCircuitBreakerMaxOpenMs);
+    PurchaseVerifier.Validator purchaseValidator = getPurchaseValidator();
+    if (mPurchaseVerifier == null && purchaseValidator != null) {
+      mPurchaseVerifier = new PurchaseVerifier(purchaseValidator);
+    }
+    mBillingManager.setPurchaseVerifier(mPurchaseVerifier);
+    scheduleMetricsEvents();
+  }
+
+  private void releaseBillingManager() {
+    if (mBillingManager == null) {
+      return;
+    }
+    mBillingManager = null;
+    SharedBillingManager.release();
+    scheduleMetricsEvents();
+  }
+
+  private ProductDetailsCache getProductDetailsCache() {
+    return SharedBillingManager.getProductDetailsCache(getContext());
   }
 
   private Activity getCurrentActivity() {
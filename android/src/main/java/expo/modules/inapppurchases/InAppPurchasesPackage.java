@@ -1,6 +1,7 @@
 package expo.modules.inapppurchases;
 
 import android.content.Context;
+import android.os.Trace;
 
 import java.util.Collections;
 import java.util.List;
@@ -9,8 +10,18 @@ import expo.modules.core.BasePackage;
 import expo.modules.core.ExportedModule;
 
 public class InAppPurchasesPackage extends BasePackage {
+  private static final String TRACE_CREATE_MODULE = "ExpoInAppPurchases.createModule";
+
+  /**
+   * Only creates the module, which doesn't touch the billing service until connectAsync()
+   */
   @Override
   public List<ExportedModule> createExportedModules(Context context) {
-    return Collections.singletonList((ExportedModule) new InAppPurchasesModule(context));
+    Trace.beginSection(TRACE_CREATE_MODULE);
+    try {
+      return Collections.singletonList((ExportedModule) new InAppPurchasesModule(context));
+    } finally {
+      Trace.endSection();
+    }
   }
 }
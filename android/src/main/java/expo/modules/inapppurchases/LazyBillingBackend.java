@@ -0,0 +1,132 @@
+package expo.modules.inapppurchases;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Build;
+import android.os.Trace;
+
+import com.android.billingclient.api.AcknowledgePurchaseParams;
+import com.android.billingclient.api.AcknowledgePurchaseResponseListener;
+import com.android.billingclient.api.BillingClientStateListener;
+import com.android.billingclient.api.BillingFlowParams;
+import com.android.billingclient.api.BillingResult;
+import com.android.billingclient.api.ConsumeParams;
+import com.android.billingclient.api.ConsumeResponseListener;
+import com.android.billingclient.api.ProductDetailsResponseListener;
+import com.android.billingclient.api.PurchaseHistoryResponseListener;
+import com.android.billingclient.api.PurchasesResponseListener;
+import com.android.billingclient.api.PurchasesUpdatedListener;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Creates the wrapped backend, i.e. the BillingClient, only when it is first needed, which is when
+ * the billing service is bound, so creating a BillingManager stays cheap during app startup. The
+ * creation and the binding show up in system traces as TRACE_CREATE and TRACE_CONNECT
+ */
+public class LazyBillingBackend implements BillingBackend {
+  public static final String TRACE_CREATE = "ExpoInAppPurchases.createBillingClient";
+  public static final String TRACE_CONNECT = "ExpoInAppPurchases.connect";
+
+  private static final AtomicInteger sTraceCookies = new AtomicInteger();
+
+  private final Factory mFactory;
+  private final Context mContext;
+  private final PurchasesUpdatedListener mListener;
+  private BillingBackend mBackend;
+
+  public LazyBillingBackend(Factory factory, Context context, PurchasesUpdatedListener listener) {
+    mFactory = factory;
+    mContext = context;
+    mListener = listener;
+  }
+
+  private synchronized BillingBackend backend() {
+    if (mBackend == null) {
+      Trace.beginSection(TRACE_CREATE);
+      try {
+        mBackend = mFactory.create(mContext, mListener);
+      } finally {
+        Trace.endSection();
+      }
+    }
+    return mBackend;
+  }
+
+  private synchronized boolean isCreated() {
+    return mBackend != null;
+  }
+
+  @Override
+  public void startConnection(final BillingClientStateListener listener) {
+    final int cookie = sTraceCookies.incrementAndGet();
+    // Async sections can span threads, but only exist from Android 10 on
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      Trace.beginAsyncSection(TRACE_CONNECT, cookie);
+    }
+    backend().startConnection(new BillingClientStateListener() {
+      @Override
+      public void onBillingSetupFinished(@NonNull BillingResult billingResult) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+          Trace.endAsyncSection(TRACE_CONNECT, cookie);
+        }
+        listener.onBillingSetupFinished(billingResult);
+      }
+
+      @Override
+      public void onBillingServiceDisconnected() {
+        listener.onBillingServiceDisconnected();
+      }
+    });
+  }
+
+  @Override
+  public void endConnection() {
+    if (isCreated()) {
+      backend().endConnection();
+    }
+  }
+
+  @Override
+  public boolean isReady() {
+    return isCreated() && backend().isReady();
+  }
+
+  @Override
+  public BillingResult isFeatureSupported(String feature) {
+    return backend().isFeatureSupported(feature);
+  }
+
+  @Override
+  public BillingResult launchBillingFlow(Activity activity, BillingFlowParams params) {
+    return backend().launchBillingFlow(activity, params);
+  }
+
+  @Override
+  public void acknowledgePurchase(AcknowledgePurchaseParams params, AcknowledgePurchaseResponseListener listener) {
+    backend().acknowledgePurchase(params, listener);
+  }
+
+  @Override
+  public void consumeAsync(ConsumeParams params, ConsumeResponseListener listener) {
+    backend().consumeAsync(params, listener);
+  }
+
+  @Override
+  public void queryPurchasesAsync(String skuType, PurchasesResponseListener listener) {
+    backend().queryPurchasesAsync(skuType, listener);
+  }
+
+  @Override
+  public void queryPurchaseHistoryAsync(String skuType, PurchaseHistoryResponseListener listener) {
+    backend().queryPurchaseHistoryAsync(skuType, listener);
+  }
+
+  @Override
+  public void queryProductDetailsAsync(List<ProductQuery> products, ProductDetailsResponseListener listener) {
+    backend().queryProductDetailsAsync(products, listener);
+  }
+}
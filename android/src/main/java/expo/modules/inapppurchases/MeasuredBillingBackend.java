@@ -0,0 +1,138 @@
+package expo.modules.inapppurchases;
+
+import android.app.Activity;
+
+import com.android.billingclient.api.AcknowledgePurchaseParams;
+import com.android.billingclient.api.AcknowledgePurchaseResponseListener;
+import com.android.billingclient.api.BillingClientStateListener;
+import com.android.billingclient.api.BillingFlowParams;
+import com.android.billingclient.api.BillingResult;
+import com.android.billingclient.api.ConsumeParams;
+import com.android.billingclient.api.ConsumeResponseListener;
+import com.android.billingclient.api.ProductDetails;
+import com.android.billingclient.api.ProductDetailsResponseListener;
+import com.android.billingclient.api.Purchase;
+import com.android.billingclient.api.PurchaseHistoryRecord;
+import com.android.billingclient.api.PurchaseHistoryResponseListener;
+import com.android.billingclient.api.PurchasesResponseListener;
+
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import expo.modules.inapppurchases.BillingMetrics.Operation;
+
+/**
+ * Records how long every call to the wrapped backend takes until its listener is called, and with
+ * which response code, see BillingMetrics
+ */
+public class MeasuredBillingBackend implements BillingBackend {
+  private final BillingBackend mBackend;
+  private final BillingMetrics mMetrics;
+
+  public MeasuredBillingBackend(BillingBackend backend, BillingMetrics metrics) {
+    mBackend = backend;
+    mMetrics = metrics;
+  }
+
+  @Override
+  public void startConnection(final BillingClientStateListener listener) {
+    final long startedAt = BillingMetrics.start();
+    mBackend.startConnection(new BillingClientStateListener() {
+      @Override
+      public void onBillingSetupFinished(@NonNull BillingResult billingResult) {
+        mMetrics.record(Operation.START_CONNECTION, startedAt, billingResult.getResponseCode());
+        listener.onBillingSetupFinished(billingResult);
+      }
+
+      @Override
+      public void onBillingServiceDisconnected() {
+        listener.onBillingServiceDisconnected();
+      }
+    });
+  }
+
+  @Override
+  public void endConnection() {
+    mBackend.endConnection();
+  }
+
+  @Override
+  public boolean isReady() {
+    return mBackend.isReady();
+  }
+
+  @Override
+  public BillingResult isFeatureSupported(String feature) {
+    return mBackend.isFeatureSupported(feature);
+  }
+
+  @Override
+  public BillingResult launchBillingFlow(Activity activity, BillingFlowParams params) {
+    long startedAt = BillingMetrics.start();
+    BillingResult billingResult = mBackend.launchBillingFlow(activity, params);
+    mMetrics.record(Operation.LAUNCH_BILLING_FLOW, startedAt, billingResult.getResponseCode());
+    return billingResult;
+  }
+
+  @Override
+  public void acknowledgePurchase(AcknowledgePurchaseParams params, final AcknowledgePurchaseResponseListener listener) {
+    final long startedAt = BillingMetrics.start();
+    mBackend.acknowledgePurchase(params, new AcknowledgePurchaseResponseListener() {
+      @Override
+      public void onAcknowledgePurchaseResponse(@NonNull BillingResult billingResult) {
+        mMetrics.record(Operation.ACKNOWLEDGE_PURCHASE, startedAt, billingResult.getResponseCode());
+        listener.onAcknowledgePurchaseResponse(billingResult);
+      }
+    });
+  }
+
+  @Override
+  public void consumeAsync(ConsumeParams params, final ConsumeResponseListener listener) {
+    final long startedAt = BillingMetrics.start();
+    mBackend.consumeAsync(params, new ConsumeResponseListener() {
+      @Override
+      public void onConsumeResponse(@NonNull BillingResult billingResult, @NonNull String purchaseToken) {
+        mMetrics.record(Operation.CONSUME, startedAt, billingResult.getResponseCode());
+        listener.onConsumeResponse(billingResult, purchaseToken);
+      }
+    });
+  }
+
+  @Override
+  public void queryPurchasesAsync(String skuType, final PurchasesResponseListener listener) {
+    final long startedAt = BillingMetrics.start();
+    mBackend.queryPurchasesAsync(skuType, new PurchasesResponseListener() {
+      @Override
+      public void onQueryPurchasesResponse(@NonNull BillingResult billingResult, @NonNull List<Purchase> purchases) {
+        mMetrics.record(Operation.QUERY_PURCHASES, startedAt, billingResult.getResponseCode());
+        listener.onQueryPurchasesResponse(billingResult, purchases);
+      }
+    });
+  }
+
+  @Override
+  public void queryPurchaseHistoryAsync(String skuType, final PurchaseHistoryResponseListener listener) {
+    final long startedAt = BillingMetrics.start();
+    mBackend.queryPurchaseHistoryAsync(skuType, new PurchaseHistoryResponseListener() {
+      @Override
+      public void onPurchaseHistoryResponse(@NonNull BillingResult billingResult, @Nullable List<PurchaseHistoryRecord> records) {
+        mMetrics.record(Operation.QUERY_PURCHASE_HISTORY, startedAt, billingResult.getResponseCode());
+        listener.onPurchaseHistoryResponse(billingResult, records);
+      }
+    });
+  }
+
+  @Override
+  public void queryProductDetailsAsync(List<ProductQuery> products, final ProductDetailsResponseListener listener) {
+    final long startedAt = BillingMetrics.start();
+    mBackend.queryProductDetailsAsync(products, new ProductDetailsResponseListener() {
+      @Override
+      public void onProductDetailsResponse(@NonNull BillingResult billingResult, @NonNull List<ProductDetails> productDetails) {
+        mMetrics.record(Operation.QUERY_PRODUCT_DETAILS, startedAt, billingResult.getResponseCode());
+        listener.onProductDetailsResponse(billingResult, productDetails);
+      }
+    });
+  }
+}
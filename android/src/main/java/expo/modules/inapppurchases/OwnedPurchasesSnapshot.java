@@ -0,0 +1,223 @@
+package expo.modules.inapppurchases;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.android.billingclient.api.Purchase;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import androidx.annotation.Nullable;
+
+/**
+ * On-device copy of the owned purchases as of the last successful purchases query, so queries can
+ * still be answered, marked as stale, while Play Store can't be reached. Only the original JSON and
+ * signature of every purchase are kept, which is all it takes to recreate them.
+ *
+ * The file is read at once by a background thread when the snapshot is created, and rewritten in the
+ * background after every save. A save replaces the one that is still waiting to be written
+ */
+public class OwnedPurchasesSnapshot {
+  private static final String TAG = "OwnedPurchasesSnapshot";
+  private static final String DIRECTORY_NAME = "ExpoInAppPurchases";
+  private static final String FILE_NAME = "purchases.snapshot";
+  // Snapshots written with another version are ignored, bump it whenever the format changes
+  private static final int VERSION = 1;
+  private static final String VERSION_KEY = "version";
+  private static final String FETCHED_AT_KEY = "fetchedAt";
+  private static final String PURCHASES_KEY = "purchases";
+  private static final String ORIGINAL_JSON_KEY = "json";
+  private static final String SIGNATURE_KEY = "signature";
+  private static final long LOAD_TIMEOUT_MS = 2000;
+
+  /**
+   * The owned purchases together with the time they were fetched from Play Store
+   */
+  public static class Snapshot {
+    public final List<Purchase> purchases;
+    public final long fetchedAt;
+
+    Snapshot(List<Purchase> purchases, long fetchedAt) {
+      this.purchases = Collections.unmodifiableList(purchases);
+      this.fetchedAt = fetchedAt;
+    }
+  }
+
+  private final File mFile;
+  private final ExecutorService mIoExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "ExpoInAppPurchases-snapshot");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+  private final Future<?> mLoaded;
+  @Nullable
+  private Snapshot mSnapshot;
+  @Nullable
+  private Snapshot mPendingWrite;
+
+  private final Runnable mWriteRunnable = new Runnable() {
+    @Override
+    public void run() {
+      write();
+    }
+  };
+
+  public OwnedPurchasesSnapshot(Context context) {
+    File directory = new File(context.getApplicationContext().getFilesDir(), DIRECTORY_NAME);
+    mFile = new File(directory, FILE_NAME);
+    mLoaded = mIoExecutor.submit(new Runnable() {
+      @Override
+      public void run() {
+        load();
+      }
+    });
+  }
+
+  /**
+   * The last saved snapshot, null when purchases were never queried successfully on this device
+   */
+  @Nullable
+  public Snapshot get() {
+    awaitLoaded();
+    synchronized (this) {
+      return mSnapshot;
+    }
+  }
+
+  public void save(List<Purchase> purchases) {
+    Snapshot snapshot = new Snapshot(new ArrayList<>(purchases), System.currentTimeMillis());
+    synchronized (this) {
+      mSnapshot = snapshot;
+      boolean writeScheduled = mPendingWrite != null;
+      mPendingWrite = snapshot;
+      if (writeScheduled) {
+        return;
+      }
+    }
+    mIoExecutor.execute(mWriteRunnable);
+  }
+
+  /**
+   * Waits until the last save was written, e.g. before another snapshot reads the same file
+   */
+  void awaitWritten() {
+    try {
+      mIoExecutor.submit(mWriteRunnable).get(LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      Log.w(TAG, "Owned purchases snapshot wasn't written", e);
+    }
+  }
+
+  private void awaitLoaded() {
+    try {
+      mLoaded.get(LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      Log.w(TAG, "Owned purchases snapshot wasn't loaded", e);
+    }
+  }
+
+  private void load() {
+    if (!mFile.exists()) {
+      return;
+    }
+    Snapshot snapshot;
+    try (DataInputStream in = new DataInputStream(new FileInputStream(mFile))) {
+      byte[] content = new byte[(int) mFile.length()];
+      in.readFully(content);
+      JSONObject json = new JSONObject(new String(content, StandardCharsets.UTF_8));
+      if (json.optInt(VERSION_KEY) != VERSION) {
+        return;
+      }
+      JSONArray array = json.getJSONArray(PURCHASES_KEY);
+      List<Purchase> purchases = new ArrayList<>(array.length());
+      for (int i = 0; i < array.length(); i++) {
+        JSONObject purchase = array.getJSONObject(i);
+        purchases.add(new Purchase(purchase.getString(ORIGINAL_JSON_KEY), purchase.getString(SIGNATURE_KEY)));
+      }
+      snapshot = new Snapshot(purchases, json.getLong(FETCHED_AT_KEY));
+    } catch (IOException | JSONException e) {
+      Log.w(TAG, "Couldn't read the owned purchases snapshot", e);
+      return;
+    }
+
+    synchronized (this) {
+      // A query that finished while we were loading is newer than what's in the file
+      if (mSnapshot == null) {
+        mSnapshot = snapshot;
+      }
+    }
+  }
+
+  private void write() {
+    Snapshot snapshot;
+    synchronized (this) {
+      snapshot = mPendingWrite;
+      mPendingWrite = null;
+    }
+    if (snapshot == null) {
+      return;
+    }
+
+    String content;
+    try {
+      JSONArray purchases = new JSONArray();
+      for (Purchase purchase : snapshot.purchases) {
+        purchases.put(new JSONObject()
+          .put(ORIGINAL_JSON_KEY, purchase.getOriginalJson())
+          .put(SIGNATURE_KEY, purchase.getSignature()));
+      }
+      content = new JSONObject()
+        .put(VERSION_KEY, VERSION)
+        .put(FETCHED_AT_KEY, snapshot.fetchedAt)
+        .put(PURCHASES_KEY, purchases)
+        .toString();
+    } catch (JSONException e) {
+      Log.w(TAG, "Couldn't write the owned purchases snapshot", e);
+      return;
+    }
+
+    File directory = mFile.getParentFile();
+    if (directory != null && !directory.exists() && !directory.mkdirs()) {
+      Log.w(TAG, "Couldn't create the directory of the owned purchases snapshot");
+      return;
+    }
+    // Written next to the snapshot and renamed over it, so a crash never leaves half a snapshot
+    File written = new File(directory, FILE_NAME + ".tmp");
+    try (FileOutputStream out = new FileOutputStream(written)) {
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+      out.getFD().sync();
+    } catch (IOException e) {
+      Log.w(TAG, "Couldn't write the owned purchases snapshot", e);
+      return;
+    }
+    if (!written.renameTo(mFile)) {
+      Log.w(TAG, "Couldn't replace the owned purchases snapshot");
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package expo.modules.inapppurchases;
+
+import android.app.Activity;
+import android.content.Context;
+
+import com.android.billingclient.api.AcknowledgePurchaseParams;
+import com.android.billingclient.api.AcknowledgePurchaseResponseListener;
+import com.android.billingclient.api.BillingClient;
+import com.android.billingclient.api.BillingClientStateListener;
+import com.android.billingclient.api.BillingFlowParams;
+import com.android.billingclient.api.BillingResult;
+import com.android.billingclient.api.ConsumeParams;
+import com.android.billingclient.api.ConsumeResponseListener;
+import com.android.billingclient.api.ProductDetailsResponseListener;
+import com.android.billingclient.api.PurchaseHistoryResponseListener;
+import com.android.billingclient.api.PurchasesResponseListener;
+import com.android.billingclient.api.PurchasesUpdatedListener;
+import com.android.billingclient.api.QueryProductDetailsParams;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BillingBackend backed by the Play Billing library
+ */
+public class PlayBillingBackend implements BillingBackend {
+  public static final Factory FACTORY = new Factory() {
+    @Override
+    public BillingBackend create(Context context, PurchasesUpdatedListener listener) {
+      return new PlayBillingBackend(context, listener);
+    }
+  };
+
+  private final BillingClient mBillingClient;
+
+  public PlayBillingBackend(Context context, PurchasesUpdatedListener listener) {
+    mBillingClient =
+      BillingClient
+        .newBuilder(context)
+        .enablePendingPurchases()
+        .setListener(listener)
+        .build();
+  }
+
+  @Override
+  public void startConnection(BillingClientStateListener listener) {
+    mBillingClient.startConnection(listener);
+  }
+
+  @Override
+  public void endConnection() {
+    mBillingClient.endConnection();
+  }
+
+  @Override
+  public boolean isReady() {
+    return mBillingClient.isReady();
+  }
+
+  @Override
+  public BillingResult isFeatureSupported(String feature) {
+    return mBillingClient.isFeatureSupported(feature);
+  }
+
+  @Override
+  public BillingResult launchBillingFlow(Activity activity, BillingFlowParams params) {
+    return mBillingClient.launchBillingFlow(activity, params);
+  }
+
+  @Override
+  public void acknowledgePurchase(AcknowledgePurchaseParams params, AcknowledgePurchaseResponseListener listener) {
+    mBillingClient.acknowledgePurchase(params, listener);
+  }
+
+  @Override
+  public void consumeAsync(ConsumeParams params, ConsumeResponseListener listener) {
+    mBillingClient.consumeAsync(params, listener);
+  }
+
+  @Override
+  public void queryPurchasesAsync(String skuType, PurchasesResponseListener listener) {
+    mBillingClient.queryPurchasesAsync(skuType, listener);
+  }
+
+  @Override
+  public void queryPurchaseHistoryAsync(String skuType, PurchaseHistoryResponseListener listener) {
+    mBillingClient.queryPurchaseHistoryAsync(skuType, listener);
+  }
+
+  @Override
+  public void queryProductDetailsAsync(List<ProductQuery> products, ProductDetailsResponseListener listener) {
+    QueryProductDetailsParams params = QueryProductDetailsParams.newBuilder().setProductList(toProductList(products)).build();
+    mBillingClient.queryProductDetailsAsync(params, listener);
+  }
+
+  private static List<QueryProductDetailsParams.Product> toProductList(List<ProductQuery> products) {
+    List<QueryProductDetailsParams.Product> productList = new ArrayList<>(products.size());
+    for (ProductQuery product : products) {
+      productList.add(
+        QueryProductDetailsParams.Product.newBuilder()
+          .setProductId(product.productId)
+          .setProductType(product.productType)
+          .build()
+      );
+    }
+    return productList;
+  }
+}
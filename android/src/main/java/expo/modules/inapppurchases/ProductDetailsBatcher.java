@@ -0,0 +1,198 @@
+package expo.modules.inapppurchases;
+
+import com.android.billingclient.api.BillingResult;
+import com.android.billingclient.api.ProductDetails;
+import com.android.billingclient.api.ProductDetailsResponseListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Deduplicates concurrent ProductDetails queries. Products that are already being queried wait for
+ * the pending query, the remaining ones are merged into the batch that hasn't been sent to Play
+ * Store yet (e.g. while the service is connecting). Every caller gets back only the products it
+ * asked for. A batch whose callers all cancelled is cancelled too
+ */
+public class ProductDetailsBatcher {
+  private final Dispatcher mDispatcher;
+  private final HashMap<String, Batch> mBatchesBySku = new HashMap<>();
+  private Batch mOpenBatch;
+
+  /**
+   * Sends batches to Play Store
+   */
+  public interface Dispatcher {
+    /**
+     * Schedules the request to run once the service is connected, see RequestScheduler
+     */
+    void executeServiceRequest(RequestScheduler.Request request);
+
+    /**
+     * Gives up on a request passed to executeServiceRequest(), see RequestScheduler.cancel()
+     */
+    void cancelServiceRequest(RequestScheduler.Request request);
+
+    /**
+     * Queries the details of the given products, the service is connected at this point
+     */
+    void queryProductDetails(List<String> productIds, ProductDetailsResponseListener listener);
+  }
+
+  public ProductDetailsBatcher(Dispatcher dispatcher) {
+    mDispatcher = dispatcher;
+  }
+
+  /**
+   * @param cancellation Drops the listener, which isn't called afterwards
+   */
+  public void query(List<String> skuList, Cancellation cancellation, final ProductDetailsResponseListener listener) {
+    Set<String> skus = new HashSet<>(skuList);
+    Batch batchToDispatch = null;
+    final Waiter waiter;
+    synchronized (this) {
+      Set<Batch> batches = new LinkedHashSet<>();
+      for (String sku : skus) {
+        Batch batch = mBatchesBySku.get(sku);
+        if (batch == null) {
+          if (mOpenBatch == null) {
+            mOpenBatch = new Batch();
+            batchToDispatch = mOpenBatch;
+          }
+          batch = mOpenBatch;
+          batch.mSkus.add(sku);
+          mBatchesBySku.put(sku, batch);
+        }
+        batches.add(batch);
+      }
+
+      if (batches.isEmpty()) {
+        // Nothing to share, let Play Store answer the request as is
+        batchToDispatch = new Batch();
+        batches.add(batchToDispatch);
+      }
+
+      waiter = new Waiter(skus, batches, new QueryFanIn<>(batches.size(), new QueryFanIn.Callback<ProductDetails>() {
+        @Override
+        public void onComplete(BillingResult billingResult, List<ProductDetails> productDetails) {
+          listener.onProductDetailsResponse(billingResult, productDetails);
+        }
+      }));
+      for (Batch batch : batches) {
+        batch.mWaiters.add(waiter);
+      }
+    }
+
+    if (batchToDispatch != null) {
+      mDispatcher.executeServiceRequest(batchToDispatch);
+    }
+    cancellation.addListener(new Runnable() {
+      @Override
+      public void run() {
+        leave(waiter);
+      }
+    });
+  }
+
+  private void leave(Waiter waiter) {
+    List<Batch> abandoned = new ArrayList<>();
+    synchronized (this) {
+      for (Batch batch : waiter.mBatches) {
+        if (!batch.mWaiters.remove(waiter) || !batch.mWaiters.isEmpty()) {
+          continue;
+        }
+        // Nobody waits for the batch anymore, later queries of its SKUs start a new one
+        batch.forget();
+        abandoned.add(batch);
+      }
+    }
+    for (Batch batch : abandoned) {
+      mDispatcher.cancelServiceRequest(batch);
+    }
+  }
+
+  private class Batch implements RequestScheduler.Request, ProductDetailsResponseListener {
+    private final LinkedHashSet<String> mSkus = new LinkedHashSet<>();
+    private final List<Waiter> mWaiters = new ArrayList<>();
+    private Runnable mDone;
+
+    @Override
+    public void run(Runnable done) {
+      List<String> skuList;
+      synchronized (ProductDetailsBatcher.this) {
+        mDone = done;
+        // From now on new SKUs go to a new batch
+        if (mOpenBatch == this) {
+          mOpenBatch = null;
+        }
+        skuList = new ArrayList<>(mSkus);
+      }
+      mDispatcher.queryProductDetails(skuList, this);
+    }
+
+    /**
+     * Takes the batch off the pending ones, has to be called while holding the lock of the batcher
+     */
+    void forget() {
+      for (String sku : mSkus) {
+        if (mBatchesBySku.get(sku) == this) {
+          mBatchesBySku.remove(sku);
+        }
+      }
+      if (mOpenBatch == this) {
+        mOpenBatch = null;
+      }
+    }
+
+    @Override
+    public void onServiceUnavailable(BillingResult billingResult) {
+      onProductDetailsResponse(billingResult, new ArrayList<ProductDetails>());
+    }
+
+    @Override
+    public void onProductDetailsResponse(@NonNull BillingResult billingResult, @NonNull List<ProductDetails> productDetailsList) {
+      List<Waiter> waiters;
+      Runnable done;
+      synchronized (ProductDetailsBatcher.this) {
+        done = mDone;
+        mDone = null;
+        forget();
+        waiters = new ArrayList<>(mWaiters);
+        mWaiters.clear();
+      }
+      if (done != null) {
+        done.run();
+      }
+      for (Waiter waiter : waiters) {
+        waiter.mFanIn.onQueryFinished(billingResult, waiter.select(productDetailsList));
+      }
+    }
+  }
+
+  private static class Waiter {
+    private final Set<String> mSkus;
+    private final Set<Batch> mBatches;
+    private final QueryFanIn<ProductDetails> mFanIn;
+
+    Waiter(Set<String> skus, Set<Batch> batches, QueryFanIn<ProductDetails> fanIn) {
+      mSkus = skus;
+      mBatches = batches;
+      mFanIn = fanIn;
+    }
+
+    List<ProductDetails> select(List<ProductDetails> productDetailsList) {
+      List<ProductDetails> selected = new ArrayList<>();
+      for (ProductDetails productDetails : productDetailsList) {
+        if (mSkus.contains(productDetails.getProductId())) {
+          selected.add(productDetails);
+        }
+      }
+      return selected;
+    }
+  }
+}
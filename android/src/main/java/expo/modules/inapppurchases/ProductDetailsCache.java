@@ -0,0 +1,271 @@
+package expo.modules.inapppurchases;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.android.billingclient.api.ProductDetails;
+import com.android.billingclient.api.ProductDetails.SubscriptionOfferDetails;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Keeps the ProductDetails returned by Play Store in a bounded in-memory LRU map and mirrors them to
+ * a disk snapshot keyed by product ID and locale, so products can be served without a round trip to
+ * Play across BillingManager instances and app launches. ProductDetails can't be recreated from disk,
+ * so snapshots only hold the product as sent over the bridge
+ */
+public class ProductDetailsCache {
+  private static final String TAG = "ProductDetailsCache";
+  private static final String PREFERENCES_NAME = "expo.modules.inapppurchases.ProductDetailsCache";
+  private static final String FETCHED_AT_KEY = "fetchedAt";
+  private static final String PRODUCT_TYPE_KEY = "productType";
+  private static final String PRODUCT_KEY = "product";
+
+  public static final long DEFAULT_TTL_MS = 4 * 60 * 60 * 1000L;
+  public static final int DEFAULT_MAX_ENTRIES = 256;
+
+  private final SharedPreferences mPreferences;
+  private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+      if (size() > mMaxEntries) {
+        mPreferences.edit().remove(eldest.getKey()).apply();
+        return true;
+      }
+      return false;
+    }
+  };
+  private long mTtlMs = DEFAULT_TTL_MS;
+  private int mMaxEntries = DEFAULT_MAX_ENTRIES;
+
+  /**
+   * A cached product together with the time it was fetched from Play Store and the tokens of its
+   * subscription offers
+   */
+  public static class Entry {
+    /**
+     * Null when the entry was restored from the disk snapshot, the product has to be queried again
+     * before it can be bought
+     */
+    @Nullable
+    public final ProductDetails productDetails;
+    public final String productType;
+    public final long fetchedAt;
+    private final Bundle mBundle;
+    private final Map<String, String> mOfferTokens;
+    @Nullable
+    private final String mDefaultOfferToken;
+
+    Entry(ProductDetails productDetails, long fetchedAt) {
+      this.productDetails = productDetails;
+      this.productType = productDetails.getProductType();
+      this.fetchedAt = fetchedAt;
+      mBundle = BillingFormatter.productToBundle(productDetails);
+
+      List<SubscriptionOfferDetails> offers = productDetails.getSubscriptionOfferDetails();
+      Map<String, String> offerTokens = new HashMap<>();
+      if (offers != null) {
+        for (SubscriptionOfferDetails offer : offers) {
+          offerTokens.put(offerKey(offer.getBasePlanId(), offer.getOfferId()), offer.getOfferToken());
+        }
+      }
+      mOfferTokens = offerTokens;
+      SubscriptionOfferDetails defaultOffer = BillingFormatter.defaultOffer(offers);
+      mDefaultOfferToken = defaultOffer != null ? defaultOffer.getOfferToken() : null;
+    }
+
+    Entry(String productType, Bundle bundle, long fetchedAt) {
+      this.productDetails = null;
+      this.productType = productType;
+      this.fetchedAt = fetchedAt;
+      mBundle = bundle;
+      mOfferTokens = Collections.emptyMap();
+      mDefaultOfferToken = null;
+    }
+
+    /**
+     * The product converted for the bridge. It is converted once and shared, don't modify it
+     */
+    public Bundle toBundle() {
+      return mBundle;
+    }
+
+    /**
+     * Token of the given subscription offer, or of the base plan itself without an offer ID. Without
+     * a base plan ID it's the token of the default offer, see BillingFormatter.defaultOffer()
+     */
+    @Nullable
+    public String getOfferToken(@Nullable String basePlanId, @Nullable String offerId) {
+      if (basePlanId == null) {
+        return mDefaultOfferToken;
+      }
+      return mOfferTokens.get(offerKey(basePlanId, offerId));
+    }
+
+    private static String offerKey(String basePlanId, @Nullable String offerId) {
+      return basePlanId + "/" + (offerId != null ? offerId : "");
+    }
+  }
+
+  public ProductDetailsCache(Context context) {
+    mPreferences = context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+  }
+
+  public synchronized void configure(long ttlMs, int maxEntries) {
+    mTtlMs = ttlMs;
+    mMaxEntries = Math.max(1, maxEntries);
+    while (mEntries.size() > mMaxEntries) {
+      String eldest = mEntries.keySet().iterator().next();
+      mEntries.remove(eldest);
+      mPreferences.edit().remove(eldest).apply();
+    }
+  }
+
+  public synchronized long getTtlMs() {
+    return mTtlMs;
+  }
+
+  public synchronized int getMaxEntries() {
+    return mMaxEntries;
+  }
+
+  /**
+   * Returns the cached entry for the given product in the current locale, falling back to the disk
+   * snapshot when it isn't in memory. Stale entries are returned as well, see {@link #isStale}
+   */
+  @Nullable
+  public synchronized Entry get(String productId) {
+    String key = keyFor(productId);
+    Entry entry = mEntries.get(key);
+    if (entry == null) {
+      entry = readSnapshot(key);
+      if (entry != null) {
+        mEntries.put(key, entry);
+      }
+    }
+    return entry;
+  }
+
+  public synchronized void put(ProductDetails productDetails) {
+    String key = keyFor(productDetails.getProductId());
+    Entry entry = new Entry(productDetails, System.currentTimeMillis());
+    mEntries.put(key, entry);
+    writeSnapshot(key, entry);
+  }
+
+  public synchronized boolean isStale(@NonNull Entry entry) {
+    return System.currentTimeMillis() - entry.fetchedAt > mTtlMs;
+  }
+
+  private static String keyFor(String productId) {
+    return Locale.getDefault().toLanguageTag() + "/" + productId;
+  }
+
+  @Nullable
+  private Entry readSnapshot(String key) {
+    String snapshot = mPreferences.getString(key, null);
+    if (snapshot == null) {
+      return null;
+    }
+    try {
+      JSONObject json = new JSONObject(snapshot);
+      return new Entry(json.getString(PRODUCT_TYPE_KEY), toBundle(json.getJSONObject(PRODUCT_KEY)), json.getLong(FETCHED_AT_KEY));
+    } catch (JSONException e) {
+      Log.w(TAG, "Dropping unreadable ProductDetails snapshot for " + key, e);
+      mPreferences.edit().remove(key).apply();
+      return null;
+    }
+  }
+
+  private void writeSnapshot(String key, Entry entry) {
+    try {
+      JSONObject json = new JSONObject();
+      json.put(FETCHED_AT_KEY, entry.fetchedAt);
+      json.put(PRODUCT_TYPE_KEY, entry.productType);
+      json.put(PRODUCT_KEY, toJson(entry.toBundle()));
+      mPreferences.edit().putString(key, json.toString()).apply();
+    } catch (JSONException e) {
+      Log.w(TAG, "Couldn't write ProductDetails snapshot for " + key, e);
+    }
+  }
+
+  /**
+   * Only handles what BillingFormatter.productToBundle() puts in: values, nested Bundles and lists
+   * of either
+   */
+  private static JSONObject toJson(Bundle bundle) throws JSONException {
+    JSONObject json = new JSONObject();
+    for (String key : bundle.keySet()) {
+      Object value = bundle.get(key);
+      if (value instanceof Bundle) {
+        json.put(key, toJson((Bundle) value));
+      } else if (value instanceof List) {
+        JSONArray array = new JSONArray();
+        for (Object item : (List<?>) value) {
+          array.put(item instanceof Bundle ? toJson((Bundle) item) : item);
+        }
+        json.put(key, array);
+      } else {
+        // put() drops the key for null, but JS tells a null field from a missing one
+        json.put(key, value != null ? value : JSONObject.NULL);
+      }
+    }
+    return json;
+  }
+
+  private static Bundle toBundle(JSONObject json) throws JSONException {
+    Bundle bundle = new Bundle();
+    Iterator<String> keys = json.keys();
+    while (keys.hasNext()) {
+      String key = keys.next();
+      Object value = json.get(key);
+      if (value == JSONObject.NULL) {
+        bundle.putString(key, null);
+      } else if (value instanceof JSONObject) {
+        bundle.putBundle(key, toBundle((JSONObject) value));
+      } else if (value instanceof JSONArray) {
+        JSONArray array = (JSONArray) value;
+        if (array.length() > 0 && array.get(0) instanceof JSONObject) {
+          ArrayList<Bundle> bundles = new ArrayList<>(array.length());
+          for (int i = 0; i < array.length(); i++) {
+            bundles.add(toBundle(array.getJSONObject(i)));
+          }
+          bundle.putParcelableArrayList(key, bundles);
+        } else {
+          ArrayList<String> strings = new ArrayList<>(array.length());
+          for (int i = 0; i < array.length(); i++) {
+            strings.add(array.getString(i));
+          }
+          bundle.putStringArrayList(key, strings);
+        }
+      } else if (value instanceof Integer) {
+        bundle.putInt(key, (Integer) value);
+      } else if (value instanceof Long) {
+        bundle.putLong(key, (Long) value);
+      } else if (value instanceof Double) {
+        bundle.putDouble(key, (Double) value);
+      } else if (value instanceof Boolean) {
+        bundle.putBoolean(key, (Boolean) value);
+      } else if (value instanceof String) {
+        bundle.putString(key, (String) value);
+      }
+    }
+    return bundle;
+  }
+}
@@ -0,0 +1,157 @@
+package expo.modules.inapppurchases;
+
+import com.android.billingclient.api.Purchase;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges the purchase updates that arrive within a window into a single purchases event, so a
+ * restore racing with a purchase or a burst of queries doesn't flood the bridge. The window starts
+ * with the first pending update, so no update waits longer than it. Deltas are merged by purchase
+ * token and numbered again, so every event still has the sequence of the previous one plus one.
+ * Results of purchase flows are flushed right away together with whatever is pending. Only used on the
+ * billing thread, like the plain fields of BillingManager. The timer only posts the flush to its executor
+ */
+public class PurchaseEventCoalescer {
+  public static final long DEFAULT_WINDOW_MS = 50;
+
+  // Only waits out the windows, flushing happens on the executor
+  private static final ScheduledExecutorService sScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "ExpoInAppPurchases-events");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  /**
+   * Receives the merged updates. Both methods are called on every flush, deltas are tracked in either
+   * mode so their sequence stays consistent when the mode changes
+   */
+  public interface Listener {
+    /**
+     * Something was updated, the full list of purchases can be sent
+     */
+    void onPurchasesUpdated();
+
+    /**
+     * What changed since the previous flush, only called when something did
+     */
+    void onPurchasesDelta(PurchaseStore.Delta delta);
+  }
+
+  private final Executor mExecutor;
+  private final Listener mListener;
+  private long mWindowMs = DEFAULT_WINDOW_MS;
+  private boolean mPending;
+  private final LinkedHashMap<String, Purchase> mAdded = new LinkedHashMap<>();
+  private final LinkedHashMap<String, Purchase> mChanged = new LinkedHashMap<>();
+  private final LinkedHashSet<String> mRemoved = new LinkedHashSet<>();
+  private long mSequence;
+  private ScheduledFuture<?> mScheduledFlush;
+
+  private final Runnable mFlushRunnable = new Runnable() {
+    @Override
+    public void run() {
+      flush();
+    }
+  };
+
+  public PurchaseEventCoalescer(Executor executor, Listener listener) {
+    mExecutor = executor;
+    mListener = listener;
+  }
+
+  /**
+   * Updates are sent as they come with a window of 0 or less
+   */
+  public void setWindowMs(long windowMs) {
+    mWindowMs = windowMs;
+  }
+
+  /**
+   * @param immediate Whether to send the update, and the pending ones, right away
+   */
+  public void update(PurchaseStore.Delta delta, boolean immediate) {
+    mPending = true;
+    for (String purchaseToken : delta.removed) {
+      if (mAdded.remove(purchaseToken) == null) {
+        mChanged.remove(purchaseToken);
+        mRemoved.add(purchaseToken);
+      }
+    }
+    for (Purchase purchase : delta.added) {
+      String purchaseToken = purchase.getPurchaseToken();
+      if (mRemoved.remove(purchaseToken)) {
+        mChanged.put(purchaseToken, purchase);
+      } else {
+        mAdded.put(purchaseToken, purchase);
+      }
+    }
+    for (Purchase purchase : delta.changed) {
+      String purchaseToken = purchase.getPurchaseToken();
+      if (mAdded.containsKey(purchaseToken)) {
+        mAdded.put(purchaseToken, purchase);
+      } else {
+        mChanged.put(purchaseToken, purchase);
+      }
+    }
+
+    if (immediate || mWindowMs <= 0) {
+      flush();
+    } else if (mScheduledFlush == null) {
+      mScheduledFlush = sScheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          mExecutor.execute(mFlushRunnable);
+        }
+      }, mWindowMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Sends the pending updates, if any
+   */
+  public void flush() {
+    if (mScheduledFlush != null) {
+      mScheduledFlush.cancel(false);
+      mScheduledFlush = null;
+    }
+    if (!mPending) {
+      return;
+    }
+    mPending = false;
+    mListener.onPurchasesUpdated();
+    if (!mAdded.isEmpty() || !mChanged.isEmpty() || !mRemoved.isEmpty()) {
+      PurchaseStore.Delta delta = new PurchaseStore.Delta(++mSequence, new ArrayList<>(mAdded.values()),
+        new ArrayList<>(mChanged.values()), new ArrayList<>(mRemoved));
+      mAdded.clear();
+      mChanged.clear();
+      mRemoved.clear();
+      mListener.onPurchasesDelta(delta);
+    }
+  }
+
+  /**
+   * Drops the pending updates
+   */
+  public void cancel() {
+    if (mScheduledFlush != null) {
+      mScheduledFlush.cancel(false);
+      mScheduledFlush = null;
+    }
+    mPending = false;
+    mAdded.clear();
+    mChanged.clear();
+    mRemoved.clear();
+  }
+}
@@ -0,0 +1,125 @@
+package expo.modules.inapppurchases;
+
+import com.android.billingclient.api.PurchaseHistoryRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Serves a purchase history page by page. Play Store only returns the whole history at once, so the
+ * first page takes a snapshot of it (newest purchases first) and the cursor of every page points
+ * into that snapshot. Only a few recent snapshots are kept, and only for a limited time. Not thread
+ * safe, it's confined to the billing thread
+ */
+public class PurchaseHistoryPager {
+  public static final int DEFAULT_PAGE_SIZE = 100;
+  public static final int MAX_PAGE_SIZE = 1000;
+  private static final int MAX_SNAPSHOTS = 2;
+  private static final long SNAPSHOT_TTL_MS = 5 * 60 * 1000L;
+
+  private final LinkedHashMap<Long, Snapshot> mSnapshots = new LinkedHashMap<>();
+  private long mNextSnapshotId;
+
+  /**
+   * A page of the history and the cursor of the next one, null after the last page
+   */
+  public static class Page {
+    public final List<PurchaseHistoryRecord> records;
+    public final int total;
+    @Nullable
+    public final String nextCursor;
+
+    Page(List<PurchaseHistoryRecord> records, int total, @Nullable String nextCursor) {
+      this.records = records;
+      this.total = total;
+      this.nextCursor = nextCursor;
+    }
+  }
+
+  private static class Snapshot {
+    final List<PurchaseHistoryRecord> records;
+    final long createdAt;
+
+    Snapshot(List<PurchaseHistoryRecord> records, long createdAt) {
+      this.records = records;
+      this.createdAt = createdAt;
+    }
+  }
+
+  public static int clampPageSize(int pageSize) {
+    return pageSize <= 0 ? DEFAULT_PAGE_SIZE : Math.min(pageSize, MAX_PAGE_SIZE);
+  }
+
+  /**
+   * Keeps the freshly queried history and returns its first page
+   */
+  public Page start(List<PurchaseHistoryRecord> records, int pageSize) {
+    List<PurchaseHistoryRecord> sorted = new ArrayList<>(records);
+    Collections.sort(sorted, new Comparator<PurchaseHistoryRecord>() {
+      @Override
+      public int compare(PurchaseHistoryRecord a, PurchaseHistoryRecord b) {
+        return Long.compare(b.getPurchaseTime(), a.getPurchaseTime());
+      }
+    });
+    long now = System.currentTimeMillis();
+    evictExpired(now);
+    long snapshotId = mNextSnapshotId++;
+    mSnapshots.put(snapshotId, new Snapshot(sorted, now));
+    while (mSnapshots.size() > MAX_SNAPSHOTS) {
+      mSnapshots.remove(mSnapshots.keySet().iterator().next());
+    }
+    return page(snapshotId, 0, pageSize);
+  }
+
+  /**
+   * Returns the page the cursor points to, or null if its snapshot is gone or it's malformed
+   */
+  @Nullable
+  public Page next(String cursor, int pageSize) {
+    evictExpired(System.currentTimeMillis());
+    int separator = cursor.indexOf(':');
+    if (separator < 0) {
+      return null;
+    }
+    try {
+      long snapshotId = Long.parseLong(cursor.substring(0, separator));
+      int offset = Integer.parseInt(cursor.substring(separator + 1));
+      if (!mSnapshots.containsKey(snapshotId) || offset < 0) {
+        return null;
+      }
+      return page(snapshotId, offset, pageSize);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private Page page(long snapshotId, int offset, int pageSize) {
+    List<PurchaseHistoryRecord> records = mSnapshots.get(snapshotId).records;
+    int end = Math.min(records.size(), offset + clampPageSize(pageSize));
+    int start = Math.min(offset, end);
+    String nextCursor = null;
+    if (end < records.size()) {
+      nextCursor = snapshotId + ":" + end;
+    } else {
+      // Nobody needs the snapshot after its last page
+      mSnapshots.remove(snapshotId);
+    }
+    return new Page(records.subList(start, end), records.size(), nextCursor);
+  }
+
+  private void evictExpired(long now) {
+    Iterator<Map.Entry<Long, Snapshot>> iterator = mSnapshots.entrySet().iterator();
+    while (iterator.hasNext()) {
+      if (now - iterator.next().getValue().createdAt > SNAPSHOT_TTL_MS) {
+        iterator.remove();
+      }
+    }
+  }
+}
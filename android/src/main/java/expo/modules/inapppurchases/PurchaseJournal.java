@@ -0,0 +1,358 @@
+package expo.modules.inapppurchases;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Append-only on-device journal of purchase tokens and their acknowledge/consume state, so that
+ * finishing a purchase that was requested before the process died can be retried on the next
+ * connection instead of Play Store refunding it. A finish is retried at most MAX_FINISH_ATTEMPTS
+ * times and for MAX_ENTRY_AGE_MS after it was first requested, and not at all once Play Store
+ * answered with a failure that retrying can't fix.
+ *
+ * Records are buffered and written by a background thread in batches (one fsync per batch), and the
+ * file is rewritten with only the live entries once it has grown past COMPACTION_THRESHOLD lines
+ */
+public class PurchaseJournal {
+  private static final String TAG = "PurchaseJournal";
+  private static final String DIRECTORY_NAME = "ExpoInAppPurchases";
+  private static final String FILE_NAME = "purchases.journal";
+  private static final String SEPARATOR = "\t";
+
+  public static final long FLUSH_DELAY_MS = 200;
+  public static final int MAX_BATCH_SIZE = 32;
+  public static final int COMPACTION_THRESHOLD = 512;
+  // Play Store refunds purchases that weren't acknowledged within 3 days
+  public static final long MAX_ENTRY_AGE_MS = 3 * 24 * 60 * 60 * 1000L;
+  public static final int MAX_FINISH_ATTEMPTS = 5;
+  private static final long LOAD_TIMEOUT_MS = 2000;
+
+  public enum State {
+    ACKNOWLEDGING("A"),
+    CONSUMING("C"),
+    FINISHED("F"),
+    FAILED("X");
+
+    private final String mCode;
+
+    State(String code) {
+      mCode = code;
+    }
+
+    @Nullable
+    static State fromCode(String code) {
+      for (State state : values()) {
+        if (state.mCode.equals(code)) {
+          return state;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Receives the purchases whose finish has to be retried, see getPendingFinishes()
+   */
+  public interface PendingFinishesListener {
+    void onPendingFinishes(Map<String, Boolean> pendingFinishes);
+  }
+
+  private static class Entry {
+    final State state;
+    // When the purchase entered the state, a repeated finish request keeps the time of the first one
+    final long since;
+    final int attempts;
+
+    Entry(State state, long since, int attempts) {
+      this.state = state;
+      this.since = since;
+      this.attempts = attempts;
+    }
+
+    boolean isPending() {
+      return state == State.ACKNOWLEDGING || state == State.CONSUMING;
+    }
+  }
+
+  private final File mFile;
+  private final ScheduledExecutorService mIoExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "ExpoInAppPurchases-journal");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+  private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>();
+  private final List<String> mPendingLines = new ArrayList<>();
+  private final Future<?> mLoaded;
+  private int mLinesInFile;
+
+  private final Runnable mFlushRunnable = new Runnable() {
+    @Override
+    public void run() {
+      flush();
+    }
+  };
+
+  public PurchaseJournal(Context context) {
+    File directory = new File(context.getApplicationContext().getFilesDir(), DIRECTORY_NAME);
+    mFile = new File(directory, FILE_NAME);
+    mLoaded = mIoExecutor.submit(new Runnable() {
+      @Override
+      public void run() {
+        load();
+      }
+    });
+  }
+
+  public void recordFinishRequested(String purchaseToken, boolean consume) {
+    append(purchaseToken, consume ? State.CONSUMING : State.ACKNOWLEDGING);
+  }
+
+  /**
+   * Records how Play Store answered the finish: it's done when it succeeded, and given up on when
+   * retrying can't help, see isTerminalFailure(). Otherwise it stays pending
+   */
+  public void recordFinishResult(String purchaseToken, int responseCode) {
+    if (responseCode == BillingResponseCode.OK) {
+      append(purchaseToken, State.FINISHED);
+    } else if (isTerminalFailure(responseCode)) {
+      append(purchaseToken, State.FAILED);
+    }
+  }
+
+  /**
+   * Returns the purchases whose acknowledge/consume was requested but never completed, mapped to
+   * whether they need to be consumed. Finishes that ran out of attempts or time are left out
+   */
+  public Map<String, Boolean> getPendingFinishes() {
+    awaitLoaded();
+    return pendingFinishes();
+  }
+
+  /**
+   * Like getPendingFinishes(), but doesn't wait for the journal to be read from disk. The listener
+   * is called on the journal thread once it has been
+   */
+  public void getPendingFinishes(final PendingFinishesListener listener) {
+    // Loading was the first task of the journal thread, so it's done by the time this one runs
+    mIoExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        listener.onPendingFinishes(pendingFinishes());
+      }
+    });
+  }
+
+  private Map<String, Boolean> pendingFinishes() {
+    long oldestAllowed = System.currentTimeMillis() - MAX_ENTRY_AGE_MS;
+    Map<String, Boolean> pending = new LinkedHashMap<>();
+    synchronized (this) {
+      for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+        Entry value = entry.getValue();
+        if (!value.isPending()) {
+          continue;
+        }
+        if (value.attempts >= MAX_FINISH_ATTEMPTS || value.since < oldestAllowed) {
+          Log.w(TAG, "Giving up on finishing a purchase after " + value.attempts + " attempts");
+          continue;
+        }
+        pending.put(entry.getKey(), value.state == State.CONSUMING);
+      }
+    }
+    return pending;
+  }
+
+  /**
+   * Whether finishing a purchase again can't succeed after Play Store answered with the code, e.g.
+   * because it isn't owned anymore
+   */
+  static boolean isTerminalFailure(int responseCode) {
+    switch (responseCode) {
+      case BillingResponseCode.ITEM_NOT_OWNED:
+      case BillingResponseCode.ITEM_UNAVAILABLE:
+      case BillingResponseCode.DEVELOPER_ERROR:
+      case BillingResponseCode.FEATURE_NOT_SUPPORTED:
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Writes whatever is buffered and waits for it, e.g. before another journal reads the same file
+   */
+  void awaitWritten() {
+    try {
+      mIoExecutor.submit(mFlushRunnable).get(LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      Log.w(TAG, "Purchase journal wasn't written", e);
+    }
+  }
+
+  private void append(String purchaseToken, State state) {
+    long now = System.currentTimeMillis();
+    synchronized (this) {
+      Entry previous = mEntries.get(purchaseToken);
+      Entry entry = previous != null && previous.isPending() && state == previous.state
+        ? new Entry(state, previous.since, previous.attempts + 1)
+        : new Entry(state, now, 1);
+      mEntries.put(purchaseToken, entry);
+      mPendingLines.add(toLine(purchaseToken, entry));
+      if (mPendingLines.size() >= MAX_BATCH_SIZE) {
+        mIoExecutor.execute(mFlushRunnable);
+      } else if (mPendingLines.size() == 1) {
+        mIoExecutor.schedule(mFlushRunnable, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  private void awaitLoaded() {
+    try {
+      mLoaded.get(LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      Log.w(TAG, "Purchase journal wasn't loaded", e);
+    }
+  }
+
+  private void load() {
+    if (!mFile.exists()) {
+      return;
+    }
+    LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    int lines = 0;
+    try (BufferedReader reader = new BufferedReader(new FileReader(mFile))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines++;
+        String[] fields = line.split(SEPARATOR);
+        // Records of older versions don't count attempts, and received purchases aren't recorded anymore
+        State state = fields.length == 3 || fields.length == 4 ? State.fromCode(fields[0]) : null;
+        if (state == null) {
+          // Most likely a torn write at the end of the file
+          continue;
+        }
+        try {
+          int attempts = fields.length == 4 ? Integer.parseInt(fields[3]) : 1;
+          entries.put(fields[1], new Entry(state, Long.parseLong(fields[2]), attempts));
+        } catch (NumberFormatException e) {
+          Log.w(TAG, "Skipping malformed journal record");
+        }
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Couldn't read the purchase journal", e);
+    }
+
+    synchronized (this) {
+      mLinesInFile = lines;
+      // Anything recorded while we were loading is newer than what's in the file
+      for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+        if (!mEntries.containsKey(entry.getKey())) {
+          mEntries.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+  }
+
+  private void flush() {
+    List<String> lines;
+    synchronized (this) {
+      if (mPendingLines.isEmpty()) {
+        return;
+      }
+      lines = new ArrayList<>(mPendingLines);
+      mPendingLines.clear();
+    }
+
+    StringBuilder batch = new StringBuilder();
+    for (String line : lines) {
+      batch.append(line).append('\n');
+    }
+    if (write(mFile, batch.toString(), true)) {
+      mLinesInFile += lines.size();
+    }
+
+    int liveEntries;
+    synchronized (this) {
+      liveEntries = mEntries.size();
+    }
+    if (mLinesInFile > COMPACTION_THRESHOLD && mLinesInFile > 2 * liveEntries) {
+      compact();
+    }
+  }
+
+  /**
+   * Rewrites the journal keeping a single record for every purchase that still needs attention
+   */
+  private void compact() {
+    long oldestAllowed = System.currentTimeMillis() - MAX_ENTRY_AGE_MS;
+    StringBuilder snapshot = new StringBuilder();
+    int lines = 0;
+    synchronized (this) {
+      Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<String, Entry> entry = iterator.next();
+        Entry value = entry.getValue();
+        if (!value.isPending() || value.since < oldestAllowed) {
+          iterator.remove();
+          continue;
+        }
+        snapshot.append(toLine(entry.getKey(), value)).append('\n');
+        lines++;
+      }
+    }
+
+    File compacted = new File(mFile.getParentFile(), FILE_NAME + ".tmp");
+    if (write(compacted, snapshot.toString(), false) && compacted.renameTo(mFile)) {
+      mLinesInFile = lines;
+    } else {
+      Log.w(TAG, "Couldn't compact the purchase journal");
+    }
+  }
+
+  private static String toLine(String purchaseToken, Entry entry) {
+    return entry.state.mCode + SEPARATOR + purchaseToken + SEPARATOR + entry.since + SEPARATOR + entry.attempts;
+  }
+
+  private static boolean write(File file, String content, boolean append) {
+    File directory = file.getParentFile();
+    if (directory != null && !directory.exists() && !directory.mkdirs()) {
+      return false;
+    }
+    try (FileOutputStream out = new FileOutputStream(file, append)) {
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+      out.getFD().sync();
+      return true;
+    } catch (IOException e) {
+      Log.w(TAG, "Couldn't write the purchase journal", e);
+      return false;
+    }
+  }
+}
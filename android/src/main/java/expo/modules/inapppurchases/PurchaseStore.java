@@ -0,0 +1,96 @@
+package expo.modules.inapppurchases;
+
+import com.android.billingclient.api.Purchase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Latest known state of every purchase, keyed by purchase token. Updates are turned into deltas
+ * (added, changed and removed purchases) tagged with a monotonically increasing sequence number, so
+ * listeners can tell when they missed one
+ */
+public class PurchaseStore {
+  private final LinkedHashMap<String, Purchase> mPurchases = new LinkedHashMap<>();
+  private long mSequence;
+
+  /**
+   * What changed in the store with a single update
+   */
+  public static class Delta {
+    public final long sequence;
+    public final List<Purchase> added;
+    public final List<Purchase> changed;
+    public final List<String> removed;
+
+    Delta(long sequence, List<Purchase> added, List<Purchase> changed, List<String> removed) {
+      this.sequence = sequence;
+      this.added = added;
+      this.changed = changed;
+      this.removed = removed;
+    }
+
+    public boolean isEmpty() {
+      return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+    }
+  }
+
+  /**
+   * Merges purchases reported by Play Store, e.g. after a billing flow
+   */
+  public synchronized Delta update(List<Purchase> purchases) {
+    return apply(purchases, false);
+  }
+
+  /**
+   * Replaces the whole store with the complete list of owned purchases, purchases missing from it
+   * are reported as removed
+   */
+  public synchronized Delta replaceAll(List<Purchase> purchases) {
+    return apply(purchases, true);
+  }
+
+  public synchronized List<Purchase> getAll() {
+    return new ArrayList<>(mPurchases.values());
+  }
+
+  private Delta apply(List<Purchase> purchases, boolean complete) {
+    List<Purchase> added = new ArrayList<>();
+    List<Purchase> changed = new ArrayList<>();
+    List<String> removed = new ArrayList<>();
+    Set<String> seen = new HashSet<>();
+
+    for (Purchase purchase : purchases) {
+      String purchaseToken = purchase.getPurchaseToken();
+      seen.add(purchaseToken);
+      Purchase previous = mPurchases.put(purchaseToken, purchase);
+      if (previous == null) {
+        added.add(purchase);
+      } else if (!previous.getOriginalJson().equals(purchase.getOriginalJson())) {
+        changed.add(purchase);
+      }
+    }
+
+    if (complete) {
+      Iterator<Map.Entry<String, Purchase>> iterator = mPurchases.entrySet().iterator();
+      while (iterator.hasNext()) {
+        String purchaseToken = iterator.next().getKey();
+        if (!seen.contains(purchaseToken)) {
+          iterator.remove();
+          removed.add(purchaseToken);
+        }
+      }
+    }
+
+    if (added.isEmpty() && changed.isEmpty() && removed.isEmpty()) {
+      return new Delta(mSequence, Collections.<Purchase>emptyList(), Collections.<Purchase>emptyList(), Collections.<String>emptyList());
+    }
+    return new Delta(++mSequence, added, changed, removed);
+  }
+}
@@ -0,0 +1,102 @@
+package expo.modules.inapppurchases;
+
+import android.text.TextUtils;
+import android.util.Base64;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Checks the signature Play Store puts on every purchase and remembers the outcome per purchase
+ * token, so every purchase is checked once no matter how often it is queried or reported. It is a
+ * first filter that lets the backend skip tokens it already trusts, not a replacement for
+ * verifying purchases on the server
+ */
+public class PurchaseVerifier {
+  public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+  private static final String KEY_ALGORITHM = "RSA";
+  private static final String SIGNATURE_ALGORITHM = "SHA1withRSA";
+
+  /**
+   * Decides whether the signed data of a purchase is genuine
+   */
+  public interface Validator {
+    boolean isValid(String originalJson, String signature);
+  }
+
+  private static class Result {
+    final String signature;
+    final boolean valid;
+
+    Result(String signature, boolean valid) {
+      this.signature = signature;
+      this.valid = valid;
+    }
+  }
+
+  private final Validator mValidator;
+  private final LinkedHashMap<String, Result> mResults = new LinkedHashMap<String, Result>(64, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+      return size() > DEFAULT_MAX_ENTRIES;
+    }
+  };
+
+  public PurchaseVerifier(Validator validator) {
+    mValidator = validator;
+  }
+
+  /**
+   * Validator checking signatures against the Base64-encoded RSA public key of the app from Play
+   * Console
+   *
+   * @throws IllegalArgumentException if the key can't be read
+   */
+  public static Validator rsa(String base64PublicKey) {
+    final PublicKey publicKey;
+    try {
+      byte[] encodedKey = Base64.decode(base64PublicKey, Base64.DEFAULT);
+      publicKey = KeyFactory.getInstance(KEY_ALGORITHM).generatePublic(new X509EncodedKeySpec(encodedKey));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalArgumentException("Invalid public key", e);
+    }
+    return new Validator() {
+      @Override
+      public boolean isValid(String originalJson, String signature) {
+        if (TextUtils.isEmpty(originalJson) || TextUtils.isEmpty(signature)) {
+          return false;
+        }
+        try {
+          // Signature instances aren't thread safe, and they're cheap compared to the check itself
+          Signature verifier = Signature.getInstance(SIGNATURE_ALGORITHM);
+          verifier.initVerify(publicKey);
+          verifier.update(originalJson.getBytes(StandardCharsets.UTF_8));
+          return verifier.verify(Base64.decode(signature, Base64.DEFAULT));
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+          return false;
+        }
+      }
+    };
+  }
+
+  /**
+   * Whether the purchase with the given token carries a valid signature. The data of a purchase
+   * changes, e.g. once it's acknowledged, and is signed again, so results are only reused for the
+   * same signature
+   */
+  public synchronized boolean verify(String purchaseToken, String originalJson, String signature) {
+    Result result = mResults.get(purchaseToken);
+    if (result == null || !TextUtils.equals(result.signature, signature)) {
+      result = new Result(signature, mValidator.isValid(originalJson, signature));
+      mResults.put(purchaseToken, result);
+    }
+    return result.valid;
+  }
+}
@@ -0,0 +1,65 @@
+package expo.modules.inapppurchases;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.BillingResult;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Joins the results of queries that were started concurrently (usually one per SKU type) and
+ * reports them once, after the last of them has completed. Responses may arrive on any thread
+ */
+public class QueryFanIn<T> {
+  private final AtomicInteger mPendingQueries;
+  private final ConcurrentLinkedQueue<T> mResults = new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<BillingResult> mBillingResults = new ConcurrentLinkedQueue<>();
+  private final Callback<T> mCallback;
+
+  /**
+   * Listener to the aggregated result of all queries
+   */
+  public interface Callback<T> {
+    void onComplete(BillingResult billingResult, List<T> results);
+  }
+
+  public QueryFanIn(int queries, Callback<T> callback) {
+    if (queries < 1) {
+      throw new IllegalArgumentException("At least one query is required, got " + queries);
+    }
+    mPendingQueries = new AtomicInteger(queries);
+    mCallback = callback;
+  }
+
+  /**
+   * Records the response of a single query. Results of unsuccessful queries are discarded
+   */
+  public void onQueryFinished(@NonNull BillingResult billingResult, @Nullable List<T> results) {
+    if (billingResult.getResponseCode() == BillingResponseCode.OK && results != null) {
+      mResults.addAll(results);
+    }
+    mBillingResults.add(billingResult);
+    if (mPendingQueries.decrementAndGet() == 0) {
+      mCallback.onComplete(aggregateBillingResults(mBillingResults), new ArrayList<>(mResults));
+    }
+  }
+
+  /**
+   * Picks the first unsuccessful result, or any of them if all queries succeeded
+   */
+  @NonNull
+  public static BillingResult aggregateBillingResults(@NonNull Collection<BillingResult> billingResults) {
+    for (BillingResult result : billingResults) {
+      if (result.getResponseCode() != BillingResponseCode.OK) {
+        return result;
+      }
+    }
+    return billingResults.iterator().next();
+  }
+}
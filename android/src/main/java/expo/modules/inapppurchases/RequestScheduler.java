@@ -0,0 +1,240 @@
+package expo.modules.inapppurchases;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.BillingResult;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Decides when the requests to Play Store are sent to the BillingConnection. Every request belongs to
+ * a priority class with its own limit of requests in flight, and classes are dispatched in order of
+ * priority. Background requests don't start while an interactive one is waiting or in flight, so a
+ * purchase flow doesn't queue up behind catalog prefetches and history refreshes. A keyed background
+ * request supersedes the queued one with the same key, which is cancelled without being run
+ */
+public class RequestScheduler {
+  public enum Priority {
+    // Purchase flows, somebody is looking at a spinner
+    INTERACTIVE(1),
+    // Acknowledging and consuming, Play Store refunds purchases that aren't finished in time
+    FINISH(4),
+    // Queries and prefetches
+    BACKGROUND(2);
+
+    final int maxInFlight;
+
+    Priority(int maxInFlight) {
+      this.maxInFlight = maxInFlight;
+    }
+  }
+
+  /**
+   * A request that needs a connected billing service and a free slot of its priority to run
+   */
+  public interface Request {
+    /**
+     * Runs on the executor of the connection. `done` frees the slot again and has to be called once
+     * Play Store answered, later calls are ignored
+     */
+    void run(Runnable done);
+
+    /**
+     * Called instead of run() when the service couldn't be connected or the scheduler was closed
+     */
+    void onServiceUnavailable(BillingResult billingResult);
+  }
+
+  /**
+   * A background request whose outcome makes a still queued request with the same key pointless
+   */
+  public interface KeyedRequest extends Request {
+    @Nullable
+    String getKey();
+
+    /**
+     * Called instead of run() when a newer request with the same key was queued
+     */
+    void onSuperseded();
+  }
+
+  private final BillingConnection mConnection;
+  private final Executor mExecutor;
+  private final EnumMap<Priority, ArrayDeque<Request>> mQueues = new EnumMap<>(Priority.class);
+  private final int[] mInFlight = new int[Priority.values().length];
+  private final IdentityHashMap<Request, Slot> mDispatched = new IdentityHashMap<>();
+  private boolean mClosed;
+
+  private final Runnable mDispatchRunnable = new Runnable() {
+    @Override
+    public void run() {
+      dispatch();
+    }
+  };
+
+  /**
+   * @param executor Where requests are dispatched once a slot frees up, i.e. the executor of the
+   *                 connection
+   */
+  public RequestScheduler(BillingConnection connection, Executor executor) {
+    mConnection = connection;
+    mExecutor = executor;
+    for (Priority priority : Priority.values()) {
+      mQueues.put(priority, new ArrayDeque<Request>());
+    }
+  }
+
+  /**
+   * Queues the request and dispatches whatever fits in the free slots, has to be called on the
+   * executor
+   */
+  public void execute(Priority priority, Request request) {
+    List<KeyedRequest> superseded = new ArrayList<>();
+    boolean closed;
+    synchronized (this) {
+      closed = mClosed;
+      if (!closed) {
+        ArrayDeque<Request> queue = mQueues.get(priority);
+        String key = priority == Priority.BACKGROUND && request instanceof KeyedRequest ? ((KeyedRequest) request).getKey() : null;
+        if (key != null) {
+          Iterator<Request> queued = queue.iterator();
+          while (queued.hasNext()) {
+            Request other = queued.next();
+            if (other instanceof KeyedRequest && key.equals(((KeyedRequest) other).getKey())) {
+              queued.remove();
+              superseded.add((KeyedRequest) other);
+            }
+          }
+        }
+        queue.add(request);
+      }
+    }
+
+    if (closed) {
+      request.onServiceUnavailable(closedResult());
+      return;
+    }
+    for (KeyedRequest supersededRequest : superseded) {
+      supersededRequest.onSuperseded();
+    }
+    dispatch();
+  }
+
+  /**
+   * Gives up on the request wherever it is: it's taken off the queue, or its slot is freed if it was
+   * dispatched already. It isn't run nor failed afterwards unless it was running already
+   */
+  public void cancel(Request request) {
+    Slot slot;
+    synchronized (this) {
+      for (ArrayDeque<Request> queue : mQueues.values()) {
+        if (queue.remove(request)) {
+          return;
+        }
+      }
+      slot = mDispatched.get(request);
+    }
+    if (slot != null) {
+      mConnection.cancel(slot);
+      slot.release();
+    }
+  }
+
+  /**
+   * Fails every queued request, nothing can be executed afterwards
+   */
+  public void close() {
+    List<Request> requests = new ArrayList<>();
+    synchronized (this) {
+      mClosed = true;
+      for (ArrayDeque<Request> queue : mQueues.values()) {
+        requests.addAll(queue);
+        queue.clear();
+      }
+    }
+    BillingResult rejection = closedResult();
+    for (Request request : requests) {
+      request.onServiceUnavailable(rejection);
+    }
+  }
+
+  private void dispatch() {
+    List<Slot> slots = new ArrayList<>();
+    synchronized (this) {
+      for (Priority priority : Priority.values()) {
+        if (priority == Priority.BACKGROUND && isInteractiveRequestPending()) {
+          break;
+        }
+        ArrayDeque<Request> queue = mQueues.get(priority);
+        while (!queue.isEmpty() && mInFlight[priority.ordinal()] < priority.maxInFlight) {
+          Slot slot = new Slot(priority, queue.poll());
+          mInFlight[priority.ordinal()]++;
+          mDispatched.put(slot.mRequest, slot);
+          slots.add(slot);
+        }
+      }
+    }
+    for (Slot slot : slots) {
+      mConnection.execute(slot);
+    }
+  }
+
+  private boolean isInteractiveRequestPending() {
+    return mInFlight[Priority.INTERACTIVE.ordinal()] > 0 || !mQueues.get(Priority.INTERACTIVE).isEmpty();
+  }
+
+  private static BillingResult closedResult() {
+    return BillingResult.newBuilder()
+      .setResponseCode(BillingResponseCode.SERVICE_DISCONNECTED)
+      .setDebugMessage("Billing client was closed")
+      .build();
+  }
+
+  private class Slot implements BillingConnection.ServiceRequest {
+    private final Priority mPriority;
+    private final Request mRequest;
+    private final AtomicBoolean mReleased = new AtomicBoolean();
+    private final Runnable mDone = new Runnable() {
+      @Override
+      public void run() {
+        release();
+      }
+    };
+
+    Slot(Priority priority, Request request) {
+      mPriority = priority;
+      mRequest = request;
+    }
+
+    @Override
+    public void run() {
+      mRequest.run(mDone);
+    }
+
+    @Override
+    public void onServiceUnavailable(BillingResult billingResult) {
+      release();
+      mRequest.onServiceUnavailable(billingResult);
+    }
+
+    void release() {
+      if (!mReleased.compareAndSet(false, true)) {
+        return;
+      }
+      synchronized (RequestScheduler.this) {
+        mInFlight[mPriority.ordinal()]--;
+        mDispatched.remove(mRequest);
+      }
+      // done() may be called from any thread, dispatching has to happen on the executor
+      mExecutor.execute(mDispatchRunnable);
+    }
+  }
+}
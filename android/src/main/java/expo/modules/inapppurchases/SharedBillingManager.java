@@ -0,0 +1,76 @@
+package expo.modules.inapppurchases;
+
+import android.content.Context;
+
+import java.util.concurrent.Executor;
+
+import expo.modules.core.interfaces.services.EventEmitter;
+
+/**
+ * The process-wide BillingManager and the caches that outlive it. Module instances come and go with
+ * reloads and Activity changes, but they all share one connection to the billing service, bound to
+ * the application context. The manager is reference counted: the first acquire() creates it and the
+ * last release() closes its connection
+ */
+public final class SharedBillingManager {
+  private static final BillingMetrics sBillingMetrics = new BillingMetrics();
+  private static BillingManager sBillingManager;
+  private static int sReferences;
+  private static ProductDetailsCache sProductDetailsCache;
+  private static PurchaseJournal sPurchaseJournal;
+  private static OwnedPurchasesSnapshot sOwnedPurchasesSnapshot;
+
+  private SharedBillingManager() {
+  }
+
+  /**
+   * Returns the shared manager, creating it if needed. Purchase events go to the emitter of the most
+   * recent caller. Every call has to be balanced with a release()
+   */
+  public static synchronized BillingManager acquire(Context context, EventEmitter eventEmitter, Executor executor,
+                                                    BillingBackend.Factory backendFactory) {
+    if (sBillingManager == null) {
+      sBillingManager = new BillingManager(context, eventEmitter, getProductDetailsCache(context),
+        getPurchaseJournal(context), getOwnedPurchasesSnapshot(context), executor, backendFactory, sBillingMetrics);
+    } else {
+      sBillingManager.setEventEmitter(eventEmitter);
+    }
+    sReferences++;
+    return sBillingManager;
+  }
+
+  public static synchronized void release() {
+    if (sReferences == 0) {
+      return;
+    }
+    if (--sReferences == 0) {
+      sBillingManager.destroy();
+      sBillingManager = null;
+    }
+  }
+
+  public static synchronized ProductDetailsCache getProductDetailsCache(Context context) {
+    if (sProductDetailsCache == null) {
+      sProductDetailsCache = new ProductDetailsCache(context.getApplicationContext());
+    }
+    return sProductDetailsCache;
+  }
+
+  public static synchronized PurchaseJournal getPurchaseJournal(Context context) {
+    if (sPurchaseJournal == null) {
+      sPurchaseJournal = new PurchaseJournal(context.getApplicationContext());
+    }
+    return sPurchaseJournal;
+  }
+
+  public static synchronized OwnedPurchasesSnapshot getOwnedPurchasesSnapshot(Context context) {
+    if (sOwnedPurchasesSnapshot == null) {
+      sOwnedPurchasesSnapshot = new OwnedPurchasesSnapshot(context.getApplicationContext());
+    }
+    return sOwnedPurchasesSnapshot;
+  }
+
+  public static BillingMetrics getBillingMetrics() {
+    return sBillingMetrics;
+  }
+}
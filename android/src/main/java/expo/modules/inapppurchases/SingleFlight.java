@@ -0,0 +1,99 @@
+package expo.modules.inapppurchases;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import expo.modules.core.Promise;
+
+/**
+ * Lets concurrent callers of the same request share one pending call. The first caller runs the
+ * request, everybody arriving while it is still pending gets settled with its outcome. Once every
+ * caller cancelled, the shared call is cancelled too and the next caller starts a new one
+ */
+public class SingleFlight {
+  private final HashMap<String, SharedPromise> mInFlight = new HashMap<>();
+
+  /**
+   * The request to run when no other request with the same key is pending
+   */
+  public interface Request {
+    /**
+     * @param cancellation Cancelled when none of the callers waits for the outcome anymore
+     */
+    void run(Promise promise, Cancellation cancellation);
+  }
+
+  public void execute(String key, final Promise promise, Cancellation cancellation, Request request) {
+    final SharedPromise shared;
+    boolean first;
+    synchronized (this) {
+      SharedPromise inFlight = mInFlight.get(key);
+      first = inFlight == null;
+      shared = first ? new SharedPromise(key) : inFlight;
+      shared.mPromises.add(promise);
+      if (first) {
+        mInFlight.put(key, shared);
+      }
+    }
+    cancellation.addListener(new Runnable() {
+      @Override
+      public void run() {
+        shared.leave(promise);
+      }
+    });
+    if (first) {
+      request.run(shared, shared.mCancellation);
+    }
+  }
+
+  private class SharedPromise implements Promise {
+    private final String mKey;
+    private final List<Promise> mPromises = new ArrayList<>();
+    private final Cancellation mCancellation = new Cancellation();
+
+    SharedPromise(String key) {
+      mKey = key;
+    }
+
+    /**
+     * The caller of the promise gave up, the call is cancelled when it was the last one
+     */
+    void leave(Promise promise) {
+      synchronized (SingleFlight.this) {
+        if (!mPromises.remove(promise) || !mPromises.isEmpty()) {
+          return;
+        }
+        if (mInFlight.get(mKey) == this) {
+          mInFlight.remove(mKey);
+        }
+      }
+      mCancellation.cancel();
+    }
+
+    private List<Promise> settle() {
+      synchronized (SingleFlight.this) {
+        if (mInFlight.get(mKey) == this) {
+          mInFlight.remove(mKey);
+        }
+        List<Promise> promises = new ArrayList<>(mPromises);
+        mPromises.clear();
+        return promises;
+      }
+    }
+
+    @Override
+    public void resolve(Object value) {
+      for (Promise promise : settle()) {
+        promise.resolve(value);
+      }
+    }
+
+    @Override
+    public void reject(String code, String message, Throwable e) {
+      for (Promise promise : settle()) {
+        promise.reject(code, message, e);
+      }
+    }
+  }
+}
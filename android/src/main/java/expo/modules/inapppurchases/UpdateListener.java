@@ -18,9 +18,11 @@ import expo.modules.core.Promise;
 public class UpdateListener implements BillingManager.BillingUpdatesListener {
   private static final String TAG = "UpdateListener";
   private EventEmitter mEventEmitter;
+  private final BundleSerializer mBundleSerializer;
 
-  public UpdateListener(EventEmitter eventEmitter) {
+  public UpdateListener(EventEmitter eventEmitter, BundleSerializer bundleSerializer) {
     mEventEmitter = eventEmitter;
+    mBundleSerializer = bundleSerializer;
   }
 
   @Override
@@ -33,9 +35,8 @@ public class UpdateListener implements BillingManager.BillingUpdatesListener {
     response.putInt("responseCode", result.getResponseCode());
     response.putString("token", token);
 
-    Promise promise = BillingManager.promises.get(BillingManager.ACKNOWLEDGING_PURCHASE);
+    Promise promise = BillingManager.promises.remove(token);
     if (promise != null) {
-      BillingManager.promises.put(BillingManager.ACKNOWLEDGING_PURCHASE, null);
       promise.resolve(response);
     }
   }
@@ -43,11 +44,19 @@ public class UpdateListener implements BillingManager.BillingUpdatesListener {
   @Override
   public void onPurchasesUpdated(List<Purchase> purchaseList) {
     Bundle response = new Bundle();
-    ArrayList<Bundle> results = new ArrayList<>();
-    for (Purchase purchase : purchaseList) {
-      results.add(BillingManager.purchaseToBundle(purchase));
-    }
-    response.putParcelableArrayList("results", results);
+    response.putParcelableArrayList("results", mBundleSerializer.purchasesToBundles(purchaseList));
+    response.putInt("responseCode", BillingResponseCode.OK);
+
+    mEventEmitter.emit(BillingManager.PURCHASES_UPDATED_EVENT, response);
+  }
+
+  @Override
+  public void onPurchasesDelta(PurchaseStore.Delta delta) {
+    Bundle response = new Bundle();
+    response.putParcelableArrayList("added", mBundleSerializer.purchasesToBundles(delta.added));
+    response.putParcelableArrayList("changed", mBundleSerializer.purchasesToBundles(delta.changed));
+    response.putStringArrayList("removed", new ArrayList<>(delta.removed));
+    response.putDouble("sequence", delta.sequence);
     response.putInt("responseCode", BillingResponseCode.OK);
 
     mEventEmitter.emit(BillingManager.PURCHASES_UPDATED_EVENT, response);
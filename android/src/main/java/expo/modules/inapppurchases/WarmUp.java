@@ -0,0 +1,75 @@
+package expo.modules.inapppurchases;
+
+import android.os.Bundle;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import expo.modules.core.Promise;
+
+/**
+ * Joins the steps of a warm-up (connecting, fetching products, fetching owned purchases), which are
+ * started together and run back to back as soon as the billing service is connected. The caller's
+ * promise is settled once every step is: rejected with the first rejection, otherwise resolved with
+ * the response of every step under its key and an overall responseCode that is OK only if all of
+ * them succeeded
+ */
+public class WarmUp {
+  private final Promise mPromise;
+  private final AtomicInteger mRemaining;
+  private final Bundle mResponse = new Bundle();
+  private boolean mSucceeded = true;
+  private String mRejectionCode;
+  private String mRejectionMessage;
+  private Throwable mRejectionCause;
+
+  public WarmUp(int steps, Promise promise) {
+    mPromise = promise;
+    mRemaining = new AtomicInteger(steps);
+  }
+
+  /**
+   * The promise a single step settles. Its response is reported under the given key, steps that
+   * resolve with null (like connecting) only count towards completion
+   */
+  public Promise step(final String key) {
+    return new Promise() {
+      @Override
+      public void resolve(Object value) {
+        synchronized (WarmUp.this) {
+          if (value instanceof Bundle) {
+            Bundle response = (Bundle) value;
+            mResponse.putBundle(key, response);
+            mSucceeded &= response.getInt("responseCode", BillingFormatter.ERROR) == BillingFormatter.OK;
+          }
+        }
+        onStepFinished();
+      }
+
+      @Override
+      public void reject(String code, String message, Throwable e) {
+        synchronized (WarmUp.this) {
+          if (mRejectionCode == null) {
+            mRejectionCode = code;
+            mRejectionMessage = message;
+            mRejectionCause = e;
+          }
+        }
+        onStepFinished();
+      }
+    };
+  }
+
+  private void onStepFinished() {
+    if (mRemaining.decrementAndGet() != 0) {
+      return;
+    }
+    synchronized (this) {
+      if (mRejectionCode != null) {
+        mPromise.reject(mRejectionCode, mRejectionMessage, mRejectionCause);
+        return;
+      }
+      mResponse.putInt("responseCode", mSucceeded ? BillingFormatter.OK : BillingFormatter.ERROR);
+      mPromise.resolve(mResponse);
+    }
+  }
+}
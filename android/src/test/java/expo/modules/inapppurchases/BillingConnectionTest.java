@@ -0,0 +1,195 @@
+package expo.modules.inapppurchases;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.BillingResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BillingConnectionTest {
+  private FakeBillingBackend mBackend;
+  private ExecutorService mExecutor;
+  private BillingConnection mConnection;
+  private final List<String> mRan = Collections.synchronizedList(new ArrayList<String>());
+
+  @Before
+  public void setUp() {
+    mBackend = new FakeBillingBackend(new Random(42));
+    mExecutor = Executors.newSingleThreadExecutor();
+    mConnection = new BillingConnection(mBackend, mExecutor, new BillingConnection.Listener() {
+      @Override
+      public void onBillingSetupFinished(BillingResult billingResult) {
+      }
+    });
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    mConnection.close();
+    mExecutor.shutdown();
+    mExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    mBackend.shutdown();
+  }
+
+  @Test
+  public void runsQueuedRequestsInOrderOnceConnected() {
+    mBackend.setLatency(FakeBillingBackend.Operation.START_CONNECTION, FakeBillingBackend.fixed(50));
+    Request first = execute("first");
+    Request second = execute("second");
+    Request third = execute("third");
+
+    first.mPromise.await();
+    second.mPromise.await();
+    third.mPromise.await();
+
+    assertEquals(Arrays.asList("first", "second", "third"), mRan);
+    assertEquals(1, mBackend.getCallCount(FakeBillingBackend.Operation.START_CONNECTION));
+    assertEquals(BillingConnection.State.CONNECTED, mConnection.getState());
+  }
+
+  @Test
+  public void retriesTransientSetupFailures() {
+    mBackend.enqueueResponseCodes(FakeBillingBackend.Operation.START_CONNECTION, BillingResponseCode.SERVICE_UNAVAILABLE);
+
+    execute("request").mPromise.await();
+
+    assertEquals(2, mBackend.getCallCount(FakeBillingBackend.Operation.START_CONNECTION));
+  }
+
+  @Test
+  public void failsQueuedRequestsWhenSetupCantSucceed() {
+    mBackend.enqueueResponseCodes(FakeBillingBackend.Operation.START_CONNECTION, BillingResponseCode.BILLING_UNAVAILABLE);
+
+    Request request = execute("request");
+
+    assertEquals(String.valueOf(BillingResponseCode.BILLING_UNAVAILABLE), request.mPromise.awaitRejection());
+    assertEquals(1, mBackend.getCallCount(FakeBillingBackend.Operation.START_CONNECTION));
+    assertEquals(BillingConnection.State.DISCONNECTED, mConnection.getState());
+    assertTrue(mRan.isEmpty());
+  }
+
+  @Test
+  public void rejectsRequestsBeyondTheQueueLimit() {
+    mBackend.setLatency(FakeBillingBackend.Operation.START_CONNECTION, FakeBillingBackend.fixed(60000));
+    for (int i = 0; i < BillingConnection.MAX_PENDING_REQUESTS; i++) {
+      assertFalse(execute("queued" + i).mPromise.isSettled());
+    }
+
+    Request overflow = execute("overflow");
+
+    assertEquals(String.valueOf(BillingResponseCode.SERVICE_UNAVAILABLE), overflow.mPromise.awaitRejection());
+  }
+
+  @Test
+  public void neitherRunsNorFailsCancelledRequests() {
+    mBackend.setLatency(FakeBillingBackend.Operation.START_CONNECTION, FakeBillingBackend.fixed(50));
+    Request cancelled = execute("cancelled");
+    Request kept = execute("kept");
+
+    assertTrue(mConnection.cancel(cancelled));
+    kept.mPromise.await();
+
+    assertEquals(Collections.singletonList("kept"), mRan);
+    assertFalse(cancelled.mPromise.isSettled());
+    assertFalse(mConnection.cancel(cancelled));
+  }
+
+  @Test
+  public void failsQueuedAndLaterRequestsOnceClosed() {
+    mBackend.setLatency(FakeBillingBackend.Operation.START_CONNECTION, FakeBillingBackend.fixed(60000));
+    Request queued = execute("queued");
+
+    mConnection.close();
+
+    assertEquals(String.valueOf(BillingResponseCode.SERVICE_DISCONNECTED), queued.mPromise.awaitRejection());
+    assertEquals(String.valueOf(BillingResponseCode.SERVICE_DISCONNECTED), execute("late").mPromise.awaitRejection());
+    assertEquals(BillingConnection.State.CLOSED, mConnection.getState());
+  }
+
+  @Test
+  public void ignoresDisconnectsDuringAnAttempt() {
+    mBackend.setLatency(FakeBillingBackend.Operation.START_CONNECTION, FakeBillingBackend.fixed(100));
+    Request request = execute("request");
+
+    mBackend.disconnect();
+    awaitCallbacks();
+
+    assertEquals(BillingConnection.State.CONNECTING, mConnection.getState());
+    request.mPromise.await();
+    assertEquals(1, mBackend.getCallCount(FakeBillingBackend.Operation.START_CONNECTION));
+  }
+
+  @Test
+  public void ignoresDisconnectsDuringABackoff() {
+    mBackend.enqueueResponseCodes(FakeBillingBackend.Operation.START_CONNECTION, BillingResponseCode.SERVICE_UNAVAILABLE);
+    Request request = execute("request");
+    awaitCallbacks();
+
+    mBackend.disconnect();
+    awaitCallbacks();
+
+    assertEquals(1, mBackend.getCallCount(FakeBillingBackend.Operation.START_CONNECTION));
+    request.mPromise.await();
+    assertEquals(2, mBackend.getCallCount(FakeBillingBackend.Operation.START_CONNECTION));
+  }
+
+  private Request execute(String name) {
+    Request request = new Request(name);
+    mConnection.execute(request);
+    return request;
+  }
+
+  /**
+   * Waits until the connection handled every callback the backend delivered by now
+   */
+  private void awaitCallbacks() {
+    mBackend.awaitAnswers();
+    try {
+      mExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+        }
+      }).get(5, TimeUnit.SECONDS);
+    } catch (Exception e) {
+      throw new IllegalStateException("Callbacks weren't handled", e);
+    }
+  }
+
+  /**
+   * Records that it ran and settles its promise, rejected with the response code when the service
+   * was unavailable
+   */
+  private class Request implements BillingConnection.ServiceRequest {
+    final String mName;
+    final TestPromise mPromise = new TestPromise();
+
+    Request(String name) {
+      mName = name;
+    }
+
+    @Override
+    public void run() {
+      mRan.add(mName);
+      mPromise.resolve(mName);
+    }
+
+    @Override
+    public void onServiceUnavailable(BillingResult billingResult) {
+      mPromise.reject(String.valueOf(billingResult.getResponseCode()), billingResult.getDebugMessage(), null);
+    }
+  }
+}
@@ -0,0 +1,419 @@
+package expo.modules.inapppurchases;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.Purchase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import expo.modules.core.interfaces.services.EventEmitter;
+import expo.modules.inapppurchases.FakeBillingBackend.Operation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * The query, consume and reconnect paths of BillingManager, end to end against FakeBillingBackend
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BillingManagerTest {
+  private FakeBillingBackend mBackend;
+  private EventEmitter mEventEmitter;
+  private ExecutorService mExecutor;
+  private ProductDetailsCache mProductDetailsCache;
+  private PurchaseJournal mPurchaseJournal;
+  private BillingManager mBillingManager;
+
+  @Before
+  public void setUp() {
+    Context context = RuntimeEnvironment.getApplication();
+    mBackend = new FakeBillingBackend(new Random(42))
+      .addProduct(TestProducts.inApp("coins"))
+      .addProduct(TestProducts.subscription("premium", "P1M"));
+    mExecutor = Executors.newSingleThreadExecutor();
+    mEventEmitter = mock(EventEmitter.class);
+    mProductDetailsCache = new ProductDetailsCache(context);
+    mPurchaseJournal = new PurchaseJournal(context);
+    mBillingManager = new BillingManager(context, mEventEmitter, mProductDetailsCache,
+      mPurchaseJournal, new OwnedPurchasesSnapshot(context), mExecutor, FakeBillingBackend.factory(mBackend),
+      new BillingMetrics());
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    mBillingManager.destroy();
+    mExecutor.shutdown();
+    mExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    mBackend.shutdown();
+  }
+
+  @Test
+  public void queryPurchasesReturnsThePurchasesOfEveryType() {
+    mBackend.addPurchase("coins", false);
+    mBackend.addPurchase("premium", true);
+
+    Bundle response = queryPurchases();
+
+    assertEquals(BillingFormatter.OK, response.getInt("responseCode"));
+    assertEquals(2, response.getParcelableArrayList("results").size());
+    assertEquals(1, mBackend.getCallCount(Operation.START_CONNECTION));
+    assertEquals(2, mBackend.getCallCount(Operation.QUERY_PURCHASES));
+  }
+
+  @Test
+  public void concurrentPurchaseQueriesShareOneCallPerType() {
+    for (int i = 0; i < 100; i++) {
+      mBackend.addPurchase(i % 2 == 0 ? "coins" : "premium", true);
+    }
+    mBackend.setLatency(Operation.QUERY_PURCHASES, FakeBillingBackend.fixed(50));
+
+    List<TestPromise> promises = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      TestPromise promise = new TestPromise();
+      mBillingManager.queryPurchases(false, promise, Cancellation.NONE);
+      promises.add(promise);
+    }
+
+    for (TestPromise promise : promises) {
+      Bundle response = promise.await();
+      assertEquals(100, response.getParcelableArrayList("results").size());
+    }
+    assertEquals(2, mBackend.getCallCount(Operation.QUERY_PURCHASES));
+  }
+
+  @Test
+  public void queryPurchasesFailsWhenPlayStoreDoes() {
+    mBackend.enqueueResponseCodes(Operation.QUERY_PURCHASES, BillingResponseCode.OK, BillingResponseCode.ERROR);
+
+    TestPromise promise = new TestPromise();
+    mBillingManager.queryPurchases(false, promise, Cancellation.NONE);
+
+    assertEquals("E_QUERY_FAILED", promise.awaitRejection());
+  }
+
+  @Test
+  public void purchaseQueriesRecoverOnceTheCircuitBreakerCloses() throws InterruptedException {
+    mBillingManager.configureCircuitBreakers(1, 50, 1000);
+    mBackend.enqueueResponseCodes(Operation.QUERY_PURCHASES, BillingResponseCode.SERVICE_UNAVAILABLE,
+      BillingResponseCode.SERVICE_UNAVAILABLE);
+    // Both types are queried before the first failure opens the breaker
+    mBackend.setLatency(Operation.QUERY_PURCHASES, FakeBillingBackend.fixed(20));
+
+    TestPromise failed = new TestPromise();
+    mBillingManager.queryPurchases(false, failed, Cancellation.NONE);
+    assertEquals("E_QUERY_FAILED", failed.awaitRejection());
+
+    TestPromise shortCircuited = new TestPromise();
+    mBillingManager.queryPurchases(false, shortCircuited, Cancellation.NONE);
+    assertEquals("E_QUERY_FAILED", shortCircuited.awaitRejection());
+    assertEquals(2, mBackend.getCallCount(Operation.QUERY_PURCHASES));
+
+    Thread.sleep(100);
+    // The probe queries both SKU types, the breaker has to let both calls through
+    assertEquals(BillingFormatter.OK, queryPurchases().getInt("responseCode"));
+    assertEquals(4, mBackend.getCallCount(Operation.QUERY_PURCHASES));
+    assertEquals(BillingFormatter.OK, queryPurchases().getInt("responseCode"));
+    assertEquals(6, mBackend.getCallCount(Operation.QUERY_PURCHASES));
+  }
+
+  @Test
+  public void queryPurchasableItemsQueriesEveryProductTypeSeparately() {
+    Bundle response = queryPurchasableItems("coins", "premium");
+
+    assertEquals(BillingFormatter.OK, response.getInt("responseCode"));
+    assertEquals(2, response.getParcelableArrayList("results").size());
+    assertEquals(2, mBackend.getCallCount(Operation.QUERY_PRODUCT_DETAILS));
+  }
+
+  @Test
+  public void queryPurchasableItemsServesFreshProductsFromTheCache() {
+    queryPurchasableItems("coins");
+    int calls = mBackend.getCallCount(Operation.QUERY_PRODUCT_DETAILS);
+
+    Bundle response = queryPurchasableItems("coins");
+
+    assertEquals(1, response.getParcelableArrayList("results").size());
+    assertEquals(calls, mBackend.getCallCount(Operation.QUERY_PRODUCT_DETAILS));
+  }
+
+  @Test
+  public void queryPurchasableItemsRefreshesStaleProductsAlongWithMissingOnes() throws InterruptedException {
+    mBackend.addProduct(TestProducts.inApp("gems"));
+    mProductDetailsCache.configure(200, ProductDetailsCache.DEFAULT_MAX_ENTRIES);
+    queryPurchasableItems("coins");
+    Thread.sleep(300);
+    queryPurchasableItems("gems");
+    long coinsFetchedAt = mProductDetailsCache.get("coins").fetchedAt;
+    long gemsFetchedAt = mProductDetailsCache.get("gems").fetchedAt;
+    int calls = mBackend.getCallCount(Operation.QUERY_PRODUCT_DETAILS);
+
+    Bundle response = queryPurchasableItems("coins", "gems", "premium");
+
+    assertEquals(3, response.getParcelableArrayList("results").size());
+    // Coins is known to be in app, premium is queried with both types
+    assertEquals(calls + 2, mBackend.getCallCount(Operation.QUERY_PRODUCT_DETAILS));
+    assertTrue(mProductDetailsCache.get("coins").fetchedAt > coinsFetchedAt);
+    assertEquals(gemsFetchedAt, mProductDetailsCache.get("gems").fetchedAt);
+  }
+
+  @Test
+  public void queryPurchasableItemsRefreshesStaleProductsInTheBackground() throws Exception {
+    mBackend.addProduct(TestProducts.inApp("gems"));
+    mProductDetailsCache.configure(200, ProductDetailsCache.DEFAULT_MAX_ENTRIES);
+    queryPurchasableItems("coins");
+    Thread.sleep(300);
+    queryPurchasableItems("gems");
+    long coinsFetchedAt = mProductDetailsCache.get("coins").fetchedAt;
+    long gemsFetchedAt = mProductDetailsCache.get("gems").fetchedAt;
+    int calls = mBackend.getCallCount(Operation.QUERY_PRODUCT_DETAILS);
+
+    Bundle response = queryPurchasableItems("coins", "gems");
+
+    assertEquals(2, response.getParcelableArrayList("results").size());
+    awaitCallCount(Operation.QUERY_PRODUCT_DETAILS, calls + 1);
+    mBackend.awaitAnswers();
+    awaitBillingThread();
+    assertTrue(mProductDetailsCache.get("coins").fetchedAt > coinsFetchedAt);
+    assertEquals(gemsFetchedAt, mProductDetailsCache.get("gems").fetchedAt);
+  }
+
+  @Test
+  public void purchaseEventsCarryEveryPurchaseByDefault() {
+    mBackend.addPurchase("coins", true);
+    queryPurchases();
+    awaitPurchaseEvents(1);
+    mBackend.completePurchase("premium");
+
+    List<Bundle> events = awaitPurchaseEvents(2);
+
+    assertEquals(1, events.get(0).getParcelableArrayList("results").size());
+    assertEquals(2, events.get(1).getParcelableArrayList("results").size());
+    assertFalse(events.get(1).containsKey("added"));
+  }
+
+  @Test
+  public void purchaseEventsCarryOnlyWhatChangedInDeltaMode() {
+    mBillingManager.setDeltaPurchaseEvents(true);
+    mBackend.addPurchase("coins", true);
+    queryPurchases();
+    awaitPurchaseEvents(1);
+    mBackend.completePurchase("premium");
+
+    List<Bundle> events = awaitPurchaseEvents(2);
+
+    assertEquals(1, events.get(0).getParcelableArrayList("added").size());
+    Bundle delta = events.get(1);
+    assertFalse(delta.containsKey("results"));
+    assertEquals(1, delta.getParcelableArrayList("added").size());
+    assertEquals("premium", ((Bundle) delta.getParcelableArrayList("added").get(0)).getString("productId"));
+    assertTrue(delta.getParcelableArrayList("changed").isEmpty());
+    assertTrue(delta.getStringArrayList("removed").isEmpty());
+    assertEquals(2, delta.getDouble("sequence"), 0);
+  }
+
+  @Test
+  public void concurrentFirstHistoryPagesShareOneQuery() {
+    mBackend.addHistory(5);
+    mBackend.setLatency(Operation.QUERY_PURCHASE_HISTORY, FakeBillingBackend.fixed(50));
+
+    TestPromise small = new TestPromise();
+    TestPromise large = new TestPromise();
+    mBillingManager.getPurchaseHistoryPage(null, 2, small, Cancellation.NONE);
+    mBillingManager.getPurchaseHistoryPage(null, 3, large, Cancellation.NONE);
+
+    Bundle smallPage = small.await();
+    Bundle largePage = large.await();
+    assertEquals(2, smallPage.getParcelableArrayList("results").size());
+    assertEquals(3, largePage.getParcelableArrayList("results").size());
+    assertEquals(5, smallPage.getInt("totalCount"));
+    assertEquals(2, mBackend.getCallCount(Operation.QUERY_PURCHASE_HISTORY));
+
+    // Every caller pages through a snapshot of its own
+    TestPromise next = new TestPromise();
+    mBillingManager.getPurchaseHistoryPage(smallPage.getString("nextCursor"), 3, next, Cancellation.NONE);
+    assertEquals(3, next.<Bundle>await().getParcelableArrayList("results").size());
+    TestPromise last = new TestPromise();
+    mBillingManager.getPurchaseHistoryPage(largePage.getString("nextCursor"), 3, last, Cancellation.NONE);
+    assertEquals(2, last.<Bundle>await().getParcelableArrayList("results").size());
+  }
+
+  @Test
+  public void timedOutQueriesFreeTheirSlots() {
+    mBackend.setLatency(Operation.QUERY_PURCHASE_HISTORY, FakeBillingBackend.fixed(60000));
+    // Together they take both background slots, and neither answers before its deadline
+    TestPromise history = new TestPromise();
+    TestPromise page = new TestPromise();
+    DeadlinePromise historyDeadline = new DeadlinePromise(history, "getPurchaseHistoryAsync", 100);
+    DeadlinePromise pageDeadline = new DeadlinePromise(page, "getPurchaseHistoryPageAsync", 100);
+    mBillingManager.queryPurchaseHistoryAsync(historyDeadline, historyDeadline.getCancellation());
+    mBillingManager.getPurchaseHistoryPage(null, 10, pageDeadline, pageDeadline.getCancellation());
+    assertEquals(DeadlinePromise.TIMEOUT_CODE, history.awaitRejection());
+    assertEquals(DeadlinePromise.TIMEOUT_CODE, page.awaitRejection());
+
+    mBackend.setLatency(Operation.QUERY_PURCHASE_HISTORY, FakeBillingBackend.fixed(0));
+    assertEquals(BillingFormatter.OK, queryPurchases().getInt("responseCode"));
+    // The abandoned call isn't shared with later callers
+    TestPromise laterHistory = new TestPromise();
+    mBillingManager.queryPurchaseHistoryAsync(laterHistory, Cancellation.NONE);
+    assertEquals(BillingFormatter.OK, laterHistory.<Bundle>await().getInt("responseCode"));
+  }
+
+  @Test
+  public void consumeAsyncConsumesThePurchase() {
+    Purchase purchase = mBackend.addPurchase("coins", false);
+
+    TestPromise promise = new TestPromise();
+    mBillingManager.consumeAsync(purchase.getPurchaseToken(), promise, Cancellation.NONE);
+
+    Bundle response = promise.await();
+    assertEquals(BillingResponseCode.OK, response.getInt("responseCode"));
+    assertEquals(purchase.getPurchaseToken(), response.getString("token"));
+    assertEquals(0, queryPurchases().getParcelableArrayList("results").size());
+  }
+
+  @Test
+  public void consumeAsyncLetsTheNextCallRetryAFailedConsume() {
+    Purchase purchase = mBackend.addPurchase("coins", false);
+    mBackend.enqueueResponseCodes(Operation.CONSUME, BillingResponseCode.ERROR);
+
+    TestPromise failed = new TestPromise();
+    mBillingManager.consumeAsync(purchase.getPurchaseToken(), failed, Cancellation.NONE);
+    assertEquals(BillingResponseCode.ERROR, failed.<Bundle>await().getInt("responseCode"));
+
+    TestPromise retried = new TestPromise();
+    mBillingManager.consumeAsync(purchase.getPurchaseToken(), retried, Cancellation.NONE);
+    assertEquals(BillingResponseCode.OK, retried.<Bundle>await().getInt("responseCode"));
+    assertEquals(2, mBackend.getCallCount(Operation.CONSUME));
+  }
+
+  @Test
+  public void finishTransactionsConsumesEveryPurchaseUnderLoad() {
+    mBackend.setLatency(Operation.CONSUME, FakeBillingBackend.uniform(0, 5));
+    List<String> purchaseTokens = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      purchaseTokens.add(mBackend.addPurchase("coins", false).getPurchaseToken());
+    }
+
+    TestPromise promise = new TestPromise();
+    mBillingManager.finishTransactionsAsync(purchaseTokens, true, 4, promise, Cancellation.NONE);
+
+    Bundle response = promise.await();
+    assertEquals(BillingFormatter.OK, response.getInt("responseCode"));
+    assertEquals(200, response.getParcelableArrayList("results").size());
+    assertEquals(200, mBackend.getCallCount(Operation.CONSUME));
+    assertEquals(0, queryPurchases().getParcelableArrayList("results").size());
+  }
+
+  @Test
+  public void reconnectsAfterTheServiceDisconnects() throws Exception {
+    mBackend.addPurchase("coins", true);
+    assertEquals(1, queryPurchases().getParcelableArrayList("results").size());
+
+    mBackend.disconnect();
+    mBackend.awaitAnswers();
+    awaitBillingThread();
+
+    assertEquals(1, queryPurchases().getParcelableArrayList("results").size());
+    assertEquals(2, mBackend.getCallCount(Operation.START_CONNECTION));
+  }
+
+  @Test
+  public void replaysTheJournalOnEveryConnection() throws Exception {
+    mPurchaseJournal.recordFinishRequested("token", false);
+    mBackend.enqueueResponseCodes(Operation.ACKNOWLEDGE, BillingResponseCode.SERVICE_UNAVAILABLE);
+
+    queryPurchases();
+    awaitCallCount(Operation.ACKNOWLEDGE, 1);
+    mBackend.disconnect();
+    mBackend.awaitAnswers();
+    awaitBillingThread();
+    queryPurchases();
+
+    awaitCallCount(Operation.ACKNOWLEDGE, 2);
+    assertEquals(2, mBackend.getCallCount(Operation.START_CONNECTION));
+  }
+
+  @Test
+  public void retriesTheConnectionWhilePlayStoreIsUnavailable() {
+    mBackend.enqueueResponseCodes(Operation.START_CONNECTION, BillingResponseCode.SERVICE_UNAVAILABLE);
+
+    TestPromise promise = new TestPromise();
+    mBillingManager.startConnection(promise, Cancellation.NONE);
+
+    promise.await();
+    assertEquals(2, mBackend.getCallCount(Operation.START_CONNECTION));
+  }
+
+  @Test
+  public void failsQueuedRequestsWhenBillingIsUnavailable() {
+    mBackend.enqueueResponseCodes(Operation.START_CONNECTION, BillingResponseCode.BILLING_UNAVAILABLE);
+
+    TestPromise connection = new TestPromise();
+    TestPromise query = new TestPromise();
+    mBillingManager.startConnection(connection, Cancellation.NONE);
+    mBillingManager.queryPurchases(false, query, Cancellation.NONE);
+
+    assertEquals("E_SERVICE_UNAVAILABLE", connection.awaitRejection());
+    assertEquals("E_SERVICE_UNAVAILABLE", query.awaitRejection());
+    assertEquals(1, mBackend.getCallCount(Operation.START_CONNECTION));
+  }
+
+  private List<Bundle> awaitPurchaseEvents(int count) {
+    ArgumentCaptor<Bundle> events = ArgumentCaptor.forClass(Bundle.class);
+    verify(mEventEmitter, timeout(TestPromise.TIMEOUT_MS).times(count))
+      .emit(eq(BillingManager.PURCHASES_UPDATED_EVENT), events.capture());
+    return events.getAllValues();
+  }
+
+  private Bundle queryPurchasableItems(String... productIds) {
+    TestPromise promise = new TestPromise();
+    mBillingManager.queryPurchasableItems(Arrays.asList(productIds), promise, Cancellation.NONE);
+    return promise.await();
+  }
+
+  private Bundle queryPurchases() {
+    TestPromise promise = new TestPromise();
+    mBillingManager.queryPurchases(false, promise, Cancellation.NONE);
+    return promise.await();
+  }
+
+  /**
+   * Waits for calls that aren't tied to a promise, like replayed finishes
+   */
+  private void awaitCallCount(Operation operation, int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TestPromise.TIMEOUT_MS;
+    while (mBackend.getCallCount(operation) < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(count, mBackend.getCallCount(operation));
+  }
+
+  private void awaitBillingThread() throws Exception {
+    mExecutor.submit(new Runnable() {
+      @Override
+      public void run() {
+      }
+    }).get(5, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,105 @@
+package expo.modules.inapppurchases;
+
+import android.os.Bundle;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class BillingMetricsTest {
+  @Test
+  public void histogramIsExactForSmallValues() {
+    BillingMetrics.LatencyHistogram histogram = new BillingMetrics.LatencyHistogram();
+    for (int value = 0; value < 64; value++) {
+      histogram.record(value);
+    }
+
+    assertEquals(31, histogram.getValueAtPercentile(50));
+    assertEquals(63, histogram.getValueAtPercentile(100));
+    assertEquals(0, histogram.getValueAtPercentile(0));
+  }
+
+  @Test
+  public void histogramPercentilesStayWithinTheirRelativeError() {
+    BillingMetrics.LatencyHistogram histogram = new BillingMetrics.LatencyHistogram();
+    Random random = new Random(42);
+    long[] values = new long[10000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (long) Math.exp(random.nextDouble() * Math.log(60000000));
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+
+    for (double percentile : new double[]{50, 90, 99, 99.9}) {
+      long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+      long estimate = histogram.getValueAtPercentile(percentile);
+      assertTrue(percentile + ": " + estimate + " vs " + exact, estimate >= exact);
+      assertTrue(percentile + ": " + estimate + " vs " + exact, estimate - exact <= exact / 32);
+    }
+  }
+
+  @Test
+  public void bucketsCoverEveryValueOnce() {
+    for (long value = 0; value < (1L << 36); value = value * 3 / 2 + 1) {
+      int index = BillingMetrics.LatencyHistogram.indexOf(value);
+      long highest = BillingMetrics.LatencyHistogram.highestEquivalentValue(index);
+      assertTrue(value + " is above " + highest, highest >= value);
+      assertEquals(index, BillingMetrics.LatencyHistogram.indexOf(highest));
+      assertEquals(index + 1, BillingMetrics.LatencyHistogram.indexOf(highest + 1));
+    }
+  }
+
+  @Test
+  public void histogramClampsValuesOutOfRange() {
+    BillingMetrics.LatencyHistogram histogram = new BillingMetrics.LatencyHistogram();
+    histogram.record(-5);
+    histogram.record(Long.MAX_VALUE);
+
+    assertEquals(0, histogram.getValueAtPercentile(50));
+    assertEquals((1L << 36) - 1, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void countsResponseCodesPerOperation() {
+    BillingMetrics metrics = new BillingMetrics();
+    long startedAt = BillingMetrics.start();
+    metrics.record(BillingMetrics.Operation.CONSUME, startedAt, BillingResponseCode.OK);
+    metrics.record(BillingMetrics.Operation.CONSUME, startedAt, BillingResponseCode.OK);
+    metrics.record(BillingMetrics.Operation.CONSUME, startedAt, BillingResponseCode.ITEM_NOT_OWNED);
+    metrics.record(BillingMetrics.Operation.CONSUME, startedAt, 42);
+
+    Bundle operations = metrics.toBundle(false).getBundle("operations");
+
+    assertEquals(1, operations.size());
+    Bundle consume = operations.getBundle("consumeAsync");
+    assertEquals(4, consume.getDouble("count"), 0);
+    assertEquals(2, consume.getDouble("errorCount"), 0);
+    Bundle responseCodes = consume.getBundle("responseCodes");
+    assertEquals(2, responseCodes.getDouble(String.valueOf(BillingResponseCode.OK)), 0);
+    assertEquals(1, responseCodes.getDouble(String.valueOf(BillingResponseCode.ITEM_NOT_OWNED)), 0);
+    assertEquals(1, responseCodes.getDouble("other"), 0);
+  }
+
+  @Test
+  public void startsOverAfterAResettingSnapshot() {
+    BillingMetrics metrics = new BillingMetrics();
+    metrics.record(BillingMetrics.Operation.QUERY_PURCHASES, BillingMetrics.start(), BillingResponseCode.OK);
+
+    Bundle snapshot = metrics.toBundle(true);
+    assertTrue(snapshot.getBundle("operations").containsKey("queryPurchasesAsync"));
+
+    Bundle next = metrics.toBundle(false);
+    assertFalse(next.getBundle("operations").containsKey("queryPurchasesAsync"));
+    assertEquals(snapshot.getDouble("collectedAt"), next.getDouble("since"), 0);
+  }
+}
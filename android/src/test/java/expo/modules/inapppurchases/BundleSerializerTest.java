@@ -0,0 +1,74 @@
+package expo.modules.inapppurchases;
+
+import android.os.Bundle;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class BundleSerializerTest {
+  private final BundleSerializer mSerializer = new BundleSerializer();
+
+  @Test
+  public void reusesTheBundleOfAnUnchangedPurchase() {
+    Bundle bundle = mSerializer.purchaseToBundle(premium("a", false, true).build());
+
+    assertSame(bundle, mSerializer.purchaseToBundle(premium("a", false, true).build()));
+  }
+
+  @Test
+  public void convertsPurchasesAgainWhenAnyFieldChanged() {
+    Bundle bundle = mSerializer.purchaseToBundle(premium("a", false, true).build());
+
+    assertNotSame(bundle, mSerializer.purchaseToBundle(premium("a", true, true).build()));
+    assertNotSame(bundle, mSerializer.purchaseToBundle(premium("a", false, false).build()));
+    assertNotSame(bundle, mSerializer.purchaseToBundle(premium("a", false, true).signature("resigned").build()));
+  }
+
+  @Test
+  public void cachesHistoryRecordsApartFromPurchases() {
+    Bundle purchase = mSerializer.purchaseToBundle(premium("a", true, true).build());
+    Bundle record = mSerializer.purchaseHistoryToBundle(premium("a", true, true).buildHistoryRecord());
+
+    assertNotSame(purchase, record);
+    assertSame(record, mSerializer.purchaseHistoryToBundle(premium("a", true, true).buildHistoryRecord()));
+    assertSame(purchase, mSerializer.purchaseToBundle(premium("a", true, true).build()));
+  }
+
+  @Test
+  public void forgetsEverythingWhenTheVerifierChanges() {
+    Bundle purchase = mSerializer.purchaseToBundle(premium("a", true, true).build());
+    Bundle record = mSerializer.purchaseHistoryToBundle(premium("a", true, true).buildHistoryRecord());
+
+    mSerializer.setVerifier(null);
+
+    assertNotSame(purchase, mSerializer.purchaseToBundle(premium("a", true, true).build()));
+    assertNotSame(record, mSerializer.purchaseHistoryToBundle(premium("a", true, true).buildHistoryRecord()));
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyUsedBundles() {
+    BundleSerializer serializer = new BundleSerializer(2);
+    Bundle a = serializer.purchaseToBundle(premium("a", true, true).build());
+    Bundle b = serializer.purchaseToBundle(premium("b", true, true).build());
+    serializer.purchaseToBundle(premium("a", true, true).build());
+
+    serializer.purchaseToBundle(premium("c", true, true).build());
+
+    assertSame(a, serializer.purchaseToBundle(premium("a", true, true).build()));
+    assertNotSame(b, serializer.purchaseToBundle(premium("b", true, true).build()));
+  }
+
+  private static TestPurchases.Builder premium(String purchaseToken, boolean acknowledged, boolean autoRenewing) {
+    return TestPurchases.builder(purchaseToken)
+      .productId("premium")
+      .purchaseTime(1000)
+      .acknowledged(acknowledged)
+      .autoRenewing(autoRenewing)
+      .signature("signature");
+  }
+}
@@ -0,0 +1,128 @@
+package expo.modules.inapppurchases;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+  private CircuitBreaker mBreaker;
+
+  @Before
+  public void setUp() {
+    mBreaker = new CircuitBreaker();
+    mBreaker.configure(3, 1000, 8000);
+  }
+
+  @Test
+  public void opensAfterTheThresholdAndClosesAfterASuccessfulProbe() {
+    fail(3, 0);
+    assertEquals(CircuitBreaker.State.OPEN, mBreaker.getState());
+    assertEquals(1000, mBreaker.getRetryAt());
+    assertFalse(mBreaker.tryAcquire(999));
+
+    assertTrue(mBreaker.tryAcquire(1000));
+    assertEquals(CircuitBreaker.State.HALF_OPEN, mBreaker.getState());
+    assertFalse(mBreaker.tryAcquire(1001));
+
+    mBreaker.onResult(BillingResponseCode.OK, 1100);
+    assertEquals(CircuitBreaker.State.CLOSED, mBreaker.getState());
+    assertTrue(mBreaker.tryAcquire(1101));
+  }
+
+  @Test
+  public void staysClosedWhileFailuresArentInARow() {
+    fail(2, 0);
+    mBreaker.onResult(BillingResponseCode.OK, 0);
+    fail(2, 0);
+
+    assertEquals(CircuitBreaker.State.CLOSED, mBreaker.getState());
+  }
+
+  @Test
+  public void ignoresFailuresThatArentTransient() {
+    for (int i = 0; i < 5; i++) {
+      assertTrue(mBreaker.tryAcquire(0));
+      mBreaker.onResult(BillingResponseCode.ITEM_NOT_OWNED, 0);
+    }
+
+    assertEquals(CircuitBreaker.State.CLOSED, mBreaker.getState());
+  }
+
+  @Test
+  public void reopensForTwiceAsLongWhenTheProbeFails() {
+    fail(3, 0);
+    assertTrue(mBreaker.tryAcquire(1000));
+    mBreaker.onResult(BillingResponseCode.SERVICE_UNAVAILABLE, 1000);
+
+    assertEquals(CircuitBreaker.State.OPEN, mBreaker.getState());
+    assertEquals(3000, mBreaker.getRetryAt());
+
+    assertTrue(mBreaker.tryAcquire(3000));
+    mBreaker.onResult(BillingResponseCode.ERROR, 3000);
+    assertEquals(7000, mBreaker.getRetryAt());
+
+    assertTrue(mBreaker.tryAcquire(7000));
+    mBreaker.onResult(BillingResponseCode.ERROR, 7000);
+    assertEquals(15000, mBreaker.getRetryAt());
+  }
+
+  @Test
+  public void letsEveryCallOfTheProbeThrough() {
+    mBreaker = new CircuitBreaker(2);
+    mBreaker.configure(1, 1000, 8000);
+    fail(1, 0);
+
+    assertTrue(mBreaker.tryAcquire(1000));
+    assertTrue(mBreaker.tryAcquire(1000));
+    assertFalse(mBreaker.tryAcquire(1000));
+
+    mBreaker.onResult(BillingResponseCode.OK, 1100);
+    mBreaker.onResult(BillingResponseCode.OK, 1100);
+    assertEquals(CircuitBreaker.State.CLOSED, mBreaker.getState());
+  }
+
+  @Test
+  public void countsAFailedProbeOnce() {
+    mBreaker = new CircuitBreaker(2);
+    mBreaker.configure(1, 1000, 8000);
+    fail(1, 0);
+    assertTrue(mBreaker.tryAcquire(1000));
+    assertTrue(mBreaker.tryAcquire(1000));
+
+    mBreaker.onResult(BillingResponseCode.ERROR, 1100);
+    mBreaker.onResult(BillingResponseCode.ERROR, 1100);
+
+    assertEquals(CircuitBreaker.State.OPEN, mBreaker.getState());
+    assertEquals(3100, mBreaker.getRetryAt());
+  }
+
+  @Test
+  public void startsANewProbeWhenTheLastOneNeverAnswered() {
+    fail(3, 0);
+    assertTrue(mBreaker.tryAcquire(1000));
+
+    assertFalse(mBreaker.tryAcquire(8999));
+    assertTrue(mBreaker.tryAcquire(9000));
+  }
+
+  @Test
+  public void neverOpensWithoutAThreshold() {
+    mBreaker.configure(0, 1000, 8000);
+
+    fail(10, 0);
+
+    assertEquals(CircuitBreaker.State.CLOSED, mBreaker.getState());
+  }
+
+  private void fail(int calls, long now) {
+    for (int i = 0; i < calls; i++) {
+      assertTrue(mBreaker.tryAcquire(now));
+      mBreaker.onResult(BillingResponseCode.SERVICE_UNAVAILABLE, now);
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package expo.modules.inapppurchases;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeadlinePromiseTest {
+  @Test
+  public void settlesTheWrappedPromiseInTime() throws InterruptedException {
+    TestPromise promise = new TestPromise();
+    DeadlinePromise deadline = new DeadlinePromise(promise, "getProductsAsync", 50);
+
+    deadline.resolve("products");
+    Thread.sleep(100);
+
+    assertEquals("products", promise.<String>await());
+    assertEquals(1, promise.getSettleCount());
+    assertTrue(deadline.isSettled());
+    assertFalse(deadline.getCancellation().isCancelled());
+  }
+
+  @Test
+  public void rejectsAndCancelsWhenTheDeadlinePasses() {
+    TestPromise promise = new TestPromise();
+    DeadlinePromise deadline = new DeadlinePromise(promise, "getProductsAsync", 50);
+    final AtomicInteger cancelled = new AtomicInteger();
+    deadline.getCancellation().addListener(new Runnable() {
+      @Override
+      public void run() {
+        cancelled.incrementAndGet();
+      }
+    });
+
+    assertEquals(DeadlinePromise.TIMEOUT_CODE, promise.awaitRejection());
+    assertEquals(1, cancelled.get());
+    assertTrue(deadline.getCancellation().isCancelled());
+  }
+
+  @Test
+  public void dropsAnswersThatComeAfterTheDeadline() {
+    TestPromise promise = new TestPromise();
+    DeadlinePromise deadline = new DeadlinePromise(promise, "getProductsAsync", 50);
+    assertEquals(DeadlinePromise.TIMEOUT_CODE, promise.awaitRejection());
+
+    deadline.resolve("products");
+    deadline.reject("E_QUERY_FAILED", "Too late", null);
+
+    assertEquals(1, promise.getSettleCount());
+  }
+
+  @Test
+  public void runsCancellationListenersAddedAfterTheDeadlineRightAway() {
+    TestPromise promise = new TestPromise();
+    DeadlinePromise deadline = new DeadlinePromise(promise, "getProductsAsync", 50);
+    promise.awaitRejection();
+
+    final AtomicInteger cancelled = new AtomicInteger();
+    deadline.getCancellation().addListener(new Runnable() {
+      @Override
+      public void run() {
+        cancelled.incrementAndGet();
+      }
+    });
+
+    assertEquals(1, cancelled.get());
+  }
+
+  @Test
+  public void neverTimesOutWithoutATimeout() throws InterruptedException {
+    TestPromise promise = new TestPromise();
+    DeadlinePromise deadline = new DeadlinePromise(promise, "getProductsAsync", 0);
+
+    Thread.sleep(100);
+
+    assertFalse(promise.isSettled());
+    assertFalse(deadline.getCancellation().isCancelled());
+  }
+}
@@ -0,0 +1,142 @@
+package expo.modules.inapppurchases;
+
+import android.os.Bundle;
+
+import com.android.billingclient.api.Purchase;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class EntitlementIndexTest {
+  private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+  private final AtomicInteger mLookups = new AtomicInteger();
+  private final EntitlementIndex mIndex = new EntitlementIndex(new EntitlementIndex.BillingPeriods() {
+    @Override
+    public String getBillingPeriod(String productId) {
+      mLookups.incrementAndGet();
+      return productId.equals("premium") ? "P1W" : null;
+    }
+  });
+
+  @Test
+  public void tracksWhatTheUserOwns() {
+    mIndex.apply(TestPurchases.added(TestPurchases.builder("a").purchaseTime(1000).build()), true);
+
+    assertTrue(mIndex.hasEntitlement("coins"));
+    assertFalse(mIndex.hasEntitlement("premium"));
+    Bundle snapshot = mIndex.toBundle();
+    assertTrue(snapshot.getBoolean("complete"));
+    assertEquals(1, snapshot.getParcelableArrayList("entitlements").size());
+
+    mIndex.remove("a");
+    assertFalse(mIndex.hasEntitlement("coins"));
+  }
+
+  @Test
+  public void prefersPurchasedOverPendingAndNewerOverOlder() {
+    Purchase pending = TestPurchases.builder("pending").state(TestPurchases.PENDING).purchaseTime(3000).build();
+    Purchase older = TestPurchases.builder("older").purchaseTime(1000).build();
+    Purchase newer = TestPurchases.builder("newer").purchaseTime(2000).build();
+
+    mIndex.apply(TestPurchases.added(pending, older), false);
+    assertTrue(mIndex.hasEntitlement("coins"));
+
+    mIndex.apply(TestPurchases.added(newer), false);
+    mIndex.apply(TestPurchases.removed("older"), false);
+    assertTrue(mIndex.hasEntitlement("coins"));
+
+    mIndex.apply(TestPurchases.removed("newer"), false);
+    assertFalse(mIndex.hasEntitlement("coins"));
+  }
+
+  @Test
+  public void rebuildsTheSnapshotOnlyAfterAChange() {
+    mIndex.apply(TestPurchases.added(TestPurchases.builder("a").purchaseTime(1000).build()), false);
+    Bundle snapshot = mIndex.toBundle();
+    assertSame(snapshot, mIndex.toBundle());
+
+    mIndex.markAcknowledged("a");
+    assertNotSame(snapshot, mIndex.toBundle());
+  }
+
+  @Test
+  public void looksBillingPeriodsUpWhileUpdatingOnly() {
+    Purchase premium = TestPurchases.builder("a")
+      .productId("premium")
+      .purchaseTime(System.currentTimeMillis())
+      .autoRenewing(true)
+      .build();
+    mIndex.apply(TestPurchases.added(premium), false);
+    int lookups = mLookups.get();
+
+    Bundle snapshot = mIndex.toBundle();
+    mIndex.markAcknowledged("a");
+    mIndex.toBundle();
+
+    assertEquals(lookups, mLookups.get());
+    Bundle entitlement = (Bundle) snapshot.getParcelableArrayList("entitlements").get(0);
+    assertTrue(entitlement.getDouble("expiresAtHint") > 0);
+  }
+
+  @Test
+  public void servesSeededPurchasesUntilTheFirstCompleteUpdate() {
+    Purchase kept = TestPurchases.builder("kept").purchaseTime(1000).build();
+    Purchase refunded = TestPurchases.builder("refunded")
+      .productId("premium")
+      .purchaseTime(1000)
+      .autoRenewing(true)
+      .build();
+    mIndex.seed(snapshot(5000, kept, refunded));
+
+    assertTrue(mIndex.hasEntitlement("coins"));
+    assertTrue(mIndex.hasEntitlement("premium"));
+    assertEquals(5000, mIndex.toBundle().getDouble("updatedAt"), 0);
+    assertFalse(mIndex.toBundle().getBoolean("complete"));
+
+    mIndex.apply(TestPurchases.added(kept), true);
+
+    assertTrue(mIndex.hasEntitlement("coins"));
+    assertFalse(mIndex.hasEntitlement("premium"));
+    assertTrue(mIndex.toBundle().getBoolean("complete"));
+  }
+
+  @Test
+  public void ignoresSeedsOnceUpdated() {
+    mIndex.apply(TestPurchases.added(TestPurchases.builder("a").purchaseTime(1000).build()), false);
+
+    Purchase premium = TestPurchases.builder("b").productId("premium").purchaseTime(1000).autoRenewing(true).build();
+    mIndex.seed(snapshot(5000, premium));
+
+    assertFalse(mIndex.hasEntitlement("premium"));
+  }
+
+  @Test
+  public void hintsTheEndOfTheCurrentBillingPeriod() {
+    long now = 10 * DAY_MS;
+    Purchase renewing = TestPurchases.builder("a").productId("premium").purchaseTime(0).autoRenewing(true).build();
+    Purchase cancelled = TestPurchases.builder("b").productId("premium").purchaseTime(0).build();
+
+    assertEquals(Long.valueOf(14 * DAY_MS), EntitlementIndex.expiryHint(renewing, "P1W", now));
+    assertEquals(Long.valueOf(7 * DAY_MS), EntitlementIndex.expiryHint(cancelled, "P1W", now));
+    assertNull(EntitlementIndex.expiryHint(renewing, null, now));
+    assertNull(EntitlementIndex.expiryHint(renewing, "P0D", now));
+  }
+
+  private static OwnedPurchasesSnapshot.Snapshot snapshot(long fetchedAt, Purchase... purchases) {
+    return new OwnedPurchasesSnapshot.Snapshot(new ArrayList<>(Arrays.asList(purchases)), fetchedAt);
+  }
+}
@@ -0,0 +1,495 @@
+package expo.modules.inapppurchases;
+
+import android.app.Activity;
+import android.content.Context;
+
+import com.android.billingclient.api.AcknowledgePurchaseParams;
+import com.android.billingclient.api.AcknowledgePurchaseResponseListener;
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.BillingClient.ProductType;
+import com.android.billingclient.api.BillingClientStateListener;
+import com.android.billingclient.api.BillingFlowParams;
+import com.android.billingclient.api.BillingResult;
+import com.android.billingclient.api.ConsumeParams;
+import com.android.billingclient.api.ConsumeResponseListener;
+import com.android.billingclient.api.ProductDetails;
+import com.android.billingclient.api.ProductDetailsResponseListener;
+import com.android.billingclient.api.Purchase;
+import com.android.billingclient.api.PurchaseHistoryRecord;
+import com.android.billingclient.api.PurchaseHistoryResponseListener;
+import com.android.billingclient.api.PurchasesResponseListener;
+import com.android.billingclient.api.PurchasesUpdatedListener;
+
+import org.json.JSONException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process BillingBackend that answers from a scripted catalog and purchase history instead of
+ * Play Store. Every answer is delivered asynchronously after a delay drawn from the latency model
+ * of its operation, with the next scripted response code for that operation (OK once the script runs
+ * out). Disconnects can be injected at any time. It doesn't need a device, so the query, finish and
+ * reconnect paths of BillingManager can be tested and benchmarked on a plain JVM. Products are
+ * handed in ready-made, see TestProducts
+ */
+public class FakeBillingBackend implements BillingBackend {
+  private static final String PACKAGE_NAME = "expo.modules.inapppurchases.fake";
+
+  public enum Operation {
+    START_CONNECTION,
+    LAUNCH_BILLING_FLOW,
+    ACKNOWLEDGE,
+    CONSUME,
+    QUERY_PURCHASES,
+    QUERY_PURCHASE_HISTORY,
+    QUERY_PRODUCT_DETAILS
+  }
+
+  /**
+   * Distribution the delay of every answer is drawn from
+   */
+  public interface Latency {
+    long nextDelayMs(Random random);
+  }
+
+  public static Latency fixed(final long delayMs) {
+    return new Latency() {
+      @Override
+      public long nextDelayMs(Random random) {
+        return delayMs;
+      }
+    };
+  }
+
+  public static Latency uniform(final long minMs, final long maxMs) {
+    return new Latency() {
+      @Override
+      public long nextDelayMs(Random random) {
+        return minMs + (long) (random.nextDouble() * (maxMs - minMs));
+      }
+    };
+  }
+
+  /**
+   * Exponentially distributed delays, a long tail of slow answers on top of a minimum round trip
+   */
+  public static Latency exponential(final long minMs, final long meanMs) {
+    return new Latency() {
+      @Override
+      public long nextDelayMs(Random random) {
+        return minMs + (long) (-Math.log(1 - random.nextDouble()) * (meanMs - minMs));
+      }
+    };
+  }
+
+  /**
+   * Replays the given delays in order and keeps repeating the last one
+   */
+  public static Latency sequence(final long... delaysMs) {
+    return new Latency() {
+      private int mIndex;
+
+      @Override
+      public synchronized long nextDelayMs(Random random) {
+        long delay = delaysMs[Math.min(mIndex, delaysMs.length - 1)];
+        mIndex++;
+        return delay;
+      }
+    };
+  }
+
+  public static Factory factory(final FakeBillingBackend backend) {
+    return new Factory() {
+      @Override
+      public BillingBackend create(Context context, PurchasesUpdatedListener listener) {
+        backend.setPurchasesUpdatedListener(listener);
+        return backend;
+      }
+    };
+  }
+
+  private final ScheduledExecutorService mScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "FakeBillingBackend");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+  private final Random mRandom;
+  private final EnumMap<Operation, Latency> mLatencies = new EnumMap<>(Operation.class);
+  private final EnumMap<Operation, ArrayDeque<Integer>> mResponseCodes = new EnumMap<>(Operation.class);
+  private final EnumMap<Operation, AtomicInteger> mCalls = new EnumMap<>(Operation.class);
+  private final LinkedHashMap<String, ProductDetails> mCatalog = new LinkedHashMap<>();
+  private final LinkedHashMap<String, Purchase> mPurchases = new LinkedHashMap<>();
+  private final List<PurchaseHistoryRecord> mHistory = new ArrayList<>();
+  private final Map<String, Integer> mFeatureSupport = new LinkedHashMap<>();
+  private PurchasesUpdatedListener mPurchasesUpdatedListener;
+  private BillingClientStateListener mStateListener;
+  private boolean mReady;
+  private int mNextToken;
+
+  public FakeBillingBackend() {
+    this(new Random());
+  }
+
+  public FakeBillingBackend(Random random) {
+    mRandom = random;
+    for (Operation operation : Operation.values()) {
+      mLatencies.put(operation, fixed(0));
+      mResponseCodes.put(operation, new ArrayDeque<Integer>());
+      mCalls.put(operation, new AtomicInteger());
+    }
+  }
+
+  public synchronized FakeBillingBackend setPurchasesUpdatedListener(PurchasesUpdatedListener listener) {
+    mPurchasesUpdatedListener = listener;
+    return this;
+  }
+
+  public synchronized FakeBillingBackend setLatency(Operation operation, Latency latency) {
+    mLatencies.put(operation, latency);
+    return this;
+  }
+
+  public synchronized FakeBillingBackend setLatency(Latency latency) {
+    for (Operation operation : Operation.values()) {
+      mLatencies.put(operation, latency);
+    }
+    return this;
+  }
+
+  /**
+   * Queues response codes the next calls of the operation will answer with, one per call
+   */
+  public synchronized FakeBillingBackend enqueueResponseCodes(Operation operation, int... responseCodes) {
+    for (int responseCode : responseCodes) {
+      mResponseCodes.get(operation).add(responseCode);
+    }
+    return this;
+  }
+
+  public synchronized FakeBillingBackend setFeatureSupported(String feature, int responseCode) {
+    mFeatureSupport.put(feature, responseCode);
+    return this;
+  }
+
+  /**
+   * How many times the operation was called so far
+   */
+  public int getCallCount(Operation operation) {
+    return mCalls.get(operation).get();
+  }
+
+  /**
+   * Adds a product to the catalog, queries of its ID and type return it from now on
+   */
+  public synchronized FakeBillingBackend addProduct(ProductDetails productDetails) {
+    mCatalog.put(productDetails.getProductId(), productDetails);
+    return this;
+  }
+
+  /**
+   * Adds an owned purchase of the given SKU and returns it
+   */
+  public synchronized Purchase addPurchase(String sku, boolean acknowledged) {
+    Purchase purchase = newPurchase(sku, "token-" + mNextToken++, acknowledged);
+    mPurchases.put(purchase.getPurchaseToken(), purchase);
+    mHistory.add(toHistoryRecord(purchase));
+    return purchase;
+  }
+
+  /**
+   * Adds count records of past purchases, cycling through the SKUs of the catalog
+   */
+  public synchronized FakeBillingBackend addHistory(int count) {
+    List<String> skus = new ArrayList<>(mCatalog.keySet());
+    for (int i = 0; i < count; i++) {
+      String sku = skus.isEmpty() ? "history" + i : skus.get(i % skus.size());
+      mHistory.add(toHistoryRecord(newPurchase(sku, "history-token-" + mNextToken++, true)));
+    }
+    return this;
+  }
+
+  /**
+   * Reports a completed purchase of the SKU the same way a finished billing flow does
+   */
+  public void completePurchase(String sku) {
+    final Purchase purchase = addPurchase(sku, false);
+    final PurchasesUpdatedListener listener = listener();
+    long delayMs;
+    synchronized (this) {
+      delayMs = mLatencies.get(Operation.LAUNCH_BILLING_FLOW).nextDelayMs(mRandom);
+    }
+    mScheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        listener.onPurchasesUpdated(result(BillingResponseCode.OK), Collections.singletonList(purchase));
+      }
+    }, delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Drops the connection and tells the client, like Play Store being updated or killed. The binding
+   * can also die while a connection attempt is in flight, so the client is told then as well
+   */
+  public void disconnect() {
+    final BillingClientStateListener stateListener;
+    synchronized (this) {
+      if (mStateListener == null) {
+        return;
+      }
+      mReady = false;
+      stateListener = mStateListener;
+    }
+    mScheduler.execute(new Runnable() {
+      @Override
+      public void run() {
+        stateListener.onBillingServiceDisconnected();
+      }
+    });
+  }
+
+  /**
+   * Waits until every answer and disconnect that was due by now has been delivered
+   */
+  public void awaitAnswers() {
+    try {
+      mScheduler.submit(new Runnable() {
+        @Override
+        public void run() {
+        }
+      }).get(30, TimeUnit.SECONDS);
+    } catch (Exception e) {
+      throw new IllegalStateException("Answers weren't delivered", e);
+    }
+  }
+
+  /**
+   * Stops delivering answers. The backend can't be used afterwards
+   */
+  public void shutdown() {
+    mScheduler.shutdownNow();
+  }
+
+  @Override
+  public void startConnection(final BillingClientStateListener listener) {
+    synchronized (this) {
+      mStateListener = listener;
+    }
+    deliver(Operation.START_CONNECTION, new Answer() {
+      @Override
+      public void answer(BillingResult billingResult) {
+        synchronized (FakeBillingBackend.this) {
+          mReady = billingResult.getResponseCode() == BillingResponseCode.OK;
+        }
+        listener.onBillingSetupFinished(billingResult);
+      }
+    });
+  }
+
+  @Override
+  public synchronized void endConnection() {
+    mReady = false;
+    mStateListener = null;
+  }
+
+  @Override
+  public synchronized boolean isReady() {
+    return mReady;
+  }
+
+  @Override
+  public synchronized BillingResult isFeatureSupported(String feature) {
+    Integer responseCode = mFeatureSupport.get(feature);
+    return result(responseCode != null ? responseCode : BillingResponseCode.OK);
+  }
+
+  @Override
+  public BillingResult launchBillingFlow(Activity activity, BillingFlowParams params) {
+    // The flow itself is driven by completePurchase(), like the user tapping through the Play UI
+    mCalls.get(Operation.LAUNCH_BILLING_FLOW).incrementAndGet();
+    return result(nextResponseCode(Operation.LAUNCH_BILLING_FLOW));
+  }
+
+  @Override
+  public void acknowledgePurchase(final AcknowledgePurchaseParams params, final AcknowledgePurchaseResponseListener listener) {
+    deliver(Operation.ACKNOWLEDGE, new Answer() {
+      @Override
+      public void answer(BillingResult billingResult) {
+        if (billingResult.getResponseCode() == BillingResponseCode.OK) {
+          billingResult = acknowledgeNow(params.getPurchaseToken());
+        }
+        listener.onAcknowledgePurchaseResponse(billingResult);
+      }
+    });
+  }
+
+  @Override
+  public void consumeAsync(final ConsumeParams params, final ConsumeResponseListener listener) {
+    deliver(Operation.CONSUME, new Answer() {
+      @Override
+      public void answer(BillingResult billingResult) {
+        if (billingResult.getResponseCode() == BillingResponseCode.OK) {
+          synchronized (FakeBillingBackend.this) {
+            if (mPurchases.remove(params.getPurchaseToken()) == null) {
+              billingResult = result(BillingResponseCode.ITEM_NOT_OWNED);
+            }
+          }
+        }
+        listener.onConsumeResponse(billingResult, params.getPurchaseToken());
+      }
+    });
+  }
+
+  @Override
+  public void queryPurchasesAsync(final String skuType, final PurchasesResponseListener listener) {
+    deliver(Operation.QUERY_PURCHASES, new Answer() {
+      @Override
+      public void answer(BillingResult billingResult) {
+        List<Purchase> purchases = new ArrayList<>();
+        if (billingResult.getResponseCode() == BillingResponseCode.OK) {
+          synchronized (FakeBillingBackend.this) {
+            for (Purchase purchase : mPurchases.values()) {
+              if (skuType.equals(typeOf(purchase.getSkus().get(0)))) {
+                purchases.add(purchase);
+              }
+            }
+          }
+        }
+        listener.onQueryPurchasesResponse(billingResult, purchases);
+      }
+    });
+  }
+
+  @Override
+  public void queryPurchaseHistoryAsync(final String skuType, final PurchaseHistoryResponseListener listener) {
+    deliver(Operation.QUERY_PURCHASE_HISTORY, new Answer() {
+      @Override
+      public void answer(BillingResult billingResult) {
+        List<PurchaseHistoryRecord> records = null;
+        if (billingResult.getResponseCode() == BillingResponseCode.OK) {
+          records = new ArrayList<>();
+          synchronized (FakeBillingBackend.this) {
+            for (PurchaseHistoryRecord record : mHistory) {
+              if (skuType.equals(typeOf(record.getSkus().get(0)))) {
+                records.add(record);
+              }
+            }
+          }
+        }
+        listener.onPurchaseHistoryResponse(billingResult, records);
+      }
+    });
+  }
+
+  @Override
+  public void queryProductDetailsAsync(final List<ProductQuery> products, final ProductDetailsResponseListener listener) {
+    deliver(Operation.QUERY_PRODUCT_DETAILS, new Answer() {
+      @Override
+      public void answer(BillingResult billingResult) {
+        for (ProductQuery product : products) {
+          if (!product.productType.equals(products.get(0).productType)) {
+            // Like Play Store, which refuses queries mixing in-app products and subscriptions
+            listener.onProductDetailsResponse(result(BillingResponseCode.DEVELOPER_ERROR), new ArrayList<ProductDetails>());
+            return;
+          }
+        }
+        List<ProductDetails> productDetails = new ArrayList<>();
+        if (billingResult.getResponseCode() == BillingResponseCode.OK) {
+          synchronized (FakeBillingBackend.this) {
+            for (ProductQuery product : products) {
+              ProductDetails details = mCatalog.get(product.productId);
+              if (details != null && details.getProductType().equals(product.productType)) {
+                productDetails.add(details);
+              }
+            }
+          }
+        }
+        listener.onProductDetailsResponse(billingResult, productDetails);
+      }
+    });
+  }
+
+  private interface Answer {
+    void answer(BillingResult billingResult);
+  }
+
+  private void deliver(Operation operation, final Answer answer) {
+    mCalls.get(operation).incrementAndGet();
+    final BillingResult billingResult = result(nextResponseCode(operation));
+    long delayMs;
+    synchronized (this) {
+      delayMs = mLatencies.get(operation).nextDelayMs(mRandom);
+    }
+    mScheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        answer.answer(billingResult);
+      }
+    }, delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized int nextResponseCode(Operation operation) {
+    if (operation != Operation.START_CONNECTION && !mReady) {
+      return BillingResponseCode.SERVICE_DISCONNECTED;
+    }
+    Integer responseCode = mResponseCodes.get(operation).poll();
+    return responseCode != null ? responseCode : BillingResponseCode.OK;
+  }
+
+  private synchronized BillingResult acknowledgeNow(String purchaseToken) {
+    Purchase purchase = mPurchases.get(purchaseToken);
+    if (purchase == null) {
+      return result(BillingResponseCode.ITEM_NOT_OWNED);
+    }
+    mPurchases.put(purchaseToken, newPurchase(purchase.getSkus().get(0), purchaseToken, true));
+    return result(BillingResponseCode.OK);
+  }
+
+  private synchronized PurchasesUpdatedListener listener() {
+    if (mPurchasesUpdatedListener == null) {
+      throw new IllegalStateException("No PurchasesUpdatedListener was set");
+    }
+    return mPurchasesUpdatedListener;
+  }
+
+  private String typeOf(String sku) {
+    ProductDetails details = mCatalog.get(sku);
+    return details != null ? details.getProductType() : ProductType.INAPP;
+  }
+
+  private Purchase newPurchase(String sku, String purchaseToken, boolean acknowledged) {
+    return TestPurchases.builder(purchaseToken)
+      .put("orderId", "GPA." + purchaseToken)
+      .put("packageName", PACKAGE_NAME)
+      .productId(sku)
+      .purchaseTime(System.currentTimeMillis())
+      .acknowledged(acknowledged)
+      .build();
+  }
+
+  private static PurchaseHistoryRecord toHistoryRecord(Purchase purchase) {
+    try {
+      return new PurchaseHistoryRecord(purchase.getOriginalJson(), purchase.getSignature());
+    } catch (JSONException e) {
+      throw new IllegalStateException("Couldn't generate history record " + purchase.getPurchaseToken(), e);
+    }
+  }
+
+  private static BillingResult result(int responseCode) {
+    return BillingResult.newBuilder().setResponseCode(responseCode).build();
+  }
+}
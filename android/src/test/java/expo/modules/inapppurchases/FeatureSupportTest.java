@@ -0,0 +1,57 @@
+package expo.modules.inapppurchases;
+
+import android.os.Bundle;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.BillingClient.FeatureType;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class FeatureSupportTest {
+  private final FakeBillingBackend mBackend = new FakeBillingBackend();
+
+  @After
+  public void tearDown() {
+    mBackend.shutdown();
+  }
+
+  @Test
+  public void reportsWhatTheBackendSupports() {
+    mBackend.setFeatureSupported(FeatureType.SUBSCRIPTIONS_UPDATE, BillingResponseCode.FEATURE_NOT_SUPPORTED);
+    mBackend.setFeatureSupported("priceChangeConfirmation", BillingResponseCode.SERVICE_DISCONNECTED);
+
+    FeatureSupport support = FeatureSupport.query(mBackend);
+
+    assertTrue(support.isSupported(FeatureSupport.SUBSCRIPTIONS));
+    assertFalse(support.isSupported(FeatureSupport.SUBSCRIPTIONS_UPDATE));
+    assertFalse(support.isSupported(FeatureSupport.PRICE_CHANGE_CONFIRMATION));
+    assertTrue(support.isSupported(FeatureSupport.IN_APP_MESSAGING));
+    assertTrue(support.isSupported(FeatureSupport.PRODUCT_DETAILS));
+  }
+
+  @Test
+  public void supportsNothingBeforeTheFirstConnection() {
+    assertFalse(FeatureSupport.UNKNOWN.isSupported(FeatureSupport.SUBSCRIPTIONS));
+    assertFalse(FeatureSupport.UNKNOWN.isSupported("unknownFeature"));
+  }
+
+  @Test
+  public void bundlesEveryFeature() {
+    mBackend.setFeatureSupported(FeatureType.IN_APP_MESSAGING, BillingResponseCode.FEATURE_NOT_SUPPORTED);
+
+    Bundle bundle = FeatureSupport.query(mBackend).toBundle();
+
+    assertEquals(5, bundle.size());
+    assertTrue(bundle.getBoolean(FeatureSupport.SUBSCRIPTIONS));
+    assertFalse(bundle.getBoolean(FeatureSupport.IN_APP_MESSAGING));
+    assertFalse(FeatureSupport.UNKNOWN.toBundle().getBoolean(FeatureSupport.PRODUCT_DETAILS));
+  }
+}
@@ -0,0 +1,112 @@
+package expo.modules.inapppurchases;
+
+import android.os.Bundle;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.BillingResult;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+public class FinishTransactionsBatchTest {
+  private final Map<String, FinishTransactionsBatch.Listener> mInFlight = new LinkedHashMap<>();
+  private final List<String> mFinished = new ArrayList<>();
+  private int mMaxInFlight;
+
+  private final FinishTransactionsBatch.Finisher mFinisher = new FinishTransactionsBatch.Finisher() {
+    @Override
+    public void finish(String purchaseToken, FinishTransactionsBatch.Listener listener) {
+      mFinished.add(purchaseToken);
+      mInFlight.put(purchaseToken, listener);
+      mMaxInFlight = Math.max(mMaxInFlight, mInFlight.size());
+    }
+  };
+
+  @Test
+  public void finishesAtMostParallelismPurchasesAtOnce() {
+    TestPromise promise = new TestPromise();
+    new FinishTransactionsBatch(tokens(10), 3, mFinisher, promise).start();
+    assertEquals(3, mInFlight.size());
+
+    while (!mInFlight.isEmpty()) {
+      answer(mInFlight.keySet().iterator().next(), BillingResponseCode.OK);
+    }
+
+    Bundle response = promise.await();
+    assertEquals(BillingFormatter.OK, response.getInt("responseCode"));
+    assertEquals(tokens(10), mFinished);
+    assertEquals(3, mMaxInFlight);
+  }
+
+  @Test
+  public void reportsTheResultOfEveryToken() {
+    TestPromise promise = new TestPromise();
+    new FinishTransactionsBatch(Arrays.asList("a", "b", "c"), 4, mFinisher, promise).start();
+
+    answer("b", BillingResponseCode.ITEM_NOT_OWNED);
+    answer("c", BillingResponseCode.OK);
+    assertFalse(promise.isSettled());
+    answer("a", BillingResponseCode.OK);
+
+    Bundle response = promise.await();
+    assertEquals(BillingFormatter.ERROR, response.getInt("responseCode"));
+    List<Bundle> results = response.getParcelableArrayList("results");
+    assertEquals(3, results.size());
+    assertEquals("a", results.get(0).getString("purchaseToken"));
+    assertEquals(BillingFormatter.OK, results.get(0).getInt("responseCode"));
+    assertNull(results.get(0).get("results"));
+    assertEquals("b", results.get(1).getString("purchaseToken"));
+    assertEquals(BillingFormatter.ERROR, results.get(1).getInt("responseCode"));
+    assertEquals(9, results.get(1).getInt("errorCode"));
+    assertEquals("c", results.get(2).getString("purchaseToken"));
+    assertEquals(BillingFormatter.OK, results.get(2).getInt("responseCode"));
+  }
+
+  @Test
+  public void finishesEveryTokenOnce() {
+    TestPromise promise = new TestPromise();
+    new FinishTransactionsBatch(Arrays.asList("a", "b", "a"), 4, mFinisher, promise).start();
+    answer("a", BillingResponseCode.OK);
+    answer("b", BillingResponseCode.OK);
+
+    Bundle response = promise.await();
+    assertEquals(Arrays.asList("a", "b"), mFinished);
+    assertEquals(2, response.<Bundle>getParcelableArrayList("results").size());
+  }
+
+  @Test
+  public void resolvesRightAwayWithoutPurchases() {
+    TestPromise promise = new TestPromise();
+    new FinishTransactionsBatch(Collections.<String>emptyList(), 4, mFinisher, promise).start();
+
+    Bundle response = promise.await();
+    assertEquals(BillingFormatter.OK, response.getInt("responseCode"));
+    assertEquals(0, response.<Bundle>getParcelableArrayList("results").size());
+  }
+
+  private void answer(String purchaseToken, int responseCode) {
+    FinishTransactionsBatch.Listener listener = mInFlight.remove(purchaseToken);
+    listener.onFinished(purchaseToken, BillingResult.newBuilder().setResponseCode(responseCode).build());
+  }
+
+  private static List<String> tokens(int count) {
+    List<String> tokens = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      tokens.add("token" + i);
+    }
+    return tokens;
+  }
+}
@@ -0,0 +1,92 @@
+package expo.modules.inapppurchases;
+
+import android.content.Context;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.BillingClientStateListener;
+import com.android.billingclient.api.BillingResult;
+import com.android.billingclient.api.PurchasesUpdatedListener;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@RunWith(RobolectricTestRunner.class)
+public class LazyBillingBackendTest {
+  private final FakeBillingBackend mBackend = new FakeBillingBackend();
+  private final PurchasesUpdatedListener mListener = mock(PurchasesUpdatedListener.class);
+  private int mCreated;
+  private PurchasesUpdatedListener mCreatedWith;
+  private final BillingBackend.Factory mFactory = new BillingBackend.Factory() {
+    @Override
+    public BillingBackend create(Context context, PurchasesUpdatedListener listener) {
+      mCreated++;
+      mCreatedWith = listener;
+      return mBackend;
+    }
+  };
+
+  @After
+  public void tearDown() {
+    mBackend.shutdown();
+  }
+
+  @Test
+  public void doesNotCreateTheBackendBeforeConnecting() {
+    LazyBillingBackend lazy = new LazyBillingBackend(mFactory, RuntimeEnvironment.getApplication(), mListener);
+
+    assertFalse(lazy.isReady());
+    lazy.endConnection();
+
+    assertEquals(0, mCreated);
+  }
+
+  @Test
+  public void createsTheBackendOnceWhenConnecting() {
+    LazyBillingBackend lazy = new LazyBillingBackend(mFactory, RuntimeEnvironment.getApplication(), mListener);
+
+    assertEquals(BillingResponseCode.OK, connect(lazy));
+    assertTrue(lazy.isReady());
+    lazy.endConnection();
+    assertFalse(lazy.isReady());
+    assertEquals(BillingResponseCode.OK, connect(lazy));
+
+    assertEquals(1, mCreated);
+    assertSame(mListener, mCreatedWith);
+    assertEquals(2, mBackend.getCallCount(FakeBillingBackend.Operation.START_CONNECTION));
+  }
+
+  @Test
+  public void forwardsFailedSetups() {
+    mBackend.enqueueResponseCodes(FakeBillingBackend.Operation.START_CONNECTION, BillingResponseCode.BILLING_UNAVAILABLE);
+    LazyBillingBackend lazy = new LazyBillingBackend(mFactory, RuntimeEnvironment.getApplication(), mListener);
+
+    assertEquals(BillingResponseCode.BILLING_UNAVAILABLE, connect(lazy));
+    assertFalse(lazy.isReady());
+  }
+
+  private static int connect(LazyBillingBackend lazy) {
+    final TestPromise setup = new TestPromise();
+    lazy.startConnection(new BillingClientStateListener() {
+      @Override
+      public void onBillingSetupFinished(@NonNull BillingResult billingResult) {
+        setup.resolve(billingResult.getResponseCode());
+      }
+
+      @Override
+      public void onBillingServiceDisconnected() {
+      }
+    });
+    return setup.<Integer>await();
+  }
+}
@@ -0,0 +1,85 @@
+package expo.modules.inapppurchases;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class OwnedPurchasesSnapshotTest {
+  private Context mContext;
+
+  @Before
+  public void setUp() {
+    mContext = RuntimeEnvironment.getApplication();
+  }
+
+  @Test
+  public void isEmptyUntilPurchasesWereSaved() {
+    assertNull(new OwnedPurchasesSnapshot(mContext).get());
+  }
+
+  @Test
+  public void restoresTheLastSaveAfterARestart() {
+    OwnedPurchasesSnapshot snapshot = new OwnedPurchasesSnapshot(mContext);
+    snapshot.save(Collections.singletonList(TestPurchases.builder("old").signature("signature-old").build()));
+    snapshot.save(Arrays.asList(TestPurchases.builder("coins").signature("signature-coins").build(),
+      TestPurchases.builder("premium").signature("signature-premium").build()));
+    long fetchedAt = snapshot.get().fetchedAt;
+    snapshot.awaitWritten();
+
+    OwnedPurchasesSnapshot.Snapshot restored = new OwnedPurchasesSnapshot(mContext).get();
+
+    assertEquals(fetchedAt, restored.fetchedAt);
+    assertEquals(2, restored.purchases.size());
+    assertEquals("coins", restored.purchases.get(0).getPurchaseToken());
+    assertEquals("premium", restored.purchases.get(1).getPurchaseToken());
+    assertEquals("signature-premium", restored.purchases.get(1).getSignature());
+  }
+
+  @Test
+  public void ignoresSnapshotsOfOtherVersions() throws IOException {
+    writeSnapshot("{\"version\":0,\"fetchedAt\":1,\"purchases\":[]}");
+
+    assertNull(new OwnedPurchasesSnapshot(mContext).get());
+  }
+
+  @Test
+  public void ignoresUnreadableSnapshots() throws IOException {
+    writeSnapshot("{\"version\":1,\"purch");
+
+    assertNull(new OwnedPurchasesSnapshot(mContext).get());
+  }
+
+  @Test
+  public void servesSavesRightAway() {
+    OwnedPurchasesSnapshot snapshot = new OwnedPurchasesSnapshot(mContext);
+
+    snapshot.save(Collections.singletonList(TestPurchases.builder("coins").signature("signature-coins").build()));
+
+    assertEquals(1, snapshot.get().purchases.size());
+    assertTrue(snapshot.get().fetchedAt <= System.currentTimeMillis());
+  }
+
+  private void writeSnapshot(String content) throws IOException {
+    File directory = new File(mContext.getFilesDir(), "ExpoInAppPurchases");
+    assertTrue(directory.isDirectory() || directory.mkdirs());
+    try (FileOutputStream out = new FileOutputStream(new File(directory, "purchases.snapshot"))) {
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package expo.modules.inapppurchases;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.BillingResult;
+import com.android.billingclient.api.ProductDetails;
+import com.android.billingclient.api.ProductDetailsResponseListener;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProductDetailsBatcherTest {
+  private final List<RequestScheduler.Request> mScheduled = new ArrayList<>();
+  private final List<RequestScheduler.Request> mCancelled = new ArrayList<>();
+  private final List<List<String>> mQueries = new ArrayList<>();
+  private final List<ProductDetailsResponseListener> mQueryListeners = new ArrayList<>();
+
+  private final ProductDetailsBatcher mBatcher = new ProductDetailsBatcher(new ProductDetailsBatcher.Dispatcher() {
+    @Override
+    public void executeServiceRequest(RequestScheduler.Request request) {
+      mScheduled.add(request);
+    }
+
+    @Override
+    public void cancelServiceRequest(RequestScheduler.Request request) {
+      mCancelled.add(request);
+    }
+
+    @Override
+    public void queryProductDetails(List<String> productIds, ProductDetailsResponseListener listener) {
+      mQueries.add(productIds);
+      mQueryListeners.add(listener);
+    }
+  });
+
+  @Test
+  public void mergesQueriesIntoTheBatchThatWasntSent() {
+    Result first = query("coins", "gems");
+    Result second = query("gems", "premium");
+
+    assertEquals(1, mScheduled.size());
+    runScheduled(0);
+    assertEquals(new HashSet<>(Arrays.asList("coins", "gems", "premium")), new HashSet<>(mQueries.get(0)));
+
+    answer(0, "coins", "gems", "premium");
+
+    assertEquals(new HashSet<>(Arrays.asList("coins", "gems")), first.skus());
+    assertEquals(new HashSet<>(Arrays.asList("gems", "premium")), second.skus());
+  }
+
+  @Test
+  public void waitsForTheSentBatchInsteadOfQueryingAgain() {
+    Result first = query("coins");
+    runScheduled(0);
+
+    Result second = query("coins", "premium");
+    assertEquals(2, mScheduled.size());
+    runScheduled(1);
+    assertEquals(Collections.singletonList("premium"), mQueries.get(1));
+
+    answer(0, "coins");
+    assertEquals(Collections.singleton("coins"), first.skus());
+    assertNull(second.mProductDetails);
+
+    answer(1, "premium");
+    assertEquals(new HashSet<>(Arrays.asList("coins", "premium")), second.skus());
+  }
+
+  @Test
+  public void sendsEmptyQueriesAsIs() {
+    Result result = query();
+
+    runScheduled(0);
+    assertTrue(mQueries.get(0).isEmpty());
+    answer(0);
+
+    assertTrue(result.skus().isEmpty());
+  }
+
+  @Test
+  public void cancelsBatchesNobodyWaitsForAnymore() {
+    Cancellation firstCancellation = new Cancellation();
+    Cancellation secondCancellation = new Cancellation();
+    query(firstCancellation, "coins");
+    query(secondCancellation, "coins");
+
+    firstCancellation.cancel();
+    assertTrue(mCancelled.isEmpty());
+
+    secondCancellation.cancel();
+    assertEquals(mScheduled, mCancelled);
+
+    query("coins");
+    assertEquals(2, mScheduled.size());
+  }
+
+  @Test
+  public void failsEveryWaiterWhenTheServiceIsUnavailable() {
+    Result first = query("coins");
+    Result second = query("premium");
+
+    mScheduled.get(0).onServiceUnavailable(result(BillingResponseCode.SERVICE_UNAVAILABLE));
+
+    assertEquals(BillingResponseCode.SERVICE_UNAVAILABLE, first.mBillingResult.getResponseCode());
+    assertEquals(BillingResponseCode.SERVICE_UNAVAILABLE, second.mBillingResult.getResponseCode());
+  }
+
+  private Result query(String... skus) {
+    return query(Cancellation.NONE, skus);
+  }
+
+  private Result query(Cancellation cancellation, String... skus) {
+    Result result = new Result();
+    mBatcher.query(Arrays.asList(skus), cancellation, result);
+    return result;
+  }
+
+  private void runScheduled(int index) {
+    mScheduled.get(index).run(new Runnable() {
+      @Override
+      public void run() {
+      }
+    });
+  }
+
+  private void answer(int query, String... skus) {
+    List<ProductDetails> productDetails = new ArrayList<>();
+    for (String sku : skus) {
+      productDetails.add(TestProducts.inApp(sku));
+    }
+    mQueryListeners.get(query).onProductDetailsResponse(result(BillingResponseCode.OK), productDetails);
+  }
+
+  private static BillingResult result(int responseCode) {
+    return BillingResult.newBuilder().setResponseCode(responseCode).build();
+  }
+
+  private static class Result implements ProductDetailsResponseListener {
+    BillingResult mBillingResult;
+    List<ProductDetails> mProductDetails;
+
+    @Override
+    public void onProductDetailsResponse(@NonNull BillingResult billingResult, @NonNull List<ProductDetails> productDetailsList) {
+      mBillingResult = billingResult;
+      mProductDetails = productDetailsList;
+    }
+
+    HashSet<String> skus() {
+      HashSet<String> skus = new HashSet<>();
+      for (ProductDetails productDetails : mProductDetails) {
+        skus.add(productDetails.getProductId());
+      }
+      return skus;
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package expo.modules.inapppurchases;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import com.android.billingclient.api.BillingClient.ProductType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ProductDetailsCacheTest {
+  private final Locale mDefaultLocale = Locale.getDefault();
+  private Context mContext;
+  private ProductDetailsCache mCache;
+
+  @Before
+  public void setUp() {
+    Locale.setDefault(Locale.US);
+    mContext = RuntimeEnvironment.getApplication();
+    mCache = new ProductDetailsCache(mContext);
+  }
+
+  @After
+  public void tearDown() {
+    Locale.setDefault(mDefaultLocale);
+  }
+
+  @Test
+  public void servesProductsAsStaleOnceTheTtlPassed() throws Exception {
+    mCache.put(TestProducts.inApp("coins"));
+    assertFalse(mCache.isStale(mCache.get("coins")));
+
+    mCache.configure(1, ProductDetailsCache.DEFAULT_MAX_ENTRIES);
+    Thread.sleep(5);
+
+    ProductDetailsCache.Entry entry = mCache.get("coins");
+    assertNotNull(entry);
+    assertTrue(mCache.isStale(entry));
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyUsedProducts() {
+    mCache.configure(ProductDetailsCache.DEFAULT_TTL_MS, 2);
+    mCache.put(TestProducts.inApp("coins"));
+    mCache.put(TestProducts.inApp("gems"));
+    mCache.get("coins");
+
+    mCache.put(TestProducts.inApp("premium"));
+
+    assertNotNull(mCache.get("coins"));
+    assertNotNull(mCache.get("premium"));
+    assertNull(mCache.get("gems"));
+    assertNull(new ProductDetailsCache(mContext).get("gems"));
+  }
+
+  @Test
+  public void evictsWhenShrunk() {
+    mCache.put(TestProducts.inApp("coins"));
+    mCache.put(TestProducts.inApp("gems"));
+
+    mCache.configure(ProductDetailsCache.DEFAULT_TTL_MS, 1);
+
+    assertNull(mCache.get("coins"));
+    assertNotNull(mCache.get("gems"));
+  }
+
+  @Test
+  public void keysProductsByIdAndLocale() {
+    mCache.put(TestProducts.inApp("coins"));
+
+    Locale.setDefault(Locale.FRANCE);
+    assertNull(mCache.get("coins"));
+    assertNull(new ProductDetailsCache(mContext).get("coins"));
+
+    Locale.setDefault(Locale.US);
+    assertNotNull(mCache.get("coins"));
+  }
+
+  @Test
+  public void restoresProductsFromTheDiskSnapshot() {
+    mCache.put(TestProducts.inApp("coins"));
+    mCache.put(TestProducts.subscription("premium", "P1M"));
+    ProductDetailsCache.Entry coins = mCache.get("coins");
+    ProductDetailsCache.Entry premium = mCache.get("premium");
+
+    ProductDetailsCache snapshot = new ProductDetailsCache(mContext);
+    ProductDetailsCache.Entry restoredCoins = snapshot.get("coins");
+    ProductDetailsCache.Entry restoredPremium = snapshot.get("premium");
+
+    assertNull(restoredCoins.productDetails);
+    assertEquals(ProductType.INAPP, restoredCoins.productType);
+    assertEquals(coins.fetchedAt, restoredCoins.fetchedAt);
+    assertSameValues(coins.toBundle(), restoredCoins.toBundle());
+    assertEquals(ProductType.SUBS, restoredPremium.productType);
+    assertSameValues(premium.toBundle(), restoredPremium.toBundle());
+  }
+
+  @Test
+  public void onlyKnowsOfferTokensOfQueriedProducts() {
+    mCache.put(TestProducts.subscription("premium", "P1M"));
+
+    assertEquals("premium/base/", mCache.get("premium").getOfferToken(null, null));
+    assertEquals("premium/base/", mCache.get("premium").getOfferToken("base", null));
+    assertNull(mCache.get("premium").getOfferToken("base", "trial"));
+    assertNull(new ProductDetailsCache(mContext).get("premium").getOfferToken(null, null));
+  }
+
+  @Test
+  public void dropsUnreadableSnapshots() {
+    mContext.getSharedPreferences("expo.modules.inapppurchases.ProductDetailsCache", Context.MODE_PRIVATE)
+      .edit()
+      .putString("en-US/coins", "{\"fetchedAt\":1,\"prod")
+      .apply();
+
+    assertNull(mCache.get("coins"));
+  }
+
+  /**
+   * JSON keeps numbers without their type, so a long that fits in an int comes back as an int
+   */
+  private static void assertSameValues(Object expected, Object actual) {
+    if (expected instanceof Bundle) {
+      Bundle expectedBundle = (Bundle) expected;
+      Bundle actualBundle = (Bundle) actual;
+      assertEquals(expectedBundle.keySet(), actualBundle.keySet());
+      for (String key : expectedBundle.keySet()) {
+        assertSameValues(expectedBundle.get(key), actualBundle.get(key));
+      }
+    } else if (expected instanceof List) {
+      List<?> expectedList = (List<?>) expected;
+      List<?> actualList = (List<?>) actual;
+      assertEquals(expectedList.size(), actualList.size());
+      for (int i = 0; i < expectedList.size(); i++) {
+        assertSameValues(expectedList.get(i), actualList.get(i));
+      }
+    } else if (expected instanceof Integer || expected instanceof Long) {
+      assertEquals(((Number) expected).longValue(), ((Number) actual).longValue());
+    } else {
+      assertEquals(expected, actual);
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package expo.modules.inapppurchases;
+
+import com.android.billingclient.api.Purchase;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class PurchaseEventCoalescerTest {
+  private static final Executor DIRECT = new Executor() {
+    @Override
+    public void execute(Runnable runnable) {
+      runnable.run();
+    }
+  };
+
+  private final List<PurchaseStore.Delta> mDeltas = Collections.synchronizedList(new ArrayList<PurchaseStore.Delta>());
+  private final CountDownLatch mFirstDelta = new CountDownLatch(1);
+  private int mUpdates;
+  private ExecutorService mExecutor;
+
+  private final PurchaseEventCoalescer.Listener mListener = new PurchaseEventCoalescer.Listener() {
+    @Override
+    public void onPurchasesUpdated() {
+      mUpdates++;
+    }
+
+    @Override
+    public void onPurchasesDelta(PurchaseStore.Delta delta) {
+      mDeltas.add(delta);
+      mFirstDelta.countDown();
+    }
+  };
+
+  @After
+  public void tearDown() {
+    if (mExecutor != null) {
+      mExecutor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void sendsUpdatesRightAwayWithoutAWindow() {
+    PurchaseEventCoalescer coalescer = new PurchaseEventCoalescer(DIRECT, mListener);
+    coalescer.setWindowMs(0);
+
+    coalescer.update(TestPurchases.added(TestPurchases.purchase("a")), false);
+
+    assertEquals(1, mUpdates);
+    assertEquals(1, mDeltas.size());
+    assertEquals(Collections.singletonList("a"), TestPurchases.tokens(mDeltas.get(0).added));
+  }
+
+  @Test
+  public void mergesTheUpdatesOfAWindowIntoOneEvent() throws Exception {
+    mExecutor = Executors.newSingleThreadExecutor();
+    final PurchaseEventCoalescer coalescer = new PurchaseEventCoalescer(mExecutor, mListener);
+    coalescer.setWindowMs(50);
+    final Purchase changed = TestPurchases.purchase("a");
+    mExecutor.submit(new Runnable() {
+      @Override
+      public void run() {
+        coalescer.update(TestPurchases.added(TestPurchases.purchase("a")), false);
+        coalescer.update(new PurchaseStore.Delta(0, Collections.<Purchase>emptyList(),
+          Collections.singletonList(changed), Collections.<String>emptyList()), false);
+        coalescer.update(TestPurchases.added(TestPurchases.purchase("b")), false);
+      }
+    }).get();
+
+    assertTrue(mFirstDelta.await(5, TimeUnit.SECONDS));
+    mExecutor.submit(new Runnable() {
+      @Override
+      public void run() {
+      }
+    }).get();
+
+    assertEquals(1, mUpdates);
+    assertEquals(1, mDeltas.size());
+    PurchaseStore.Delta delta = mDeltas.get(0);
+    assertEquals(Arrays.asList("a", "b"), TestPurchases.tokens(delta.added));
+    assertSame(changed, delta.added.get(0));
+    assertTrue(delta.changed.isEmpty());
+  }
+
+  @Test
+  public void dropsPurchasesThatWereAddedAndRemovedWithinAWindow() {
+    PurchaseEventCoalescer coalescer = new PurchaseEventCoalescer(DIRECT, mListener);
+    coalescer.setWindowMs(60000);
+
+    coalescer.update(TestPurchases.added(TestPurchases.purchase("a")), false);
+    coalescer.update(TestPurchases.removed("a"), true);
+
+    assertEquals(1, mUpdates);
+    assertTrue(mDeltas.isEmpty());
+  }
+
+  @Test
+  public void reportsPurchasesThatWereRemovedAndAddedAgainAsChanged() {
+    PurchaseEventCoalescer coalescer = new PurchaseEventCoalescer(DIRECT, mListener);
+    coalescer.setWindowMs(60000);
+
+    coalescer.update(TestPurchases.removed("a"), false);
+    coalescer.update(TestPurchases.added(TestPurchases.purchase("a")), true);
+
+    PurchaseStore.Delta delta = mDeltas.get(0);
+    assertTrue(delta.added.isEmpty());
+    assertTrue(delta.removed.isEmpty());
+    assertEquals(Collections.singletonList("a"), TestPurchases.tokens(delta.changed));
+  }
+
+  @Test
+  public void numbersEventsConsecutively() {
+    PurchaseEventCoalescer coalescer = new PurchaseEventCoalescer(DIRECT, mListener);
+    coalescer.setWindowMs(60000);
+
+    coalescer.update(TestPurchases.added(TestPurchases.purchase("a")), false);
+    coalescer.update(TestPurchases.added(TestPurchases.purchase("b")), false);
+    coalescer.flush();
+    coalescer.update(TestPurchases.removed("a"), true);
+
+    assertEquals(2, mDeltas.size());
+    assertEquals(1, mDeltas.get(0).sequence);
+    assertEquals(2, mDeltas.get(1).sequence);
+  }
+
+  @Test
+  public void dropsPendingUpdatesWhenCancelled() {
+    PurchaseEventCoalescer coalescer = new PurchaseEventCoalescer(DIRECT, mListener);
+    coalescer.setWindowMs(60000);
+
+    coalescer.update(TestPurchases.added(TestPurchases.purchase("a")), false);
+    coalescer.cancel();
+    coalescer.flush();
+
+    assertEquals(0, mUpdates);
+    assertTrue(mDeltas.isEmpty());
+  }
+}
@@ -0,0 +1,92 @@
+package expo.modules.inapppurchases;
+
+import com.android.billingclient.api.PurchaseHistoryRecord;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+public class PurchaseHistoryPagerTest {
+  private final PurchaseHistoryPager mPager = new PurchaseHistoryPager();
+
+  @Test
+  public void pagesThroughTheHistoryNewestFirst() {
+    PurchaseHistoryPager.Page first = mPager.start(history(5), 2);
+    assertEquals(Arrays.asList("token-4", "token-3"), tokens(first));
+    assertEquals(5, first.total);
+
+    PurchaseHistoryPager.Page second = mPager.next(first.nextCursor, 2);
+    assertEquals(Arrays.asList("token-2", "token-1"), tokens(second));
+
+    PurchaseHistoryPager.Page last = mPager.next(second.nextCursor, 2);
+    assertEquals(Arrays.asList("token-0"), tokens(last));
+    assertNull(last.nextCursor);
+  }
+
+  @Test
+  public void forgetsTheSnapshotAfterItsLastPage() {
+    PurchaseHistoryPager.Page first = mPager.start(history(4), 2);
+    PurchaseHistoryPager.Page second = mPager.next(first.nextCursor, 2);
+    assertNull(second.nextCursor);
+
+    assertNull(mPager.next(first.nextCursor, 2));
+  }
+
+  @Test
+  public void keepsOnlyTheMostRecentSnapshots() {
+    PurchaseHistoryPager.Page oldest = mPager.start(history(3), 1);
+    PurchaseHistoryPager.Page older = mPager.start(history(3), 1);
+    PurchaseHistoryPager.Page newest = mPager.start(history(3), 1);
+
+    assertNull(mPager.next(oldest.nextCursor, 1));
+    assertNotNull(mPager.next(older.nextCursor, 1));
+    assertNotNull(mPager.next(newest.nextCursor, 1));
+  }
+
+  @Test
+  public void rejectsMalformedCursors() {
+    PurchaseHistoryPager.Page first = mPager.start(history(3), 1);
+    String snapshotId = first.nextCursor.substring(0, first.nextCursor.indexOf(':'));
+
+    assertNull(mPager.next("garbage", 1));
+    assertNull(mPager.next(snapshotId + ":x", 1));
+    assertNull(mPager.next(snapshotId + ":-1", 1));
+    assertNull(mPager.next("42:1", 1));
+  }
+
+  @Test
+  public void clampsThePageSize() {
+    assertEquals(PurchaseHistoryPager.DEFAULT_PAGE_SIZE, PurchaseHistoryPager.clampPageSize(0));
+    assertEquals(PurchaseHistoryPager.DEFAULT_PAGE_SIZE, PurchaseHistoryPager.clampPageSize(-1));
+    assertEquals(PurchaseHistoryPager.MAX_PAGE_SIZE, PurchaseHistoryPager.clampPageSize(Integer.MAX_VALUE));
+    assertEquals(10, PurchaseHistoryPager.clampPageSize(10));
+  }
+
+  /**
+   * Records token-0 to token-(count - 1), purchased in that order and listed oldest first
+   */
+  private static List<PurchaseHistoryRecord> history(int count) {
+    List<PurchaseHistoryRecord> records = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      records.add(TestPurchases.builder("token-" + i).purchaseTime(1000L * i).buildHistoryRecord());
+    }
+    return records;
+  }
+
+  private static List<String> tokens(PurchaseHistoryPager.Page page) {
+    List<String> tokens = new ArrayList<>();
+    for (PurchaseHistoryRecord record : page.records) {
+      tokens.add(record.getPurchaseToken());
+    }
+    return tokens;
+  }
+}
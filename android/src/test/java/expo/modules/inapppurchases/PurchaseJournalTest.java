@@ -0,0 +1,124 @@
+package expo.modules.inapppurchases;
+
+import android.content.Context;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class PurchaseJournalTest {
+  private Context mContext;
+
+  @Before
+  public void setUp() {
+    mContext = RuntimeEnvironment.getApplication();
+  }
+
+  @Test
+  public void replaysUnfinishedFinishesAfterARestart() {
+    PurchaseJournal journal = new PurchaseJournal(mContext);
+    journal.recordFinishRequested("acknowledged", false);
+    journal.recordFinishRequested("consumed", true);
+    journal.recordFinishRequested("done", true);
+    journal.recordFinishResult("done", BillingResponseCode.OK);
+    journal.awaitWritten();
+
+    Map<String, Boolean> pending = new PurchaseJournal(mContext).getPendingFinishes();
+
+    assertEquals(2, pending.size());
+    assertEquals(false, pending.get("acknowledged"));
+    assertEquals(true, pending.get("consumed"));
+  }
+
+  @Test
+  public void handsPendingFinishesToAListenerOnceLoaded() {
+    PurchaseJournal journal = new PurchaseJournal(mContext);
+    journal.recordFinishRequested("token", true);
+    journal.awaitWritten();
+
+    final TestPromise promise = new TestPromise();
+    new PurchaseJournal(mContext).getPendingFinishes(new PurchaseJournal.PendingFinishesListener() {
+      @Override
+      public void onPendingFinishes(Map<String, Boolean> pendingFinishes) {
+        promise.resolve(pendingFinishes);
+      }
+    });
+
+    assertEquals(Collections.singletonMap("token", true), promise.<Map<String, Boolean>>await());
+  }
+
+  @Test
+  public void keepsFinishesThatFailedTransiently() {
+    PurchaseJournal journal = new PurchaseJournal(mContext);
+    journal.recordFinishRequested("token", false);
+
+    journal.recordFinishResult("token", BillingResponseCode.SERVICE_UNAVAILABLE);
+
+    assertTrue(journal.getPendingFinishes().containsKey("token"));
+  }
+
+  @Test
+  public void givesUpOnFinishesThatCantSucceed() {
+    PurchaseJournal journal = new PurchaseJournal(mContext);
+    journal.recordFinishRequested("refunded", false);
+    journal.recordFinishRequested("unknown", true);
+
+    journal.recordFinishResult("refunded", BillingResponseCode.ITEM_NOT_OWNED);
+    journal.recordFinishResult("unknown", BillingResponseCode.DEVELOPER_ERROR);
+
+    assertTrue(journal.getPendingFinishes().isEmpty());
+  }
+
+  @Test
+  public void stopsReplayingAfterTheMaximumAttempts() {
+    PurchaseJournal journal = new PurchaseJournal(mContext);
+    for (int i = 1; i < PurchaseJournal.MAX_FINISH_ATTEMPTS; i++) {
+      journal.recordFinishRequested("token", true);
+    }
+    assertTrue(journal.getPendingFinishes().containsKey("token"));
+
+    journal.recordFinishRequested("token", true);
+    journal.awaitWritten();
+
+    assertTrue(journal.getPendingFinishes().isEmpty());
+    assertTrue(new PurchaseJournal(mContext).getPendingFinishes().isEmpty());
+  }
+
+  @Test
+  public void skipsExpiredAndUnreadableRecords() throws IOException {
+    long now = System.currentTimeMillis();
+    long expired = now - PurchaseJournal.MAX_ENTRY_AGE_MS - 1;
+    writeJournal("A\texpired\t" + expired + "\t1\n"
+      + "R\treceived\t" + now + "\n"
+      + "C\tolder-version\t" + now + "\n"
+      + "A\ttorn\t");
+
+    Map<String, Boolean> pending = new PurchaseJournal(mContext).getPendingFinishes();
+
+    assertEquals(1, pending.size());
+    assertEquals(true, pending.get("older-version"));
+  }
+
+  private void writeJournal(String content) throws IOException {
+    File directory = new File(mContext.getFilesDir(), "ExpoInAppPurchases");
+    assertTrue(directory.isDirectory() || directory.mkdirs());
+    try (FileOutputStream out = new FileOutputStream(new File(directory, "purchases.journal"))) {
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+}
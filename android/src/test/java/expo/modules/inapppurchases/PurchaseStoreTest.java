@@ -0,0 +1,70 @@
+package expo.modules.inapppurchases;
+
+import com.android.billingclient.api.Purchase;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PurchaseStoreTest {
+  private final PurchaseStore mStore = new PurchaseStore();
+
+  @Test
+  public void reportsNewPurchasesAsAdded() {
+    PurchaseStore.Delta delta = mStore.update(Arrays.asList(TestPurchases.purchase("a"), TestPurchases.purchase("b")));
+
+    assertEquals(1, delta.sequence);
+    assertEquals(Arrays.asList("a", "b"), TestPurchases.tokens(delta.added));
+    assertTrue(delta.changed.isEmpty());
+    assertTrue(delta.removed.isEmpty());
+  }
+
+  @Test
+  public void reportsPurchasesWhoseJsonChangedAsChanged() {
+    mStore.update(Arrays.asList(TestPurchases.purchase("a"), TestPurchases.purchase("b")));
+
+    Purchase acknowledged = TestPurchases.builder("a").acknowledged(true).build();
+    PurchaseStore.Delta delta = mStore.update(Arrays.asList(acknowledged, TestPurchases.purchase("b")));
+
+    assertEquals(2, delta.sequence);
+    assertTrue(delta.added.isEmpty());
+    assertEquals(Collections.singletonList("a"), TestPurchases.tokens(delta.changed));
+  }
+
+  @Test
+  public void keepsPurchasesMissingFromAnUpdate() {
+    mStore.update(Arrays.asList(TestPurchases.purchase("a"), TestPurchases.purchase("b")));
+
+    PurchaseStore.Delta delta = mStore.update(Collections.singletonList(TestPurchases.purchase("c")));
+
+    assertTrue(delta.removed.isEmpty());
+    assertEquals(Arrays.asList("a", "b", "c"), TestPurchases.tokens(mStore.getAll()));
+  }
+
+  @Test
+  public void reportsPurchasesMissingFromACompleteListAsRemoved() {
+    mStore.update(Arrays.asList(TestPurchases.purchase("a"), TestPurchases.purchase("b")));
+
+    PurchaseStore.Delta delta = mStore.replaceAll(
+      Arrays.asList(TestPurchases.purchase("b"), TestPurchases.purchase("c")));
+
+    assertEquals(Collections.singletonList("c"), TestPurchases.tokens(delta.added));
+    assertEquals(Collections.singletonList("a"), delta.removed);
+    assertEquals(Arrays.asList("b", "c"), TestPurchases.tokens(mStore.getAll()));
+  }
+
+  @Test
+  public void keepsTheSequenceForUpdatesThatChangeNothing() {
+    mStore.update(Collections.singletonList(TestPurchases.purchase("a")));
+
+    PurchaseStore.Delta delta = mStore.replaceAll(Collections.singletonList(TestPurchases.purchase("a")));
+
+    assertTrue(delta.isEmpty());
+    assertEquals(1, delta.sequence);
+    assertEquals(2, mStore.update(Collections.singletonList(TestPurchases.purchase("b"))).sequence);
+  }
+}
@@ -0,0 +1,99 @@
+package expo.modules.inapppurchases;
+
+import android.util.Base64;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class PurchaseVerifierTest {
+  private static final String ORIGINAL_JSON = "{\"orderId\":\"GPA.1\",\"productId\":\"coins\",\"purchaseToken\":\"token\"}";
+
+  private static KeyPair sKeyPair;
+
+  @BeforeClass
+  public static void generateKeyPair() throws GeneralSecurityException {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    sKeyPair = generator.generateKeyPair();
+  }
+
+  @Test
+  public void acceptsDataSignedWithTheAppKey() throws GeneralSecurityException {
+    PurchaseVerifier.Validator validator = PurchaseVerifier.rsa(publicKey());
+
+    assertTrue(validator.isValid(ORIGINAL_JSON, sign(ORIGINAL_JSON)));
+  }
+
+  @Test
+  public void rejectsTamperedData() throws GeneralSecurityException {
+    PurchaseVerifier.Validator validator = PurchaseVerifier.rsa(publicKey());
+    String signature = sign(ORIGINAL_JSON);
+
+    assertFalse(validator.isValid(ORIGINAL_JSON.replace("coins", "gems"), signature));
+    assertFalse(validator.isValid(ORIGINAL_JSON, signature.substring(0, signature.length() - 8) + "AAAAAAA="));
+    assertFalse(validator.isValid(ORIGINAL_JSON, "not base64!"));
+  }
+
+  @Test
+  public void rejectsPurchasesWithoutSignature() {
+    PurchaseVerifier.Validator validator = PurchaseVerifier.rsa(publicKey());
+
+    assertFalse(validator.isValid(ORIGINAL_JSON, null));
+    assertFalse(validator.isValid(ORIGINAL_JSON, ""));
+    assertFalse(validator.isValid(null, "c2lnbmF0dXJl"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void refusesAMissingKey() {
+    PurchaseVerifier.rsa("");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void refusesAnUnreadableKey() {
+    PurchaseVerifier.rsa(Base64.encodeToString("not a key".getBytes(StandardCharsets.UTF_8), Base64.DEFAULT));
+  }
+
+  @Test
+  public void checksEveryTokenOnceUntilItIsSignedAgain() {
+    final int[] checks = new int[1];
+    PurchaseVerifier verifier = new PurchaseVerifier(new PurchaseVerifier.Validator() {
+      @Override
+      public boolean isValid(String originalJson, String signature) {
+        checks[0]++;
+        return "valid".equals(signature);
+      }
+    });
+
+    assertTrue(verifier.verify("token", ORIGINAL_JSON, "valid"));
+    assertTrue(verifier.verify("token", ORIGINAL_JSON, "valid"));
+    assertEquals(1, checks[0]);
+
+    assertFalse(verifier.verify("token", ORIGINAL_JSON, "resigned"));
+    assertFalse(verifier.verify("other", ORIGINAL_JSON, "resigned"));
+    assertEquals(3, checks[0]);
+  }
+
+  private static String publicKey() {
+    return Base64.encodeToString(sKeyPair.getPublic().getEncoded(), Base64.DEFAULT);
+  }
+
+  private static String sign(String data) throws GeneralSecurityException {
+    Signature signer = Signature.getInstance("SHA1withRSA");
+    signer.initSign(sKeyPair.getPrivate());
+    signer.update(data.getBytes(StandardCharsets.UTF_8));
+    return Base64.encodeToString(signer.sign(), Base64.DEFAULT);
+  }
+}
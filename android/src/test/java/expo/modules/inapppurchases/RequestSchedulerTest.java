@@ -0,0 +1,219 @@
+package expo.modules.inapppurchases;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.BillingResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class RequestSchedulerTest {
+  private static final String SUPERSEDED = "superseded";
+
+  private FakeBillingBackend mBackend;
+  private ExecutorService mExecutor;
+  private BillingConnection mConnection;
+  private RequestScheduler mScheduler;
+
+  @Before
+  public void setUp() {
+    mBackend = new FakeBillingBackend(new Random(42));
+    mExecutor = Executors.newSingleThreadExecutor();
+    mConnection = new BillingConnection(mBackend, mExecutor, new BillingConnection.Listener() {
+      @Override
+      public void onBillingSetupFinished(BillingResult billingResult) {
+      }
+    });
+    mScheduler = new RequestScheduler(mConnection, mExecutor);
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    mScheduler.close();
+    mConnection.close();
+    mExecutor.shutdown();
+    mExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    mBackend.shutdown();
+  }
+
+  @Test
+  public void limitsTheRequestsInFlightOfEveryPriority() {
+    Request first = execute(RequestScheduler.Priority.BACKGROUND, "first", null);
+    Request second = execute(RequestScheduler.Priority.BACKGROUND, "second", null);
+    Request third = execute(RequestScheduler.Priority.BACKGROUND, "third", null);
+    first.mStarted.await();
+    second.mStarted.await();
+    awaitExecutor();
+    assertFalse(third.mStarted.isSettled());
+
+    first.done();
+
+    third.mStarted.await();
+  }
+
+  @Test
+  public void holdsBackgroundRequestsWhileAnInteractiveOneIsInFlight() {
+    Request purchase = execute(RequestScheduler.Priority.INTERACTIVE, "purchase", null);
+    Request query = execute(RequestScheduler.Priority.BACKGROUND, "query", null);
+    Request finish = execute(RequestScheduler.Priority.FINISH, "finish", null);
+    purchase.mStarted.await();
+    finish.mStarted.await();
+    awaitExecutor();
+    assertFalse(query.mStarted.isSettled());
+
+    purchase.done();
+
+    query.mStarted.await();
+  }
+
+  @Test
+  public void supersedesOnlyQueuedRequestsWithTheSameKey() {
+    Request first = execute(RequestScheduler.Priority.BACKGROUND, "first", "history");
+    Request second = execute(RequestScheduler.Priority.BACKGROUND, "second", null);
+    first.mStarted.await();
+    second.mStarted.await();
+    Request older = execute(RequestScheduler.Priority.BACKGROUND, "older", "history");
+    Request other = execute(RequestScheduler.Priority.BACKGROUND, "other", "products");
+
+    Request newer = execute(RequestScheduler.Priority.BACKGROUND, "newer", "history");
+
+    assertEquals(SUPERSEDED, older.mStarted.awaitRejection());
+    first.done();
+    second.done();
+    other.mStarted.await();
+    newer.mStarted.await();
+  }
+
+  @Test
+  public void cancellingADispatchedRequestFreesItsSlot() {
+    Request first = execute(RequestScheduler.Priority.BACKGROUND, "first", null);
+    Request second = execute(RequestScheduler.Priority.BACKGROUND, "second", null);
+    Request third = execute(RequestScheduler.Priority.BACKGROUND, "third", null);
+    first.mStarted.await();
+    second.mStarted.await();
+
+    mScheduler.cancel(first);
+
+    third.mStarted.await();
+  }
+
+  @Test
+  public void neitherRunsNorFailsCancelledQueuedRequests() {
+    Request first = execute(RequestScheduler.Priority.BACKGROUND, "first", null);
+    Request second = execute(RequestScheduler.Priority.BACKGROUND, "second", null);
+    Request cancelled = execute(RequestScheduler.Priority.BACKGROUND, "cancelled", null);
+    first.mStarted.await();
+    second.mStarted.await();
+
+    mScheduler.cancel(cancelled);
+    first.done();
+    second.done();
+    awaitExecutor();
+
+    assertFalse(cancelled.mStarted.isSettled());
+  }
+
+  @Test
+  public void failsQueuedAndLaterRequestsOnceClosed() {
+    mBackend.setLatency(FakeBillingBackend.Operation.START_CONNECTION, FakeBillingBackend.fixed(60000));
+    Request first = execute(RequestScheduler.Priority.BACKGROUND, "first", null);
+    Request second = execute(RequestScheduler.Priority.BACKGROUND, "second", null);
+    Request queued = execute(RequestScheduler.Priority.BACKGROUND, "queued", null);
+
+    mScheduler.close();
+    mConnection.close();
+
+    String disconnected = String.valueOf(BillingResponseCode.SERVICE_DISCONNECTED);
+    assertEquals(disconnected, first.mStarted.awaitRejection());
+    assertEquals(disconnected, second.mStarted.awaitRejection());
+    assertEquals(disconnected, queued.mStarted.awaitRejection());
+    assertEquals(disconnected, execute(RequestScheduler.Priority.BACKGROUND, "late", null).mStarted.awaitRejection());
+  }
+
+  /**
+   * Queues the request on the executor, as the scheduler requires
+   */
+  private Request execute(final RequestScheduler.Priority priority, String name, @Nullable String key) {
+    final Request request = new Request(name, key);
+    try {
+      mExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          mScheduler.execute(priority, request);
+        }
+      }).get();
+    } catch (InterruptedException | ExecutionException e) {
+      throw new AssertionError(e);
+    }
+    return request;
+  }
+
+  /**
+   * Waits for everything the executor was asked to do so far, dispatching included
+   */
+  private void awaitExecutor() {
+    try {
+      mExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+        }
+      }).get();
+    } catch (InterruptedException | ExecutionException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Settles its promise once it started and keeps its slot until done() is called. Rejected with the
+   * response code when the service was unavailable, or with SUPERSEDED
+   */
+  private static class Request implements RequestScheduler.KeyedRequest {
+    final String mName;
+    @Nullable
+    final String mKey;
+    final TestPromise mStarted = new TestPromise();
+    private volatile Runnable mDone;
+
+    Request(String name, @Nullable String key) {
+      mName = name;
+      mKey = key;
+    }
+
+    void done() {
+      mDone.run();
+    }
+
+    @Nullable
+    @Override
+    public String getKey() {
+      return mKey;
+    }
+
+    @Override
+    public void run(Runnable done) {
+      mDone = done;
+      mStarted.resolve(mName);
+    }
+
+    @Override
+    public void onServiceUnavailable(BillingResult billingResult) {
+      mStarted.reject(String.valueOf(billingResult.getResponseCode()), billingResult.getDebugMessage(), null);
+    }
+
+    @Override
+    public void onSuperseded() {
+      mStarted.reject(SUPERSEDED, "A newer " + mKey + " request was queued", null);
+    }
+  }
+}
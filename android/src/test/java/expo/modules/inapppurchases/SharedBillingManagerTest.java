@@ -0,0 +1,100 @@
+package expo.modules.inapppurchases;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.concurrent.Executor;
+
+import expo.modules.core.interfaces.services.EventEmitter;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@RunWith(RobolectricTestRunner.class)
+public class SharedBillingManagerTest {
+  private static final Executor DIRECT = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  private final Context mContext = RuntimeEnvironment.getApplication();
+  private final EventEmitter mEventEmitter = mock(EventEmitter.class);
+  private FakeBillingBackend mBackend;
+  private int mAcquired;
+
+  @Before
+  public void setUp() {
+    mBackend = new FakeBillingBackend();
+  }
+
+  @After
+  public void tearDown() {
+    while (mAcquired > 0) {
+      release();
+    }
+    mBackend.shutdown();
+  }
+
+  @Test
+  public void sharesOneManagerBetweenCallers() {
+    BillingManager first = acquire();
+    BillingManager second = acquire();
+
+    assertSame(first, second);
+  }
+
+  @Test
+  public void keepsTheConnectionUntilTheLastRelease() {
+    BillingManager manager = acquire();
+    acquire();
+    TestPromise connected = new TestPromise();
+    manager.startConnection(connected, Cancellation.NONE);
+    connected.await();
+
+    release();
+    assertTrue(mBackend.isReady());
+    release();
+    assertFalse(mBackend.isReady());
+  }
+
+  @Test
+  public void createsANewManagerAfterTheLastRelease() {
+    BillingManager first = acquire();
+    release();
+
+    assertNotSame(first, acquire());
+  }
+
+  @Test
+  public void ignoresUnbalancedReleases() {
+    BillingManager first = acquire();
+    release();
+    SharedBillingManager.release();
+    BillingManager second = acquire();
+    BillingManager third = acquire();
+
+    assertSame(second, third);
+    assertNotSame(first, second);
+  }
+
+  private BillingManager acquire() {
+    mAcquired++;
+    return SharedBillingManager.acquire(mContext, mEventEmitter, DIRECT, FakeBillingBackend.factory(mBackend));
+  }
+
+  private void release() {
+    mAcquired--;
+    SharedBillingManager.release();
+  }
+}
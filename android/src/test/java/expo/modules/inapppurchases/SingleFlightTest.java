@@ -0,0 +1,103 @@
+package expo.modules.inapppurchases;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import expo.modules.core.Promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SingleFlightTest {
+  private final SingleFlight mSingleFlight = new SingleFlight();
+  private final List<Promise> mCalls = new ArrayList<>();
+  private final List<Cancellation> mCallCancellations = new ArrayList<>();
+
+  private final SingleFlight.Request mRequest = new SingleFlight.Request() {
+    @Override
+    public void run(Promise promise, Cancellation cancellation) {
+      mCalls.add(promise);
+      mCallCancellations.add(cancellation);
+    }
+  };
+
+  @Test
+  public void sharesThePendingCallWithLaterCallers() {
+    TestPromise first = new TestPromise();
+    TestPromise second = new TestPromise();
+
+    mSingleFlight.execute("purchases", first, Cancellation.NONE, mRequest);
+    mSingleFlight.execute("purchases", second, Cancellation.NONE, mRequest);
+    mCalls.get(0).resolve("owned");
+
+    assertEquals(1, mCalls.size());
+    assertEquals("owned", first.<String>await());
+    assertEquals("owned", second.<String>await());
+  }
+
+  @Test
+  public void runsRequestsWithDifferentKeysSeparately() {
+    mSingleFlight.execute("inapp", new TestPromise(), Cancellation.NONE, mRequest);
+    mSingleFlight.execute("subs", new TestPromise(), Cancellation.NONE, mRequest);
+
+    assertEquals(2, mCalls.size());
+  }
+
+  @Test
+  public void startsANewCallOnceThePendingOneSettled() {
+    TestPromise first = new TestPromise();
+    mSingleFlight.execute("purchases", first, Cancellation.NONE, mRequest);
+    mCalls.get(0).reject("E_QUERY_FAILED", "Failed", null);
+    assertEquals("E_QUERY_FAILED", first.awaitRejection());
+
+    TestPromise second = new TestPromise();
+    mSingleFlight.execute("purchases", second, Cancellation.NONE, mRequest);
+    mCalls.get(1).resolve("owned");
+
+    assertEquals(2, mCalls.size());
+    assertEquals("owned", second.<String>await());
+    assertEquals(1, first.getSettleCount());
+  }
+
+  @Test
+  public void cancelsTheCallOnlyOnceEveryCallerCancelled() {
+    Cancellation firstCancellation = new Cancellation();
+    Cancellation secondCancellation = new Cancellation();
+    mSingleFlight.execute("purchases", new TestPromise(), firstCancellation, mRequest);
+    TestPromise second = new TestPromise();
+    mSingleFlight.execute("purchases", second, secondCancellation, mRequest);
+
+    firstCancellation.cancel();
+    assertFalse(mCallCancellations.get(0).isCancelled());
+
+    secondCancellation.cancel();
+    assertTrue(mCallCancellations.get(0).isCancelled());
+
+    TestPromise third = new TestPromise();
+    mSingleFlight.execute("purchases", third, Cancellation.NONE, mRequest);
+    mCalls.get(0).resolve("stale");
+    mCalls.get(1).resolve("fresh");
+
+    assertEquals(2, mCalls.size());
+    assertEquals("fresh", third.<String>await());
+    assertFalse(second.isSettled());
+  }
+
+  @Test
+  public void settlesCallersThatStayedWhenOthersCancelled() {
+    Cancellation cancellation = new Cancellation();
+    TestPromise cancelled = new TestPromise();
+    TestPromise stayed = new TestPromise();
+    mSingleFlight.execute("purchases", cancelled, cancellation, mRequest);
+    mSingleFlight.execute("purchases", stayed, Cancellation.NONE, mRequest);
+
+    cancellation.cancel();
+    mCalls.get(0).resolve("owned");
+
+    assertEquals("owned", stayed.<String>await());
+    assertFalse(cancelled.isSettled());
+  }
+}
@@ -0,0 +1,71 @@
+package expo.modules.inapppurchases;
+
+import com.android.billingclient.api.BillingClient.ProductType;
+import com.android.billingclient.api.ProductDetails;
+import com.android.billingclient.api.ProductDetails.OneTimePurchaseOfferDetails;
+import com.android.billingclient.api.ProductDetails.PricingPhase;
+import com.android.billingclient.api.ProductDetails.PricingPhases;
+import com.android.billingclient.api.ProductDetails.SubscriptionOfferDetails;
+
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * ProductDetails for the tests. Only the Billing library can create real ones, so these are mocks
+ * answering every getter BillingFormatter and ProductDetailsCache read
+ */
+final class TestProducts {
+  static final long PRICE_AMOUNT_MICROS = 990000L;
+
+  private TestProducts() {
+  }
+
+  static ProductDetails inApp(String productId) {
+    ProductDetails productDetails = product(productId, ProductType.INAPP);
+    OneTimePurchaseOfferDetails offer = mock(OneTimePurchaseOfferDetails.class);
+    when(offer.getFormattedPrice()).thenReturn(formatPrice(PRICE_AMOUNT_MICROS));
+    when(offer.getPriceAmountMicros()).thenReturn(PRICE_AMOUNT_MICROS);
+    when(offer.getPriceCurrencyCode()).thenReturn("USD");
+    when(productDetails.getOneTimePurchaseOfferDetails()).thenReturn(offer);
+    return productDetails;
+  }
+
+  /**
+   * A subscription with a single base plan billed every billingPeriod, e.g. "P1M"
+   */
+  static ProductDetails subscription(String productId, String billingPeriod) {
+    ProductDetails productDetails = product(productId, ProductType.SUBS);
+    PricingPhase phase = mock(PricingPhase.class);
+    when(phase.getFormattedPrice()).thenReturn(formatPrice(PRICE_AMOUNT_MICROS));
+    when(phase.getPriceAmountMicros()).thenReturn(PRICE_AMOUNT_MICROS);
+    when(phase.getPriceCurrencyCode()).thenReturn("USD");
+    when(phase.getBillingPeriod()).thenReturn(billingPeriod);
+    when(phase.getRecurrenceMode()).thenReturn(1);
+    PricingPhases phases = mock(PricingPhases.class);
+    when(phases.getPricingPhaseList()).thenReturn(Collections.singletonList(phase));
+    SubscriptionOfferDetails offer = mock(SubscriptionOfferDetails.class);
+    when(offer.getBasePlanId()).thenReturn("base");
+    when(offer.getOfferToken()).thenReturn(productId + "/base/");
+    when(offer.getOfferTags()).thenReturn(Collections.<String>emptyList());
+    when(offer.getPricingPhases()).thenReturn(phases);
+    when(productDetails.getSubscriptionOfferDetails()).thenReturn(Collections.singletonList(offer));
+    return productDetails;
+  }
+
+  private static ProductDetails product(String productId, String productType) {
+    ProductDetails productDetails = mock(ProductDetails.class);
+    when(productDetails.getProductId()).thenReturn(productId);
+    when(productDetails.getProductType()).thenReturn(productType);
+    when(productDetails.getTitle()).thenReturn("Title of " + productId);
+    when(productDetails.getName()).thenReturn(productId);
+    when(productDetails.getDescription()).thenReturn("Description of " + productId);
+    return productDetails;
+  }
+
+  private static String formatPrice(long priceAmountMicros) {
+    return String.format(Locale.US, "$%.2f", priceAmountMicros / 1000000.0);
+  }
+}
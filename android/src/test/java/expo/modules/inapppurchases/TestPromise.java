@@ -0,0 +1,79 @@
+package expo.modules.inapppurchases;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import expo.modules.core.Promise;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Promise the tests wait on. It can be settled from any thread and counts how often it was settled
+ */
+class TestPromise implements Promise {
+  static final long TIMEOUT_MS = 5000;
+
+  private final CountDownLatch mSettled = new CountDownLatch(1);
+  private final AtomicInteger mSettleCount = new AtomicInteger();
+  private volatile Object mValue;
+  private volatile String mRejectionCode;
+  private volatile String mRejectionMessage;
+
+  @Override
+  public void resolve(Object value) {
+    mValue = value;
+    settle();
+  }
+
+  @Override
+  public void reject(String code, String message, Throwable e) {
+    mRejectionCode = code;
+    mRejectionMessage = message;
+    settle();
+  }
+
+  private void settle() {
+    mSettleCount.incrementAndGet();
+    mSettled.countDown();
+  }
+
+  boolean isSettled() {
+    return mSettled.getCount() == 0;
+  }
+
+  int getSettleCount() {
+    return mSettleCount.get();
+  }
+
+  /**
+   * The value the promise was resolved with, the test fails when it was rejected instead
+   */
+  @SuppressWarnings("unchecked")
+  <T> T await() {
+    awaitSettled();
+    assertNull("Rejected with " + mRejectionCode + ": " + mRejectionMessage, mRejectionCode);
+    return (T) mValue;
+  }
+
+  /**
+   * The code the promise was rejected with, the test fails when it was resolved instead
+   */
+  String awaitRejection() {
+    awaitSettled();
+    if (mRejectionCode == null) {
+      fail("Resolved with " + mValue);
+    }
+    return mRejectionCode;
+  }
+
+  private void awaitSettled() {
+    try {
+      assertTrue("Promise wasn't settled within " + TIMEOUT_MS + "ms", mSettled.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package expo.modules.inapppurchases;
+
+import com.android.billingclient.api.Purchase;
+import com.android.billingclient.api.PurchaseHistoryRecord;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Purchases for the tests and FakeBillingBackend, built from the purchase JSON of Play Store like the
+ * Billing library does
+ */
+final class TestPurchases {
+  static final int PURCHASED = 0;
+  static final int PENDING = 4;
+
+  private TestPurchases() {
+  }
+
+  /**
+   * A purchased "coins" product
+   */
+  static Purchase purchase(String purchaseToken) {
+    return builder(purchaseToken).build();
+  }
+
+  /**
+   * Starts a purchase of the "coins" product in the purchased state, only the fields that are set
+   * are added to its JSON
+   */
+  static Builder builder(String purchaseToken) {
+    return new Builder(purchaseToken);
+  }
+
+  static PurchaseStore.Delta added(Purchase... purchases) {
+    return new PurchaseStore.Delta(0, Arrays.asList(purchases), Collections.<Purchase>emptyList(),
+      Collections.<String>emptyList());
+  }
+
+  static PurchaseStore.Delta removed(String... purchaseTokens) {
+    return new PurchaseStore.Delta(0, Collections.<Purchase>emptyList(), Collections.<Purchase>emptyList(),
+      Arrays.asList(purchaseTokens));
+  }
+
+  static List<String> tokens(List<Purchase> purchases) {
+    List<String> tokens = new ArrayList<>();
+    for (Purchase purchase : purchases) {
+      tokens.add(purchase.getPurchaseToken());
+    }
+    return tokens;
+  }
+
+  static final class Builder {
+    private final String mPurchaseToken;
+    private final JSONObject mJson = new JSONObject();
+    private String mSignature = "";
+
+    private Builder(String purchaseToken) {
+      mPurchaseToken = purchaseToken;
+      put("productId", "coins");
+      put("purchaseToken", purchaseToken);
+      put("purchaseState", PURCHASED);
+    }
+
+    Builder productId(String productId) {
+      return put("productId", productId);
+    }
+
+    /**
+     * @param state PURCHASED or PENDING, as in the purchase JSON of Play Store
+     */
+    Builder state(int state) {
+      return put("purchaseState", state);
+    }
+
+    Builder purchaseTime(long purchaseTime) {
+      return put("purchaseTime", purchaseTime);
+    }
+
+    Builder acknowledged(boolean acknowledged) {
+      return put("acknowledged", acknowledged);
+    }
+
+    Builder autoRenewing(boolean autoRenewing) {
+      return put("autoRenewing", autoRenewing);
+    }
+
+    Builder signature(String signature) {
+      mSignature = signature;
+      return this;
+    }
+
+    /**
+     * Sets any other field of the purchase JSON
+     */
+    Builder put(String key, Object value) {
+      try {
+        mJson.put(key, value);
+      } catch (JSONException e) {
+        throw new IllegalArgumentException("Couldn't set " + key + " of purchase " + mPurchaseToken, e);
+      }
+      return this;
+    }
+
+    String json() {
+      return mJson.toString();
+    }
+
+    Purchase build() {
+      try {
+        return new Purchase(json(), mSignature);
+      } catch (JSONException e) {
+        throw new IllegalStateException("Couldn't generate purchase " + mPurchaseToken, e);
+      }
+    }
+
+    PurchaseHistoryRecord buildHistoryRecord() {
+      try {
+        return new PurchaseHistoryRecord(json(), mSignature);
+      } catch (JSONException e) {
+        throw new IllegalStateException("Couldn't generate history record " + mPurchaseToken, e);
+      }
+    }
+  }
+}
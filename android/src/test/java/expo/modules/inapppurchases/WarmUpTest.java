@@ -0,0 +1,72 @@
+package expo.modules.inapppurchases;
+
+import android.os.Bundle;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import expo.modules.core.Promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class WarmUpTest {
+  @Test
+  public void resolvesOnceEveryStepDidWithTheirResponses() {
+    TestPromise promise = new TestPromise();
+    WarmUp warmUp = new WarmUp(3, promise);
+    Promise connection = warmUp.step("connection");
+    Promise products = warmUp.step("products");
+    Promise purchases = warmUp.step("purchases");
+    Bundle productsResponse = response(BillingFormatter.OK);
+
+    products.resolve(productsResponse);
+    connection.resolve(null);
+    assertFalse(promise.isSettled());
+    purchases.resolve(response(BillingFormatter.OK));
+
+    Bundle response = promise.await();
+    assertEquals(BillingFormatter.OK, response.getInt("responseCode"));
+    assertSame(productsResponse, response.getBundle("products"));
+    assertEquals(BillingFormatter.OK, response.getBundle("purchases").getInt("responseCode"));
+    assertNull(response.getBundle("connection"));
+  }
+
+  @Test
+  public void reportsAnErrorWhenAnyStepFailed() {
+    TestPromise promise = new TestPromise();
+    WarmUp warmUp = new WarmUp(2, promise);
+
+    warmUp.step("products").resolve(response(BillingFormatter.OK));
+    warmUp.step("purchases").resolve(response(BillingFormatter.ERROR));
+
+    Bundle response = promise.<Bundle>await();
+    assertEquals(BillingFormatter.ERROR, response.getInt("responseCode"));
+    assertEquals(BillingFormatter.OK, response.getBundle("products").getInt("responseCode"));
+  }
+
+  @Test
+  public void rejectsWithTheFirstRejectionOnceEveryStepFinished() {
+    TestPromise promise = new TestPromise();
+    WarmUp warmUp = new WarmUp(3, promise);
+    Promise products = warmUp.step("products");
+
+    warmUp.step("connection").reject("E_SERVICE_UNAVAILABLE", "Billing unavailable", null);
+    warmUp.step("purchases").reject("E_QUERY_FAILED", "Query failed", null);
+    assertFalse(promise.isSettled());
+    products.resolve(response(BillingFormatter.OK));
+
+    assertEquals("E_SERVICE_UNAVAILABLE", promise.awaitRejection());
+    assertEquals(1, promise.getSettleCount());
+  }
+
+  private static Bundle response(int responseCode) {
+    Bundle response = new Bundle();
+    response.putInt("responseCode", responseCode);
+    return response;
+  }
+}
@@ -0,0 +1,57 @@
+package expo.modules.inapppurchases.benchmark;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.BillingResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import expo.modules.inapppurchases.QueryFanIn;
+
+/**
+ * Folding the results of fanned out queries into the single result reported to JS
+ */
+@State(Scope.Benchmark)
+public class AggregateBillingResultsBenchmark {
+  @Param({"2", "16", "256"})
+  public int resultCount;
+
+  /**
+   * Share of the results that failed, in percent
+   */
+  @Param({"0", "10", "100"})
+  public int failurePercent;
+
+  private List<BillingResult> mResults;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    int[] failures = {
+      BillingResponseCode.SERVICE_DISCONNECTED,
+      BillingResponseCode.SERVICE_UNAVAILABLE,
+      BillingResponseCode.ERROR,
+      BillingResponseCode.USER_CANCELED
+    };
+    Random random = new Random(42);
+    mResults = new ArrayList<>(resultCount);
+    for (int i = 0; i < resultCount; i++) {
+      int responseCode = random.nextInt(100) < failurePercent
+        ? failures[random.nextInt(failures.length)]
+        : BillingResponseCode.OK;
+      mResults.add(BillingResult.newBuilder().setResponseCode(responseCode).setDebugMessage("result " + i).build());
+    }
+  }
+
+  @Benchmark
+  public BillingResult aggregateBillingResults() {
+    return QueryFanIn.aggregateBillingResults(mResults);
+  }
+}
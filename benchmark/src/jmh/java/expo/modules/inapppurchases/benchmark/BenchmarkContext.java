@@ -0,0 +1,103 @@
+package expo.modules.inapppurchases.benchmark;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Context of the benchmarked BillingManager: files go to a fresh temporary directory and shared
+ * preferences are kept in memory
+ */
+final class BenchmarkContext extends Context {
+  private final File mFilesDir;
+  private final Map<String, SharedPreferences> mPreferences = new HashMap<>();
+
+  BenchmarkContext() {
+    try {
+      mFilesDir = Files.createTempDirectory("billing-benchmark").toFile();
+    } catch (IOException e) {
+      throw new IllegalStateException("Couldn't create the files directory", e);
+    }
+  }
+
+  /**
+   * Deletes everything the module wrote
+   */
+  void delete() {
+    delete(mFilesDir);
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  @Override
+  public Context getApplicationContext() {
+    return this;
+  }
+
+  @Override
+  public File getFilesDir() {
+    return mFilesDir;
+  }
+
+  @Override
+  public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+    SharedPreferences preferences = mPreferences.get(name);
+    if (preferences == null) {
+      preferences = new MemoryPreferences();
+      mPreferences.put(name, preferences);
+    }
+    return preferences;
+  }
+
+  private static class MemoryPreferences implements SharedPreferences {
+    private final Map<String, String> mValues = new HashMap<>();
+
+    @Override
+    public synchronized String getString(String key, String defValue) {
+      return mValues.containsKey(key) ? mValues.get(key) : defValue;
+    }
+
+    @Override
+    public Editor edit() {
+      return new Editor() {
+        private final Map<String, String> mPuts = new HashMap<>();
+        private final Set<String> mRemovals = new HashSet<>();
+
+        @Override
+        public Editor putString(String key, String value) {
+          mPuts.put(key, value);
+          return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+          mRemovals.add(key);
+          return this;
+        }
+
+        @Override
+        public void apply() {
+          synchronized (MemoryPreferences.this) {
+            mValues.keySet().removeAll(mRemovals);
+            mValues.putAll(mPuts);
+          }
+        }
+      };
+    }
+  }
+}
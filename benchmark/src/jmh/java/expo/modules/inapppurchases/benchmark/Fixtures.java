@@ -0,0 +1,206 @@
+package expo.modules.inapppurchases.benchmark;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.BillingClient.ProductType;
+import com.android.billingclient.api.BillingClient.SkuType;
+import com.android.billingclient.api.BillingClientStateListener;
+import com.android.billingclient.api.BillingResult;
+import com.android.billingclient.api.ProductDetails;
+import com.android.billingclient.api.ProductDetailsResponseListener;
+import com.android.billingclient.api.Purchase;
+import com.android.billingclient.api.PurchaseHistoryRecord;
+import com.android.billingclient.api.PurchaseHistoryResponseListener;
+import com.android.billingclient.api.PurchasesResponseListener;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import expo.modules.core.Promise;
+import expo.modules.inapppurchases.BillingBackend.ProductQuery;
+import expo.modules.inapppurchases.FakeBillingBackend;
+
+/**
+ * Builds the synthetic catalogs and histories the benchmarks run against, by querying them from a
+ * FakeBillingBackend the same way BillingManager does
+ */
+final class Fixtures {
+  static final String SKU_PREFIX = "sku";
+
+  private Fixtures() {
+  }
+
+  /**
+   * A backend with skuCount in-app products and purchaseCount owned purchases and history records
+   * spread over them
+   */
+  static FakeBillingBackend backend(int skuCount, int purchaseCount) {
+    FakeBillingBackend backend = new FakeBillingBackend();
+    addProducts(backend, ProductType.INAPP, SKU_PREFIX, skuCount);
+    for (int i = 0; i < purchaseCount; i++) {
+      backend.addPurchase(SKU_PREFIX + (i % skuCount), i % 2 == 0);
+    }
+    return backend;
+  }
+
+  /**
+   * Same as backend(), already connected
+   */
+  static FakeBillingBackend connectedBackend(int skuCount, int purchaseCount) {
+    FakeBillingBackend backend = backend(skuCount, purchaseCount);
+    final CompletableFuture<BillingResult> setup = new CompletableFuture<>();
+    backend.startConnection(new BillingClientStateListener() {
+      @Override
+      public void onBillingSetupFinished(BillingResult billingResult) {
+        setup.complete(billingResult);
+      }
+
+      @Override
+      public void onBillingServiceDisconnected() {
+      }
+    });
+    checkOk(await(setup));
+    return backend;
+  }
+
+  /**
+   * Adds count generated products of the given type with SKUs prefix0, prefix1, ... to the backend.
+   * Subscriptions get a "monthly" base plan with a "free-trial" offer and a "yearly" base plan
+   */
+  static void addProducts(FakeBillingBackend backend, String productType, String prefix, int count) {
+    for (int i = 0; i < count; i++) {
+      String sku = prefix + i;
+      long priceAmountMicros = (i % 100) * 1000000L + 990000L;
+      try {
+        JSONObject json = new JSONObject()
+          .put("productId", sku)
+          .put("type", productType)
+          .put("title", "Product " + i)
+          .put("name", "Product " + i)
+          .put("description", "Generated product " + i);
+        if (ProductType.SUBS.equals(productType)) {
+          JSONObject monthly = pricingPhase(priceAmountMicros, "P1M", 1, 0);
+          json.put("subscriptionOfferDetails", new JSONArray()
+            .put(offer(sku, "monthly", null, new JSONArray().put(monthly)))
+            .put(offer(sku, "monthly", "free-trial", new JSONArray().put(pricingPhase(0, "P1W", 2, 1)).put(monthly)))
+            .put(offer(sku, "yearly", null, new JSONArray().put(pricingPhase(priceAmountMicros * 10, "P1Y", 1, 0)))));
+        } else {
+          json.put("oneTimePurchaseOfferDetails", new JSONObject()
+            .put("formattedPrice", formatPrice(priceAmountMicros))
+            .put("priceAmountMicros", priceAmountMicros)
+            .put("priceCurrencyCode", "USD"));
+        }
+        backend.addProduct(new ProductDetails(json.toString()));
+      } catch (JSONException e) {
+        throw new IllegalStateException("Couldn't generate product " + sku, e);
+      }
+    }
+  }
+
+  private static JSONObject offer(String sku, String basePlanId, String offerId, JSONArray pricingPhases) throws JSONException {
+    JSONObject offer = new JSONObject()
+      .put("basePlanId", basePlanId)
+      .put("offerIdToken", sku + "/" + basePlanId + "/" + (offerId != null ? offerId : ""))
+      .put("offerTags", new JSONArray())
+      .put("pricingPhases", pricingPhases);
+    if (offerId != null) {
+      offer.put("offerId", offerId);
+    }
+    return offer;
+  }
+
+  private static JSONObject pricingPhase(long priceAmountMicros, String billingPeriod, int recurrenceMode, int billingCycleCount) throws JSONException {
+    return new JSONObject()
+      .put("formattedPrice", formatPrice(priceAmountMicros))
+      .put("priceAmountMicros", priceAmountMicros)
+      .put("priceCurrencyCode", "USD")
+      .put("billingPeriod", billingPeriod)
+      .put("recurrenceMode", recurrenceMode)
+      .put("billingCycleCount", billingCycleCount);
+  }
+
+  private static String formatPrice(long priceAmountMicros) {
+    return String.format(Locale.US, "$%.2f", priceAmountMicros / 1000000.0);
+  }
+
+  static List<ProductDetails> productDetails(FakeBillingBackend backend, int skuCount) {
+    List<ProductQuery> products = new ArrayList<>(skuCount);
+    for (int i = 0; i < skuCount; i++) {
+      products.add(new ProductQuery(SKU_PREFIX + i, ProductType.INAPP));
+    }
+    final CompletableFuture<List<ProductDetails>> result = new CompletableFuture<>();
+    backend.queryProductDetailsAsync(products, new ProductDetailsResponseListener() {
+      @Override
+      public void onProductDetailsResponse(BillingResult billingResult, List<ProductDetails> productDetails) {
+        checkOk(billingResult);
+        result.complete(productDetails);
+      }
+    });
+    return await(result);
+  }
+
+  static List<Purchase> purchases(FakeBillingBackend backend) {
+    final CompletableFuture<List<Purchase>> result = new CompletableFuture<>();
+    backend.queryPurchasesAsync(SkuType.INAPP, new PurchasesResponseListener() {
+      @Override
+      public void onQueryPurchasesResponse(BillingResult billingResult, List<Purchase> purchases) {
+        checkOk(billingResult);
+        result.complete(purchases);
+      }
+    });
+    return await(result);
+  }
+
+  static List<PurchaseHistoryRecord> history(FakeBillingBackend backend) {
+    final CompletableFuture<List<PurchaseHistoryRecord>> result = new CompletableFuture<>();
+    backend.queryPurchaseHistoryAsync(SkuType.INAPP, new PurchaseHistoryResponseListener() {
+      @Override
+      public void onPurchaseHistoryResponse(BillingResult billingResult, List<PurchaseHistoryRecord> records) {
+        checkOk(billingResult);
+        result.complete(records);
+      }
+    });
+    return await(result);
+  }
+
+  static <T> T await(CompletableFuture<T> future) {
+    try {
+      return future.get(30, TimeUnit.SECONDS);
+    } catch (Exception e) {
+      throw new IllegalStateException("Fake billing backend didn't answer", e);
+    }
+  }
+
+  /**
+   * Promise of a BillingManager call, settled into a future
+   */
+  static class FuturePromise implements Promise {
+    private final CompletableFuture<Object> mFuture = new CompletableFuture<>();
+
+    @Override
+    public void resolve(Object value) {
+      mFuture.complete(value);
+    }
+
+    @Override
+    public void reject(String code, String message, Throwable e) {
+      mFuture.completeExceptionally(new IllegalStateException(code + ": " + message, e));
+    }
+
+    Object await() {
+      return Fixtures.await(mFuture);
+    }
+  }
+
+  private static void checkOk(BillingResult billingResult) {
+    if (billingResult.getResponseCode() != BillingResponseCode.OK) {
+      throw new IllegalStateException("Fake billing backend answered with " + billingResult.getResponseCode());
+    }
+  }
+}
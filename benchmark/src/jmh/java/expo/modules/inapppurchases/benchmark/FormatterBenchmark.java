@@ -0,0 +1,112 @@
+package expo.modules.inapppurchases.benchmark;
+
+import android.os.Bundle;
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode;
+import com.android.billingclient.api.BillingResult;
+import com.android.billingclient.api.ProductDetails;
+import com.android.billingclient.api.Purchase;
+import com.android.billingclient.api.PurchaseHistoryRecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import expo.modules.inapppurchases.BillingFormatter;
+import expo.modules.inapppurchases.BundleSerializer;
+import expo.modules.inapppurchases.FakeBillingBackend;
+
+/**
+ * Conversion of query results to the Bundles sent over the bridge, per whole query result
+ */
+@State(Scope.Benchmark)
+public class FormatterBenchmark {
+  @Param({"10", "100", "1000", "10000"})
+  public int skuCount;
+
+  @Param({"10", "1000", "50000"})
+  public int purchaseCount;
+
+  private final BillingResult mOk = BillingResult.newBuilder().setResponseCode(BillingResponseCode.OK).build();
+  private FakeBillingBackend mBackend;
+  private List<ProductDetails> mProductDetails;
+  private List<Purchase> mPurchases;
+  private List<PurchaseHistoryRecord> mHistory;
+  private ArrayList<Bundle> mSkuBundles;
+  private BundleSerializer mWarmSerializer;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    mBackend = Fixtures.connectedBackend(skuCount, purchaseCount);
+    mProductDetails = Fixtures.productDetails(mBackend, skuCount);
+    mPurchases = Fixtures.purchases(mBackend);
+    mHistory = Fixtures.history(mBackend);
+    mSkuBundles = skuBundles();
+    mWarmSerializer = new BundleSerializer(purchaseCount);
+    mWarmSerializer.purchasesToBundles(mPurchases);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    mBackend.shutdown();
+  }
+
+  @Benchmark
+  public Bundle formatProductDetailsResponse() {
+    return BillingFormatter.formatResponse(mOk, skuBundles());
+  }
+
+  @Benchmark
+  public Bundle formatResponseOnly() {
+    return BillingFormatter.formatResponse(mOk, mSkuBundles);
+  }
+
+  @Benchmark
+  public ArrayList<Bundle> purchaseToBundle() {
+    ArrayList<Bundle> bundles = new ArrayList<>(mPurchases.size());
+    for (Purchase purchase : mPurchases) {
+      bundles.add(BillingFormatter.purchaseToBundle(purchase));
+    }
+    return bundles;
+  }
+
+  /**
+   * A fresh serializer, i.e. the first query of a session
+   */
+  @Benchmark
+  public ArrayList<Bundle> purchasesToBundlesCold() {
+    return new BundleSerializer(purchaseCount).purchasesToBundles(mPurchases);
+  }
+
+  /**
+   * A serializer that has seen every purchase already, i.e. repeated queries and events
+   */
+  @Benchmark
+  public ArrayList<Bundle> purchasesToBundlesWarm() {
+    return mWarmSerializer.purchasesToBundles(mPurchases);
+  }
+
+  @Benchmark
+  public ArrayList<Bundle> purchaseHistoryToBundle() {
+    ArrayList<Bundle> bundles = new ArrayList<>(mHistory.size());
+    for (PurchaseHistoryRecord record : mHistory) {
+      bundles.add(BillingFormatter.purchaseHistoryToBundle(record));
+    }
+    return bundles;
+  }
+
+  private ArrayList<Bundle> skuBundles() {
+    ArrayList<Bundle> bundles = new ArrayList<>(mProductDetails.size());
+    for (ProductDetails productDetails : mProductDetails) {
+      bundles.add(BillingFormatter.productToBundle(productDetails));
+    }
+    return bundles;
+  }
+}
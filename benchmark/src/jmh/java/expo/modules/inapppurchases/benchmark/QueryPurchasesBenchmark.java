@@ -0,0 +1,94 @@
+package expo.modules.inapppurchases.benchmark;
+
+import android.os.Bundle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import expo.modules.core.interfaces.services.EventEmitter;
+import expo.modules.inapppurchases.BillingManager;
+import expo.modules.inapppurchases.BillingMetrics;
+import expo.modules.inapppurchases.Cancellation;
+import expo.modules.inapppurchases.FakeBillingBackend;
+import expo.modules.inapppurchases.OwnedPurchasesSnapshot;
+import expo.modules.inapppurchases.ProductDetailsCache;
+import expo.modules.inapppurchases.PurchaseJournal;
+
+/**
+ * The whole queryPurchases and queryPurchaseHistoryAsync paths of a real BillingManager talking to
+ * the fake backend: the hop to the billing thread, the request scheduler, one query per SKU type,
+ * fan-in, conversion and formatting. The backend answers without delay, so the numbers are the cost
+ * of the module's own work plus the thread handoffs
+ */
+@State(Scope.Benchmark)
+public class QueryPurchasesBenchmark {
+  private static final EventEmitter NO_EVENTS = new EventEmitter() {
+    @Override
+    public void emit(String eventName, Bundle eventBody) {
+    }
+  };
+
+  @Param({"10", "1000", "10000"})
+  public int skuCount;
+
+  @Param({"10", "1000", "50000"})
+  public int purchaseCount;
+
+  private FakeBillingBackend mBackend;
+  private BenchmarkContext mContext;
+  private ExecutorService mExecutor;
+  private BillingManager mBillingManager;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    mBackend = Fixtures.backend(skuCount, purchaseCount);
+    mContext = new BenchmarkContext();
+    mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "QueryPurchasesBenchmark-billing");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    mBillingManager = new BillingManager(mContext, NO_EVENTS, new ProductDetailsCache(mContext),
+      new PurchaseJournal(mContext), new OwnedPurchasesSnapshot(mContext), mExecutor,
+      FakeBillingBackend.factory(mBackend), new BillingMetrics());
+    Fixtures.FuturePromise connected = new Fixtures.FuturePromise();
+    mBillingManager.startConnection(connected, Cancellation.NONE);
+    connected.await();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    mBillingManager.destroy();
+    mExecutor.shutdown();
+    mExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    mBackend.shutdown();
+    mContext.delete();
+  }
+
+  @Benchmark
+  public Object queryPurchases() {
+    Fixtures.FuturePromise promise = new Fixtures.FuturePromise();
+    mBillingManager.queryPurchases(false, promise, Cancellation.NONE);
+    return promise.await();
+  }
+
+  @Benchmark
+  public Object queryPurchaseHistory() {
+    Fixtures.FuturePromise promise = new Fixtures.FuturePromise();
+    mBillingManager.queryPurchaseHistoryAsync(promise, Cancellation.NONE);
+    return promise.await();
+  }
+}
@@ -0,0 +1,16 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * JVM stand-in for the framework class, only what the module's caches and journals need
+ */
+public abstract class Context {
+  public static final int MODE_PRIVATE = 0;
+
+  public abstract Context getApplicationContext();
+
+  public abstract File getFilesDir();
+
+  public abstract SharedPreferences getSharedPreferences(String name, int mode);
+}
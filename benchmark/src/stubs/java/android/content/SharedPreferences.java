@@ -0,0 +1,18 @@
+package android.content;
+
+/**
+ * JVM stand-in for the framework interface, only what ProductDetailsCache uses
+ */
+public interface SharedPreferences {
+  String getString(String key, String defValue);
+
+  Editor edit();
+
+  interface Editor {
+    Editor putString(String key, String value);
+
+    Editor remove(String key);
+
+    void apply();
+  }
+}
@@ -0,0 +1,23 @@
+package android.os;
+
+/**
+ * JVM stand-in for the framework class, reports the SDK the module is compiled against
+ */
+public final class Build {
+  private Build() {
+  }
+
+  public static final class VERSION {
+    public static final int SDK_INT = 33;
+
+    private VERSION() {
+    }
+  }
+
+  public static final class VERSION_CODES {
+    public static final int Q = 29;
+
+    private VERSION_CODES() {
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * JVM stand-in for the framework Bundle. It keeps values in a map like the real one does (the
+ * framework uses an ArrayMap), so conversion costs stay comparable without a device
+ */
+public final class Bundle implements Parcelable {
+  private final HashMap<String, Object> mMap;
+
+  public Bundle() {
+    mMap = new HashMap<>();
+  }
+
+  public Bundle(int capacity) {
+    mMap = new HashMap<>(capacity);
+  }
+
+  public int size() {
+    return mMap.size();
+  }
+
+  public boolean containsKey(String key) {
+    return mMap.containsKey(key);
+  }
+
+  public Object get(String key) {
+    return mMap.get(key);
+  }
+
+  public void remove(String key) {
+    mMap.remove(key);
+  }
+
+  public void putAll(Bundle bundle) {
+    mMap.putAll(bundle.mMap);
+  }
+
+  public void putBoolean(String key, boolean value) {
+    mMap.put(key, value);
+  }
+
+  public void putInt(String key, int value) {
+    mMap.put(key, value);
+  }
+
+  public void putLong(String key, long value) {
+    mMap.put(key, value);
+  }
+
+  public void putDouble(String key, double value) {
+    mMap.put(key, value);
+  }
+
+  public void putString(String key, String value) {
+    mMap.put(key, value);
+  }
+
+  public void putBundle(String key, Bundle value) {
+    mMap.put(key, value);
+  }
+
+  public void putStringArrayList(String key, ArrayList<String> value) {
+    mMap.put(key, value);
+  }
+
+  public void putParcelableArrayList(String key, ArrayList<? extends Parcelable> value) {
+    mMap.put(key, value);
+  }
+
+  public Set<String> keySet() {
+    return mMap.keySet();
+  }
+
+  public boolean getBoolean(String key) {
+    return getBoolean(key, false);
+  }
+
+  public boolean getBoolean(String key, boolean defaultValue) {
+    Object value = mMap.get(key);
+    return value instanceof Boolean ? (Boolean) value : defaultValue;
+  }
+
+  public int getInt(String key) {
+    return getInt(key, 0);
+  }
+
+  public int getInt(String key, int defaultValue) {
+    Object value = mMap.get(key);
+    return value instanceof Integer ? (Integer) value : defaultValue;
+  }
+
+  public long getLong(String key) {
+    Object value = mMap.get(key);
+    return value instanceof Long ? (Long) value : 0L;
+  }
+
+  public double getDouble(String key) {
+    Object value = mMap.get(key);
+    return value instanceof Double ? (Double) value : 0.0;
+  }
+
+  public Bundle getBundle(String key) {
+    Object value = mMap.get(key);
+    return value instanceof Bundle ? (Bundle) value : null;
+  }
+
+  @SuppressWarnings("unchecked")
+  public ArrayList<String> getStringArrayList(String key) {
+    Object value = mMap.get(key);
+    return value instanceof ArrayList ? (ArrayList<String>) value : null;
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T extends Parcelable> ArrayList<T> getParcelableArrayList(String key) {
+    Object value = mMap.get(key);
+    return value instanceof ArrayList ? (ArrayList<T>) value : null;
+  }
+
+  public String getString(String key) {
+    Object value = mMap.get(key);
+    return value instanceof String ? (String) value : null;
+  }
+}
@@ -0,0 +1,7 @@
+package android.os;
+
+/**
+ * JVM stand-in for the framework interface, only used as a marker by the benchmarks
+ */
+public interface Parcelable {
+}
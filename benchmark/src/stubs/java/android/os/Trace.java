@@ -0,0 +1,21 @@
+package android.os;
+
+/**
+ * JVM stand-in for the framework class, there are no system traces to write to
+ */
+public final class Trace {
+  private Trace() {
+  }
+
+  public static void beginSection(String sectionName) {
+  }
+
+  public static void endSection() {
+  }
+
+  public static void beginAsyncSection(String methodName, int cookie) {
+  }
+
+  public static void endAsyncSection(String methodName, int cookie) {
+  }
+}
@@ -0,0 +1,17 @@
+package android.text;
+
+/**
+ * JVM stand-in for the framework helpers the Billing library model classes use
+ */
+public final class TextUtils {
+  private TextUtils() {
+  }
+
+  public static boolean isEmpty(CharSequence text) {
+    return text == null || text.length() == 0;
+  }
+
+  public static boolean equals(CharSequence a, CharSequence b) {
+    return a == b || (a != null && b != null && a.toString().equals(b.toString()));
+  }
+}
@@ -0,0 +1,19 @@
+package android.util;
+
+/**
+ * JVM stand-in for the framework Base64 codec, only the flags PurchaseVerifier uses
+ */
+public final class Base64 {
+  public static final int DEFAULT = 0;
+
+  private Base64() {
+  }
+
+  public static byte[] decode(String str, int flags) {
+    return java.util.Base64.getMimeDecoder().decode(str);
+  }
+
+  public static String encodeToString(byte[] input, int flags) {
+    return java.util.Base64.getMimeEncoder().encodeToString(input) + "\n";
+  }
+}
@@ -0,0 +1,97 @@
+package com.android.billingclient.api;
+
+import android.app.Activity;
+import android.content.Context;
+
+/**
+ * JVM stand-in for the Billing library client. The constants match the library, there is no Play
+ * Store to talk to, so build() fails: benchmarks go through FakeBillingBackend instead
+ */
+public abstract class BillingClient {
+  public static final class BillingResponseCode {
+    public static final int SERVICE_TIMEOUT = -3;
+    public static final int FEATURE_NOT_SUPPORTED = -2;
+    public static final int SERVICE_DISCONNECTED = -1;
+    public static final int OK = 0;
+    public static final int USER_CANCELED = 1;
+    public static final int SERVICE_UNAVAILABLE = 2;
+    public static final int BILLING_UNAVAILABLE = 3;
+    public static final int ITEM_UNAVAILABLE = 4;
+    public static final int DEVELOPER_ERROR = 5;
+    public static final int ERROR = 6;
+    public static final int ITEM_ALREADY_OWNED = 7;
+    public static final int ITEM_NOT_OWNED = 8;
+    public static final int NETWORK_ERROR = 12;
+
+    private BillingResponseCode() {
+    }
+  }
+
+  public static final class FeatureType {
+    public static final String SUBSCRIPTIONS = "subscriptions";
+    public static final String SUBSCRIPTIONS_UPDATE = "subscriptionsUpdate";
+    public static final String PRICE_CHANGE_CONFIRMATION = "priceChangeConfirmation";
+    public static final String IN_APP_MESSAGING = "bbb";
+    public static final String PRODUCT_DETAILS = "fff";
+
+    private FeatureType() {
+    }
+  }
+
+  public static final class ProductType {
+    public static final String INAPP = "inapp";
+    public static final String SUBS = "subs";
+
+    private ProductType() {
+    }
+  }
+
+  public static final class SkuType {
+    public static final String INAPP = "inapp";
+    public static final String SUBS = "subs";
+
+    private SkuType() {
+    }
+  }
+
+  public static Builder newBuilder(Context context) {
+    return new Builder();
+  }
+
+  public abstract void startConnection(BillingClientStateListener listener);
+
+  public abstract void endConnection();
+
+  public abstract boolean isReady();
+
+  public abstract BillingResult isFeatureSupported(String feature);
+
+  public abstract BillingResult launchBillingFlow(Activity activity, BillingFlowParams params);
+
+  public abstract void acknowledgePurchase(AcknowledgePurchaseParams params, AcknowledgePurchaseResponseListener listener);
+
+  public abstract void consumeAsync(ConsumeParams params, ConsumeResponseListener listener);
+
+  public abstract void queryPurchasesAsync(String skuType, PurchasesResponseListener listener);
+
+  public abstract void queryPurchaseHistoryAsync(String skuType, PurchaseHistoryResponseListener listener);
+
+  public abstract void queryProductDetailsAsync(QueryProductDetailsParams params, ProductDetailsResponseListener listener);
+
+  public static final class Builder {
+    private Builder() {
+    }
+
+    public Builder enablePendingPurchases() {
+      return this;
+    }
+
+    public Builder setListener(PurchasesUpdatedListener listener) {
+      return this;
+    }
+
+    public BillingClient build() {
+      throw new UnsupportedOperationException("There is no Play Store on the JVM");
+    }
+  }
+}
@@ -0,0 +1,10 @@
+package com.android.billingclient.api;
+
+/**
+ * JVM stand-in for the Billing library listener
+ */
+public interface BillingClientStateListener {
+  void onBillingSetupFinished(BillingResult billingResult);
+
+  void onBillingServiceDisconnected();
+}
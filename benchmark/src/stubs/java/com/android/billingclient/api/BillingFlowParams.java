@@ -0,0 +1,88 @@
+package com.android.billingclient.api;
+
+import java.util.List;
+
+/**
+ * JVM stand-in for the Billing library class, only needed to satisfy signatures
+ */
+public final class BillingFlowParams {
+  private BillingFlowParams() {
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  public static final class Builder {
+    private Builder() {
+    }
+
+    public Builder setProductDetailsParamsList(List<ProductDetailsParams> productDetailsParamsList) {
+      return this;
+    }
+
+    public Builder setSubscriptionUpdateParams(SubscriptionUpdateParams subscriptionUpdateParams) {
+      return this;
+    }
+
+    public Builder setObfuscatedAccountId(String obfuscatedAccountId) {
+      return this;
+    }
+
+    public Builder setObfuscatedProfileId(String obfuscatedProfileId) {
+      return this;
+    }
+
+    public BillingFlowParams build() {
+      return new BillingFlowParams();
+    }
+  }
+
+  public static final class ProductDetailsParams {
+    private ProductDetailsParams() {
+    }
+
+    public static Builder newBuilder() {
+      return new Builder();
+    }
+
+    public static final class Builder {
+      private Builder() {
+      }
+
+      public Builder setProductDetails(ProductDetails productDetails) {
+        return this;
+      }
+
+      public Builder setOfferToken(String offerToken) {
+        return this;
+      }
+
+      public ProductDetailsParams build() {
+        return new ProductDetailsParams();
+      }
+    }
+  }
+
+  public static final class SubscriptionUpdateParams {
+    private SubscriptionUpdateParams() {
+    }
+
+    public static Builder newBuilder() {
+      return new Builder();
+    }
+
+    public static final class Builder {
+      private Builder() {
+      }
+
+      public Builder setOldPurchaseToken(String purchaseToken) {
+        return this;
+      }
+
+      public SubscriptionUpdateParams build() {
+        return new SubscriptionUpdateParams();
+      }
+    }
+  }
+}
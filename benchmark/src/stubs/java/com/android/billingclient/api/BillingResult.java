@@ -0,0 +1,51 @@
+package com.android.billingclient.api;
+
+/**
+ * JVM stand-in for the Billing library class
+ */
+public final class BillingResult {
+  private int mResponseCode;
+  private String mDebugMessage = "";
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  public int getResponseCode() {
+    return mResponseCode;
+  }
+
+  public String getDebugMessage() {
+    return mDebugMessage;
+  }
+
+  @Override
+  public String toString() {
+    return "Response Code: " + mResponseCode + ", Debug Message: " + mDebugMessage;
+  }
+
+  public static final class Builder {
+    private int mResponseCode;
+    private String mDebugMessage = "";
+
+    private Builder() {
+    }
+
+    public Builder setResponseCode(int responseCode) {
+      mResponseCode = responseCode;
+      return this;
+    }
+
+    public Builder setDebugMessage(String debugMessage) {
+      mDebugMessage = debugMessage;
+      return this;
+    }
+
+    public BillingResult build() {
+      BillingResult billingResult = new BillingResult();
+      billingResult.mResponseCode = mResponseCode;
+      billingResult.mDebugMessage = mDebugMessage;
+      return billingResult;
+    }
+  }
+}
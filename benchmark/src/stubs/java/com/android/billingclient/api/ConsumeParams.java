@@ -0,0 +1,34 @@
+package com.android.billingclient.api;
+
+/**
+ * JVM stand-in for the Billing library class
+ */
+public final class ConsumeParams {
+  private String mPurchaseToken;
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  public String getPurchaseToken() {
+    return mPurchaseToken;
+  }
+
+  public static final class Builder {
+    private String mPurchaseToken;
+
+    private Builder() {
+    }
+
+    public Builder setPurchaseToken(String purchaseToken) {
+      mPurchaseToken = purchaseToken;
+      return this;
+    }
+
+    public ConsumeParams build() {
+      ConsumeParams params = new ConsumeParams();
+      params.mPurchaseToken = mPurchaseToken;
+      return params;
+    }
+  }
+}
@@ -0,0 +1,8 @@
+package com.android.billingclient.api;
+
+/**
+ * JVM stand-in for the Billing library listener
+ */
+public interface ConsumeResponseListener {
+  void onConsumeResponse(BillingResult billingResult, String purchaseToken);
+}
@@ -0,0 +1,204 @@
+package com.android.billingclient.api;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JVM stand-in for the Billing library class, parsed from the same JSON Play Store sends. Unlike
+ * the library's, its constructor is public, so benchmarks can build catalogs
+ */
+public final class ProductDetails {
+  private final String mJsonString;
+  private final String mProductId;
+  private final String mProductType;
+  private final String mTitle;
+  private final String mName;
+  private final String mDescription;
+  private final OneTimePurchaseOfferDetails mOneTimePurchaseOfferDetails;
+  private final List<SubscriptionOfferDetails> mSubscriptionOfferDetails;
+
+  public ProductDetails(String jsonString) throws JSONException {
+    mJsonString = jsonString;
+    JSONObject json = new JSONObject(jsonString);
+    mProductId = json.getString("productId");
+    mProductType = json.getString("type");
+    mTitle = json.optString("title");
+    mName = json.optString("name");
+    mDescription = json.optString("description");
+    JSONObject oneTime = json.optJSONObject("oneTimePurchaseOfferDetails");
+    mOneTimePurchaseOfferDetails = oneTime != null ? new OneTimePurchaseOfferDetails(oneTime) : null;
+    JSONArray offers = json.optJSONArray("subscriptionOfferDetails");
+    if (offers != null) {
+      mSubscriptionOfferDetails = new ArrayList<>(offers.length());
+      for (int i = 0; i < offers.length(); i++) {
+        mSubscriptionOfferDetails.add(new SubscriptionOfferDetails(offers.getJSONObject(i)));
+      }
+    } else {
+      mSubscriptionOfferDetails = null;
+    }
+  }
+
+  public String getProductId() {
+    return mProductId;
+  }
+
+  public String getProductType() {
+    return mProductType;
+  }
+
+  public String getTitle() {
+    return mTitle;
+  }
+
+  public String getName() {
+    return mName;
+  }
+
+  public String getDescription() {
+    return mDescription;
+  }
+
+  public OneTimePurchaseOfferDetails getOneTimePurchaseOfferDetails() {
+    return mOneTimePurchaseOfferDetails;
+  }
+
+  public List<SubscriptionOfferDetails> getSubscriptionOfferDetails() {
+    return mSubscriptionOfferDetails;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof ProductDetails && mJsonString.equals(((ProductDetails) o).mJsonString);
+  }
+
+  @Override
+  public int hashCode() {
+    return mJsonString.hashCode();
+  }
+
+  public static final class OneTimePurchaseOfferDetails {
+    private final String mFormattedPrice;
+    private final long mPriceAmountMicros;
+    private final String mPriceCurrencyCode;
+
+    OneTimePurchaseOfferDetails(JSONObject json) {
+      mFormattedPrice = json.optString("formattedPrice");
+      mPriceAmountMicros = json.optLong("priceAmountMicros");
+      mPriceCurrencyCode = json.optString("priceCurrencyCode");
+    }
+
+    public String getFormattedPrice() {
+      return mFormattedPrice;
+    }
+
+    public long getPriceAmountMicros() {
+      return mPriceAmountMicros;
+    }
+
+    public String getPriceCurrencyCode() {
+      return mPriceCurrencyCode;
+    }
+  }
+
+  public static final class SubscriptionOfferDetails {
+    private final String mBasePlanId;
+    private final String mOfferId;
+    private final String mOfferToken;
+    private final List<String> mOfferTags = new ArrayList<>();
+    private final PricingPhases mPricingPhases;
+
+    SubscriptionOfferDetails(JSONObject json) throws JSONException {
+      mBasePlanId = json.optString("basePlanId");
+      String offerId = json.optString("offerId");
+      mOfferId = offerId.isEmpty() ? null : offerId;
+      mOfferToken = json.getString("offerIdToken");
+      JSONArray offerTags = json.optJSONArray("offerTags");
+      if (offerTags != null) {
+        for (int i = 0; i < offerTags.length(); i++) {
+          mOfferTags.add(offerTags.getString(i));
+        }
+      }
+      mPricingPhases = new PricingPhases(json.getJSONArray("pricingPhases"));
+    }
+
+    public String getBasePlanId() {
+      return mBasePlanId;
+    }
+
+    public String getOfferId() {
+      return mOfferId;
+    }
+
+    public String getOfferToken() {
+      return mOfferToken;
+    }
+
+    public List<String> getOfferTags() {
+      return mOfferTags;
+    }
+
+    public PricingPhases getPricingPhases() {
+      return mPricingPhases;
+    }
+  }
+
+  public static final class PricingPhases {
+    private final List<PricingPhase> mPricingPhaseList = new ArrayList<>();
+
+    PricingPhases(JSONArray json) throws JSONException {
+      for (int i = 0; i < json.length(); i++) {
+        mPricingPhaseList.add(new PricingPhase(json.getJSONObject(i)));
+      }
+    }
+
+    public List<PricingPhase> getPricingPhaseList() {
+      return mPricingPhaseList;
+    }
+  }
+
+  public static final class PricingPhase {
+    private final String mFormattedPrice;
+    private final long mPriceAmountMicros;
+    private final String mPriceCurrencyCode;
+    private final String mBillingPeriod;
+    private final int mBillingCycleCount;
+    private final int mRecurrenceMode;
+
+    PricingPhase(JSONObject json) {
+      mFormattedPrice = json.optString("formattedPrice");
+      mPriceAmountMicros = json.optLong("priceAmountMicros");
+      mPriceCurrencyCode = json.optString("priceCurrencyCode");
+      mBillingPeriod = json.optString("billingPeriod");
+      mBillingCycleCount = json.optInt("billingCycleCount");
+      mRecurrenceMode = json.optInt("recurrenceMode");
+    }
+
+    public String getFormattedPrice() {
+      return mFormattedPrice;
+    }
+
+    public long getPriceAmountMicros() {
+      return mPriceAmountMicros;
+    }
+
+    public String getPriceCurrencyCode() {
+      return mPriceCurrencyCode;
+    }
+
+    public String getBillingPeriod() {
+      return mBillingPeriod;
+    }
+
+    public int getBillingCycleCount() {
+      return mBillingCycleCount;
+    }
+
+    public int getRecurrenceMode() {
+      return mRecurrenceMode;
+    }
+  }
+}
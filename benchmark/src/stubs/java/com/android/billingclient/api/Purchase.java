@@ -0,0 +1,123 @@
+package com.android.billingclient.api;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+
+/**
+ * JVM stand-in for the Billing library class. Like the library, it's backed by the original JSON of
+ * the purchase and parses it once when created
+ */
+public final class Purchase {
+  public static final class PurchaseState {
+    public static final int UNSPECIFIED_STATE = 0;
+    public static final int PURCHASED = 1;
+    public static final int PENDING = 2;
+
+    private PurchaseState() {
+    }
+  }
+
+  private final String mOriginalJson;
+  private final String mSignature;
+  private final JSONObject mParsedJson;
+
+  public Purchase(String jsonPurchaseInfo, String signature) throws JSONException {
+    mOriginalJson = jsonPurchaseInfo;
+    mSignature = signature;
+    mParsedJson = new JSONObject(mOriginalJson);
+  }
+
+  public String getOrderId() {
+    return mParsedJson.optString("orderId");
+  }
+
+  public String getPackageName() {
+    return mParsedJson.optString("packageName");
+  }
+
+  public ArrayList<String> getSkus() {
+    return Products.of(mParsedJson);
+  }
+
+  public ArrayList<String> getProducts() {
+    return Products.of(mParsedJson);
+  }
+
+  public long getPurchaseTime() {
+    return mParsedJson.optLong("purchaseTime");
+  }
+
+  public String getPurchaseToken() {
+    return mParsedJson.optString("token", mParsedJson.optString("purchaseToken"));
+  }
+
+  public int getPurchaseState() {
+    return mParsedJson.optInt("purchaseState", 1) == 4 ? PurchaseState.PENDING : PurchaseState.PURCHASED;
+  }
+
+  public String getDeveloperPayload() {
+    return mParsedJson.optString("developerPayload");
+  }
+
+  public int getQuantity() {
+    return mParsedJson.optInt("quantity", 1);
+  }
+
+  public boolean isAcknowledged() {
+    return mParsedJson.optBoolean("acknowledged", true);
+  }
+
+  public boolean isAutoRenewing() {
+    return mParsedJson.optBoolean("autoRenewing");
+  }
+
+  public String getOriginalJson() {
+    return mOriginalJson;
+  }
+
+  public String getSignature() {
+    return mSignature;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof Purchase
+      && mOriginalJson.equals(((Purchase) o).mOriginalJson)
+      && mSignature.equals(((Purchase) o).mSignature);
+  }
+
+  @Override
+  public int hashCode() {
+    return mOriginalJson.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return "Purchase. Json: " + mOriginalJson;
+  }
+
+  /**
+   * The products of a purchase or history record: "productIds" for multi-line purchases, otherwise
+   * the single "productId"
+   */
+  static final class Products {
+    private Products() {
+    }
+
+    static ArrayList<String> of(JSONObject json) {
+      ArrayList<String> products = new ArrayList<>();
+      JSONArray productIds = json.optJSONArray("productIds");
+      if (productIds != null) {
+        for (int i = 0; i < productIds.length(); i++) {
+          products.add(productIds.optString(i));
+        }
+      } else if (json.has("productId")) {
+        products.add(json.optString("productId"));
+      }
+      return products;
+    }
+  }
+}
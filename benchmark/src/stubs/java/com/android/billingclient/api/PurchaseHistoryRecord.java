@@ -0,0 +1,65 @@
+package com.android.billingclient.api;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+
+/**
+ * JVM stand-in for the Billing library class, backed by the original JSON like Purchase
+ */
+public final class PurchaseHistoryRecord {
+  private final String mOriginalJson;
+  private final String mSignature;
+  private final JSONObject mParsedJson;
+
+  public PurchaseHistoryRecord(String jsonPurchaseInfo, String signature) throws JSONException {
+    mOriginalJson = jsonPurchaseInfo;
+    mSignature = signature;
+    mParsedJson = new JSONObject(mOriginalJson);
+  }
+
+  public ArrayList<String> getSkus() {
+    return Purchase.Products.of(mParsedJson);
+  }
+
+  public ArrayList<String> getProducts() {
+    return Purchase.Products.of(mParsedJson);
+  }
+
+  public long getPurchaseTime() {
+    return mParsedJson.optLong("purchaseTime");
+  }
+
+  public String getPurchaseToken() {
+    return mParsedJson.optString("token", mParsedJson.optString("purchaseToken"));
+  }
+
+  public String getDeveloperPayload() {
+    return mParsedJson.optString("developerPayload");
+  }
+
+  public int getQuantity() {
+    return mParsedJson.optInt("quantity", 1);
+  }
+
+  public String getOriginalJson() {
+    return mOriginalJson;
+  }
+
+  public String getSignature() {
+    return mSignature;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof PurchaseHistoryRecord
+      && mOriginalJson.equals(((PurchaseHistoryRecord) o).mOriginalJson)
+      && mSignature.equals(((PurchaseHistoryRecord) o).mSignature);
+  }
+
+  @Override
+  public int hashCode() {
+    return mOriginalJson.hashCode();
+  }
+}
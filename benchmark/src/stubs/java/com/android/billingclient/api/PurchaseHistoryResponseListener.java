@@ -0,0 +1,10 @@
+package com.android.billingclient.api;
+
+import java.util.List;
+
+/**
+ * JVM stand-in for the Billing library listener
+ */
+public interface PurchaseHistoryResponseListener {
+  void onPurchaseHistoryResponse(BillingResult billingResult, List<PurchaseHistoryRecord> purchaseHistoryRecordList);
+}
@@ -0,0 +1,10 @@
+package com.android.billingclient.api;
+
+import java.util.List;
+
+/**
+ * JVM stand-in for the Billing library listener
+ */
+public interface PurchasesResponseListener {
+  void onQueryPurchasesResponse(BillingResult billingResult, List<Purchase> purchases);
+}
@@ -0,0 +1,80 @@
+package com.android.billingclient.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JVM stand-in for the Billing library class. Like the library, it refuses products of different
+ * types in one query
+ */
+public final class QueryProductDetailsParams {
+  private final List<Product> mProductList;
+
+  private QueryProductDetailsParams(List<Product> productList) {
+    mProductList = productList;
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  public static final class Builder {
+    private List<Product> mProductList = new ArrayList<>();
+
+    private Builder() {
+    }
+
+    public Builder setProductList(List<Product> productList) {
+      if (productList == null || productList.isEmpty()) {
+        throw new IllegalArgumentException("Product list cannot be empty.");
+      }
+      for (Product product : productList) {
+        if (!product.mProductType.equals(productList.get(0).mProductType)) {
+          throw new IllegalArgumentException("All products should be of the same product type.");
+        }
+      }
+      mProductList = new ArrayList<>(productList);
+      return this;
+    }
+
+    public QueryProductDetailsParams build() {
+      return new QueryProductDetailsParams(mProductList);
+    }
+  }
+
+  public static final class Product {
+    private final String mProductId;
+    private final String mProductType;
+
+    private Product(String productId, String productType) {
+      mProductId = productId;
+      mProductType = productType;
+    }
+
+    public static Builder newBuilder() {
+      return new Builder();
+    }
+
+    public static final class Builder {
+      private String mProductId;
+      private String mProductType;
+
+      private Builder() {
+      }
+
+      public Builder setProductId(String productId) {
+        mProductId = productId;
+        return this;
+      }
+
+      public Builder setProductType(String productType) {
+        mProductType = productType;
+        return this;
+      }
+
+      public Product build() {
+        return new Product(mProductId, mProductType);
+      }
+    }
+  }
+}
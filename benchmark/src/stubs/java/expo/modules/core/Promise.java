@@ -0,0 +1,18 @@
+package expo.modules.core;
+
+/**
+ * JVM stand-in for the expo-modules-core interface
+ */
+public interface Promise {
+  void resolve(Object value);
+
+  void reject(String code, String message, Throwable e);
+
+  default void reject(String code, String message) {
+    reject(code, message, null);
+  }
+
+  default void reject(String code, Throwable e) {
+    reject(code, e.getMessage(), e);
+  }
+}
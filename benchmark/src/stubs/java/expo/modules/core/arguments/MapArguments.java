@@ -0,0 +1,42 @@
+package expo.modules.core.arguments;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JVM stand-in for the expo-modules-core class
+ */
+public class MapArguments implements ReadableArguments {
+  private final Map<String, Object> mMap;
+
+  public MapArguments() {
+    mMap = new HashMap<>();
+  }
+
+  public MapArguments(Map<String, Object> map) {
+    mMap = map;
+  }
+
+  @Override
+  public boolean containsKey(String key) {
+    return mMap.containsKey(key);
+  }
+
+  @Override
+  public String getString(String key) {
+    Object value = mMap.get(key);
+    return value instanceof String ? (String) value : null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public ReadableArguments getArguments(String key) {
+    Object value = mMap.get(key);
+    return value instanceof Map ? new MapArguments((Map<String, Object>) value) : null;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return mMap.isEmpty();
+  }
+}
@@ -0,0 +1,14 @@
+package expo.modules.core.arguments;
+
+/**
+ * JVM stand-in for the expo-modules-core interface, only the methods BillingManager uses
+ */
+public interface ReadableArguments {
+  boolean containsKey(String key);
+
+  String getString(String key);
+
+  ReadableArguments getArguments(String key);
+
+  boolean isEmpty();
+}
@@ -0,0 +1,10 @@
+package expo.modules.core.interfaces.services;
+
+import android.os.Bundle;
+
+/**
+ * JVM stand-in for the expo-modules-core interface, only the method BillingManager uses
+ */
+public interface EventEmitter {
+  void emit(String eventName, Bundle eventBody);
+}
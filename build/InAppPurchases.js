@@ -9,14 +9,19 @@ const errors = {
     NOT_CONNECTED: 'Must be connected to App Store',
 };
 const PURCHASES_UPDATED_EVENT = 'Expo.purchasesUpdated';
+const BILLING_METRICS_EVENT = 'Expo.billingMetrics';
 const eventEmitter = new EventEmitter(ExpoInAppPurchases);
 let connected = false;
 let purchaseUpdatedSubscription;
+let billingMetricsSubscription;
 // @needsAudit
 /**
  * Connects to the app store and performs all of the necessary initialization to prepare the module
  * to accept payments. This method must be called before anything else, otherwise an error will be
  * thrown.
+ *
+ * On Android, pass `lazyConnection` to `configureAsync` beforehand to defer binding the billing
+ * service until it's needed, the Promise then fulfills right away.
  * @return Returns a Promise that fulfills when connection is established.
  */
 export async function connectAsync() {
@@ -27,6 +32,60 @@ export async function connectAsync() {
     connected = true;
 }
 // @needsAudit
+/**
+ * Connects to the app store if needed and fetches the given products, and optionally the owned
+ * purchases, in one go. Call it at launch so the product and purchase caches are filled by the time
+ * the paywall is shown, and `getProductsAsync` resolves right away.
+ *
+ * On Android the connection and the queries are pipelined: the queries are sent as soon as the
+ * connection is established, without waiting for another call from JavaScript.
+ *
+ * @param itemList The product IDs to fetch, as passed to `getProductsAsync`.
+ * @param options An `IAPWarmUpOptions` object.
+ * @return Returns a Promise that fulfills with an `IAPWarmUpResult` once every step is done.
+ *
+ * @example
+ * ```ts
+ * const { products } = await warmUpAsync(['premium', 'gold_monthly'], { prefetchPurchases: true });
+ * ```
+ */
+export async function warmUpAsync(itemList, options = {}) {
+    if (Platform.OS === 'android') {
+        const result = await ExpoInAppPurchases.warmUpAsync(itemList, options);
+        connected = true;
+        return result;
+    }
+    if (!connected) {
+        await ExpoInAppPurchases.connectAsync();
+        connected = true;
+    }
+    if (itemList.length === 0) {
+        return { responseCode: IAPResponseCode.OK };
+    }
+    const products = await ExpoInAppPurchases.getProductsAsync(itemList);
+    return { responseCode: products.responseCode, products };
+}
+// @needsAudit
+/**
+ * Tunes the native billing layer. It can be called before `connectAsync` and only the options
+ * that are passed in are changed. This is a no-op on iOS.
+ *
+ * @param options An `IAPConfigureOptions` object.
+ * @return Returns a Promise that fulfills when the options have been applied.
+ *
+ * @example
+ * ```ts
+ * // Serve product details from the cache for up to an hour
+ * await configureAsync({ productCacheTtlMs: 60 * 60 * 1000 });
+ * ```
+ */
+export async function configureAsync(options) {
+    if (Platform.OS !== 'android') {
+        return;
+    }
+    await ExpoInAppPurchases.configureAsync(options);
+}
+// @needsAudit
 /**
  * Retrieves the product details (price, description, title, etc) for each item that you inputted in
  * the Google Play Console and App Store Connect. These products are associated with your app's
@@ -41,6 +100,9 @@ export async function connectAsync() {
  * `IAPItemDetails` object corresponding to that ID. For example, if you pass in four product IDs in
  * but one of them has a typo, you will only get three response objects back.
  *
+ * On Android, when Google Play can't be reached, the details fetched earlier are returned instead
+ * and the response is marked as `stale`, with the time they were fetched as `fetchedAt`.
+ *
  * @param itemList The list of product IDs whose details you want to query from the app store.
  * @return Returns a Promise that resolves with an `IAPQueryResponse` containing `IAPItemDetails`
  * objects in the `results` array.
@@ -86,6 +148,11 @@ export async function getProductsAsync(itemList) {
  * You should not call this method on launch because restoring purchases on iOS prompts for the
  * user’s App Store credentials, which could interrupt the flow of your app.
  *
+ * On Android with `useGooglePlayCache`, when Google Play can't be reached, the purchases of the last
+ * successful query on this device are returned instead and the response is marked as `stale`, with
+ * the time they were fetched as `fetchedAt`. Pass `allowStale` to get them without waiting for the
+ * query at all.
+ *
  * @param options An optional `PurchaseHistoryOptions` object.
  * @return Returns a `Promise` that fulfills with an `IAPQueryResponse` that contains an array of
  * `InAppPurchase` objects.
@@ -102,6 +169,43 @@ export async function getPurchaseHistoryAsync(options = { useGooglePlayCache: tr
     }
 }
 // @needsAudit
+/**
+ * Retrieves the user's purchase history one page at a time, so that large histories don't have to
+ * be held in memory and sent over the bridge at once. Call it without a cursor to take a fresh
+ * snapshot of the history, newest purchases first, then pass the returned `nextCursor` until it is
+ * `null`. Cursors expire a few minutes after the snapshot was taken, the method then rejects and
+ * you should start again without a cursor. Calls without a cursor made while the history is still
+ * being queried share that query, each of them getting a snapshot and cursors of its own.
+ *
+ * @param cursor The `nextCursor` of the previous page, or `null` for the first page.
+ * @param pageSize Maximum number of records in the page, up to 1000.
+ * @return Returns a `Promise` that fulfills with an `IAPPurchaseHistoryPage` on Android, and `null`
+ * on iOS.
+ *
+ * @example
+ * ```ts
+ * let cursor = null;
+ * do {
+ *   const page = await getPurchaseHistoryPageAsync(cursor, 50);
+ *   if (page?.responseCode !== IAPResponseCode.OK) {
+ *     break;
+ *   }
+ *   page.results?.forEach(restorePurchase);
+ *   cursor = page.nextCursor;
+ * } while (cursor);
+ * ```
+ * @platform android
+ */
+export async function getPurchaseHistoryPageAsync(cursor = null, pageSize = 100) {
+    if (!connected) {
+        throw new ConnectionError(errors.NOT_CONNECTED);
+    }
+    if (Platform.OS !== 'android') {
+        return null;
+    }
+    return await ExpoInAppPurchases.getPurchaseHistoryPageAsync(cursor, pageSize);
+}
+// @needsAudit
 /**
  * Initiates the purchase flow to buy the item associated with this `productId`. This will display a
  * prompt to the user that will allow them to either buy the item or cancel the purchase. When the
@@ -121,11 +225,15 @@ export async function getPurchaseHistoryAsync(options = { useGooglePlayCache: tr
  * Notifications](https://developer.apple.com/documentation/storekit/in-app_purchase/original_api_for_in-app_purchase/subscriptions_and_offers/enabling_app_store_server_notifications)
  * service on iOS.
  *
+ * On Android, subscriptions are bought with their default offer unless `details` picks another
+ * base plan or offer from the `subscriptionOffers` returned by `getProductsAsync`.
+ *
  * @param itemId The product ID of the item you want to buy.
  * @param details __Android Only.__ Details for billing flow.
  * @return Returns a `Promise` that resolves when the purchase is done processing. To get the actual
  * result of the purchase, you must handle purchase events inside the `setPurchaseListener`
- * callback.
+ * callback. On Android it resolves once the billing flow is shown, and rejects with the
+ * `E_BILLING_FLOW_FAILED` error code when the flow can't be launched.
  */
 export async function purchaseItemAsync(itemId, details) {
     if (!connected) {
@@ -188,6 +296,27 @@ export function setPurchaseListener(callback) {
     });
 }
 // @needsAudit
+/**
+ * Sets a callback that handles incoming purchase deltas. Use this instead of `setPurchaseListener`
+ * after enabling `deltaPurchaseEvents` with `configureAsync`: every event then carries only the
+ * purchases that were added, changed or removed since the previous one.
+ *
+ * Each delta has a `sequence` number that grows by one with every event. If the number you receive
+ * isn't the previous one plus one you missed an update, and should resync with
+ * `getPurchaseHistoryAsync`.
+ *
+ * @param callback The callback function you want to run when there is an update to the purchases.
+ * @platform android
+ */
+export function setPurchaseDeltaListener(callback) {
+    if (purchaseUpdatedSubscription) {
+        purchaseUpdatedSubscription.remove();
+    }
+    purchaseUpdatedSubscription = eventEmitter.addListener(PURCHASES_UPDATED_EVENT, (delta) => {
+        callback(delta);
+    });
+}
+// @needsAudit
 /**
  * Marks a transaction as completed. This _must_ be called on successful purchases only after you
  * have verified the transaction and unlocked the functionality purchased by the user.
@@ -239,6 +368,119 @@ export async function finishTransactionAsync(purchase, consumeItem) {
     }
 }
 // @needsAudit
+/**
+ * Marks several transactions as completed at once. This is the batched version of
+ * [`finishTransactionAsync`](#finishtransactionasyncpurchase-consumeitem) and the same rules apply.
+ * Purchases that are already acknowledged are skipped.
+ *
+ * On Android, up to `finishTransactionsParallelism` (see `configureAsync`) purchases are consumed or
+ * acknowledged at the same time and the result of each one is reported in the `results` array. On
+ * iOS, the transactions are finished one after another.
+ *
+ * @param purchases The purchases you want to mark as completed.
+ * @param consumeItem __Android Only.__ A boolean indicating whether or not the items are
+ * consumables.
+ * @return Returns a Promise that resolves with an `IAPQueryResponse` containing an
+ * `IAPFinishTransactionResult` for every purchase on Android. `responseCode` is
+ * `IAPResponseCode.OK` only if all of them succeeded.
+ *
+ * @example
+ * ```ts
+ * const { results } = await finishTransactionsAsync(restoredConsumables, true);
+ * ```
+ */
+export async function finishTransactionsAsync(purchases, consumeItem) {
+    if (!connected) {
+        throw new ConnectionError(errors.NOT_CONNECTED);
+    }
+    const unfinished = purchases.filter((purchase) => !purchase.acknowledged);
+    if (Platform.OS === 'android') {
+        return await ExpoInAppPurchases.finishTransactionsAsync(unfinished.map((purchase) => purchase.purchaseToken), consumeItem);
+    }
+    for (const purchase of unfinished) {
+        await ExpoInAppPurchases.finishTransactionAsync(purchase.orderId);
+    }
+    return { responseCode: IAPResponseCode.OK };
+}
+// @needsAudit
+/**
+ * Returns what the user owns, as known from the purchases the module has seen. It is kept up to date
+ * from purchase updates and queries and never goes to Google Play, so it is cheap enough to call on
+ * every render. Query purchases with `getPurchaseHistoryAsync` once after connecting to make it
+ * `complete`.
+ *
+ * Right after connecting, it is filled from the purchases of the last successful query on the device
+ * until purchases are queried again.
+ *
+ * @return Returns a Promise that fulfils with `IAPEntitlements` on Android, and `null` on iOS.
+ *
+ * @example
+ * ```ts
+ * const { entitlements } = (await getEntitlementsAsync()) ?? { entitlements: [] };
+ * const premium = entitlements.find((entitlement) => entitlement.productId === 'premium');
+ * ```
+ * @platform android
+ */
+export async function getEntitlementsAsync() {
+    if (!connected) {
+        throw new ConnectionError(errors.NOT_CONNECTED);
+    }
+    if (Platform.OS !== 'android') {
+        return null;
+    }
+    return await ExpoInAppPurchases.getEntitlementsAsync();
+}
+// @needsAudit
+/**
+ * Returns whether the user owns the given product, i.e. a purchase of it went through, acknowledged
+ * or not. Like `getEntitlementsAsync`, it never goes to Google Play.
+ *
+ * @param productId The product ID to check.
+ * @return Returns a Promise that fulfils with a boolean on Android, and `null` on iOS.
+ *
+ * @example
+ * ```ts
+ * if (await hasEntitlementAsync('premium')) {
+ *   unlockPremium();
+ * }
+ * ```
+ * @platform android
+ */
+export async function hasEntitlementAsync(productId) {
+    if (!connected) {
+        throw new ConnectionError(errors.NOT_CONNECTED);
+    }
+    if (Platform.OS !== 'android') {
+        return null;
+    }
+    return await ExpoInAppPurchases.hasEntitlementAsync(productId);
+}
+// @needsAudit
+/**
+ * Returns which optional Google Play Billing features are supported. They are checked once per
+ * connection, so calling this is cheap.
+ *
+ * @return Returns a Promise that fulfils with `IAPSupportedFeatures` on Android, and `null` on iOS.
+ *
+ * @example
+ * ```ts
+ * const features = await getSupportedFeaturesAsync();
+ * if (features?.subscriptions) {
+ *   showSubscriptionPlans();
+ * }
+ * ```
+ * @platform android
+ */
+export async function getSupportedFeaturesAsync() {
+    if (!connected) {
+        throw new ConnectionError(errors.NOT_CONNECTED);
+    }
+    if (Platform.OS !== 'android') {
+        return null;
+    }
+    return await ExpoInAppPurchases.getSupportedFeaturesAsync();
+}
+// @needsAudit
 /**
  * Returns the last response code. This is more descriptive on Android since there is native support
  * for retrieving the billing response code.
@@ -272,6 +514,72 @@ export async function getBillingResponseCodeAsync() {
     return await ExpoInAppPurchases.getBillingResponseCodeAsync();
 }
 // @needsAudit
+/**
+ * Returns latency percentiles and response code counts of every call made to Google Play Billing,
+ * e.g. to report store slowness to your own telemetry. Metrics are kept across `connectAsync` calls.
+ *
+ * @param options Pass `{ reset: true }` to start collecting from scratch after this call.
+ * @return Returns a Promise that fulfils with `IAPBillingMetrics` on Android, and `null` on iOS.
+ *
+ * @example
+ * ```ts
+ * const metrics = await getBillingMetricsAsync({ reset: true });
+ * const query = metrics?.operations.queryProductDetailsAsync;
+ * if (query) {
+ *   telemetry.record('iap.queryProductDetails.p99', query.p99Ms);
+ * }
+ * ```
+ * @platform android
+ */
+export async function getBillingMetricsAsync(options = {}) {
+    if (Platform.OS !== 'android') {
+        return null;
+    }
+    return await ExpoInAppPurchases.getBillingMetricsAsync(options);
+}
+// @needsAudit
+/**
+ * Returns the state of the circuit breakers that stop calls to Google Play Billing while it keeps
+ * failing, see `circuitBreakerFailureThreshold` in `configureAsync`.
+ *
+ * @return Returns a Promise that fulfils with `IAPCircuitBreakers` on Android, and `null` on iOS.
+ *
+ * @example
+ * ```ts
+ * const breakers = await getCircuitBreakersAsync();
+ * if (breakers?.queryPurchasesAsync.state === 'open') {
+ *   showOfflineBanner();
+ * }
+ * ```
+ * @platform android
+ */
+export async function getCircuitBreakersAsync() {
+    if (!connected) {
+        throw new ConnectionError(errors.NOT_CONNECTED);
+    }
+    if (Platform.OS !== 'android') {
+        return null;
+    }
+    return await ExpoInAppPurchases.getCircuitBreakersAsync();
+}
+// @needsAudit
+/**
+ * Sets a callback that receives billing metrics every `metricsEventIntervalMs` (see
+ * `configureAsync`) while connected. Each report covers the time since the previous one, so the
+ * metrics returned by `getBillingMetricsAsync` start over after every report.
+ *
+ * @param callback The callback function you want to run with every report.
+ * @platform android
+ */
+export function setBillingMetricsListener(callback) {
+    if (billingMetricsSubscription) {
+        billingMetricsSubscription.remove();
+    }
+    billingMetricsSubscription = eventEmitter.addListener(BILLING_METRICS_EVENT, (metrics) => {
+        callback(metrics);
+    });
+}
+// @needsAudit
 /**
  * Disconnects from the app store and cleans up memory internally. Call this when you are done using
  * the In-App Purchases API in your app.
@@ -1,4 +1,4 @@
-export type QueryResult = InAppPurchase | IAPItemDetails;
+export type QueryResult = InAppPurchase | IAPItemDetails | IAPFinishTransactionResult;
 
 // @needsAudit
 /**
@@ -19,6 +19,19 @@ export interface IAPQueryResponse<QueryResult> {
    * is `IAPResponseCode.ERROR`.
    */
   errorCode?: IAPErrorCode;
+  /**
+   * `true` when the results weren't fetched from the store just now but are the last ones fetched
+   * before, e.g. because Google Play can't be reached. Products are also stale once they are older
+   * than `productCacheTtlMs`. Missing otherwise.
+   * @platform android
+   */
+  stale?: boolean;
+  /**
+   * With `stale`, when the results were fetched from the store, in milliseconds since the epoch. For
+   * products, the time the oldest of them was fetched.
+   * @platform android
+   */
+  fetchedAt?: number;
 }
 
 // @needsAudit
@@ -212,6 +225,23 @@ export interface InAppPurchase {
    * @platform ios
    */
   transactionReceipt?: string;
+  /**
+   * The purchase data exactly as signed by Google Play, to verify `signature` on your server.
+   * @platform android
+   */
+  originalJson?: string;
+  /**
+   * The Base64-encoded signature of `originalJson`.
+   * @platform android
+   */
+  signature?: string;
+  /**
+   * Whether `signature` was found valid on the device for the `verificationPublicKey` passed to
+   * `configureAsync`. Only set when a key was passed. Servers may skip purchases that are verified
+   * and check the rest in a batch, but this doesn't replace server-side validation.
+   * @platform android
+   */
+  verified?: boolean;
 }
 
 // @needsAudit
@@ -264,6 +294,74 @@ export interface IAPItemDetails {
    * @example `P0D`, `P6W`, `P3M`, `P6M`, `P1Y`
    */
   subscriptionPeriod?: string;
+  /**
+   * Every offer of every base plan of a subscription. The price and period above are those of the
+   * default offer, the first base plan without any offer on top of it.
+   * @platform android
+   */
+  subscriptionOffers?: IAPSubscriptionOffer[];
+}
+
+/**
+ * A base plan of a subscription, or an offer on top of one.
+ * @platform android
+ */
+export interface IAPSubscriptionOffer {
+  /**
+   * The ID of the base plan, as set up in Google Play Console.
+   * @example `monthly`
+   */
+  basePlanId: string;
+  /**
+   * The ID of the offer, `null` for the base plan itself.
+   * @example `free-trial`
+   */
+  offerId?: string | null;
+  /**
+   * Pass this to `purchaseItemAsync` to buy the subscription with this offer.
+   */
+  offerToken: string;
+  /**
+   * The tags set up for the offer in Google Play Console.
+   */
+  offerTags: string[];
+  /**
+   * The pricing phases of the offer in the order they apply, the last one is the recurring price.
+   */
+  pricingPhases: IAPPricingPhase[];
+}
+
+/**
+ * One pricing phase of a subscription offer, e.g. a free trial or the recurring price.
+ * @platform android
+ */
+export interface IAPPricingPhase {
+  /**
+   * The price formatted with the local currency symbol.
+   * @example `$1.99`
+   */
+  price: string;
+  /**
+   * The price in micro-units, where 1,000,000 micro-units equal one unit of the currency.
+   */
+  priceAmountMicros: number;
+  /**
+   * The local currency code from the ISO 4217 code list.
+   */
+  priceCurrencyCode: string;
+  /**
+   * The length of a billing period in ISO 8601 format.
+   * @example `P1W`, `P1M`, `P1Y`
+   */
+  billingPeriod: string;
+  /**
+   * How many billing periods the phase lasts, `0` for recurring phases.
+   */
+  billingCycleCount: number;
+  /**
+   * The `ProductDetails.RecurrenceMode` of the phase: `1` infinite, `2` finite, `3` non recurring.
+   */
+  recurrenceMode: number;
 }
 
 // @needsAudit
@@ -285,6 +383,15 @@ export type IAPPurchaseHistoryOptions = {
    * @default true
    */
   useGooglePlayCache: boolean;
+  /**
+   * With `useGooglePlayCache`, resolves right away with the purchases of the last successful query
+   * on this device, marked as `stale`, if there are any. The query still runs and its result is
+   * sent to the purchase listener, so a paywall or entitlement check doesn't have to wait for
+   * Google Play.
+   * @default false
+   * @platform android
+   */
+  allowStale?: boolean;
 };
 
 /**
@@ -316,4 +423,387 @@ export interface IAPPurchaseItemOptions {
    * Whether the purchase is happening in a VR context.
    */
   isVrPurchaseFlow?: boolean;
+  /**
+   * The `offerToken` of the subscription offer to buy, see `IAPItemDetails.subscriptionOffers`.
+   * Takes precedence over `basePlanId` and `offerId`.
+   * @platform android
+   */
+  offerToken?: string;
+  /**
+   * The base plan of the subscription to buy. Defaults to the first base plan without an offer.
+   * @platform android
+   */
+  basePlanId?: string;
+  /**
+   * The offer on top of `basePlanId` to buy, leave it out to buy the base plan itself.
+   * @platform android
+   */
+  offerId?: string;
+}
+
+/**
+ * Options for the native billing layer passed to `configureAsync`.
+ * @platform android
+ */
+export interface IAPConfigureOptions {
+  /**
+   * How long, in milliseconds, product details are served from the cache before they are refreshed
+   * in the background.
+   * @default 14400000
+   */
+  productCacheTtlMs?: number;
+  /**
+   * The maximum number of product details kept in the cache. The least recently used ones are
+   * evicted first.
+   * @default 256
+   */
+  productCacheMaxEntries?: number;
+  /**
+   * The maximum number of purchases `finishTransactionsAsync` consumes or acknowledges at the same
+   * time.
+   * @default 4
+   */
+  finishTransactionsParallelism?: number;
+  /**
+   * Whether purchase events carry only what changed since the previous event. Use
+   * `setPurchaseDeltaListener` to receive them.
+   * @default false
+   */
+  deltaPurchaseEvents?: boolean;
+  /**
+   * How long, in milliseconds, purchase updates from queries are collected before they are sent to
+   * the purchase listener as a single event, with the purchases merged by token. Results of
+   * `purchaseItemAsync` are sent right away, together with anything still pending. `0` sends every
+   * update as it comes.
+   * @default 50
+   */
+  purchaseEventWindowMs?: number;
+  /**
+   * Makes `connectAsync` resolve right away without binding the Google Play billing service, which
+   * keeps it out of the app's startup. The service is bound by the first call that needs it, or
+   * earlier with `prebindWhenIdle`. Has to be set before `connectAsync` is called.
+   *
+   * Startup shows up in system traces as `ExpoInAppPurchases.createModule`,
+   * `ExpoInAppPurchases.acquireBillingManager`, `ExpoInAppPurchases.createBillingClient` and, from
+   * Android 10 on, `ExpoInAppPurchases.connect`.
+   * @default false
+   */
+  lazyConnection?: boolean;
+  /**
+   * With `lazyConnection`, binds the billing service on a background thread as soon as the main
+   * thread is idle after `connectAsync`, so the first call doesn't wait for it.
+   * @default true
+   */
+  prebindWhenIdle?: boolean;
+  /**
+   * How often, in milliseconds, billing metrics are reported to the listener set with
+   * `setBillingMetricsListener`. Every report covers the time since the previous one. `0` turns the
+   * reports off.
+   * @default 0
+   */
+  metricsEventIntervalMs?: number;
+  /**
+   * How long, in milliseconds, a call to the store may stay pending. When it passes, the call is
+   * rejected with the `E_TIMEOUT` error code and, if it was still waiting for the connection, it is
+   * never sent to the store. `0` turns the timeout off.
+   * @default 30000
+   */
+  requestTimeoutMs?: number;
+  /**
+   * Timeouts in milliseconds of single methods, overriding `requestTimeoutMs`.
+   * @example `{ connectAsync: 60000, finishTransactionsAsync: 0 }`
+   */
+  requestTimeouts?: { [method: string]: number };
+  /**
+   * The Base64-encoded RSA public key of the app from Google Play Console. When it's set, the
+   * signature of every purchase is checked on the device and the result is reported as `verified`.
+   * Pass `null` to turn the check off.
+   */
+  verificationPublicKey?: string | null;
+  /**
+   * How many transient failures in a row (`ERROR`, `SERVICE_DISCONNECTED`, `SERVICE_UNAVAILABLE` or
+   * `SERVICE_TIMEOUT`) of the same kind of call open its circuit breaker. While a breaker is open,
+   * those calls fail right away with `SERVICE_UNAVAILABLE` instead of going to Google Play, and
+   * `queryPurchasableItemsAsync` returns the item details it has cached. `0` turns the breakers off.
+   * @default 3
+   */
+  circuitBreakerFailureThreshold?: number;
+  /**
+   * How long, in milliseconds, a circuit breaker stays open the first time, before a single call is
+   * let through to check whether Google Play recovered. It doubles every time that call fails.
+   * @default 2000
+   */
+  circuitBreakerOpenMs?: number;
+  /**
+   * The longest time, in milliseconds, a circuit breaker stays open.
+   * @default 60000
+   */
+  circuitBreakerMaxOpenMs?: number;
+}
+
+/**
+ * Which optional Google Play Billing features the connected Play Store supports, see
+ * `getSupportedFeaturesAsync`.
+ * @platform android
+ */
+export interface IAPSupportedFeatures {
+  /**
+   * Whether subscriptions can be bought.
+   */
+  subscriptions: boolean;
+  /**
+   * Whether subscriptions can be upgraded or downgraded with `oldPurchaseToken`.
+   */
+  subscriptionsUpdate: boolean;
+  /**
+   * Whether users can be asked to confirm subscription price changes.
+   */
+  priceChangeConfirmation: boolean;
+  /**
+   * Whether Play can show in-app messages, e.g. about declined payments.
+   */
+  inAppMessaging: boolean;
+  /**
+   * Whether the product details API is available.
+   */
+  productDetails: boolean;
+}
+
+/**
+ * Options for `warmUpAsync`.
+ */
+export interface IAPWarmUpOptions {
+  /**
+   * Whether to also fetch the purchases the user owns, as `getPurchaseHistoryAsync` does with
+   * `useGooglePlayCache`. Ignored on iOS, where restoring purchases prompts for the user's
+   * credentials.
+   * @default false
+   */
+  prefetchPurchases?: boolean;
+}
+
+/**
+ * The outcome of `warmUpAsync`.
+ */
+export interface IAPWarmUpResult {
+  /**
+   * `IAPResponseCode.OK` if every step succeeded.
+   */
+  responseCode: IAPResponseCode;
+  /**
+   * The response to fetching the products, as returned by `getProductsAsync`.
+   */
+  products?: IAPQueryResponse<IAPItemDetails>;
+  /**
+   * The response to fetching the owned purchases, as returned by `getPurchaseHistoryAsync`.
+   */
+  purchases?: IAPQueryResponse<InAppPurchase>;
+}
+
+/**
+ * Latency and outcome of one kind of billing operation.
+ * @platform android
+ */
+export interface IAPOperationMetrics {
+  /**
+   * How many times the operation finished.
+   */
+  count: number;
+  /**
+   * How many times it finished with anything but `BillingResponseCode.OK`.
+   */
+  errorCount: number;
+  meanMs: number;
+  maxMs: number;
+  p50Ms: number;
+  p90Ms: number;
+  p99Ms: number;
+  p999Ms: number;
+  /**
+   * How many times the operation finished with each
+   * [`BillingResponseCode`](https://developer.android.com/reference/com/android/billingclient/api/BillingClient.BillingResponseCode),
+   * keyed by the code.
+   */
+  responseCodes: { [responseCode: string]: number };
+}
+
+/**
+ * Metrics of the calls made to Google Play Billing, see `getBillingMetricsAsync`.
+ * @platform android
+ */
+export interface IAPBillingMetrics {
+  /**
+   * When the metrics started to be collected, in milliseconds since the epoch.
+   */
+  since: number;
+  /**
+   * When the metrics were collected, in milliseconds since the epoch.
+   */
+  collectedAt: number;
+  /**
+   * Metrics of every operation that happened at least once, keyed by the name of the Billing
+   * library call, e.g. `queryProductDetailsAsync`, `queryPurchasesAsync`, `consumeAsync` or
+   * `launchBillingFlow`.
+   */
+  operations: { [operation: string]: IAPOperationMetrics };
+}
+
+/**
+ * A purchase event in delta mode, see `setPurchaseDeltaListener`.
+ * @platform android
+ */
+export interface IAPPurchasesDelta {
+  /**
+   * The response code from the purchase.
+   */
+  responseCode: IAPResponseCode;
+  /**
+   * Purchases that weren't known before.
+   */
+  added?: InAppPurchase[];
+  /**
+   * Known purchases whose state changed, e.g. they were acknowledged.
+   */
+  changed?: InAppPurchase[];
+  /**
+   * Purchase tokens of purchases that are no longer owned, e.g. consumed ones.
+   */
+  removed?: string[];
+  /**
+   * Increases by one with every delta.
+   */
+  sequence?: number;
+  /**
+   * `IAPErrorCode` that provides more detail on why an error occurred. `null` unless `responseCode`
+   * is `IAPResponseCode.ERROR`.
+   */
+  errorCode?: IAPErrorCode;
 }
+
+/**
+ * The outcome of finishing a single purchase with `finishTransactionsAsync`.
+ * @platform android
+ */
+export interface IAPFinishTransactionResult {
+  /**
+   * The token of the purchase that was consumed or acknowledged.
+   */
+  purchaseToken: string;
+  /**
+   * The response code from consuming or acknowledging the purchase.
+   */
+  responseCode: IAPResponseCode;
+  /**
+   * `IAPErrorCode` that provides more detail on why an error occurred. `null` unless `responseCode`
+   * is `IAPResponseCode.ERROR`.
+   */
+  errorCode?: IAPErrorCode;
+}
+
+/**
+ * A page of the purchase history, as returned by `getPurchaseHistoryPageAsync`.
+ * @platform android
+ */
+export interface IAPPurchaseHistoryPage extends IAPQueryResponse<InAppPurchase> {
+  /**
+   * Pass this to `getPurchaseHistoryPageAsync` to fetch the next page, `null` after the last one.
+   */
+  nextCursor?: string | null;
+  /**
+   * Number of records in the whole history.
+   */
+  totalCount?: number;
+}
+
+/**
+ * A product the user owns, as returned by `getEntitlementsAsync`.
+ * @platform android
+ */
+export interface IAPEntitlement {
+  /**
+   * The product ID.
+   */
+  productId: string;
+  /**
+   * The token of the purchase that grants the product. When several purchases contain it, a
+   * purchased one wins over a pending one, and the newest one wins otherwise.
+   */
+  purchaseToken: string;
+  /**
+   * The state of the purchase.
+   */
+  purchaseState: InAppPurchaseState;
+  /**
+   * Whether the purchase was acknowledged, including by `finishTransactionAsync` calls that Play
+   * hasn't reported back yet.
+   */
+  acknowledged: boolean;
+  /**
+   * Whether the subscription renews automatically.
+   */
+  autoRenewing: boolean;
+  /**
+   * The time the product was purchased, in milliseconds since the epoch (Jan 1, 1970).
+   */
+  purchaseTime: number;
+  /**
+   * For subscriptions whose product details were fetched, the end of the current billing period in
+   * milliseconds since the epoch, or of the first one when the subscription doesn't renew. This is
+   * only an estimate, Google Play doesn't tell the actual expiry to the app. `null` otherwise.
+   */
+  expiresAtHint: number | null;
+}
+
+/**
+ * The entitlements of the user, as returned by `getEntitlementsAsync`.
+ * @platform android
+ */
+export interface IAPEntitlements {
+  /**
+   * One entry per owned or pending product.
+   */
+  entitlements: IAPEntitlement[];
+  /**
+   * When the entitlements were last updated from Google Play, in milliseconds since the epoch.
+   * `null` until purchases were queried or updated for the first time.
+   */
+  updatedAt: number | null;
+  /**
+   * Whether the entitlements are based on a complete list of owned purchases, i.e. purchases were
+   * queried with `getPurchaseHistoryAsync` at least once. Otherwise they only contain the purchases
+   * reported since connecting.
+   */
+  complete: boolean;
+}
+
+/**
+ * The state of a circuit breaker: `closed` while calls go through, `open` while they fail right
+ * away, and `halfOpen` while a single call checks whether Google Play recovered.
+ * @platform android
+ */
+export type IAPCircuitBreakerState = 'closed' | 'open' | 'halfOpen';
+
+/**
+ * A circuit breaker guarding one kind of call to Google Play, see `getCircuitBreakersAsync`.
+ * @platform android
+ */
+export interface IAPCircuitBreaker {
+  state: IAPCircuitBreakerState;
+  /**
+   * Transient failures in a row since the last successful call.
+   */
+  consecutiveFailures: number;
+  /**
+   * While the breaker is open, when the next call will be let through, in milliseconds since the
+   * epoch. `null` otherwise.
+   */
+  retryAt: number | null;
+}
+
+/**
+ * The circuit breakers keyed by the name of the Billing library call they guard:
+ * `queryProductDetailsAsync`, `queryPurchasesAsync`, `queryPurchaseHistoryAsync`,
+ * `acknowledgePurchase` and `consumeAsync`.
+ * @platform android
+ */
+export type IAPCircuitBreakers = { [operation: string]: IAPCircuitBreaker };